@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/**
+ * Table of the snapshots of the OFG position taken at backtrackable points.
+ * A snapshot records the position, the active policy, whether the policy
+ * changed since the last output, the number of policy changes and the depth.
+ * Snapshots are stored in parallel arrays and indexed by a numeric key (see
+ * {@link JPFHelper#vm2dynamicStateKey(gov.nasa.jpf.jvm.JVM, boolean)}) in an
+ * open addressing hash table, so registering or retrieving a snapshot
+ * neither builds nor hashes strings. Since keys are hashes of the path, a
+ * check value, an independent hash of the path (see
+ * {@link JPFHelper#dynamicStateCheck(int)}), is stored with each key; a key
+ * found with a different check value reveals a collision and raises an
+ * error instead of restoring a wrong snapshot.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class BacktrackTable implements Serializable {
+
+  /** Value returned by {@link #lookup(long, int)} for unknown keys. */
+  static final int NO_SNAPSHOT = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Number of snapshots stored. */
+  private int size;
+  /** Open addressing table of snapshot indexes ({@link #NO_SNAPSHOT} if empty). */
+  private int[] buckets;
+  private long[] keys;
+  private int[] checks;
+  private Object[] positions;
+  private String[] policies;
+  private BitSet policyChanged;
+  private int[] numberOfPolicyChanges;
+  private int[] depths;
+
+  /**
+   * Default constructor.
+   */
+  BacktrackTable() {
+    size = 0;
+    buckets = new int[2 * INITIAL_CAPACITY];
+    Arrays.fill(buckets, NO_SNAPSHOT);
+    keys = new long[INITIAL_CAPACITY];
+    checks = new int[INITIAL_CAPACITY];
+    positions = new Object[INITIAL_CAPACITY];
+    policies = new String[INITIAL_CAPACITY];
+    policyChanged = new BitSet();
+    numberOfPolicyChanges = new int[INITIAL_CAPACITY];
+    depths = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Returns the number of snapshots in this table.
+   *
+   * @return The number of snapshots.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the bucket of a key in a table of the provided length.
+   *
+   * @param key The key.
+   * @param length The length (a power of 2) of the table of buckets.
+   * @return The first bucket to probe for {@code key}.
+   */
+  private static int bucketOf(long key, int length) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & (length - 1);
+  }
+
+  /**
+   * Retrieves the snapshot registered for the provided key.
+   *
+   * @param key The key of a backtrackable point.
+   * @param check The check value of {@code key}.
+   * @return The index of its snapshot, or {@link #NO_SNAPSHOT}.
+   */
+  int lookup(long key, int check) {
+    int b = bucketOf(key, buckets.length);
+    while ( buckets[b] != NO_SNAPSHOT ) {
+      int idx = buckets[b];
+      if ( keys[idx] == key ) {
+        if ( checks[idx] != check )
+          throw new Error("Collision on the dynamic state key " + key + " (check values " + checks[idx] + " and " + check + ").");
+        return idx;
+      }
+      b = (b + 1) & (buckets.length - 1);
+    }
+    return NO_SNAPSHOT;
+  }
+
+  /**
+   * Registers a snapshot for the provided key, replacing the previous one if
+   * any.
+   *
+   * @param key The key of the backtrackable point.
+   * @param check The check value of {@code key}.
+   * @param position The position in the OFG.
+   * @param policy The active policy.
+   * @param plcChanged Whether the policy changed since the last output.
+   * @param npc The number of policy changes.
+   * @param depth The depth of the position.
+   * @return The index of the snapshot.
+   */
+  int put(long key, int check, Object position, String policy, boolean plcChanged, int npc, int depth) {
+    int idx = lookup(key, check);
+    if ( idx == NO_SNAPSHOT ) {
+      if ( size == keys.length ) grow(2 * size);
+      idx = size++;
+      keys[idx] = key;
+      checks[idx] = check;
+      int b = bucketOf(key, buckets.length);
+      while ( buckets[b] != NO_SNAPSHOT ) b = (b + 1) & (buckets.length - 1);
+      buckets[b] = idx;
+    }
+    positions[idx] = position;
+    policies[idx] = policy;
+    policyChanged.set(idx, plcChanged);
+    numberOfPolicyChanges[idx] = npc;
+    depths[idx] = depth;
+    return idx;
+  }
+
+  /**
+   * Grows the arrays to the provided capacity and rehashes the keys.
+   *
+   * @param capacity The new capacity of the arrays.
+   */
+  private void grow(int capacity) {
+    keys = Arrays.copyOf(keys, capacity);
+    checks = Arrays.copyOf(checks, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    policies = Arrays.copyOf(policies, capacity);
+    numberOfPolicyChanges = Arrays.copyOf(numberOfPolicyChanges, capacity);
+    depths = Arrays.copyOf(depths, capacity);
+    buckets = new int[2 * capacity];
+    Arrays.fill(buckets, NO_SNAPSHOT);
+    for (int idx = 0; idx < size; idx++) {
+      int b = bucketOf(keys[idx], buckets.length);
+      while ( buckets[b] != NO_SNAPSHOT ) b = (b + 1) & (buckets.length - 1);
+      buckets[b] = idx;
+    }
+  }
+
+  /**
+   * Returns the position recorded in a snapshot.
+   *
+   * @param idx The index of the snapshot.
+   * @return The position in the OFG.
+   */
+  Object getPosition(int idx) {
+    return positions[idx];
+  }
+
+  /**
+   * Returns the active policy recorded in a snapshot.
+   *
+   * @param idx The index of the snapshot.
+   * @return The active policy.
+   */
+  String getPolicy(int idx) {
+    return policies[idx];
+  }
+
+  /**
+   * Returns whether the policy changed since the last output in a snapshot.
+   *
+   * @param idx The index of the snapshot.
+   * @return {@code true} iff the policy changed since the last output.
+   */
+  boolean getPolicyChanged(int idx) {
+    return policyChanged.get(idx);
+  }
+
+  /**
+   * Returns the number of policy changes recorded in a snapshot.
+   *
+   * @param idx The index of the snapshot.
+   * @return The number of policy changes.
+   */
+  int getNumberOfPolicyChanges(int idx) {
+    return numberOfPolicyChanges[idx];
+  }
+
+  /**
+   * Returns the depth recorded in a snapshot.
+   *
+   * @param idx The index of the snapshot.
+   * @return The depth.
+   */
+  int getDepth(int idx) {
+    return depths[idx];
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Solver handler memoizing the answers of another solver handler.
+ * Queries are identified by their canonical form (see {@link CanonicalQuery}),
+ * so that queries differing only by the names of their variables share the
+ * same answer. The number of memorized answers is bounded, the least recently
+ * used answer being forgotten first. Satisfiability answers can additionally
+ * be stored in a {@link PersistentSolverCache}, shared across analyses.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class CachingSolverHandler extends SolverHandler {
+
+  /** Answer of a satisfiability query whose formula is unsatisfiable */
+  private static final Map<Integer,EE_Constant> UNSAT = Collections.unmodifiableMap(new HashMap<Integer,EE_Constant>());
+
+  /** Answer of a simplification query */
+  private static final class Simplification {
+    final CanonicalQuery query;
+    final EFormula result;
+    Simplification(CanonicalQuery q, EFormula r) { query = q; result = r; }
+  }
+
+  private final SolverHandler solver;
+  private final Map<String,Map<Integer,EE_Constant>> satAnswers;
+  private final Map<String,Simplification> simplifyAnswers;
+  private final PersistentSolverCache persistentAnswers;
+  private long nbHits = 0;
+  private long nbMisses = 0;
+  private long nbPersistentHits = 0;
+
+  /**
+   * Constructor of caching solver handlers.
+   *
+   * @param s The solver handler whose answers are memorized.
+   * @param capacity The maximal number of answers memorized for each kind of
+   *   query.
+   * @param l Logger to use to log information.
+   */
+  CachingSolverHandler(SolverHandler s, int capacity, EncoverLogger l) {
+    this(s, capacity, null, l);
+  }
+
+  /**
+   * Constructor of caching solver handlers backed by a persistent cache.
+   *
+   * @param s The solver handler whose answers are memorized.
+   * @param capacity The maximal number of answers memorized in memory for each
+   *   kind of query.
+   * @param store The persistent cache of satisfiability answers, or
+   *   {@code null} if answers are memorized in memory only.
+   * @param l Logger to use to log information.
+   */
+  CachingSolverHandler(SolverHandler s, int capacity, PersistentSolverCache store, EncoverLogger l) {
+    setLogger(l);
+    solver = s;
+    satAnswers = new LruMap<Map<Integer,EE_Constant>>(capacity);
+    simplifyAnswers = new LruMap<Simplification>(capacity);
+    persistentAnswers = store;
+  }
+
+  /**
+   * Map forgetting its least recently accessed entry when exceeding its
+   * capacity.
+   */
+  private static final class LruMap<V> extends LinkedHashMap<String,V> {
+    private final int capacity;
+    LruMap(int c) {
+      super(16, 0.75f, true);
+      capacity = c;
+    }
+    protected boolean removeEldestEntry(Map.Entry<String,V> eldest) {
+      return size() > capacity;
+    }
+  }
+
+  /**
+   * Starts the underlying solver.
+   *
+   * @return True iff successfully started the solver.
+   */
+  public boolean start() { return solver.start(); }
+
+  /**
+   * Stops the underlying solver. Memorized answers are kept.
+   *
+   * @return True iff successfully stopped the solver.
+   */
+  public boolean stop() { return solver.stop(); }
+
+  /**
+   * Exits the underlying solver.
+   *
+   * @return True iff successfully exited the solver.
+   */
+  public boolean exit() { return solver.exit(); }
+
+  /**
+   * Test if the underlying solver is ready.
+   *
+   * @return True iff the solver is started and ready to receive queries.
+   */
+  public boolean isStarted() { return solver.isStarted(); }
+
+  /**
+   * Aborts the queries currently being answered by the underlying solver.
+   */
+  public void abort() { solver.abort(); }
+
+  /**
+   * Builds the canonical form of a query.
+   *
+   * @param background The background formula, or {@code null} if there is none.
+   * @param formula The formula specific to the query.
+   * @return The canonical form of the query, or {@code null} if it can not be
+   *   computed (in which case the query is not memorized).
+   */
+  private CanonicalQuery canonicalize(EFormula background, EFormula formula) {
+    try {
+      return new CanonicalQuery(background, formula);
+    } catch (TranslationException e) {
+      logln("The query can not be put into canonical form, it will not be memorized.\n" + e);
+      return null;
+    }
+  }
+
+  /**
+   * Simplifies the provided formula, reusing a memorized answer if possible.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  public EFormula simplify(EFormula formula) {
+    CanonicalQuery query = canonicalize(null, formula);
+    if ( query == null ) return solver.simplify(formula);
+
+    Simplification cached;
+    synchronized (this) {
+      cached = simplifyAnswers.get(query.getKey());
+      if ( cached != null ) nbHits++; else nbMisses++;
+    }
+    if ( cached != null ) return cached.result.clone(query.renamingFrom(cached.query));
+
+    EFormula result = solver.simplify(formula);
+    synchronized (this) {
+      simplifyAnswers.put(query.getKey(), new Simplification(query, result));
+    }
+    return result;
+  }
+
+  /**
+   * Decides satisfiability of the provided formula, reusing a memorized answer
+   * if possible.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula formula) {
+    return solve_cached(null, formula);
+  }
+
+  /**
+   * Decides satisfiability of the conjunction of a background formula and a
+   * query formula, reusing a memorized answer if possible.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    return solve_cached(background, formula);
+  }
+
+  /**
+   * Decides satisfiability of a query, reusing a memorized answer if possible.
+   * UNKNOWN verdicts are never memorized, as they may depend on time limits.
+   *
+   * @param background The background formula, or {@code null} if there is none.
+   * @param formula The formula specific to the query.
+   * @return The verdict of the solver.
+   */
+  private SolverResult solve_cached(EFormula background, EFormula formula) {
+    CanonicalQuery query = canonicalize(background, formula);
+    if ( query == null ) return askSolver(background, formula);
+
+    Map<Integer,EE_Constant> cached;
+    synchronized (this) {
+      cached = satAnswers.get(query.getKey());
+      if ( cached != null ) nbHits++; else nbMisses++;
+    }
+    if ( cached == null && persistentAnswers != null ) {
+      cached = persistentAnswers.lookup(query.getKey(), UNSAT);
+      if ( cached != null ) {
+        synchronized (this) {
+          nbPersistentHits++;
+          satAnswers.put(query.getKey(), cached);
+        }
+      }
+    }
+    if ( cached == UNSAT ) return SolverResult.unsat();
+    if ( cached != null ) return SolverResult.sat(query.fromCanonicalAssignment(cached));
+
+    SolverResult result = askSolver(background, formula);
+    if ( result.isUnknown() ) return result;
+    Map<Integer,EE_Constant> answer = result.isUnsat() ? UNSAT : query.toCanonicalAssignment(result.getModel());
+    if ( answer != null ) {
+      synchronized (this) {
+        satAnswers.put(query.getKey(), answer);
+      }
+      if ( persistentAnswers != null )
+        persistentAnswers.store(query.getKey(), (answer == UNSAT) ? null : answer);
+    }
+    return result;
+  }
+
+  /**
+   * Forwards a satisfiability query to the underlying solver.
+   *
+   * @param background The background formula, or {@code null} if there is none.
+   * @param formula The formula specific to the query.
+   * @return The answer of the underlying solver.
+   */
+  private SolverResult askSolver(EFormula background, EFormula formula) {
+    if ( background == null ) return solver.solve(formula);
+    return solver.solve(background, formula);
+  }
+
+  /**
+   * Returns the number of solver processes spawned so far by the underlying
+   * solver.
+   *
+   * @return The number of solver processes spawned so far.
+   */
+  public int getNbProcessSpawns() { return solver.getNbProcessSpawns(); }
+
+  /**
+   * Returns the statistics of the underlying solver, completed with the
+   * number of queries answered from, and missing in, the cache.
+   *
+   * @return The statistics collected by this handler.
+   */
+  public synchronized Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>(solver.getStatistics());
+    stats.put("cache hits", nbHits);
+    stats.put("cache misses", nbMisses);
+    if ( persistentAnswers != null ) stats.put("persistent cache hits", nbPersistentHits);
+    return stats;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Canonical form of a solver query, used as key when caching solver answers.
+ * The query is translated into SMT2 and every variable is renamed according to
+ * the order of its first occurrence in this translation ({@code v0},
+ * {@code v1}, ...). Two queries which differ only by the names of their
+ * variables therefore have the same key. The key also contains the sorts of
+ * the renamed variables, and answers obtained for one query can be mapped back
+ * onto the variables of any other query having the same key.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class CanonicalQuery {
+
+  private final String key;
+  private final List<EE_Variable> variables;
+
+  /**
+   * Builds the canonical form of a query about a single formula.
+   *
+   * @param formula The formula of the query.
+   * @throws TranslationException If the formula can not be translated into
+   *   SMT2.
+   */
+  CanonicalQuery(EFormula formula) throws TranslationException {
+    this(null, formula);
+  }
+
+  /**
+   * Builds the canonical form of a query about the conjunction of a background
+   * formula and a query formula.
+   *
+   * @param background The background formula, or {@code null} if there is none.
+   * @param formula The formula specific to the query.
+   * @throws TranslationException If one of the formulas can not be translated
+   *   into SMT2.
+   */
+  CanonicalQuery(EFormula background, EFormula formula) throws TranslationException {
+    Map<String,EE_Variable> pseudo2var = new HashMap<String,EE_Variable>();
+    String smt2;
+
+    // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
+    // exiting this method by any mean!
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(EE_Variable.PseudonymPolicy.COMBINED);
+    try {
+      smt2 = formula.toString(EFormula.StrEncoding.SMT2);
+      for (EE_Variable v: formula.getVariables()) pseudo2var.put(v.getPseudonym(), v);
+      if ( background != null ) {
+        smt2 = background.toString(EFormula.StrEncoding.SMT2) + "\n" + smt2;
+        for (EE_Variable v: background.getVariables()) pseudo2var.put(v.getPseudonym(), v);
+      }
+    } finally {
+      EE_Variable.setPseudonymPolicy(oldPPolicy);
+    }
+
+    variables = new ArrayList<EE_Variable>();
+    String body = renameVariables(smt2, pseudo2var, variables);
+
+    StringBuilder sorts = new StringBuilder();
+    for (EE_Variable v: variables) sorts.append(v.getType()).append(' ');
+    key = sorts + "\n" + body;
+  }
+
+  /**
+   * Renames the variables occurring in an SMT2 string according to the order
+   * of their first occurrence. String literals are left untouched.
+   *
+   * @param smt2 The SMT2 string.
+   * @param pseudo2var The mapping from pseudonyms to variables.
+   * @param order The list to which variables are added in the order of their
+   *   first occurrence.
+   * @return The SMT2 string where variables are renamed.
+   */
+  private static String renameVariables(String smt2, Map<String,EE_Variable> pseudo2var, List<EE_Variable> order) {
+    Map<EE_Variable,String> canonicalNames = new HashMap<EE_Variable,String>();
+    StringBuilder res = new StringBuilder(smt2.length());
+    int i = 0;
+    while ( i < smt2.length() ) {
+      char ch = smt2.charAt(i);
+      if ( ch == '"' || ch == '|' ) {
+        int end = smt2.indexOf(ch, i + 1);
+        if ( end < 0 ) end = smt2.length() - 1;
+        res.append(smt2, i, end + 1);
+        i = end + 1;
+      } else if ( ch == '(' || ch == ')' || Character.isWhitespace(ch) ) {
+        res.append(ch);
+        i++;
+      } else {
+        int end = i;
+        while ( end < smt2.length() ) {
+          char c = smt2.charAt(end);
+          if ( c == '(' || c == ')' || c == '"' || Character.isWhitespace(c) ) break;
+          end++;
+        }
+        String token = smt2.substring(i, end);
+        EE_Variable var = pseudo2var.get(token);
+        if ( var == null ) {
+          res.append(token);
+        } else {
+          String name = canonicalNames.get(var);
+          if ( name == null ) {
+            name = "v" + order.size();
+            canonicalNames.put(var, name);
+            order.add(var);
+          }
+          res.append(name);
+        }
+        i = end;
+      }
+    }
+    return res.toString();
+  }
+
+  /**
+   * Returns the canonical key of this query.
+   *
+   * @return The canonical key.
+   */
+  String getKey() { return key; }
+
+  /**
+   * Returns the variables of this query, in the order of their canonical
+   * names.
+   *
+   * @return The variables of this query.
+   */
+  List<EE_Variable> getVariables() { return Collections.unmodifiableList(variables); }
+
+  /**
+   * Translates an assignment of the variables of this query into an
+   * assignment of the canonical variables.
+   *
+   * @param assignment The assignment of the variables of this query.
+   * @return The assignment indexed by canonical variable numbers, or
+   *   {@code null} if the assignment refers to a variable absent from the
+   *   query.
+   */
+  Map<Integer,EE_Constant> toCanonicalAssignment(Map<EE_Variable,EE_Constant> assignment) {
+    Map<Integer,EE_Constant> res = new HashMap<Integer,EE_Constant>();
+    for (Map.Entry<EE_Variable,EE_Constant> entry: assignment.entrySet()) {
+      int index = variables.indexOf(entry.getKey());
+      if ( index < 0 ) return null;
+      res.put(index, entry.getValue());
+    }
+    return res;
+  }
+
+  /**
+   * Translates an assignment of the canonical variables into an assignment of
+   * the variables of this query.
+   *
+   * @param assignment The assignment indexed by canonical variable numbers.
+   * @return The assignment of the variables of this query.
+   */
+  SortedMap<EE_Variable,EE_Constant> fromCanonicalAssignment(Map<Integer,EE_Constant> assignment) {
+    SortedMap<EE_Variable,EE_Constant> res = new TreeMap<EE_Variable,EE_Constant>();
+    for (Map.Entry<Integer,EE_Constant> entry: assignment.entrySet()) {
+      res.put(variables.get(entry.getKey()), entry.getValue());
+    }
+    return res;
+  }
+
+  /**
+   * Builds the renaming mapping the variables of another query having the same
+   * key onto the variables of this query.
+   *
+   * @param other A query having the same key as this one.
+   * @return The renaming from the variables of {@code other} to the variables
+   *   of this query.
+   */
+  Map<EE_Variable,EE_Variable> renamingFrom(CanonicalQuery other) {
+    Map<EE_Variable,EE_Variable> renaming = new HashMap<EE_Variable,EE_Variable>();
+    for (int i = 0; i < variables.size(); i++) {
+      renaming.put(other.variables.get(i), variables.get(i));
+    }
+    return renaming;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
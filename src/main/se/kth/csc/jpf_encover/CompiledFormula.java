@@ -0,0 +1,820 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Formula compiled into a tree of evaluators, able to decide quickly whether a
+ * concrete assignment of its variables satisfies it, without calling a solver.
+ * Every variable is given a register in one of three banks: integers (holding
+ * integer and boolean variables, booleans being stored as 0 or 1), reals and
+ * strings. Assignments are provided as {@link Registers}, so that evaluation
+ * involves no map lookup and no boxing. Every subterm is compiled into an
+ * evaluator of its type, the type of operations being inferred from the types
+ * of their operands.
+ * All the operators registered by {@link EExpression#initialize()} are handled.
+ * Integers follow the mathematical semantics of SMT2: {@code div} and
+ * {@code mod} are euclidean, and {@code /} is the real division. Integer
+ * values are held in longs; an addition, subtraction, multiplication,
+ * negation or division whose result does not fit in a long raises an
+ * {@link EvaluationException} instead of wrapping around. Operators without SMT2 counterpart (trigonometric functions,
+ * shifts, string functions, ...) follow the semantics of their Java
+ * counterpart.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+final class CompiledFormula {
+
+  /**
+   * Exception thrown when a formula can not be evaluated on an assignment
+   * (for example on a division by zero, which SMT2 leaves unspecified, or on
+   * an integer overflowing a long).
+   */
+  static final class EvaluationException extends RuntimeException {
+    EvaluationException(String msg) { super(msg); }
+  }
+
+  /**
+   * Values of the variables of a compiled formula, stored by register.
+   */
+  static final class Registers {
+    /** Values of the integer and boolean registers */
+    final long[] ints;
+    /** Values of the real registers */
+    final double[] reals;
+    /** Values of the string registers */
+    final String[] strs;
+
+    /**
+     * Constructor of register banks.
+     *
+     * @param nbInts The number of integer registers.
+     * @param nbReals The number of real registers.
+     * @param nbStrs The number of string registers.
+     */
+    Registers(int nbInts, int nbReals, int nbStrs) {
+      ints = new long[nbInts];
+      reals = new double[nbReals];
+      strs = new String[nbStrs];
+    }
+  }
+
+  /** Evaluator of boolean subterms */
+  private static abstract class BoolNode {
+    abstract boolean eval(Registers r);
+  }
+
+  /** Evaluator of integer subterms */
+  private static abstract class IntNode {
+    abstract long eval(Registers r);
+  }
+
+  /** Evaluator of real subterms */
+  private static abstract class RealNode {
+    abstract double eval(Registers r);
+  }
+
+  /** Evaluator of string subterms */
+  private static abstract class StrNode {
+    abstract String eval(Registers r);
+  }
+
+  private final List<EE_Variable> variables;
+  private final Map<EE_Variable,Integer> registers = new HashMap<EE_Variable,Integer>();
+  private int nbInts = 0;
+  private int nbReals = 0;
+  private int nbStrs = 0;
+  private final BoolNode root;
+
+  /**
+   * Compiles a formula.
+   *
+   * @param formula The formula to compile.
+   * @throws TranslationException If the formula contains a variable of
+   *   unknown type or an operation which is not well typed.
+   */
+  CompiledFormula(EFormula formula) throws TranslationException {
+    variables = new ArrayList<EE_Variable>(new TreeSet<EE_Variable>(formula.getVariables()));
+    for (EE_Variable v: variables) {
+      switch (v.getType()) {
+      case BOOL:
+      case INT: registers.put(v, nbInts++); break;
+      case REAL: registers.put(v, nbReals++); break;
+      case STR: registers.put(v, nbStrs++); break;
+      default: throw new TranslationException("Variables of type " + v.getType() + " can not be evaluated: " + v);
+      }
+    }
+    root = compile(formula);
+  }
+
+  /**
+   * Returns the variables of the formula, ordered.
+   *
+   * @return The variables of the formula.
+   */
+  List<EE_Variable> getVariables() { return Collections.unmodifiableList(variables); }
+
+  /**
+   * Returns the register of a variable, in the bank corresponding to its
+   * type.
+   *
+   * @param v A variable of the formula.
+   * @return The index of the register holding the value of {@code v}.
+   */
+  int getRegister(EE_Variable v) { return registers.get(v).intValue(); }
+
+  /**
+   * Creates registers able to hold the values of the variables of the
+   * formula.
+   *
+   * @return New registers.
+   */
+  Registers newRegisters() { return new Registers(nbInts, nbReals, nbStrs); }
+
+  /**
+   * Creates registers holding an assignment of the variables of the formula.
+   *
+   * @param assignment The values of the variables.
+   * @return Registers holding the assignment.
+   * @throws EvaluationException If a variable has no value or a value of the
+   *   wrong type.
+   */
+  Registers toRegisters(Map<EE_Variable,EE_Constant> assignment) {
+    Registers r = newRegisters();
+    for (EE_Variable v: variables) {
+      EE_Constant c = assignment.get(v);
+      if ( c == null ) throw new EvaluationException("No value for " + v);
+      int reg = getRegister(v);
+      Object value = c.getValue();
+      try {
+        switch (v.getType()) {
+        case BOOL: r.ints[reg] = ((Boolean) value).booleanValue() ? 1 : 0; break;
+        case INT: r.ints[reg] = ((Number) value).longValue(); break;
+        case REAL: r.reals[reg] = ((Number) value).doubleValue(); break;
+        case STR: r.strs[reg] = value.toString(); break;
+        }
+      } catch (ClassCastException e) {
+        throw new EvaluationException("Value " + c + " of wrong type for " + v);
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Turns registers into an assignment of the variables.
+   *
+   * @param r The values of the variables.
+   * @return The corresponding assignment.
+   */
+  SortedMap<EE_Variable,EE_Constant> toAssignment(Registers r) {
+    SortedMap<EE_Variable,EE_Constant> assignment = new TreeMap<EE_Variable,EE_Constant>();
+    for (EE_Variable v: variables) {
+      int reg = getRegister(v);
+      switch (v.getType()) {
+      case BOOL: assignment.put(v, new EE_Constant(EExpression.Type.BOOL, Boolean.valueOf(r.ints[reg] != 0))); break;
+      case INT: assignment.put(v, new EE_Constant(EExpression.Type.INT, Integer.valueOf((int) r.ints[reg]))); break;
+      case REAL: assignment.put(v, new EE_Constant(EExpression.Type.REAL, Double.valueOf(r.reals[reg]))); break;
+      case STR: assignment.put(v, new EE_Constant(EExpression.Type.STR, r.strs[reg])); break;
+      }
+    }
+    return assignment;
+  }
+
+  /**
+   * Evaluates the formula on an assignment.
+   *
+   * @param r The values of the variables.
+   * @return True iff the assignment satisfies the formula.
+   * @throws EvaluationException If the formula is undefined on this
+   *   assignment.
+   */
+  boolean eval(Registers r) { return root.eval(r); }
+
+  /**
+   * Evaluates the formula on an assignment.
+   *
+   * @param assignment The values of the variables.
+   * @return True iff the assignment satisfies the formula.
+   * @throws EvaluationException If the formula is undefined on this
+   *   assignment.
+   */
+  boolean eval(Map<EE_Variable,EE_Constant> assignment) { return root.eval(toRegisters(assignment)); }
+
+  /**
+   * Compiles a formula into a boolean evaluator.
+   *
+   * @param formula The formula to compile.
+   * @return The evaluator of the formula.
+   */
+  private BoolNode compile(EFormula formula) throws TranslationException {
+    if ( formula instanceof EF_NaryOperation ) {
+      List<EFormula> subformulas = formula.getSubFormulas();
+      BoolNode[] subs = new BoolNode[subformulas.size()];
+      int i = 0;
+      for (EFormula sub: subformulas) subs[i++] = compile(sub);
+      return ( formula instanceof EF_Conjunction ) ? and(subs) : or(subs);
+    } else if ( formula instanceof EF_Negation ) {
+      final BoolNode sub = compile(((EF_Negation) formula).getNegatedFormula());
+      return new BoolNode() { boolean eval(Registers r) { return ! sub.eval(r); } };
+    } else if ( formula instanceof EF_Relation ) {
+      EF_Relation rel = (EF_Relation) formula;
+      return compileComparison(rel.getOperator().toString(EFormula.StrEncoding.SMT2), rel.getLeftHandSide(), rel.getRightHandSide());
+    } else if ( formula instanceof EF_Valuation ) {
+      return compileBool(((EF_Valuation) formula).getExpression());
+    }
+    throw new TranslationException("The formula can not be evaluated: " + formula);
+  }
+
+  /**
+   * Infers the type of the value of an expression.
+   *
+   * @param exp The expression.
+   * @return One of BOOL, INT, REAL or STR.
+   */
+  private static EExpression.Type typeOf(EExpression exp) throws TranslationException {
+    if ( exp instanceof EE_Variable || exp instanceof EE_Constant ) {
+      if ( exp.getType() == EExpression.Type.UNKNOWN ) throw new TranslationException("Unknown type for " + exp);
+      return exp.getType();
+    }
+    if ( exp instanceof EE_UnaryOperation ) {
+      EExpression operand = ((EE_UnaryOperation) exp).getOperand();
+      if ( exp instanceof EE_UnaryOperation.NOT ) return EExpression.Type.BOOL;
+      if ( exp instanceof EE_UnaryOperation.NEG ) return typeOf(operand);
+      if ( exp instanceof EE_UnaryOperation.LENGTH || exp instanceof EE_UnaryOperation.ROUND ) return EExpression.Type.INT;
+      if ( exp instanceof EE_UnaryOperation.VALUE || exp instanceof EE_UnaryOperation.LOWER_CASE
+           || exp instanceof EE_UnaryOperation.UPPER_CASE || exp instanceof EE_UnaryOperation.TRIM )
+        return EExpression.Type.STR;
+      return EExpression.Type.REAL;
+    }
+    if ( exp instanceof EE_BinaryOperation ) {
+      EE_BinaryOperation bin = (EE_BinaryOperation) exp;
+      if ( exp instanceof EE_BinaryOperation.EQ || exp instanceof EE_BinaryOperation.NE
+           || exp instanceof EE_BinaryOperation.LT || exp instanceof EE_BinaryOperation.LE
+           || exp instanceof EE_BinaryOperation.GT || exp instanceof EE_BinaryOperation.GE )
+        return EExpression.Type.BOOL;
+      if ( exp instanceof EE_BinaryOperation.CONCAT ) return EExpression.Type.STR;
+      if ( exp instanceof EE_BinaryOperation.MINUS ) return numericType(typeOf(bin.getLeftHandSide()), typeOf(bin.getRightHandSide()));
+      if ( exp instanceof EE_BinaryOperation.DIV || exp instanceof EE_BinaryOperation.ATAN2
+           || exp instanceof EE_BinaryOperation.POW )
+        return EExpression.Type.REAL;
+      return EExpression.Type.INT;
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      EExpression.Type t2 = typeOf(ite.getOperand2());
+      EExpression.Type t3 = typeOf(ite.getOperand3());
+      if ( t2 == t3 ) return t2;
+      return numericType(t2, t3);
+    }
+    if ( exp instanceof EE_NaryOperation ) {
+      if ( exp instanceof EE_NaryOperation.AND || exp instanceof EE_NaryOperation.OR
+           || exp instanceof EE_NaryOperation.XOR )
+        return EExpression.Type.BOOL;
+      if ( exp instanceof EE_NaryOperation.PLUS || exp instanceof EE_NaryOperation.MUL ) {
+        EExpression.Type t = EExpression.Type.INT;
+        for (EExpression operand: ((EE_NaryOperation) exp).getOperands()) t = numericType(t, typeOf(operand));
+        return t;
+      }
+      return EExpression.Type.STR;
+    }
+    throw new TranslationException("The expression can not be evaluated: " + exp);
+  }
+
+  /**
+   * Returns the type of an arithmetic operation on operands of the provided
+   * types.
+   *
+   * @param t1 The type of an operand.
+   * @param t2 The type of another operand.
+   * @return REAL if one of the operands is real, INT otherwise.
+   */
+  private static EExpression.Type numericType(EExpression.Type t1, EExpression.Type t2) throws TranslationException {
+    if ( (t1 != EExpression.Type.INT && t1 != EExpression.Type.REAL)
+         || (t2 != EExpression.Type.INT && t2 != EExpression.Type.REAL) )
+      throw new TranslationException("Arithmetic on non numerical values of type " + t1 + " and " + t2);
+    return ( t1 == EExpression.Type.REAL || t2 == EExpression.Type.REAL ) ? EExpression.Type.REAL : EExpression.Type.INT;
+  }
+
+  /**
+   * Compiles a comparison of two expressions.
+   *
+   * @param op The SMT2 name of the comparison operator.
+   * @param lhs The left hand side operand.
+   * @param rhs The right hand side operand.
+   * @return The evaluator of the comparison.
+   */
+  private BoolNode compileComparison(final String op, EExpression lhs, EExpression rhs) throws TranslationException {
+    EExpression.Type t1 = typeOf(lhs);
+    EExpression.Type t2 = typeOf(rhs);
+    if ( t1 == EExpression.Type.BOOL || t2 == EExpression.Type.BOOL ) {
+      final BoolNode a = compileBool(lhs);
+      final BoolNode b = compileBool(rhs);
+      if ( op.equals("=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) == b.eval(r); } };
+      if ( op.equals("distinct") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) != b.eval(r); } };
+      throw new TranslationException("Booleans can not be compared with " + op);
+    }
+    if ( t1 == EExpression.Type.STR || t2 == EExpression.Type.STR ) {
+      final StrNode a = compileStr(lhs);
+      final StrNode b = compileStr(rhs);
+      if ( op.equals("=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r).equals(b.eval(r)); } };
+      if ( op.equals("distinct") ) return new BoolNode() { boolean eval(Registers r) { return ! a.eval(r).equals(b.eval(r)); } };
+      final IntNode cmp = new IntNode() { long eval(Registers r) { return a.eval(r).compareTo(b.eval(r)); } };
+      return compileSign(op, cmp);
+    }
+    if ( numericType(t1, t2) == EExpression.Type.REAL ) {
+      final RealNode a = compileReal(lhs);
+      final RealNode b = compileReal(rhs);
+      if ( op.equals("=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) == b.eval(r); } };
+      if ( op.equals("distinct") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) != b.eval(r); } };
+      if ( op.equals("<") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) < b.eval(r); } };
+      if ( op.equals("<=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) <= b.eval(r); } };
+      if ( op.equals(">") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) > b.eval(r); } };
+      if ( op.equals(">=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) >= b.eval(r); } };
+      throw new TranslationException("No evaluator for the comparison " + op);
+    }
+    final IntNode a = compileInt(lhs);
+    final IntNode b = compileInt(rhs);
+    if ( op.equals("=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) == b.eval(r); } };
+    if ( op.equals("distinct") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) != b.eval(r); } };
+    if ( op.equals("<") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) < b.eval(r); } };
+    if ( op.equals("<=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) <= b.eval(r); } };
+    if ( op.equals(">") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) > b.eval(r); } };
+    if ( op.equals(">=") ) return new BoolNode() { boolean eval(Registers r) { return a.eval(r) >= b.eval(r); } };
+    throw new TranslationException("No evaluator for the comparison " + op);
+  }
+
+  /**
+   * Compiles a comparison of the result of a three-way comparison with 0.
+   *
+   * @param op The SMT2 name of the comparison operator.
+   * @param cmp The evaluator of the three-way comparison.
+   * @return The evaluator of the comparison.
+   */
+  private static BoolNode compileSign(String op, final IntNode cmp) throws TranslationException {
+    if ( op.equals("<") ) return new BoolNode() { boolean eval(Registers r) { return cmp.eval(r) < 0; } };
+    if ( op.equals("<=") ) return new BoolNode() { boolean eval(Registers r) { return cmp.eval(r) <= 0; } };
+    if ( op.equals(">") ) return new BoolNode() { boolean eval(Registers r) { return cmp.eval(r) > 0; } };
+    if ( op.equals(">=") ) return new BoolNode() { boolean eval(Registers r) { return cmp.eval(r) >= 0; } };
+    throw new TranslationException("No evaluator for the comparison " + op);
+  }
+
+  /**
+   * Returns the SMT2 name of a comparison operation.
+   *
+   * @param exp A comparison operation.
+   * @return The SMT2 name of its operator.
+   */
+  private static String comparisonOf(EExpression exp) {
+    if ( exp instanceof EE_BinaryOperation.EQ ) return "=";
+    if ( exp instanceof EE_BinaryOperation.NE ) return "distinct";
+    if ( exp instanceof EE_BinaryOperation.LT ) return "<";
+    if ( exp instanceof EE_BinaryOperation.LE ) return "<=";
+    if ( exp instanceof EE_BinaryOperation.GT ) return ">";
+    if ( exp instanceof EE_BinaryOperation.GE ) return ">=";
+    return null;
+  }
+
+  /**
+   * Builds the evaluator of a conjunction.
+   *
+   * @param subs The evaluators of the conjuncts.
+   * @return The evaluator of the conjunction.
+   */
+  private static BoolNode and(final BoolNode[] subs) {
+    return new BoolNode() {
+      boolean eval(Registers r) {
+        for (BoolNode sub: subs) { if ( ! sub.eval(r) ) return false; }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Builds the evaluator of a disjunction.
+   *
+   * @param subs The evaluators of the disjuncts.
+   * @return The evaluator of the disjunction.
+   */
+  private static BoolNode or(final BoolNode[] subs) {
+    return new BoolNode() {
+      boolean eval(Registers r) {
+        for (BoolNode sub: subs) { if ( sub.eval(r) ) return true; }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Compiles a boolean expression.
+   *
+   * @param exp The expression to compile.
+   * @return The evaluator of the expression.
+   */
+  private BoolNode compileBool(EExpression exp) throws TranslationException {
+    if ( typeOf(exp) != EExpression.Type.BOOL ) throw new TranslationException("Not a boolean expression: " + exp);
+    if ( exp instanceof EE_Variable ) {
+      final int reg = getRegister((EE_Variable) exp);
+      return new BoolNode() { boolean eval(Registers r) { return r.ints[reg] != 0; } };
+    }
+    if ( exp instanceof EE_Constant ) {
+      final boolean value = ((Boolean) ((EE_Constant) exp).getValue()).booleanValue();
+      return new BoolNode() { boolean eval(Registers r) { return value; } };
+    }
+    if ( exp instanceof EE_UnaryOperation ) {
+      final BoolNode a = compileBool(((EE_UnaryOperation) exp).getOperand());
+      return new BoolNode() { boolean eval(Registers r) { return ! a.eval(r); } };
+    }
+    if ( exp instanceof EE_BinaryOperation ) {
+      EE_BinaryOperation bin = (EE_BinaryOperation) exp;
+      return compileComparison(comparisonOf(exp), bin.getLeftHandSide(), bin.getRightHandSide());
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      final BoolNode c = compileBool(ite.getOperand1());
+      final BoolNode a = compileBool(ite.getOperand2());
+      final BoolNode b = compileBool(ite.getOperand3());
+      return new BoolNode() { boolean eval(Registers r) { return c.eval(r) ? a.eval(r) : b.eval(r); } };
+    }
+    List<EExpression> operands = ((EE_NaryOperation) exp).getOperands();
+    final BoolNode[] subs = new BoolNode[operands.size()];
+    for (int i = 0; i < subs.length; i++) subs[i] = compileBool(operands.get(i));
+    if ( exp instanceof EE_NaryOperation.AND ) return and(subs);
+    if ( exp instanceof EE_NaryOperation.OR ) return or(subs);
+    return new BoolNode() {
+      boolean eval(Registers r) {
+        boolean res = false;
+        for (BoolNode sub: subs) res ^= sub.eval(r);
+        return res;
+      }
+    };
+  }
+
+  /**
+   * Compiles an integer expression.
+   *
+   * @param exp The expression to compile.
+   * @return The evaluator of the expression.
+   */
+  private IntNode compileInt(EExpression exp) throws TranslationException {
+    if ( typeOf(exp) != EExpression.Type.INT ) throw new TranslationException("Not an integer expression: " + exp);
+    if ( exp instanceof EE_Variable ) {
+      final int reg = getRegister((EE_Variable) exp);
+      return new IntNode() { long eval(Registers r) { return r.ints[reg]; } };
+    }
+    if ( exp instanceof EE_Constant ) {
+      final long value = ((Number) ((EE_Constant) exp).getValue()).longValue();
+      return new IntNode() { long eval(Registers r) { return value; } };
+    }
+    if ( exp instanceof EE_UnaryOperation ) {
+      EExpression operand = ((EE_UnaryOperation) exp).getOperand();
+      if ( exp instanceof EE_UnaryOperation.NEG ) {
+        final IntNode a = compileInt(operand);
+        return new IntNode() { long eval(Registers r) { return negate(a.eval(r)); } };
+      }
+      if ( exp instanceof EE_UnaryOperation.LENGTH ) {
+        final StrNode a = compileStr(operand);
+        return new IntNode() { long eval(Registers r) { return a.eval(r).length(); } };
+      }
+      final RealNode a = compileReal(operand);
+      return new IntNode() { long eval(Registers r) { return Math.round(a.eval(r)); } };
+    }
+    if ( exp instanceof EE_BinaryOperation ) {
+      EE_BinaryOperation bin = (EE_BinaryOperation) exp;
+      if ( exp instanceof EE_BinaryOperation.CMP ) {
+        EExpression.Type t = numericType(typeOf(bin.getLeftHandSide()), typeOf(bin.getRightHandSide()));
+        if ( t == EExpression.Type.REAL ) {
+          final RealNode a = compileReal(bin.getLeftHandSide());
+          final RealNode b = compileReal(bin.getRightHandSide());
+          return new IntNode() { long eval(Registers r) { return Double.compare(a.eval(r), b.eval(r)); } };
+        }
+      }
+      final IntNode a = compileInt(bin.getLeftHandSide());
+      final IntNode b = compileInt(bin.getRightHandSide());
+      if ( exp instanceof EE_BinaryOperation.MINUS ) return new IntNode() { long eval(Registers r) { return subtract(a.eval(r), b.eval(r)); } };
+      if ( exp instanceof EE_BinaryOperation.IDIV ) return new IntNode() { long eval(Registers r) { return euclideanDiv(a.eval(r), b.eval(r)); } };
+      if ( exp instanceof EE_BinaryOperation.MOD ) {
+        return new IntNode() {
+          long eval(Registers r) {
+            long x = a.eval(r);
+            long y = b.eval(r);
+            return x - y * euclideanDiv(x, y);
+          }
+        };
+      }
+      if ( exp instanceof EE_BinaryOperation.CMP ) {
+        return new IntNode() {
+          long eval(Registers r) {
+            long x = a.eval(r);
+            long y = b.eval(r);
+            return (x < y) ? -1 : ((x == y) ? 0 : 1);
+          }
+        };
+      }
+      if ( exp instanceof EE_BinaryOperation.SHIFTL ) return new IntNode() { long eval(Registers r) { return a.eval(r) << b.eval(r); } };
+      if ( exp instanceof EE_BinaryOperation.SHIFTR ) return new IntNode() { long eval(Registers r) { return a.eval(r) >> b.eval(r); } };
+      if ( exp instanceof EE_BinaryOperation.SHIFTUR ) return new IntNode() { long eval(Registers r) { return a.eval(r) >>> b.eval(r); } };
+      throw new TranslationException("No integer evaluator for " + exp);
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      final BoolNode c = compileBool(ite.getOperand1());
+      final IntNode a = compileInt(ite.getOperand2());
+      final IntNode b = compileInt(ite.getOperand3());
+      return new IntNode() { long eval(Registers r) { return c.eval(r) ? a.eval(r) : b.eval(r); } };
+    }
+    List<EExpression> operands = ((EE_NaryOperation) exp).getOperands();
+    final IntNode[] subs = new IntNode[operands.size()];
+    for (int i = 0; i < subs.length; i++) subs[i] = compileInt(operands.get(i));
+    if ( exp instanceof EE_NaryOperation.PLUS ) {
+      return new IntNode() {
+        long eval(Registers r) {
+          long res = 0;
+          for (IntNode sub: subs) res = add(res, sub.eval(r));
+          return res;
+        }
+      };
+    }
+    return new IntNode() {
+      long eval(Registers r) {
+        long res = 1;
+        for (IntNode sub: subs) res = multiply(res, sub.eval(r));
+        return res;
+      }
+    };
+  }
+
+  /**
+   * Compiles a real expression, or an integer expression whose value is
+   * converted into a real.
+   *
+   * @param exp The expression to compile.
+   * @return The evaluator of the expression.
+   */
+  private RealNode compileReal(EExpression exp) throws TranslationException {
+    EExpression.Type type = typeOf(exp);
+    if ( type == EExpression.Type.INT ) {
+      final IntNode a = compileInt(exp);
+      return new RealNode() { double eval(Registers r) { return a.eval(r); } };
+    }
+    if ( type != EExpression.Type.REAL ) throw new TranslationException("Not a numerical expression: " + exp);
+    if ( exp instanceof EE_Variable ) {
+      final int reg = getRegister((EE_Variable) exp);
+      return new RealNode() { double eval(Registers r) { return r.reals[reg]; } };
+    }
+    if ( exp instanceof EE_Constant ) {
+      final double value = ((Number) ((EE_Constant) exp).getValue()).doubleValue();
+      return new RealNode() { double eval(Registers r) { return value; } };
+    }
+    if ( exp instanceof EE_UnaryOperation ) {
+      final RealNode a = compileReal(((EE_UnaryOperation) exp).getOperand());
+      if ( exp instanceof EE_UnaryOperation.NEG ) return new RealNode() { double eval(Registers r) { return - a.eval(r); } };
+      if ( exp instanceof EE_UnaryOperation.COS ) return new RealNode() { double eval(Registers r) { return Math.cos(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.ACOS ) return new RealNode() { double eval(Registers r) { return Math.acos(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.SIN ) return new RealNode() { double eval(Registers r) { return Math.sin(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.ASIN ) return new RealNode() { double eval(Registers r) { return Math.asin(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.TAN ) return new RealNode() { double eval(Registers r) { return Math.tan(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.ATAN ) return new RealNode() { double eval(Registers r) { return Math.atan(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.EXP ) return new RealNode() { double eval(Registers r) { return Math.exp(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.LOG ) return new RealNode() { double eval(Registers r) { return Math.log(a.eval(r)); } };
+      if ( exp instanceof EE_UnaryOperation.SQRT ) return new RealNode() { double eval(Registers r) { return Math.sqrt(a.eval(r)); } };
+      throw new TranslationException("No real evaluator for " + exp);
+    }
+    if ( exp instanceof EE_BinaryOperation ) {
+      final RealNode a = compileReal(((EE_BinaryOperation) exp).getLeftHandSide());
+      final RealNode b = compileReal(((EE_BinaryOperation) exp).getRightHandSide());
+      if ( exp instanceof EE_BinaryOperation.MINUS ) return new RealNode() { double eval(Registers r) { return a.eval(r) - b.eval(r); } };
+      if ( exp instanceof EE_BinaryOperation.ATAN2 ) return new RealNode() { double eval(Registers r) { return Math.atan2(a.eval(r), b.eval(r)); } };
+      if ( exp instanceof EE_BinaryOperation.POW ) return new RealNode() { double eval(Registers r) { return Math.pow(a.eval(r), b.eval(r)); } };
+      if ( exp instanceof EE_BinaryOperation.DIV ) {
+        return new RealNode() {
+          double eval(Registers r) {
+            double y = b.eval(r);
+            if ( y == 0 ) throw new EvaluationException("division by zero");
+            return a.eval(r) / y;
+          }
+        };
+      }
+      throw new TranslationException("No real evaluator for " + exp);
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      final BoolNode c = compileBool(ite.getOperand1());
+      final RealNode a = compileReal(ite.getOperand2());
+      final RealNode b = compileReal(ite.getOperand3());
+      return new RealNode() { double eval(Registers r) { return c.eval(r) ? a.eval(r) : b.eval(r); } };
+    }
+    List<EExpression> operands = ((EE_NaryOperation) exp).getOperands();
+    final RealNode[] subs = new RealNode[operands.size()];
+    for (int i = 0; i < subs.length; i++) subs[i] = compileReal(operands.get(i));
+    if ( exp instanceof EE_NaryOperation.PLUS ) {
+      return new RealNode() {
+        double eval(Registers r) {
+          double res = 0;
+          for (RealNode sub: subs) res += sub.eval(r);
+          return res;
+        }
+      };
+    }
+    return new RealNode() {
+      double eval(Registers r) {
+        double res = 1;
+        for (RealNode sub: subs) res *= sub.eval(r);
+        return res;
+      }
+    };
+  }
+
+  /**
+   * Compiles a string expression.
+   *
+   * @param exp The expression to compile.
+   * @return The evaluator of the expression.
+   */
+  private StrNode compileStr(EExpression exp) throws TranslationException {
+    EExpression.Type type = typeOf(exp);
+    if ( type != EExpression.Type.STR ) throw new TranslationException("Not a string expression: " + exp);
+    if ( exp instanceof EE_Variable ) {
+      final int reg = getRegister((EE_Variable) exp);
+      return new StrNode() { String eval(Registers r) { return r.strs[reg]; } };
+    }
+    if ( exp instanceof EE_Constant ) {
+      final String value = ((EE_Constant) exp).getValue().toString();
+      return new StrNode() { String eval(Registers r) { return value; } };
+    }
+    if ( exp instanceof EE_UnaryOperation ) {
+      EExpression operand = ((EE_UnaryOperation) exp).getOperand();
+      if ( exp instanceof EE_UnaryOperation.VALUE ) return compileValueOf(operand);
+      final StrNode a = compileStr(operand);
+      if ( exp instanceof EE_UnaryOperation.LOWER_CASE ) return new StrNode() { String eval(Registers r) { return a.eval(r).toLowerCase(); } };
+      if ( exp instanceof EE_UnaryOperation.UPPER_CASE ) return new StrNode() { String eval(Registers r) { return a.eval(r).toUpperCase(); } };
+      return new StrNode() { String eval(Registers r) { return a.eval(r).trim(); } };
+    }
+    if ( exp instanceof EE_BinaryOperation ) {
+      final StrNode a = compileStr(((EE_BinaryOperation) exp).getLeftHandSide());
+      final StrNode b = compileStr(((EE_BinaryOperation) exp).getRightHandSide());
+      return new StrNode() { String eval(Registers r) { return a.eval(r) + b.eval(r); } };
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      final BoolNode c = compileBool(ite.getOperand1());
+      final StrNode a = compileStr(ite.getOperand2());
+      final StrNode b = compileStr(ite.getOperand3());
+      return new StrNode() { String eval(Registers r) { return c.eval(r) ? a.eval(r) : b.eval(r); } };
+    }
+
+    List<EExpression> operands = ((EE_NaryOperation) exp).getOperands();
+    if ( exp instanceof EE_NaryOperation.SUBSTRING ) {
+      if ( operands.size() < 2 || operands.size() > 3 ) throw new TranslationException("Wrong number of operands for " + exp);
+      final StrNode s = compileStr(operands.get(0));
+      final IntNode begin = compileInt(operands.get(1));
+      final IntNode end = (operands.size() == 3) ? compileInt(operands.get(2)) : null;
+      return new StrNode() {
+        String eval(Registers r) {
+          String str = s.eval(r);
+          long b = begin.eval(r);
+          long e = (end == null) ? str.length() : end.eval(r);
+          if ( b < 0 || e > str.length() || b > e ) throw new EvaluationException("substring out of bounds");
+          return str.substring((int) b, (int) e);
+        }
+      };
+    }
+    if ( operands.size() != 3 ) throw new TranslationException("Wrong number of operands for " + exp);
+    final StrNode s = compileStr(operands.get(0));
+    final StrNode regex = compileStr(operands.get(1));
+    final StrNode replacement = compileStr(operands.get(2));
+    final boolean all = (exp instanceof EE_NaryOperation.REPLACE_ALL);
+    return new StrNode() {
+      String eval(Registers r) {
+        try {
+          return all ? s.eval(r).replaceAll(regex.eval(r), replacement.eval(r))
+            : s.eval(r).replaceFirst(regex.eval(r), replacement.eval(r));
+        } catch (RuntimeException e) {
+          throw new EvaluationException("invalid replacement: " + e.getMessage());
+        }
+      }
+    };
+  }
+
+  /**
+   * Compiles the conversion of an expression into a string.
+   *
+   * @param exp The expression to convert.
+   * @return The evaluator of the conversion.
+   */
+  private StrNode compileValueOf(EExpression exp) throws TranslationException {
+    switch (typeOf(exp)) {
+    case BOOL:
+      final BoolNode b = compileBool(exp);
+      return new StrNode() { String eval(Registers r) { return String.valueOf(b.eval(r)); } };
+    case INT:
+      final IntNode i = compileInt(exp);
+      return new StrNode() { String eval(Registers r) { return String.valueOf(i.eval(r)); } };
+    case REAL:
+      final RealNode d = compileReal(exp);
+      return new StrNode() { String eval(Registers r) { return String.valueOf(d.eval(r)); } };
+    default:
+      return compileStr(exp);
+    }
+  }
+
+  /**
+   * Integer division as defined by SMT2: the remainder is always
+   * non-negative.
+   *
+   * @param x The dividend.
+   * @param y The divisor.
+   * @return The quotient.
+   */
+  private static long euclideanDiv(long x, long y) {
+    if ( y == 0 ) throw new EvaluationException("division by zero");
+    if ( x == Long.MIN_VALUE && y == -1 ) throw new EvaluationException("integer overflow in " + x + " div " + y);
+    long q = x / y;
+    if ( x - q * y < 0 ) q = (y > 0) ? q - 1 : q + 1;
+    return q;
+  }
+
+  /**
+   * Adds two integers, failing instead of wrapping around.
+   *
+   * @param x The first operand.
+   * @param y The second operand.
+   * @return The sum.
+   */
+  private static long add(long x, long y) {
+    long res = x + y;
+    if ( ((x ^ res) & (y ^ res)) < 0 ) throw new EvaluationException("integer overflow in " + x + " + " + y);
+    return res;
+  }
+
+  /**
+   * Subtracts two integers, failing instead of wrapping around.
+   *
+   * @param x The first operand.
+   * @param y The second operand.
+   * @return The difference.
+   */
+  private static long subtract(long x, long y) {
+    long res = x - y;
+    if ( ((x ^ y) & (x ^ res)) < 0 ) throw new EvaluationException("integer overflow in " + x + " - " + y);
+    return res;
+  }
+
+  /**
+   * Multiplies two integers, failing instead of wrapping around.
+   *
+   * @param x The first operand.
+   * @param y The second operand.
+   * @return The product.
+   */
+  private static long multiply(long x, long y) {
+    long res = x * y;
+    long ax = Math.abs(x);
+    long ay = Math.abs(y);
+    if ( ((ax | ay) >>> 31) != 0 ) {
+      if ( (y != 0 && res / y != x) || (x == Long.MIN_VALUE && y == -1) )
+        throw new EvaluationException("integer overflow in " + x + " * " + y);
+    }
+    return res;
+  }
+
+  /**
+   * Negates an integer, failing instead of wrapping around.
+   *
+   * @param x The operand.
+   * @return The opposite of {@code x}.
+   */
+  private static long negate(long x) {
+    if ( x == Long.MIN_VALUE ) throw new EvaluationException("integer overflow in - " + x);
+    return - x;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -21,6 +21,7 @@
 
 package se.kth.csc.jpf_encover;
 
+import java.math.BigDecimal;
 import java.util.*;
 
 
@@ -49,6 +50,15 @@ class EE_Constant<T> extends EExpression {
     value = v;
   }
 
+  /**
+   * Returns the java instance representing this constant.
+   *
+   * @return The value of this constant.
+   */
+  public T getValue() {
+    return value;
+  }
+
   /**
    * Returns a clone of this constant.
    *
@@ -105,8 +115,12 @@ class EE_Constant<T> extends EExpression {
       double dblVal = ((Double) value).doubleValue();
       if ( enc == EFormula.StrEncoding.SMT2 && dblVal < 0) 
       {
-        res = "(- " + (- dblVal) + ")";
+        res = "(- " + toDecimal(- dblVal) + ")";
       } 
+      else if ( enc == EFormula.StrEncoding.SMT2 )
+      {
+        res = toDecimal(dblVal);
+      }
       else 
       {
         res = value.toString();
@@ -130,6 +144,21 @@ class EE_Constant<T> extends EExpression {
     }
     return res;
   }
+
+  /**
+   * Returns the SMT2 decimal denoting a double: the shortest decimal
+   * identifying the double (as {@link Double#toString(double)}), without
+   * exponent and always with a fractional part.
+   *
+   * @param d The double, which should be finite.
+   * @return The decimal, or the Java representation of {@code d} if it is not
+   *   finite.
+   */
+  static String toDecimal(double d) {
+    if ( Double.isNaN(d) || Double.isInfinite(d) ) return Double.toString(d);
+    String decimal = new BigDecimal(Double.toString(d)).toPlainString();
+    return (decimal.indexOf('.') < 0) ? decimal + ".0" : decimal;
+  }
 }
 
 
@@ -34,7 +34,11 @@ import java.util.*;
 public class EE_Variable extends EExpression implements Comparable<EE_Variable> {
 
   public static enum PseudonymPolicy { NAME, ID, COMBINED; };
-  public static PseudonymPolicy pseudonymPolicy = PseudonymPolicy.NAME;
+  /** Pseudonym policy in use, specific to each thread (solvers may run concurrently) */
+  private static final ThreadLocal<PseudonymPolicy> pseudonymPolicy =
+    new ThreadLocal<PseudonymPolicy>() {
+      protected PseudonymPolicy initialValue() { return PseudonymPolicy.NAME; }
+    };
 
   private static int nbVars = 0;
   private static Map<String,Set<EE_Variable>> name2vars = new HashMap();
@@ -49,7 +53,7 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    * In particular it resets the counter of variables (used to auto-generate
    * ids) and the registers of existing variables.
    */
-  public static void initialize() {
+  public static synchronized void initialize() {
     nbVars = 0;
     name2vars = new HashMap();
     id2var = new HashMap();
@@ -63,10 +67,12 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    */
   public EE_Variable(EExpression.Type t, String name) {
     super(t);
-    this.id = ++nbVars;
     this.name = name;
+    synchronized (EE_Variable.class) {
+      this.id = ++nbVars;
+      this.registerVariable();
+    }
     EExpression.logln("Creating " + this.getDescription());
-    this.registerVariable();
   }
 
   public int compareTo(EE_Variable other) {
@@ -83,18 +89,21 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    */
   public EE_Variable clone(String suffix) 
   {
-    if (variableExists(this.getType(), this.getName() + suffix))
+    synchronized (EE_Variable.class) 
     {
-      for (EE_Variable var : name2vars.get(this.getName() + suffix)) 
+      if (variableExists(this.getType(), this.getName() + suffix))
       {
-        if (var.getType() == this.getType())
+        for (EE_Variable var : name2vars.get(this.getName() + suffix)) 
         {
-          return var;
+          if (var.getType() == this.getType())
+          {
+            return var;
+          }
         }
       }
-    }
     
-    return new EE_Variable(this.getType(), this.getName() + suffix);
+      return new EE_Variable(this.getType(), this.getName() + suffix);
+    }
   }
 
   /**
@@ -130,20 +139,21 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    * never create clashes (two different variables having the same pseudonym),
    * however {@link #PseudonymPolicy.NAME} may create clashes (in particular if
    * the analyzed method calls itself).
+   * The policy is set only for the calling thread.
    *
    * @param policy The policy to use from now on.
    */
   public static void setPseudonymPolicy(PseudonymPolicy policy) {
-    pseudonymPolicy = policy;
+    pseudonymPolicy.set(policy);
   }
 
   /**
-   * Get the policy used for variable pseudonyms.
+   * Get the policy used for variable pseudonyms by the calling thread.
    *
    * @return The policy currently used.
    */
   public static PseudonymPolicy getPseudonymPolicy() {
-    return pseudonymPolicy;
+    return pseudonymPolicy.get();
   }
 
   /**
@@ -192,6 +202,20 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    *   probably already registered.
    */
   public boolean registerVariable() 
+  {
+    synchronized (EE_Variable.class) 
+    {
+      return registerVariable_internals();
+    }
+  }
+
+  /**
+   * Registers this variable in the data structure of existing variables.
+   * The lock on {@code EE_Variable.class} must be held by the caller.
+   *
+   * @return True iff this variable has been added.
+   */
+  private boolean registerVariable_internals() 
   {
     boolean added = false;
     Integer Id = new Integer(getId());
@@ -221,7 +245,7 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    * @param id The id of the existing variable to look for.
    * @return The matching EE_Variable.
    */
-  public static EE_Variable getExistingVariableWithId(int id) {
+  public static synchronized EE_Variable getExistingVariableWithId(int id) {
     return id2var.get(new Integer(id));
   }
 
@@ -231,10 +255,10 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
    * @param name The name of the existing variables to look for.
    * @return The matching EE_Variables.
    */
-  public static Set<EE_Variable> getExistingVariablesWithName(String name) {
+  public static synchronized Set<EE_Variable> getExistingVariablesWithName(String name) {
     Set<EE_Variable> vars;
     if ( name2vars.containsKey(name) ) {
-      vars = name2vars.get(name);
+      vars = new HashSet(name2vars.get(name));
     } else {
       vars = new HashSet();
     }
@@ -249,7 +273,7 @@ public class EE_Variable extends EExpression implements Comparable<EE_Variable>
   * @param name The name of the existing variables to look for.
   * @return Does such variable exists?
   */
-  public static boolean variableExists(EExpression.Type t, String name) 
+  public static synchronized boolean variableExists(EExpression.Type t, String name) 
   {
     boolean result = false;
     if ( name2vars.containsKey(name) ) 
@@ -948,6 +948,15 @@ abstract class EE_NaryOperation extends EE_Operation {
     operands.addAll(args);
   }
 
+  /**
+   * Returns the operands of the N-ary operation.
+   *
+   * @return The unmodifiable list of operands.
+   */
+  public List<EExpression> getOperands() {
+    return Collections.unmodifiableList(operands);
+  }
+
   /**
    * Retrieves the set of variables occurring in this expression. This method
    * should never return a {@code null} value.
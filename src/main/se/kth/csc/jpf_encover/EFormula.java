@@ -132,6 +132,8 @@ abstract class EF_NaryOperation extends EFormula {
   protected String vacuousTruth_MCMAS;
 
   private List<EFormula> subformulas;
+  /** true iff {@link #subformulas} may be shared with other formulas and must be copied before modification */
+  private boolean sharedSubformulas = false;
 
   /**
    * Default empty constructor for extensions of this class.
@@ -184,7 +186,7 @@ abstract class EF_NaryOperation extends EFormula {
    * @return The nary-formula
    */
   public EF_NaryOperation append(EFormula f) {
-    subformulas.add(f);
+    ownSubformulas().add(f);
     return this;
   }
 
@@ -194,10 +196,34 @@ abstract class EF_NaryOperation extends EFormula {
    * @param f The operand to add.
    */
   public EF_NaryOperation prepend(EFormula f) {
-    subformulas.add(0,f);
+    ownSubformulas().add(0,f);
     return this;
   }
 
+  /**
+   * Makes this formula use the provided (possibly immutable and shared) list
+   * of operands. The list is copied before any modification of this formula.
+   *
+   * @param subs The operands.
+   */
+  void setSharedSubFormulas(List<EFormula> subs) {
+    subformulas = subs;
+    sharedSubformulas = true;
+  }
+
+  /**
+   * Returns the list of operands, after copying it if it is shared.
+   *
+   * @return The modifiable list of operands of this formula.
+   */
+  private List<EFormula> ownSubformulas() {
+    if ( sharedSubformulas ) {
+      subformulas = new ArrayList(subformulas);
+      sharedSubformulas = false;
+    }
+    return subformulas;
+  }
+
   /**
    * Retrieves the set of variables occurring in this formula.
    *
@@ -205,24 +231,24 @@ abstract class EF_NaryOperation extends EFormula {
    */
   public Set<EE_Variable> getVariables() {
     Set<EE_Variable> varSet = new HashSet();
-    for (int i = 0; i < subformulas.size(); i++) {
-      varSet.addAll(subformulas.get(i).getVariables());
+    for (EFormula f: subformulas) {
+      varSet.addAll(f.getVariables());
     }
     return varSet;
   }
 
   public int getNbAtomicFormulas() {
     int res = 0;
-    for (int i = 0; i < subformulas.size(); i++) {
-      res += subformulas.get(i).getNbAtomicFormulas();
+    for (EFormula f: subformulas) {
+      res += f.getNbAtomicFormulas();
     }
     return res;
   }
 
   public int getNbInstancesCV() {
     int res = 0;
-    for (int i = 0; i < subformulas.size(); i++) {
-      res += subformulas.get(i).getNbInstancesCV();
+    for (EFormula f: subformulas) {
+      res += f.getNbInstancesCV();
     }
     return res;
   }
@@ -278,9 +304,11 @@ abstract class EF_NaryOperation extends EFormula {
       default:
         res = vacuousTruth_UTF8;
         if (subformulas.size() > 0) {
-          res = subformulas.get(0).toString(enc, opPrcd);
-          for (int i = 1; i < subformulas.size(); i++) {
-            res += " " + opStr_UTF8 + " " + subformulas.get(i).toString(enc, opPrcd);
+          String sep = "";
+          res = "";
+          for (EFormula f: subformulas) {
+            res += sep + f.toString(enc, opPrcd);
+            sep = " " + opStr_UTF8 + " ";
           }
         }
         if ( englobingPrcd <= opPrcd ) res = "(" + res + ")";
@@ -289,8 +317,8 @@ abstract class EF_NaryOperation extends EFormula {
         res = vacuousTruth_SMT2;
         if (subformulas.size() > 0) {
           res = opStr_SMT2;
-          for (int i = 0; i < subformulas.size(); i++) {
-            res += " " + subformulas.get(i).toString(enc, opPrcd);
+          for (EFormula f: subformulas) {
+            res += " " + f.toString(enc, opPrcd);
           }
         }
         res = "(" + res + ")";
@@ -298,9 +326,11 @@ abstract class EF_NaryOperation extends EFormula {
       case MCMAS:
         res = vacuousTruth_MCMAS;
         if (subformulas.size() > 0) {
-          res = subformulas.get(0).toString(enc, opPrcd);
-          for (int i = 1; i < subformulas.size(); i++) {
-            res += " " + opStr_MCMAS + " " + subformulas.get(i).toString(enc, opPrcd);
+          String sep = "";
+          res = "";
+          for (EFormula f: subformulas) {
+            res += sep + f.toString(enc, opPrcd);
+            sep = " " + opStr_MCMAS + " ";
           }
         }
         if ( englobingPrcd <= opPrcd ) res = "(" + res + ")";
@@ -337,6 +367,17 @@ class EF_Conjunction extends EF_NaryOperation {
   EF_Conjunction() {
     super(precedence, opStr_UTF8, opStr_SMT2, opStr_MCMAS, vacuousTruth_UTF8, vacuousTruth_SMT2, vacuousTruth_MCMAS);
   }
+
+  /**
+   * Constructor of conjunctions whose operands are shared with other
+   * formulas (see {@link PersistentFormulaList}).
+   *
+   * @param conjuncts The operands of the conjunction.
+   */
+  EF_Conjunction(PersistentFormulaList conjuncts) {
+    this();
+    setSharedSubFormulas(conjuncts);
+  }
 }
 
 
@@ -405,6 +446,13 @@ class EF_Negation extends EFormula {
     return new EF_Negation(subformula.clone(renaming));
   }
 
+  /**
+   * Returns the formula negated by this formula.
+   *
+   * @return The negated formula.
+   */
+  EFormula getNegatedFormula() { return subformula; }
+
   /**
    * Retrieves the set of variables occurring in this formula.
    *
@@ -537,6 +585,27 @@ class EF_Relation extends EFormula {
     return new EF_Relation(op, lhs.clone(renaming), rhs.clone(renaming));
   }
 
+  /**
+   * Returns the relation operator of this formula.
+   *
+   * @return The relation operator.
+   */
+  Operator getOperator() { return op; }
+
+  /**
+   * Returns the left hand side operand of this relation.
+   *
+   * @return The left hand side operand.
+   */
+  EExpression getLeftHandSide() { return lhs; }
+
+  /**
+   * Returns the right hand side operand of this relation.
+   *
+   * @return The right hand side operand.
+   */
+  EExpression getRightHandSide() { return rhs; }
+
   /**
    * Retrieves the set of variables occurring in this formula.
    *
@@ -631,6 +700,13 @@ class EF_Valuation extends EFormula {
     return new EF_Valuation(exp.clone(renaming));
   }
 
+  /**
+   * Returns the boolean expression underlying this formula.
+   *
+   * @return The underlying expression.
+   */
+  EExpression getExpression() { return exp; }
+
   /**
    * Retrieves the set of variables occuring in this formula.
    *
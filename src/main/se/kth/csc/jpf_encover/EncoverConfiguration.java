@@ -22,6 +22,7 @@
 
 package se.kth.csc.jpf_encover;
 
+import java.io.File;
 import java.util.*;
 import java.util.regex.*;
 
@@ -329,6 +330,19 @@ class EncoverConfiguration {
     return conf.getBoolean("encover.simplify_expressions", false);
   }
 
+  /**
+   * Returns the name of the implementation of the output flow graph. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.ofg.implementation}' one of the value 'jgrapht' (graph
+   * based on JGraphT) or 'compact' (array-backed tree) ('jgrapht' by
+   * default).
+   *
+   * @return The name of the OFG implementation.
+   */
+  static String get_ofgImplementation() {
+    return conf.getString("encover.ofg.implementation", "jgrapht").trim();
+  }
+
   /**
    * Initializes the needed data to generate patterns to detect observables.
    * Mapping for methInfo.getFullName()
@@ -662,6 +676,258 @@ class EncoverConfiguration {
     return conf.getBoolean("encover.use_extended_state_id", true);
   }
 
+  /**
+   * Returns the value of the configuration option regarding incremental use of
+   * the SMT solver. In incremental mode, the constraints common to many
+   * interference formulas (input domains and leaked equalities of the active
+   * policy) are asserted once as background, and each vertex query is checked
+   * in its own solver scope on top of this background. In the configuration
+   * file, this is specified by assigning variable
+   * '{@code encover.solver.incremental}' one of the value 'true' or 'false'.
+   *
+   * @return {@code true} iff the solver should be used incrementally.
+   */
+  static boolean askForIncrementalSolving() {
+    return conf.getBoolean("encover.solver.incremental", false);
+  }
+
+  /**
+   * Returns the number of solver worker processes to use when checking
+   * interference formulas. With more than one worker, the formulas of
+   * different vertices are checked concurrently, each worker relying on its own
+   * solver process. In the configuration file, this is specified by assigning
+   * variable '{@code encover.solver.workers}' a positive integer (1 by
+   * default, meaning sequential checking).
+   *
+   * @return The number of solver workers to use (at least 1).
+   */
+  static int get_nbSolverWorkers() {
+    int nbWorkers = conf.getInt("encover.solver.workers", 1);
+    return (nbWorkers < 1) ? 1 : nbWorkers;
+  }
+
+  /**
+   * Returns the value of the configuration option regarding batch use of the
+   * SMT solver. In batch mode, when the checks of an OFG are independent of
+   * each other (policies are not repaired), all of them are written into a
+   * single SMT2 script answered by one invocation of Z3. In the configuration
+   * file, this is specified by assigning variable
+   * '{@code encover.solver.batch}' one of the value 'true' or 'false'.
+   *
+   * @return {@code true} iff the solver should be used in batch mode.
+   */
+  static boolean askForBatchSolving() {
+    return conf.getBoolean("encover.solver.batch", false);
+  }
+
+  /**
+   * Returns the file into which the SMT2 script generated in batch mode is
+   * saved. In the configuration file, this is specified by assigning variable
+   * '{@code encover.solver.batch_script}' a file name (the script is not saved
+   * by default).
+   *
+   * @return The file of the batch script, or {@code null} if not saved.
+   */
+  static File get_solverBatchScript() {
+    String file = conf.getString("encover.solver.batch_script", "").trim();
+    return file.equals("") ? null : new File(file);
+  }
+
+  /**
+   * Returns the value of the configuration option regarding online
+   * verification. In online mode, the interference checks of the vertices at a
+   * given depth are handed to solver worker threads as soon as no vertex can
+   * be added anymore at this depth, while JPF keeps exploring the program.
+   * This only applies when the checks are independent of each other (policies
+   * are not repaired and the OFG is not simplified). In the configuration
+   * file, this is specified by assigning variable
+   * '{@code encover.solver.online}' one of the value 'true' or 'false'
+   * ('false' by default).
+   *
+   * @return {@code true} iff interference checks should be run during the
+   *   exploration.
+   */
+  static boolean askForOnlineVerification() {
+    return conf.getBoolean("encover.solver.online", false);
+  }
+
+  /**
+   * Returns the maximal number of interference checks waiting for a solver
+   * worker in online mode. JPF is paused when this number is reached, until a
+   * worker takes one of them. In the configuration file, this is specified by
+   * assigning variable '{@code encover.solver.online_queue}' a positive
+   * integer (64 by default).
+   *
+   * @return The capacity of the queue of pending checks (at least 1).
+   */
+  static int get_onlineQueueCapacity() {
+    int capacity = conf.getInt("encover.solver.online_queue", 64);
+    return (capacity < 1) ? 1 : capacity;
+  }
+
+  /**
+   * Returns the value of the configuration option regarding fail-fast
+   * verification. In fail-fast mode, checks are run online (see
+   * {@link #askForOnlineVerification()}) and the exploration is aborted as soon
+   * as one of them is found satisfiable; this check is reported, whether or
+   * not it is the first one in the order of the post-hoc verification. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.fail_fast}' one of the value 'true' or 'false' ('false' by
+   * default).
+   *
+   * @return {@code true} iff the exploration should stop at the first leak
+   *   found.
+   */
+  static boolean askForFailFast() {
+    return conf.getBoolean("encover.fail_fast", false);
+  }
+
+  /**
+   * Returns the way Z3 is run: "process" to talk to Z3 processes through
+   * pipes, or "api" to run Z3 inside the JVM through its Java bindings (the
+   * bindings jar has to be in the class path and the native library in the
+   * library path, otherwise Z3 processes are used). In the configuration
+   * file, this is specified by assigning variable
+   * '{@code encover.solver.backend}' one of the value 'process' or 'api'
+   * ('process' by default).
+   *
+   * @return The name of the solver backend.
+   */
+  static String get_solverBackend() {
+    return conf.getString("encover.solver.backend", "process").trim();
+  }
+
+  /**
+   * Returns the maximal number of assignments of a query decided by
+   * enumerating the input domains instead of calling Z3. In the configuration
+   * file, this is specified by assigning variable
+   * '{@code encover.solver.enumeration_threshold}' a non-negative integer
+   * (10000 by default, 0 to always call Z3).
+   *
+   * @return The maximal number of assignments enumerated for a query.
+   */
+  static long get_solverEnumerationThreshold() {
+    long threshold = conf.getLong("encover.solver.enumeration_threshold", 10000);
+    return (threshold < 0) ? 0 : threshold;
+  }
+
+  /**
+   * Returns the value of the configuration option regarding the interval
+   * analysis run before calling the solvers. It decides cheaply the queries
+   * which are trivially unsatisfiable, or trivially satisfiable, given the
+   * bounds of the input domains and the constants they compare. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.solver.prefilter}' one of the value 'true' or 'false'
+   * ('true' by default).
+   *
+   * @return {@code true} iff queries should be examined by interval analysis
+   *   first.
+   */
+  static boolean askForSolverPrefilter() {
+    return conf.getBoolean("encover.solver.prefilter", true);
+  }
+
+  /**
+   * Returns the value of the configuration option regarding the slicing of
+   * queries. When slicing, the conjuncts of a query are split into
+   * variable-disjoint components checked separately, so that the domain
+   * constraints of variables not involved in the compared path conditions and
+   * outputs are left out of the queries. In the configuration file, this is
+   * specified by assigning variable '{@code encover.solver.slicing}' one of
+   * the value 'true' or 'false' ('true' by default).
+   *
+   * @return {@code true} iff queries should be sliced.
+   */
+  static boolean askForFormulaSlicing() {
+    return conf.getBoolean("encover.solver.slicing", true);
+  }
+
+  /**
+   * Returns the time limit of each satisfiability query, in milliseconds. Z3
+   * gives up on queries exceeding it, which are then reported as
+   * inconclusive; a Z3 process not answering long after this limit is killed
+   * and restarted. In the configuration file, this is specified by assigning
+   * variable '{@code encover.solver.timeout_ms}' a non-negative integer (0 by
+   * default, meaning no limit).
+   *
+   * @return The time limit of solver queries in milliseconds (0 for none).
+   */
+  static long get_solverTimeoutMillis() {
+    long timeout = conf.getLong("encover.solver.timeout_ms", 0);
+    return (timeout < 0) ? 0 : timeout;
+  }
+
+  /**
+   * Returns the names of the Z3 configurations run concurrently on each
+   * satisfiability query, the first definitive answer being kept. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.solver.portfolio}' a comma separated list of
+   * configuration names among {@code default}, {@code seed<N>}, {@code seq},
+   * {@code z3str3} and {@code bv} ({@code default} alone by default, which
+   * disables the portfolio).
+   *
+   * @return The names of the Z3 configurations of the portfolio.
+   */
+  static List<String> get_solverPortfolio() {
+    List<String> portfolio = new ArrayList<String>();
+    for (String name: conf.getString("encover.solver.portfolio", "default").split(",")) {
+      if ( ! name.trim().equals("") ) portfolio.add(name.trim());
+    }
+    return portfolio;
+  }
+
+  /**
+   * Returns the maximal number of solver answers memorized during the
+   * analysis. Queries are memorized under a canonical form where variables are
+   * renamed, and the least recently used answers are forgotten first. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.solver.cache_size}' a non-negative integer (1024 by
+   * default, 0 disabling the cache).
+   *
+   * @return The capacity of the solver cache (0 if disabled).
+   */
+  static int get_solverCacheSize() {
+    int cacheSize = conf.getInt("encover.solver.cache_size", 1024);
+    return (cacheSize < 0) ? 0 : cacheSize;
+  }
+
+  /**
+   * Returns the directory in which satisfiability answers are stored across
+   * analyses. In the configuration file, this is specified by assigning
+   * variable '{@code encover.solver.cache_dir}' a directory path. The
+   * persistent cache is disabled if this variable is not set.
+   *
+   * @return The persistent cache directory, or {@code null} if disabled.
+   */
+  static File get_solverCacheDir() {
+    String dir = conf.getString("encover.solver.cache_dir", "").trim();
+    return dir.equals("") ? null : new File(dir);
+  }
+
+  /**
+   * Returns the maximal size, in MB, of the persistent solver cache. The
+   * oldest entries are evicted first when this size is exceeded. In the
+   * configuration file, this is specified by assigning variable
+   * '{@code encover.solver.cache_max_mb}' a positive integer (64 by default).
+   *
+   * @return The maximal size of the persistent solver cache, in MB.
+   */
+  static long get_solverCacheMaxSizeMB() {
+    return conf.getLong("encover.solver.cache_max_mb", 64);
+  }
+
+  /**
+   * Returns the maximal age, in days, of the entries of the persistent solver
+   * cache. In the configuration file, this is specified by assigning variable
+   * '{@code encover.solver.cache_max_age_days}' a positive integer (30 by
+   * default).
+   *
+   * @return The maximal age of the persistent solver cache entries, in days.
+   */
+  static long get_solverCacheMaxAgeDays() {
+    return conf.getLong("encover.solver.cache_max_age_days", 30);
+  }
+
 }
 
 
@@ -99,6 +99,12 @@ public class EncoverListener extends SymbolicListener {
   private final PrintWriter encoverOut;
   private final EncoverLogger log;
   private final SolverHandler solver;
+  private final SolverSession solverSession;
+  private final boolean incrementalSolving;
+  private final boolean batchSolving;
+  private final int nbSolverWorkers;
+  private final boolean onlineVerification;
+  private final boolean failFast;
 
   private final String testClassName;
   private final String testStartMethodName;
@@ -118,11 +124,25 @@ public class EncoverListener extends SymbolicListener {
   private Map<EE_Variable,List<EE_Constant>> inputDomains;
   private Set<EExpression> leakedInputExpressions = new HashSet<EExpression>();
   private Set<EExpression> harboredInputExpressions = new HashSet<EExpression>();
+  /** Pieces of the self-composition shared by the interference formulas */
+  private SelfCompositionContext selfCompositionContext = null;
+  /** Verifier answering interference checks during the exploration (online mode only) */
+  private OnlineVerifier onlineVerifier = null;
+  /** Deepest level of the OFG whose checks were submitted to the online verifier */
+  private int lastSubmittedLevel = 0;
+  /** Number of checks answered by the online verifier before the end of the exploration */
+  private int nbChecksAnsweredDuringExploration = 0;
+  /** true once the exploration has been aborted in fail-fast mode */
+  private boolean explorationAborted = false;
 
   /** true only during code analysis */
   private boolean isCodeAnalysisRunning = false;
   /** true only during the period between a backtrack and its registration */
   private boolean backtrackPending = false;
+  /** Incremental tracker of the path choices, producing the dynamic state keys */
+  private final PathKeyTracker pathKeyTracker = new PathKeyTracker();
+  /** Translator of path conditions reusing the translations of shared constraints */
+  private final PathConditionTranslator pcTranslator = new PathConditionTranslator();
   /** Graph registering outputs */
   private OutputFlowGraph ofg;
   /** Graph registering JPF events */
@@ -179,7 +199,28 @@ public class EncoverListener extends SymbolicListener {
     EExpression.initialize();
     EE_Variable.initialize();
 
-    solver = new MetaSolverHandler(log);
+    nbSolverWorkers = EncoverConfiguration.get_nbSolverWorkers();
+    int solverCacheSize = EncoverConfiguration.get_solverCacheSize();
+    PersistentSolverCache persistentSolverCache = null;
+    File solverCacheDir = EncoverConfiguration.get_solverCacheDir();
+    if ( solverCacheDir != null ) {
+      try {
+        persistentSolverCache = new PersistentSolverCache(solverCacheDir, EncoverConfiguration.get_solverCacheMaxSizeMB(), EncoverConfiguration.get_solverCacheMaxAgeDays(), log);
+      } catch (IOException e) {
+        log.println("Impossible to open the solver cache directory, it will not be used: " + e);
+      }
+    }
+    SolverHandler metaSolver = new MetaSolverHandler(log, nbSolverWorkers, EncoverConfiguration.get_solverPortfolio(), EncoverConfiguration.get_solverTimeoutMillis(), EncoverConfiguration.get_solverBackend(), EncoverConfiguration.get_solverEnumerationThreshold(), EncoverConfiguration.askForSolverPrefilter());
+    SolverHandler cachedSolver = metaSolver;
+    if ( solverCacheSize > 0 || persistentSolverCache != null )
+      cachedSolver = new CachingSolverHandler(metaSolver, solverCacheSize, persistentSolverCache, log);
+    if ( EncoverConfiguration.askForFormulaSlicing() )
+      solver = new SlicingSolverHandler(cachedSolver, log);
+    else
+      solver = cachedSolver;
+    solverSession = new SolverSession(solver, log);
+    incrementalSolving = EncoverConfiguration.askForIncrementalSolving();
+    batchSolving = EncoverConfiguration.askForBatchSolving();
 
     if (log.DEBUG_MODE) jeg = new JPFEventsGraph(log);
     
@@ -203,6 +244,17 @@ public class EncoverListener extends SymbolicListener {
     attackerMemoryCapacity = EncoverConfiguration.get_AttackerMemoryCapacity();
     inconsistentPolicy = EncoverConfiguration.get_InconsistentPolicyMethod();
 
+    boolean askFor_failFast = EncoverConfiguration.askForFailFast();
+    boolean askFor_onlineVerification = (EncoverConfiguration.askForOnlineVerification() || askFor_failFast)
+      && selectedVerifiers.contains(EncoverConfiguration.Verifier.SMT_COUNTEREXAMPLE_GENERATION);
+    if ( askFor_onlineVerification && ( batchSolving || EncoverConfiguration.askForOfgSimplification()
+                                        || ! (inconsistentPolicy == InconsistentPolicyMethod.REJECT || attackerType == AttackerType.FORGETFUL) ) ) {
+      log.println("Online verification requires independent checks (no batch solving, no OFG simplification, no policy repair); checks will be run after the exploration.");
+      askFor_onlineVerification = false;
+    }
+    onlineVerification = askFor_onlineVerification;
+    failFast = askFor_failFast && onlineVerification;
+
     /////////////////////////////////////////////////////////////////////////////////
     //encoverOutFileName = GENERIC_OUT_FILE_NAME.replaceAll("%s", formattedTestName);
     encoverOutFileName = "output.out";
@@ -448,8 +500,8 @@ public class EncoverListener extends SymbolicListener {
 
     if ( isCodeAnalysisRunning ) {
       if (log.DEBUG_MODE) jeg.advanceToChoice(search);
-      String dynamicChoiceId = JPFHelper.vm2dynamicStateId(search.getVM(), false);
-      ofg.registerBacktrackablePoint(dynamicChoiceId);
+      ofg.registerBacktrackablePoint(getDynamicStateKey(search.getVM(), false), getDynamicStateCheck(search.getVM(), false));
+      abortOnLeak(search);
     }
     
     super.stateAdvanced(search);
@@ -482,7 +534,12 @@ public class EncoverListener extends SymbolicListener {
 
     super.stateBacktracked(search);
 
-    if (isCodeAnalysisRunning) backtrackPending = true;
+    pathKeyTracker.stateBacktracked(search.getVM().getChoiceGenerator());
+
+    if (isCodeAnalysisRunning) {
+      backtrackPending = true;
+      abortOnLeak(search);
+    }
 
     if (log.DEBUG_MODE) log.println();
   }
@@ -642,8 +699,8 @@ public class EncoverListener extends SymbolicListener {
   }
 
   /**
-   * On this event, if a backtrack registration is pending then Encover calls
-   * {@link #doOn_backtraking(JVM)}.
+   * On this event, Encover updates the tracked path choices and, if a
+   * backtrack registration is pending, calls {@link #doOn_backtraking(JVM)}.
    * For information about when this method is triggered, see
    * {@link gov.nasa.jpf.jvm.VMListener#choiceGeneratorAdvanced(JVM) VMListener}
    * documentation.
@@ -656,6 +713,7 @@ public class EncoverListener extends SymbolicListener {
                          + JPFHelper.vm2dynamicStateId(vm, false)
                          + ".");
 
+    pathKeyTracker.choiceGeneratorAdvanced(vm.getLastChoiceGenerator(), isCodeAnalysisRunning ? ofg.getCurrentDepth() : 0);
     if ( backtrackPending ) { doOn_backtraking(vm); backtrackPending = false; }
     /* DO NOT INVERSE THE ORDER OF THOSE TWO */
     if (log.DEBUG_MODE && jeg != null ) jeg.advanceToEvent(vm, JEG_Vertex.Type.OTHER, "CG_Advanced");
@@ -666,8 +724,8 @@ public class EncoverListener extends SymbolicListener {
   }
 
   /**
-   * On this event, if a backtrack registration is pending then Encover calls
-   * {@link #doOn_backtraking(JVM)}.
+   * On this event, Encover updates the tracked path choices and, if a
+   * backtrack registration is pending, calls {@link #doOn_backtraking(JVM)}.
    * For information about when this method is triggered, see
    * {@link gov.nasa.jpf.jvm.VMListener#choiceGeneratorProcessed(JVM) VMListener}
    * documentation.
@@ -680,6 +738,7 @@ public class EncoverListener extends SymbolicListener {
                          + JPFHelper.vm2dynamicStateId(vm, false)
                          + ".");
 
+    pathKeyTracker.choiceGeneratorProcessed(vm.getLastChoiceGenerator());
     if ( backtrackPending ) { doOn_backtraking(vm); backtrackPending = false; }
     /* DO NOT INVERSE THE ORDER OF THOSE TWO */
     if (log.DEBUG_MODE && jeg != null ) jeg.advanceToEvent(vm, JEG_Vertex.Type.OTHER, "CG_Processed");
@@ -690,6 +749,206 @@ public class EncoverListener extends SymbolicListener {
   }
 
 
+  /**************************************************************************/
+  /** SMT-BASED VERIFICATION HELPERS **/
+  /**************************************************************************/
+
+  /**
+   * Prints a satisfying assignment of an interference formula in the output
+   * file, one variable per line.
+   *
+   * @param satisfyingAssignment The assignment to print.
+   */
+  private void printSatisfyingAssignment(SortedMap<EE_Variable,EE_Constant> satisfyingAssignment) {
+    Iterator<Map.Entry<EE_Variable,EE_Constant>> satAssignIte = satisfyingAssignment.entrySet().iterator();
+    while ( satAssignIte.hasNext() ) 
+    {
+      Map.Entry<EE_Variable,EE_Constant> entry = satAssignIte.next();
+      EE_Variable var = entry.getKey();
+      EE_Constant val = entry.getValue();
+      encoverOut.println("  " + var + " -> " + val);
+    }
+    encoverOut.println("");
+  }
+
+  /**
+   * Reports in the output file a check whose verdict is unknown.
+   *
+   * @param kind The kind of check.
+   * @param vertex The vertex whose policy or security was checked.
+   * @param reason Why the solver could not decide.
+   */
+  private void reportInconclusiveCheck(InterferenceCheck.Kind kind, OFG_Vertex vertex, String reason) {
+    encoverOut.print("SMT-BASED VERIFICATION: ");
+    if ( kind == InterferenceCheck.Kind.POLICY_CONSISTENCY )
+      encoverOut.println("Policy consistency check at node >> " + vertex + " << was inconclusive (" + reason + ")");
+    else
+      encoverOut.println("Security check at node >> " + vertex + " << was inconclusive (" + reason + ")");
+    encoverOut.println("");
+  }
+
+  /**
+   * Retrieves the self-composition context of the current input domains,
+   * creating a new one if those domains changed.
+   *
+   * @return The self-composition context of the analysis.
+   */
+  private SelfCompositionContext getSelfCompositionContext() {
+    if ( selfCompositionContext == null || selfCompositionContext.getDomains() != inputDomains )
+      selfCompositionContext = new SelfCompositionContext(inputDomains);
+    return selfCompositionContext;
+  }
+
+  /**
+   * Generates the interference check of a vertex.
+   *
+   * @param kind The kind of check to generate.
+   * @param vertex The vertex whose policy or security is checked.
+   * @param checkedVertex The vertex at which the interference formula is
+   *   generated.
+   * @return The interference check, using the current leaked and harbored
+   *   input expressions.
+   */
+  private InterferenceCheck generateInterferenceCheck(InterferenceCheck.Kind kind, OFG_Vertex vertex, OFG_Vertex checkedVertex) {
+    time_interfFmlGeneration_start = System.nanoTime();
+    EFormula backgroundFormula = null;
+    if ( incrementalSolving )
+      backgroundFormula = getSelfCompositionContext().getBackgroundFormula(leakedInputExpressions);
+    EFormula interferenceFormula = OFG_Handler.generateInterferenceFormula(ofg, checkedVertex, getSelfCompositionContext(), leakedInputExpressions, harboredInputExpressions, attackerType, attackerMemoryCapacity, ! incrementalSolving);
+    time_interfFmlGeneration_end = System.nanoTime();
+    time_interfFmlGeneration_intermediate += (time_interfFmlGeneration_end - time_interfFmlGeneration_start);
+    return new InterferenceCheck(kind, vertex, checkedVertex, backgroundFormula, interferenceFormula);
+  }
+
+  /**
+   * Iterator over the interference checks of the SMT-based verification, in
+   * the order in which the sequential verification performs them: vertices are
+   * visited in depth-first order, and the policy consistency checks of a vertex
+   * come before its security check. This order is only meaningful when
+   * inconsistent policies are rejected (or not checked at all). Interference
+   * formulas are generated lazily, when the iterator reaches their vertex.
+   */
+  private class InterferenceCheckIterator implements Iterator<InterferenceCheck> {
+
+    private final Iterator<OFG_Vertex> vertexIte = ofg.depthFirstTaversal().iterator();
+    private final LinkedList<InterferenceCheck> pendingChecks = new LinkedList<InterferenceCheck>();
+
+    /**
+     * Test if there are remaining checks.
+     *
+     * @return True iff there is at least one more check.
+     */
+    public boolean hasNext() {
+      while ( pendingChecks.isEmpty() && vertexIte.hasNext() ) {
+        generateChecksOf(vertexIte.next(), pendingChecks);
+      }
+      return ! pendingChecks.isEmpty();
+    }
+
+    /**
+     * Returns the next check.
+     *
+     * @return The next check.
+     */
+    public InterferenceCheck next() {
+      if ( ! hasNext() ) throw new NoSuchElementException();
+      return pendingChecks.removeFirst();
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+  /**
+   * Generates the checks of the provided vertex, and updates the current
+   * leaked and harbored input expressions to the policy of this vertex.
+   * The policy consistency checks of the vertex come before its security
+   * check.
+   *
+   * @param vertex The vertex whose checks are generated.
+   * @param checks The list to which the generated checks are appended.
+   */
+  private void generateChecksOf(OFG_Vertex vertex, List<InterferenceCheck> checks) {
+    harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
+    leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
+
+    if ( attackerType != AttackerType.FORGETFUL && vertex.getPolicyChanged() ) {
+      Iterator<OFG_Vertex> verteciesPreIter = ofg.getPredecessorsOf(vertex).iterator();
+      while ( verteciesPreIter.hasNext() ) {
+        checks.add(generateInterferenceCheck(InterferenceCheck.Kind.POLICY_CONSISTENCY, vertex, verteciesPreIter.next()));
+      }
+    }
+    checks.add(generateInterferenceCheck(InterferenceCheck.Kind.SECURITY, vertex, vertex));
+  }
+
+  /**
+   * Returns the depth up to which the levels of the OFG are complete: no
+   * vertex can be added anymore at those depths during the rest of the
+   * exploration. New vertices can only be added below the current position,
+   * or below the position at which a choice generator of the current path
+   * having remaining choices was set. The latter is maintained incrementally
+   * by {@link #pathKeyTracker}.
+   *
+   * @return The depth of the deepest complete level.
+   */
+  private int getCompleteDepth() {
+    return Math.min(ofg.getCurrentDepth(), pathKeyTracker.getOpenMark());
+  }
+
+  /**
+   * Test if a leak has been found by the online verifier in fail-fast mode.
+   *
+   * @return True iff the exploration should be aborted.
+   */
+  private boolean leakFound() {
+    return failFast && onlineVerifier != null && onlineVerifier.getFirstFoundSatisfiable() != null;
+  }
+
+  /**
+   * Terminates the search if a leak has been found in fail-fast mode.
+   *
+   * @param search Instance of the search process
+   */
+  private void abortOnLeak(Search search) {
+    if ( ! explorationAborted && leakFound() ) {
+      log.println("Leak found by " + onlineVerifier.getFirstFoundSatisfiable() + ", aborting the exploration.");
+      explorationAborted = true;
+      search.terminate();
+    }
+  }
+
+  /**
+   * Generates the interference checks of the vertices of the complete levels
+   * of the OFG which have not been handled yet, and submits them to the
+   * online verifier.
+   *
+   * @param completeDepth The depth of the deepest complete level.
+   */
+  private void submitCompleteLevels(int completeDepth) {
+    if ( completeDepth <= lastSubmittedLevel || leakFound() ) return;
+    List<InterferenceCheck> checks = new ArrayList<InterferenceCheck>();
+    while ( lastSubmittedLevel < completeDepth ) {
+      List<OFG_Vertex> level = new ArrayList<OFG_Vertex>(ofg.getVerticesAtDepth(lastSubmittedLevel + 1));
+      if ( level.isEmpty() ) break;
+      // The variables of the previous levels are already unified.
+      this.unifyVariables(getVariablesIntroducedBy(level));
+      Iterator<OFG_Vertex> vertexIte = level.iterator();
+      while ( vertexIte.hasNext() && ! leakFound() ) {
+        checks.clear();
+        generateChecksOf(vertexIte.next(), checks);
+        Iterator<InterferenceCheck> checkIte = checks.iterator();
+        while ( checkIte.hasNext() ) onlineVerifier.submit(checkIte.next());
+      }
+      lastSubmittedLevel++;
+    }
+  }
+
+
   /**************************************************************************/
   /** PUBLICATION RELATED NOTIFICATIONS **/
   /**************************************************************************/
@@ -726,6 +985,7 @@ public class EncoverListener extends SymbolicListener {
 
     /** OUTPUT AND/OR VERIFY (SIMPLIFIED) INTERFERENCE FORMULA **/
     EFormula interferenceFormula = null;
+    EFormula backgroundFormula = null;
     boolean askFor_itfFml = selectedOutputs.contains(EncoverConfiguration.Output.INTFERENCE_FML);
     boolean askFor_sitfFml = selectedOutputs.contains(EncoverConfiguration.Output.SIMPLIFIED_INTFERENCE_FML);
     boolean askFor_smtSolving = selectedVerifiers.contains(EncoverConfiguration.Verifier.SMT_COUNTEREXAMPLE_GENERATION);
@@ -739,6 +999,7 @@ public class EncoverListener extends SymbolicListener {
       {
         time_consistentPolicyGeneration_start = System.nanoTime();
         //System.out.println("\n\n---> Preprocess: Determining Leaking Path Conditions <---");
+        solverSession.open();
         Iterator<OFG_Vertex> iterPre = ofg.depthFirstTaversal().iterator();
         while (iterPre.hasNext()) 
         { 
@@ -753,145 +1014,228 @@ public class EncoverListener extends SymbolicListener {
 
       boolean isSecure = true;
       boolean consistentPolicy = true;
-      Iterator<OFG_Vertex> iter = ofg.depthFirstTaversal().iterator();
-      while (iter.hasNext()) 
-      { 
-        OFG_Vertex vertex = iter.next();
-
-        harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
-        leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
+      int nbInconclusiveChecks = 0;
+      if ( onlineVerifier != null || ((batchSolving || nbSolverWorkers > 1) && (inconsistentPolicy == InconsistentPolicyMethod.REJECT || attackerType == AttackerType.FORGETFUL)) )
+      {
+        ////////////////////////////////////////////////////////////
+        ///////////////// Parallel independent checks /////////////
+        ////////////////////////////////////////////////////////////
+        // Policies are never repaired, so every check is independent of the
+        // results of the previous ones. They are checked concurrently (or
+        // all at once in a single script), and the first satisfiable one in
+        // depth-first order is reported.
+        solverSession.open();
+        InterferenceCheck firstSatisfiable = null;
+        List<InterferenceCheck> inconclusiveChecks = null;
+        // Appended to the verdict when the fail-fast mode cut the analysis short
+        String failFastNote = "";
+        long generationTimeBefore = time_interfFmlGeneration_intermediate;
+        time_interfFmlSatisfaction_start = System.nanoTime();
+        if ( leakFound() )
+        {
+          onlineVerifier.finish();
+          firstSatisfiable = onlineVerifier.getFirstFoundSatisfiable();
+          inconclusiveChecks = Collections.emptyList();
+          if ( explorationAborted )
+            failFastNote = " (exploration aborted at the first leak found, fail-fast mode)";
+          else
+            failFastNote = " (verification stopped at the first leak found, fail-fast mode)";
+        }
+        else if ( onlineVerifier != null )
+        {
+          // The checks were generated and submitted during the exploration,
+          // only the remaining ones are waited for.
+          List<OFG_Vertex> vertices = ofg.depthFirstTaversal();
+          firstSatisfiable = onlineVerifier.findFirstSatisfiable(vertices);
+          inconclusiveChecks = onlineVerifier.getInconclusiveChecks();
+          if ( firstSatisfiable == null && ! vertices.isEmpty() )
+          {
+            OFG_Vertex lastVertex = vertices.get(vertices.size() - 1);
+            harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(lastVertex.getPolicy(), pseudo2Var);
+            leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(lastVertex.getPolicy(), pseudo2Var);
+          }
+        }
+        else if ( batchSolving )
+        {
+          List<String> portfolio = EncoverConfiguration.get_solverPortfolio();
+          Z3_Configuration batchConfiguration = portfolio.isEmpty() ? Z3_Configuration.DEFAULT : Z3_Configuration.get(portfolio.get(0));
+          batchConfiguration = batchConfiguration.withTimeout(EncoverConfiguration.get_solverTimeoutMillis());
+          Z3_BatchVerifier verifier = new Z3_BatchVerifier(batchConfiguration, EncoverConfiguration.get_solverBatchScript(), log);
+          firstSatisfiable = verifier.findFirstSatisfiable(new InterferenceCheckIterator());
+          inconclusiveChecks = verifier.getInconclusiveChecks();
+        }
+        else
+        {
+          ParallelVerifier verifier = new ParallelVerifier(solverSession, nbSolverWorkers, log);
+          firstSatisfiable = verifier.findFirstSatisfiable(new InterferenceCheckIterator());
+          inconclusiveChecks = verifier.getInconclusiveChecks();
+          verifier.shutdown();
+        }
+        time_interfFmlSatisfaction_end = System.nanoTime();
+        time_interfFmlSatisfaction_intermediate += (time_interfFmlSatisfaction_end - time_interfFmlSatisfaction_start) - (time_interfFmlGeneration_intermediate - generationTimeBefore);
 
+        Iterator<InterferenceCheck> inconclusiveIte = inconclusiveChecks.iterator();
+        while ( inconclusiveIte.hasNext() )
+        {
+          InterferenceCheck check = inconclusiveIte.next();
+          nbInconclusiveChecks++;
+          reportInconclusiveCheck(check.getKind(), check.getVertex(), check.getResult().getReason());
+        }
 
-        if (attackerType != AttackerType.FORGETFUL)
+        if ( firstSatisfiable != null )
         {
-          if (vertex.getPolicyChanged())
+          OFG_Vertex vertex = firstSatisfiable.getVertex();
+          harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
+          leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
+
+          encoverOut.print("SMT-BASED VERIFICATION: ");
+          if ( firstSatisfiable.getKind() == InterferenceCheck.Kind.POLICY_CONSISTENCY )
           {
-            ////////////////////////////////////////////////////////////
-            ///////////////// Policy consistency check /////////////////
-            ////////////////////////////////////////////////////////////
-            Iterator<OFG_Vertex> verteciesPreIter = ofg.getPredecessorsOf(vertex).iterator();
+            consistentPolicy = false;
+            encoverOut.println("Policy update at node >> " + vertex + " << was inconsistent" + failFastNote);
+          }
+          else
+          {
+            isSecure = false;
+            encoverOut.println("The program is insecure." + failFastNote);
+          }
+          printSatisfyingAssignment(firstSatisfiable.getSatisfyingAssignment());
+        }
+      }
+      else
+      {
+        Iterator<OFG_Vertex> iter = ofg.depthFirstTaversal().iterator();
+        while (iter.hasNext()) 
+        { 
+          OFG_Vertex vertex = iter.next();
+
+          harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
+          leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
+
 
-            while (verteciesPreIter.hasNext())
+          if (attackerType != AttackerType.FORGETFUL)
+          {
+            if (vertex.getPolicyChanged())
             {
-              OFG_Vertex vertexPre = verteciesPreIter.next();
-              time_interfFmlGeneration_start = System.nanoTime();
-              interferenceFormula = OFG_Handler.generateInterferenceFormula(ofg, vertexPre, inputDomains, leakedInputExpressions, harboredInputExpressions, attackerType, attackerMemoryCapacity);
-              time_interfFmlGeneration_end = System.nanoTime();
-              time_interfFmlGeneration_intermediate += (time_interfFmlGeneration_end - time_interfFmlGeneration_start);
-              //System.out.println("Policy consistency check before node: " + vertex + ":\n   Interference Formula => " + interferenceFormula);
-              
-              try 
+              ////////////////////////////////////////////////////////////
+              ///////////////// Policy consistency check /////////////////
+              ////////////////////////////////////////////////////////////
+              Iterator<OFG_Vertex> verteciesPreIter = ofg.getPredecessorsOf(vertex).iterator();
+
+              while (verteciesPreIter.hasNext())
               {
-                /** START INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
-                boolean wasStarted = solver.isStarted();
-                if ( ! wasStarted ) solver.start();
-
-                time_interfFmlSatisfaction_start = System.nanoTime();
-                SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = solver.checkSatisfiability(interferenceFormula);
-                time_interfFmlSatisfaction_end = System.nanoTime();
-                time_interfFmlSatisfaction_intermediate += (time_interfFmlSatisfaction_end - time_interfFmlSatisfaction_start);
-                
-                if ( ! wasStarted ) solver.stop();
-                /** END INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
-
-                if ( satisfyingAssignment != null ) 
+                OFG_Vertex vertexPre = verteciesPreIter.next();
+                time_interfFmlGeneration_start = System.nanoTime();
+                if ( incrementalSolving )
+                  backgroundFormula = getSelfCompositionContext().getBackgroundFormula(leakedInputExpressions);
+                interferenceFormula = OFG_Handler.generateInterferenceFormula(ofg, vertexPre, getSelfCompositionContext(), leakedInputExpressions, harboredInputExpressions, attackerType, attackerMemoryCapacity, ! incrementalSolving);
+                time_interfFmlGeneration_end = System.nanoTime();
+                time_interfFmlGeneration_intermediate += (time_interfFmlGeneration_end - time_interfFmlGeneration_start);
+                //System.out.println("Policy consistency check before node: " + vertex + ":\n   Interference Formula => " + interferenceFormula);
+              
+                try 
                 {
-                  if (inconsistentPolicy == InconsistentPolicyMethod.REJECT)
+                  /** START INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
+                  time_interfFmlSatisfaction_start = System.nanoTime();
+                  SolverResult result = solverSession.solve(backgroundFormula, interferenceFormula);
+                  time_interfFmlSatisfaction_end = System.nanoTime();
+                  time_interfFmlSatisfaction_intermediate += (time_interfFmlSatisfaction_end - time_interfFmlSatisfaction_start);
+                  /** END INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
+
+                  if ( result.isUnknown() )
                   {
-                    consistentPolicy = false;
-                    encoverOut.print("SMT-BASED VERIFICATION: ");
-                    encoverOut.println("Policy update at node >> " + vertex + " << was inconsistent");
-                    Iterator<Map.Entry<EE_Variable,EE_Constant>> satAssignIte = satisfyingAssignment.entrySet().iterator();
-                    while ( satAssignIte.hasNext() ) 
-                    {
-                      Map.Entry<EE_Variable,EE_Constant> entry = satAssignIte.next();
-                      EE_Variable var = entry.getKey();
-                      EE_Constant val = entry.getValue();
-                      encoverOut.println("  " + var + " -> " + val);
-                    }
-                    encoverOut.println("");
-                    break;
+                    nbInconclusiveChecks++;
+                    reportInconclusiveCheck(InterferenceCheck.Kind.POLICY_CONSISTENCY, vertex, result.getReason());
                   }
-                  else
+                  SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = result.getModel();
+
+                  if ( satisfyingAssignment != null ) 
                   {
-                    time_consistentPolicyGeneration_start = System.nanoTime();
+                    if (inconsistentPolicy == InconsistentPolicyMethod.REJECT)
+                    {
+                      consistentPolicy = false;
+                      encoverOut.print("SMT-BASED VERIFICATION: ");
+                      encoverOut.println("Policy update at node >> " + vertex + " << was inconsistent");
+                      printSatisfyingAssignment(satisfyingAssignment);
+                      break;
+                    }
+                    else
+                    {
+                      time_consistentPolicyGeneration_start = System.nanoTime();
 
-                    //System.out.println("Policy update before node >> " + vertex + " << was inconsistent");
-                    //System.out.println("    ---> Generating New Consistent Policy <---");
-                    OFG_Handler.consistentPolicyGeneration(ofg, vertex);
+                      //System.out.println("Policy update before node >> " + vertex + " << was inconsistent");
+                      //System.out.println("    ---> Generating New Consistent Policy <---");
+                      OFG_Handler.consistentPolicyGeneration(ofg, vertex);
 
-                    harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
-                    leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
+                      harboredInputExpressions = EncoverConfiguration.get_harboredInputExpressions(vertex.getPolicy(), pseudo2Var);
+                      leakedInputExpressions = EncoverConfiguration.get_leakedInputExpressions(vertex.getPolicy(), pseudo2Var);
 
-                    time_consistentPolicyGeneration_end = System.nanoTime();
-                    time_consistentPolicyGeneration_intermediate += (time_consistentPolicyGeneration_end - time_consistentPolicyGeneration_start);
+                      time_consistentPolicyGeneration_end = System.nanoTime();
+                      time_consistentPolicyGeneration_intermediate += (time_consistentPolicyGeneration_end - time_consistentPolicyGeneration_start);
 
+                    }
                   }
+                } 
+                catch (Error e) 
+                {
+                  log.println("Impossible to check satisfiability of interference formula: " + e.getMessage());
                 }
-              } 
-              catch (Error e) 
-              {
-                log.println("Impossible to check satisfiability of interference formula: " + e.getMessage());
               }
             }
           }
-        }
 
-        if (consistentPolicy)
-        {
-          //////////////////////////////////////////////////
-          ///////////////// Security check /////////////////
-          //////////////////////////////////////////////////
-          time_interfFmlGeneration_start = System.nanoTime();
-          interferenceFormula = OFG_Handler.generateInterferenceFormula(ofg, vertex, inputDomains, leakedInputExpressions, harboredInputExpressions, attackerType, attackerMemoryCapacity);
-          time_interfFmlGeneration_end = System.nanoTime();
-          time_interfFmlGeneration_intermediate += (time_interfFmlGeneration_end - time_interfFmlGeneration_start);
+          if (consistentPolicy)
+          {
+            //////////////////////////////////////////////////
+            ///////////////// Security check /////////////////
+            //////////////////////////////////////////////////
+            time_interfFmlGeneration_start = System.nanoTime();
+            if ( incrementalSolving )
+              backgroundFormula = getSelfCompositionContext().getBackgroundFormula(leakedInputExpressions);
+            interferenceFormula = OFG_Handler.generateInterferenceFormula(ofg, vertex, getSelfCompositionContext(), leakedInputExpressions, harboredInputExpressions, attackerType, attackerMemoryCapacity, ! incrementalSolving);
+            time_interfFmlGeneration_end = System.nanoTime();
+            time_interfFmlGeneration_intermediate += (time_interfFmlGeneration_end - time_interfFmlGeneration_start);
         
         
-          //System.out.print("Security check at Node " + vertex + ":\n    Interference Formula => " + interferenceFormula);
+            //System.out.print("Security check at Node " + vertex + ":\n    Interference Formula => " + interferenceFormula);
 
-          /** START INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
-          boolean wasStarted = solver.isStarted();
-          if ( ! wasStarted ) solver.start();
+            /** START INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
+            try 
+            {
+              time_interfFmlSatisfaction_start = System.nanoTime();
+              SolverResult result = solverSession.solve(backgroundFormula, interferenceFormula);
+              time_interfFmlSatisfaction_end = System.nanoTime();
+              time_interfFmlSatisfaction_intermediate += (time_interfFmlSatisfaction_end - time_interfFmlSatisfaction_start);
 
-          try 
-          {
-            time_interfFmlSatisfaction_start = System.nanoTime();
-            SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = solver.checkSatisfiability(interferenceFormula);
-            time_interfFmlSatisfaction_end = System.nanoTime();
-            time_interfFmlSatisfaction_intermediate += (time_interfFmlSatisfaction_end - time_interfFmlSatisfaction_start);
+              if ( result.isUnknown() )
+              {
+                nbInconclusiveChecks++;
+                reportInconclusiveCheck(InterferenceCheck.Kind.SECURITY, vertex, result.getReason());
+              }
+              SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = result.getModel();
 
-            if ( satisfyingAssignment != null ) 
-            {
-              isSecure = false;
-              encoverOut.print("SMT-BASED VERIFICATION: ");
-              encoverOut.println("The program is insecure.");
-              Iterator<Map.Entry<EE_Variable,EE_Constant>> satAssignIte = satisfyingAssignment.entrySet().iterator();
-              while ( satAssignIte.hasNext() ) 
+              if ( satisfyingAssignment != null ) 
               {
-                Map.Entry<EE_Variable,EE_Constant> entry = satAssignIte.next();
-                EE_Variable var = entry.getKey();
-                EE_Constant val = entry.getValue();
-                encoverOut.println("  " + var + " -> " + val);
+                isSecure = false;
+                encoverOut.print("SMT-BASED VERIFICATION: ");
+                encoverOut.println("The program is insecure.");
+                printSatisfyingAssignment(satisfyingAssignment);
+                break;
               }
-              encoverOut.println("");
-              break;
+            } 
+            catch (Error e) 
+            {
+              //System.out.println(e.getMessage());
+              log.println("Impossible to check satisfiability of interference formula: " + e.getMessage());
             }
-          } 
-          catch (Error e) 
+
+            //System.out.println("\n-----------------------------------------------\n");
+            /** END INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
+          }
+          else // policy was inconsistent
           {
-            //System.out.println(e.getMessage());
-            log.println("Impossible to check satisfiability of interference formula: " + e.getMessage());
+            break;
           }
-
-          //System.out.println("\n-----------------------------------------------\n");
-
-          if ( ! wasStarted ) solver.stop();
-          /** END INTERFERENCE FORMULA SATISFIABILITY CHECKING **/
-        }
-        else // policy was inconsistent
-        {
-          break;
         }
       }
 
@@ -902,7 +1246,10 @@ public class EncoverListener extends SymbolicListener {
       if ( consistentPolicy && isSecure ) 
       {
         encoverOut.print("SMT-BASED VERIFICATION: ");
-        encoverOut.println("The program is secure.");
+        if ( nbInconclusiveChecks == 0 )
+          encoverOut.println("The program is secure.");
+        else
+          encoverOut.println("No insecurity found, but " + nbInconclusiveChecks + " check(s) were inconclusive.");
         encoverOut.println("");
       }
     }
@@ -943,6 +1290,8 @@ public class EncoverListener extends SymbolicListener {
       }
     }
 
+    solverSession.close();
+
     time_overall_end = System.nanoTime();
 
     /** OUTPUT TIMINGS **/
@@ -981,6 +1330,8 @@ public class EncoverListener extends SymbolicListener {
         encoverOut.println("  interference formula satisfaction: " + elapsedTimeStr_interfFmlSatisfaction + " ms (" + elapsedTime_interfFmlSatisfaction + ")");
       if ( elapsedTime_consistentPolicyGeneration != 0 )
         encoverOut.println("  consistent policy generation: " + elapsedTimeStr_consistentPolicyGeneration + " ms (" + elapsedTime_consistentPolicyGeneration + ")");
+      if ( solverSession.getNbProcessSpawns() != 0 )
+        encoverOut.println("  solver process spawns: " + solverSession.getNbProcessSpawns());
       
       if ( elapsedTime_mcmasModelGeneration != 0 )
         encoverOut.println("  MCMAS model generation: " + elapsedTimeStr_mcmasModelGeneration + " ms (" + elapsedTime_mcmasModelGeneration + ")");
@@ -998,6 +1349,26 @@ public class EncoverListener extends SymbolicListener {
       encoverOut.println("  depth of OFG: " + ofg.getDepth());
       encoverOut.println("  width of OFG: " + ofg.getWidth());
       encoverOut.println("");
+      encoverOut.println("PATH CONDITIONS:");
+      encoverOut.println("  constraints translated: " + pcTranslator.getNbTranslatedConstraints());
+      encoverOut.println("  constraints reused: " + pcTranslator.getNbReusedConstraints());
+      encoverOut.println("");
+      if ( onlineVerifier != null ) {
+        encoverOut.println("ONLINE VERIFICATION:");
+        encoverOut.println("  checks submitted: " + onlineVerifier.getNbSubmittedChecks());
+        encoverOut.println("  checks answered during exploration: " + nbChecksAnsweredDuringExploration);
+        encoverOut.println("");
+      }
+      Map<String,Long> solverStats = solverSession.getStatistics();
+      if ( ! solverStats.isEmpty() ) {
+        encoverOut.println("SOLVER STATISTICS:");
+        Iterator<Map.Entry<String,Long>> statIte = solverStats.entrySet().iterator();
+        while ( statIte.hasNext() ) {
+          Map.Entry<String,Long> stat = statIte.next();
+          encoverOut.println("  " + stat.getKey() + ": " + stat.getValue());
+        }
+        encoverOut.println("");
+      }
     }
 
     encoverOut.close();
@@ -1018,6 +1389,43 @@ public class EncoverListener extends SymbolicListener {
   /**  ACTUAL WORKING METHODS  **/
   /**********************************************************************/
 
+  /**
+   * Returns the numeric key of the current dynamic state, computed from the
+   * state id and the path key maintained by {@link #pathKeyTracker}. In debug
+   * mode, the key is checked against the one computed by scanning the choice
+   * generators of the VM.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param backtraking To be set to true if the VM is backtraking (see
+   *   {@link JPFHelper#vm2dynamicStateId(JVM, boolean)}).
+   * @return The key of the current dynamic state.
+   */
+  private long getDynamicStateKey(JVM vm, boolean backtraking) {
+    long key = JPFHelper.dynamicStateKey(vm.getStateId(), pathKeyTracker.getPathKey(backtraking));
+    if ( log.DEBUG_MODE && key != JPFHelper.vm2dynamicStateKey(vm, backtraking) )
+      throw new Error("The tracked path of " + JPFHelper.vm2dynamicStateId(vm, backtraking) + " is out of sync.");
+    return key;
+  }
+
+  /**
+   * Returns the check value of the current dynamic state key (see
+   * {@link JPFHelper#dynamicStateCheck(int)}), maintained by
+   * {@link #pathKeyTracker}. In debug mode, it is checked against the one
+   * computed by scanning the choice generators of the VM.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param backtraking To be set to true if the VM is backtraking (see
+   *   {@link JPFHelper#vm2dynamicStateId(JVM, boolean)}).
+   * @return The check value of the current dynamic state key.
+   */
+  private int getDynamicStateCheck(JVM vm, boolean backtraking) {
+    int check = JPFHelper.dynamicStateCheck(pathKeyTracker.getPathCheck(backtraking));
+    if ( log.DEBUG_MODE && check != JPFHelper.vm2dynamicStateCheck(vm, backtraking) )
+      throw new Error("The tracked path of " + JPFHelper.vm2dynamicStateId(vm, backtraking) + " is out of sync.");
+    return check;
+  }
+
+
   /**
    * Triggers the actions to be performed when the analysis of the code starts.
    * Initializes the Output Flow Graph (OFG) and set
@@ -1030,10 +1438,25 @@ public class EncoverListener extends SymbolicListener {
       log.println("Calling doOn_codeAnalysisStart");
       log.flush();
     }
-    ofg = new OFG_BasedOnJGraphT();
-    ofg.registerBacktrackablePoint(JPFHelper.vm2dynamicStateId(vm, false));
+    String ofgImplementation = EncoverConfiguration.get_ofgImplementation();
+    if ( ofgImplementation.equals("compact") ) {
+      ofg = new OFG_CompactTree();
+    } else if ( ofgImplementation.equals("jgrapht") ) {
+      ofg = new OFG_BasedOnJGraphT();
+    } else {
+      throw new Error("Unknown OFG implementation: " + ofgImplementation);
+    }
+    ofg.registerBacktrackablePoint(getDynamicStateKey(vm, false), getDynamicStateCheck(vm, false));
+    pcTranslator.clear();
     isCodeAnalysisRunning = true;
 
+    if ( onlineVerification ) {
+      if ( onlineVerifier != null ) onlineVerifier.finish();
+      onlineVerifier = new OnlineVerifier(solverSession, nbSolverWorkers, EncoverConfiguration.get_onlineQueueCapacity(), failFast, log);
+      pathKeyTracker.resetMarks();
+      lastSubmittedLevel = 0;
+    }
+
     time_modelExtraction_start = System.nanoTime();
   }
 
@@ -1050,9 +1473,16 @@ public class EncoverListener extends SymbolicListener {
 
     isCodeAnalysisRunning = false;
 
-    if ( EncoverConfiguration.askForOfgSimplification() )
+    if ( EncoverConfiguration.askForOfgSimplification() ) {
+      solverSession.open();
       OFG_Handler.simplifyOFG(ofg, solver);
+    }
     this.unifyVariables();
+
+    if ( onlineVerifier != null ) {
+      nbChecksAnsweredDuringExploration = onlineVerifier.getNbAnsweredChecks();
+      submitCompleteLevels(Integer.MAX_VALUE);
+    }
   }
 
 
@@ -1133,8 +1563,9 @@ public class EncoverListener extends SymbolicListener {
         throw e;
       }
     }
-    String dynamicChoiceId = JPFHelper.vm2dynamicStateId(vm, true);
-    ofg.backtrackTo(dynamicChoiceId);
+    ofg.backtrackTo(getDynamicStateKey(vm, true), getDynamicStateCheck(vm, true));
+
+    if ( onlineVerifier != null ) submitCompleteLevels(getCompleteDepth());
   }
 
   /**
@@ -1176,7 +1607,7 @@ public class EncoverListener extends SymbolicListener {
 
       EExpression outputExpr = JPFHelper.symbolicStateValue2eExpression(outputObj);
 
-      EFormula pcF = JPFHelper.vm2pcFormula(vm);
+      EFormula pcF = JPFHelper.vm2pcFormula(vm, pcTranslator);
 
       if (log.DEBUG_MODE) log.println(outputExpr + " [[ IFF " + pcF + " ]]");
       if (log.DEBUG_MODE) jeg.advanceToEvent(vm, JEG_Vertex.Type.OUTPUT, outputExpr.toString());
@@ -1200,7 +1631,7 @@ public class EncoverListener extends SymbolicListener {
   private void doOn_ObservableEvent(JVM vm, Object obsVal) 
   {
     EExpression outputExpr = JPFHelper.symbolicStateValue2eExpression(obsVal);
-    EFormula pcF = JPFHelper.vm2pcFormula(vm);
+    EFormula pcF = JPFHelper.vm2pcFormula(vm, pcTranslator);
 
     if (log.DEBUG_MODE) log.println(outputExpr + " [[ IFF " + pcF + " ]]");
     if (log.DEBUG_MODE) jeg.advanceToEvent(vm, JEG_Vertex.Type.OUTPUT, outputExpr.toString());
@@ -1217,7 +1648,35 @@ public class EncoverListener extends SymbolicListener {
    * by those in ofg that have the same name.
    */
   private void unifyVariables() {
-    Set<EE_Variable> ofgVariables = ofg.getVariables();
+    unifyVariables(ofg.getVariables());
+  }
+
+  /**
+   * Retrieves the variables introduced by a level of the OFG: the variables
+   * of the outputs and other properties of its vertices, and those of the
+   * conjuncts added to the path conditions of their predecessors.
+   *
+   * @param level The vertices of a level of the OFG.
+   * @return The variables introduced by {@code level}.
+   */
+  private static Set<EE_Variable> getVariablesIntroducedBy(List<OFG_Vertex> level) {
+    Set<EE_Variable> res = new HashSet<EE_Variable>();
+    for (OFG_Vertex v: level) {
+      res.addAll(v.getOutput().getVariables());
+      res.addAll(v.getPathConditionDelta().getVariables());
+      res.addAll(v.getOtherProperties().getVariables());
+    }
+    return res;
+  }
+
+  /**
+   * Replaces variables in the input domains, leakedInputExpressions and
+   * harboredInputExpressions by those among the provided OFG variables that
+   * have the same name.
+   *
+   * @param ofgVariables Variables of the OFG.
+   */
+  private void unifyVariables(Set<EE_Variable> ofgVariables) {
     Set<EE_Variable> dlhieVariables = new HashSet();
 
     dlhieVariables.addAll(inputDomains.keySet());
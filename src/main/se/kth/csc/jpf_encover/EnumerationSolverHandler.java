@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Solver deciding satisfiability of formulas over small finite domains by
+ * enumerating all the assignments of their variables. The domain of every
+ * integer variable is read from the bounds the formula puts on it (the
+ * constraints {@code min <= x} and {@code x <= max} generated from the input
+ * domains); boolean variables range over both truth values. Formulas are
+ * compiled (see {@link CompiledFormula}) and the cross product of the domains
+ * is split into ranges enumerated concurrently. The satisfying assignment
+ * returned is the first one in enumeration order, whatever the number of
+ * threads.
+ * Queries whose variables are not all bounded, whose domains are too large,
+ * which use operators that can not be evaluated or whose evaluation overflows
+ * the integers held by {@link CompiledFormula} are not decided by this solver
+ * (see {@link #tryToSolve(EFormula, EFormula)}), and are left to the next
+ * solver.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class EnumerationSolverHandler extends SolverHandler {
+
+  /** Number of ranges enumerated by each thread, to balance the load */
+  private static final int RANGES_PER_THREAD = 4;
+
+  private final long maxAssignments;
+  private final int nbThreads;
+  private final ExecutorService executor;
+  private final AtomicLong nbDecidedQueries = new AtomicLong(0);
+  private final AtomicLong nbEnumeratedAssignments = new AtomicLong(0);
+
+  /**
+   * Constructor of enumeration solvers.
+   *
+   * @param l Logger to use to log information.
+   * @param threshold The maximal number of assignments of a query decided by
+   *   enumeration.
+   */
+  EnumerationSolverHandler(EncoverLogger l, long threshold) {
+    setLogger(l);
+    maxAssignments = threshold;
+    nbThreads = Runtime.getRuntime().availableProcessors();
+    executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+        private int nbCreatedThreads = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Encover enumerator " + (++nbCreatedThreads));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+  }
+
+  /**
+   * Nothing to start, the enumeration threads are created on demand.
+   *
+   * @return Always true.
+   */
+  public boolean start() { return true; }
+
+  /**
+   * Nothing to stop.
+   *
+   * @return Always true.
+   */
+  public boolean stop() { return true; }
+
+  /**
+   * Stops the enumeration threads.
+   *
+   * @return Always true.
+   */
+  public boolean exit() {
+    executor.shutdownNow();
+    return true;
+  }
+
+  /**
+   * Test if the solver is ready.
+   *
+   * @return Always true.
+   */
+  public boolean isStarted() { return true; }
+
+  /**
+   * Returns statistics about the queries answered so far by this handler.
+   *
+   * @return The number of queries decided and of assignments enumerated.
+   */
+  public Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>();
+    stats.put("queries decided by enumeration", nbDecidedQueries.get());
+    stats.put("assignments enumerated", nbEnumeratedAssignments.get());
+    return stats;
+  }
+
+  /**
+   * Simplification is not supported, the formula is returned unchanged.
+   *
+   * @param formula The formula to simplify.
+   * @return The provided formula.
+   */
+  public EFormula simplify(EFormula formula) { return formula; }
+
+  /**
+   * Decides satisfiability of the provided formula by enumeration.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict.
+   * @throws Error If the formula can not be decided by enumeration.
+   */
+  public SolverResult solve(EFormula formula) {
+    SolverResult result = tryToSolve(null, formula);
+    if ( result == null ) throw new Error("The formula can not be decided by enumeration: " + formula);
+    return result;
+  }
+
+  /**
+   * Decides, if it is cheap enough, satisfiability of the conjunction of a
+   * background formula and a query formula by enumeration.
+   *
+   * @param background The background formula, or {@code null} if none.
+   * @param formula The formula specific to this query.
+   * @return The verdict, or {@code null} if the query can not be decided by
+   *   enumeration.
+   */
+  SolverResult tryToSolve(EFormula background, EFormula formula) {
+    EFormula query = formula;
+    if ( background != null ) {
+      EF_Conjunction conj = new EF_Conjunction();
+      conj.append(background);
+      conj.append(formula);
+      query = conj;
+    }
+
+    Map<EE_Variable,long[]> bounds = new HashMap<EE_Variable,long[]>();
+    collectBounds(query, bounds);
+
+    Set<EE_Variable> variables = query.getVariables();
+    long nbAssignments = 1;
+    for (EE_Variable v: variables) {
+      long[] b = bounds.get(v);
+      long size;
+      if ( v.getType() == EExpression.Type.BOOL ) {
+        size = 2;
+      } else if ( v.getType() != EExpression.Type.INT ) {
+        return null;
+      } else if ( b == null || b[0] == Long.MIN_VALUE || b[1] == Long.MAX_VALUE ) {
+        return null;
+      } else if ( b[0] > b[1] ) {
+        nbDecidedQueries.incrementAndGet();
+        return SolverResult.unsat();
+      } else {
+        size = b[1] - b[0] + 1;
+      }
+      // A non positive size means that the width of the domain overflowed.
+      if ( size <= 0 || size > maxAssignments / nbAssignments ) return null;
+      nbAssignments *= size;
+    }
+
+    CompiledFormula compiled = null;
+    try { compiled = new CompiledFormula(query); }
+    catch (TranslationException e) {
+      logln("Not decidable by enumeration: " + e.getMessage());
+      return null;
+    }
+
+    // All variables are integers or booleans, they are held by the integer registers.
+    long[] lows = new long[variables.size()];
+    long[] sizes = new long[variables.size()];
+    for (EE_Variable v: compiled.getVariables()) {
+      int i = compiled.getRegister(v);
+      if ( v.getType() == EExpression.Type.BOOL ) { lows[i] = 0; sizes[i] = 2; }
+      else { lows[i] = bounds.get(v)[0]; sizes[i] = bounds.get(v)[1] - lows[i] + 1; }
+    }
+
+    long first = enumerate(compiled, lows, sizes, nbAssignments);
+    if ( first < 0 ) return null;
+    nbDecidedQueries.incrementAndGet();
+    if ( first == Long.MAX_VALUE ) return SolverResult.unsat();
+    CompiledFormula.Registers model = compiled.newRegisters();
+    decode(first, lows, sizes, model.ints);
+    return SolverResult.sat(compiled.toAssignment(model));
+  }
+
+  /**
+   * Enumerates the assignments of a compiled formula, concurrently.
+   *
+   * @param compiled The compiled formula.
+   * @param lows The lowest value of every register.
+   * @param sizes The number of values of every register.
+   * @param nbAssignments The product of the sizes.
+   * @return The index of the first satisfying assignment in enumeration
+   *   order, {@code Long.MAX_VALUE} if there is none, or -1 if the formula
+   *   could not be evaluated on some assignment.
+   */
+  private long enumerate(final CompiledFormula compiled, final long[] lows, final long[] sizes, long nbAssignments) {
+    final AtomicLong firstFound = new AtomicLong(Long.MAX_VALUE);
+    int nbRanges = (int) Math.min(nbAssignments, (long) nbThreads * RANGES_PER_THREAD);
+    long rangeSize = (nbAssignments + nbRanges - 1) / nbRanges;
+
+    List<Future<Boolean>> ranges = new ArrayList<Future<Boolean>>();
+    for (long start = 0; start < nbAssignments; start += rangeSize) {
+      final long from = start;
+      final long to = Math.min(start + rangeSize, nbAssignments);
+      ranges.add(executor.submit(new Callable<Boolean>() {
+          public Boolean call() { return enumerateRange(compiled, lows, sizes, from, to, firstFound); }
+        }));
+    }
+
+    boolean evaluable = true;
+    try {
+      for (Future<Boolean> range: ranges) evaluable &= range.get().booleanValue();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while enumerating assignments.", e);
+    } catch (ExecutionException e) {
+      throw new Error("Unexpected failure while enumerating assignments.", e.getCause());
+    }
+
+    if ( ! evaluable ) return -1;
+    return firstFound.get();
+  }
+
+  /**
+   * Enumerates a range of assignments, stopping at the first satisfying one or
+   * as soon as a satisfying assignment has been found before this range.
+   *
+   * @param compiled The compiled formula.
+   * @param lows The lowest value of every register.
+   * @param sizes The number of values of every register.
+   * @param from The index of the first assignment of the range.
+   * @param to The index following the last assignment of the range.
+   * @param firstFound The index of the first satisfying assignment found so
+   *   far, updated by this method.
+   * @return False iff the formula could not be evaluated on some assignment.
+   */
+  private Boolean enumerateRange(CompiledFormula compiled, long[] lows, long[] sizes, long from, long to, AtomicLong firstFound) {
+    CompiledFormula.Registers registers = compiled.newRegisters();
+    long[] r = registers.ints;
+    decode(from, lows, sizes, r);
+    long index = from;
+    try {
+      for (; index < to && index < firstFound.get(); index++) {
+        if ( compiled.eval(registers) ) {
+          long current;
+          while ( index < (current = firstFound.get()) && ! firstFound.compareAndSet(current, index) ) { }
+          break;
+        }
+        // Next assignment, the last register varying fastest.
+        for (int i = r.length - 1; i >= 0; i--) {
+          if ( ++r[i] < lows[i] + sizes[i] ) break;
+          r[i] = lows[i];
+        }
+      }
+    } catch (CompiledFormula.EvaluationException e) {
+      logln("Not decidable by enumeration: " + e.getMessage());
+      return Boolean.FALSE;
+    } finally {
+      nbEnumeratedAssignments.addAndGet(index - from);
+    }
+    return Boolean.TRUE;
+  }
+
+  /**
+   * Computes the assignment of a given index in enumeration order.
+   *
+   * @param index The index of the assignment.
+   * @param lows The lowest value of every register.
+   * @param sizes The number of values of every register.
+   * @param r Filled with the assignment.
+   */
+  private static void decode(long index, long[] lows, long[] sizes, long[] r) {
+    for (int i = r.length - 1; i >= 0; i--) {
+      r[i] = lows[i] + index % sizes[i];
+      index /= sizes[i];
+    }
+  }
+
+  /**
+   * Collects the bounds put on variables by the conjuncts of a formula. Only
+   * the conjuncts comparing a variable with an integer constant are taken into
+   * account.
+   *
+   * @param formula The formula.
+   * @param bounds Updated with the lower and upper bounds of the variables.
+   */
+  private static void collectBounds(EFormula formula, Map<EE_Variable,long[]> bounds) {
+    if ( formula instanceof EF_Conjunction ) {
+      for (EFormula sub: formula.getSubFormulas()) collectBounds(sub, bounds);
+    } else if ( formula instanceof EF_Relation ) {
+      EF_Relation rel = (EF_Relation) formula;
+      collectBound(rel.getOperator().toString(EFormula.StrEncoding.SMT2), rel.getLeftHandSide(), rel.getRightHandSide(), bounds);
+    } else if ( formula instanceof EF_Valuation ) {
+      EExpression exp = ((EF_Valuation) formula).getExpression();
+      if ( exp instanceof EE_BinaryOperation ) {
+        EE_BinaryOperation bin = (EE_BinaryOperation) exp;
+        try { collectBound(bin.getOperator(EFormula.StrEncoding.SMT2), bin.getLeftHandSide(), bin.getRightHandSide(), bounds); }
+        catch (TranslationException e) { /* Not a comparison */ }
+      }
+    }
+  }
+
+  /**
+   * Updates the bounds of a variable according to a comparison with a
+   * constant.
+   *
+   * @param op The SMT2 name of the comparison operator.
+   * @param lhs The left hand side operand.
+   * @param rhs The right hand side operand.
+   * @param bounds Updated with the lower and upper bounds of the variables.
+   */
+  private static void collectBound(String op, EExpression lhs, EExpression rhs, Map<EE_Variable,long[]> bounds) {
+    if ( lhs instanceof EE_Constant && rhs instanceof EE_Variable ) {
+      // c op x is x op' c
+      if ( op.equals("<") ) op = ">";
+      else if ( op.equals("<=") ) op = ">=";
+      else if ( op.equals(">") ) op = "<";
+      else if ( op.equals(">=") ) op = "<=";
+      EExpression tmp = lhs; lhs = rhs; rhs = tmp;
+    }
+    if ( ! (lhs instanceof EE_Variable && rhs instanceof EE_Constant) ) return;
+    if ( lhs.getType() != EExpression.Type.INT || rhs.getType() != EExpression.Type.INT ) return;
+
+    long c = ((Number) ((EE_Constant) rhs).getValue()).longValue();
+    long[] b = bounds.get(lhs);
+    if ( b == null ) {
+      b = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+      bounds.put((EE_Variable) lhs, b);
+    }
+    if ( op.equals("<") ) b[1] = Math.min(b[1], c - 1);
+    else if ( op.equals("<=") ) b[1] = Math.min(b[1], c);
+    else if ( op.equals(">") ) b[0] = Math.max(b[0], c + 1);
+    else if ( op.equals(">=") ) b[0] = Math.max(b[0], c);
+    else if ( op.equals("=") ) { b[0] = Math.max(b[0], c); b[1] = Math.min(b[1], c); }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
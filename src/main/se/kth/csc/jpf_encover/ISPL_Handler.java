@@ -183,17 +183,14 @@ public class ISPL_Handler {
     //ispl.addInitialStates(" and Attacker.obs"+ispl.getCount()+" = 0");
     ispl.addToShapeLevel();
     Set<OFG_Vertex> verticesInt= new HashSet();
-    Set<OFG_Vertex> verticesInt1= new HashSet();
-    
     Set<OFG_Vertex> predset= new HashSet();
     
     while(vIte.hasNext()){
       OFG_Vertex v = vIte.next();
       predset=ofg.getPredecessorsOf(v);
       processVertex(ispl, v, predset, ofg);
-      verticesInt1 = ofg.getSuccessorsOf(v);
-      //Set<OFG_Vertex> res;
-      verticesInt.addAll(verticesInt1);
+      for (OFG_Vertex succ = ofg.getFirstSuccessorOf(v); succ != null; succ = ofg.getNextSiblingOf(succ))
+        verticesInt.add(succ);
       //ispl.addVarsA(v.getPathCondition()+"\n");
       //ispl.addVarsA(v.getTextualDescription()+"\n");     
       }
@@ -215,17 +212,14 @@ public class ISPL_Handler {
     //ispl.addInitialStates(" and Attacker.obs"+ispl.getCount()+" = 0");
     
     Set<OFG_Vertex> verticesInt= new HashSet();
-    Set<OFG_Vertex> verticesInt1= new HashSet();
-    
     Set<OFG_Vertex> predset= new HashSet();
     
     while(vIte.hasNext()){
       OFG_Vertex v = vIte.next();
       predset=ofg.getPredecessorsOf(v);
       processVertex(ispl, v, predset, ofg);
-      verticesInt1 = ofg.getSuccessorsOf(v);
-      //Set<OFG_Vertex> res;
-      verticesInt.addAll(verticesInt1);
+      for (OFG_Vertex succ = ofg.getFirstSuccessorOf(v); succ != null; succ = ofg.getNextSiblingOf(succ))
+        verticesInt.add(succ);
       //ispl.addVars(v.getPathCondition()+"\n");
       //this.obsvars=this.obsvars+v.getTextualDescription()+"\n";     
       }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.SortedMap;
+
+
+/**
+ * One satisfiability check of an interference formula performed during the
+ * SMT-based verification. A check is either a policy consistency check (the
+ * formula is generated at a predecessor of the vertex where the policy changed)
+ * or a security check (the formula is generated at the vertex itself).
+ * Checks are created by the thread driving the verification and answered by
+ * the solver, possibly on another thread.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class InterferenceCheck {
+
+  /** The different kinds of checks */
+  static enum Kind { POLICY_CONSISTENCY, SECURITY };
+
+  private final Kind kind;
+  private final OFG_Vertex vertex;
+  private final OFG_Vertex checkedVertex;
+  private final EFormula background;
+  private final EFormula formula;
+
+  private volatile boolean done = false;
+  private volatile SolverResult result = null;
+  private volatile Error error = null;
+
+  /**
+   * Constructor of interference checks.
+   *
+   * @param k The kind of check.
+   * @param v The vertex to which the check relates (the vertex whose policy
+   *   is checked, or whose security is checked).
+   * @param cv The vertex at which the interference formula is generated.
+   * @param bg The background formula, or {@code null} if there is none.
+   * @param fml The interference formula.
+   */
+  InterferenceCheck(Kind k, OFG_Vertex v, OFG_Vertex cv, EFormula bg, EFormula fml) {
+    kind = k;
+    vertex = v;
+    checkedVertex = cv;
+    background = bg;
+    formula = fml;
+  }
+
+  /**
+   * Returns the kind of this check.
+   *
+   * @return The kind of this check.
+   */
+  Kind getKind() { return kind; }
+
+  /**
+   * Returns the vertex to which this check relates.
+   *
+   * @return The vertex whose policy or security is checked.
+   */
+  OFG_Vertex getVertex() { return vertex; }
+
+  /**
+   * Returns the vertex at which the interference formula has been generated.
+   *
+   * @return The vertex at which the interference formula has been generated.
+   */
+  OFG_Vertex getCheckedVertex() { return checkedVertex; }
+
+  /**
+   * Returns the background formula of this check.
+   *
+   * @return The background formula, or {@code null} if there is none.
+   */
+  EFormula getBackground() { return background; }
+
+  /**
+   * Returns the interference formula of this check.
+   *
+   * @return The interference formula.
+   */
+  EFormula getFormula() { return formula; }
+
+  /**
+   * Runs this check using the provided solver session.
+   * Errors raised by the solver are recorded rather than thrown.
+   *
+   * @param session The solver session to use.
+   * @return This check.
+   */
+  InterferenceCheck run(SolverSession session) {
+    try {
+      result = session.solve(background, formula);
+    } catch (Error e) {
+      error = e;
+    }
+    done = true;
+    return this;
+  }
+
+  /**
+   * Records the verdict of this check when it is answered by other means than
+   * {@link #run(SolverSession)}.
+   *
+   * @param r The verdict of the solver.
+   */
+  void setResult(SolverResult r) {
+    result = r;
+    done = true;
+  }
+
+  /**
+   * Records the error raised while answering this check by other means than
+   * {@link #run(SolverSession)}.
+   *
+   * @param e The error raised by the solver.
+   */
+  void setError(Error e) {
+    error = e;
+    done = true;
+  }
+
+  /**
+   * Test if this check has been answered.
+   *
+   * @return True iff this check has been run.
+   */
+  boolean isDone() { return done; }
+
+  /**
+   * Test if the interference formula of this check has been found satisfiable.
+   *
+   * @return True iff a satisfying assignment has been found.
+   */
+  boolean isSatisfiable() { return (result != null && result.isSat()); }
+
+  /**
+   * Test if the solver could not decide satisfiability of the interference
+   * formula of this check (for example because of a timeout).
+   *
+   * @return True iff the verdict of the solver is UNKNOWN.
+   */
+  boolean isInconclusive() { return (result != null && result.isUnknown()); }
+
+  /**
+   * Returns the verdict of the solver for this check.
+   *
+   * @return The verdict, or {@code null} if the check has not been answered
+   *   or raised an error.
+   */
+  SolverResult getResult() { return result; }
+
+  /**
+   * Returns the satisfying assignment found for this check.
+   *
+   * @return The satisfying assignment, or {@code null} if the formula is
+   *   unsatisfiable or could not be checked.
+   */
+  SortedMap<EE_Variable,EE_Constant> getSatisfyingAssignment() {
+    return isSatisfiable() ? result.getModel() : null;
+  }
+
+  /**
+   * Returns the error raised while running this check.
+   *
+   * @return The error raised by the solver, or {@code null} if there was none.
+   */
+  Error getError() { return error; }
+
+  /**
+   * Returns a textual description of this check.
+   *
+   * @return A textual description of this check.
+   */
+  public String toString() {
+    return kind + " check of " + vertex + " at " + checkedVertex;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,621 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Cheap solver deciding the easy queries by interval abstraction and constant
+ * folding, without calling an SMT solver. Every integer variable is given an
+ * interval, initially unbounded, which is narrowed by the comparisons found in
+ * the top-level conjuncts of the query (the domain constraints generated from
+ * the input domains, equalities between variables, ...) until a fixpoint is
+ * reached. The query is then evaluated in three-valued logic over these
+ * intervals: comparisons of disjoint intervals or of distinct constants are
+ * false, comparisons of ordered intervals or of equal constants are true.
+ * If the query is false everywhere in the intervals, it is unsatisfiable; if
+ * it is true everywhere, any point of the intervals is a model. Otherwise the
+ * query is left to another solver (see
+ * {@link #tryToSolve(EFormula, EFormula)}).
+ * The analysis is sound as long as integers are unbounded, which is the
+ * semantics of SMT2; interval bounds equal to {@code Long.MIN_VALUE} or
+ * {@code Long.MAX_VALUE} stand for infinity.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class IntervalSolverHandler extends SolverHandler {
+
+  /** Maximal number of rounds of interval narrowing */
+  private static final int MAX_NARROWING_ROUNDS = 8;
+  /** Representation of minus infinity */
+  private static final long NEG_INF = Long.MIN_VALUE;
+  /** Representation of plus infinity */
+  private static final long POS_INF = Long.MAX_VALUE;
+  /** Interval of all integers */
+  private static final long[] FULL = { NEG_INF, POS_INF };
+
+  /** Truth values of the three-valued logic */
+  private enum Truth {
+    TRUE, FALSE, UNKNOWN;
+
+    /**
+     * Returns the negation of this truth value.
+     *
+     * @return The negation.
+     */
+    Truth not() { return (this == TRUE) ? FALSE : ((this == FALSE) ? TRUE : UNKNOWN); }
+
+    /**
+     * Returns the truth value of a boolean.
+     *
+     * @param b A boolean.
+     * @return TRUE or FALSE.
+     */
+    static Truth of(boolean b) { return b ? TRUE : FALSE; }
+  }
+
+  private final AtomicLong nbExaminedQueries = new AtomicLong(0);
+  private final AtomicLong nbRefutedQueries = new AtomicLong(0);
+  private final AtomicLong nbSatisfiedQueries = new AtomicLong(0);
+
+  /**
+   * Constructor of interval solvers.
+   *
+   * @param l Logger to use to log information.
+   */
+  IntervalSolverHandler(EncoverLogger l) {
+    setLogger(l);
+  }
+
+  /**
+   * Nothing to start.
+   *
+   * @return Always true.
+   */
+  public boolean start() { return true; }
+
+  /**
+   * Nothing to stop.
+   *
+   * @return Always true.
+   */
+  public boolean stop() { return true; }
+
+  /**
+   * Nothing to clean up.
+   *
+   * @return Always true.
+   */
+  public boolean exit() { return true; }
+
+  /**
+   * Test if the solver is ready.
+   *
+   * @return Always true.
+   */
+  public boolean isStarted() { return true; }
+
+  /**
+   * Returns statistics about the queries examined so far by this handler.
+   *
+   * @return The number of queries examined, and of queries found
+   *   unsatisfiable or satisfiable.
+   */
+  public Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>();
+    stats.put("queries examined by interval analysis", nbExaminedQueries.get());
+    stats.put("queries refuted by interval analysis", nbRefutedQueries.get());
+    stats.put("queries satisfied by interval analysis", nbSatisfiedQueries.get());
+    return stats;
+  }
+
+  /**
+   * Simplification is not supported, the formula is returned unchanged.
+   *
+   * @param formula The formula to simplify.
+   * @return The provided formula.
+   */
+  public EFormula simplify(EFormula formula) { return formula; }
+
+  /**
+   * Decides satisfiability of the provided formula by interval analysis.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict.
+   * @throws Error If the formula can not be decided by interval analysis.
+   */
+  public SolverResult solve(EFormula formula) {
+    SolverResult result = tryToSolve(null, formula);
+    if ( result == null ) throw new Error("The formula can not be decided by interval analysis: " + formula);
+    return result;
+  }
+
+  /**
+   * Decides, if it is easy, satisfiability of the conjunction of a background
+   * formula and a query formula by interval analysis.
+   *
+   * @param background The background formula, or {@code null} if none.
+   * @param formula The formula specific to this query.
+   * @return The verdict, or {@code null} if the query is not decided by
+   *   interval analysis.
+   */
+  SolverResult tryToSolve(EFormula background, EFormula formula) {
+    nbExaminedQueries.incrementAndGet();
+    List<EFormula> conjuncts = new ArrayList<EFormula>();
+    if ( background != null ) flattenConjunction(background, conjuncts);
+    flattenConjunction(formula, conjuncts);
+
+    Map<EE_Variable,long[]> bounds = new HashMap<EE_Variable,long[]>();
+    boolean narrowed = true;
+    for (int round = 0; narrowed && round < MAX_NARROWING_ROUNDS; round++) {
+      narrowed = false;
+      for (EFormula conjunct: conjuncts) narrowed |= narrow(conjunct, bounds);
+      for (long[] b: bounds.values()) {
+        if ( b[0] > b[1] ) {
+          nbRefutedQueries.incrementAndGet();
+          return SolverResult.unsat();
+        }
+      }
+    }
+
+    Truth truth = Truth.TRUE;
+    for (EFormula conjunct: conjuncts) {
+      Truth t = truthOf(conjunct, bounds);
+      if ( t == Truth.FALSE ) {
+        nbRefutedQueries.incrementAndGet();
+        return SolverResult.unsat();
+      }
+      if ( t == Truth.UNKNOWN ) truth = Truth.UNKNOWN;
+    }
+    if ( truth == Truth.UNKNOWN ) return null;
+
+    Set<EE_Variable> variables = new TreeSet<EE_Variable>(formula.getVariables());
+    if ( background != null ) variables.addAll(background.getVariables());
+    SortedMap<EE_Variable,EE_Constant> model = new TreeMap<EE_Variable,EE_Constant>();
+    for (EE_Variable v: variables) {
+      switch (v.getType()) {
+      case INT:
+        long[] b = bounds.containsKey(v) ? bounds.get(v) : FULL;
+        long value = Math.max(b[0], Math.min(b[1], 0));
+        if ( value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ) return null;
+        model.put(v, new EE_Constant(EExpression.Type.INT, Integer.valueOf((int) value)));
+        break;
+      case BOOL: model.put(v, new EE_Constant(EExpression.Type.BOOL, Boolean.FALSE)); break;
+      case REAL: model.put(v, new EE_Constant(EExpression.Type.REAL, Double.valueOf(0))); break;
+      case STR: model.put(v, new EE_Constant(EExpression.Type.STR, "")); break;
+      default: return null;
+      }
+    }
+    nbSatisfiedQueries.incrementAndGet();
+    return SolverResult.sat(model);
+  }
+
+  /**
+   * Collects the conjuncts of a formula, flattening nested conjunctions.
+   *
+   * @param formula The formula.
+   * @param conjuncts Filled with the conjuncts.
+   */
+  private static void flattenConjunction(EFormula formula, List<EFormula> conjuncts) {
+    if ( formula instanceof EF_Conjunction ) {
+      for (EFormula sub: formula.getSubFormulas()) flattenConjunction(sub, conjuncts);
+    } else {
+      conjuncts.add(formula);
+    }
+  }
+
+  /**
+   * Narrows the intervals of the variables according to a conjunct, if it is
+   * a comparison of an integer variable.
+   *
+   * @param conjunct A conjunct of the query.
+   * @param bounds Updated with the narrowed intervals.
+   * @return True iff some interval has been narrowed.
+   */
+  private static boolean narrow(EFormula conjunct, Map<EE_Variable,long[]> bounds) {
+    String op = null;
+    EExpression lhs = null;
+    EExpression rhs = null;
+    if ( conjunct instanceof EF_Relation ) {
+      EF_Relation rel = (EF_Relation) conjunct;
+      op = rel.getOperator().toString(EFormula.StrEncoding.SMT2);
+      lhs = rel.getLeftHandSide();
+      rhs = rel.getRightHandSide();
+    } else if ( conjunct instanceof EF_Valuation && ((EF_Valuation) conjunct).getExpression() instanceof EE_BinaryOperation ) {
+      EE_BinaryOperation bin = (EE_BinaryOperation) ((EF_Valuation) conjunct).getExpression();
+      op = comparisonOf(bin);
+      lhs = bin.getLeftHandSide();
+      rhs = bin.getRightHandSide();
+    }
+    if ( op == null ) return false;
+    boolean narrowed = false;
+    if ( isIntVariable(lhs) ) narrowed |= narrow((EE_Variable) lhs, op, intervalOf(rhs, bounds), bounds);
+    if ( isIntVariable(rhs) ) narrowed |= narrow((EE_Variable) rhs, mirror(op), intervalOf(lhs, bounds), bounds);
+    return narrowed;
+  }
+
+  /**
+   * Narrows the interval of a variable according to a comparison.
+   *
+   * @param v The variable, left hand side of the comparison.
+   * @param op The SMT2 name of the comparison operator.
+   * @param other The interval of the right hand side of the comparison.
+   * @param bounds Updated with the narrowed interval of {@code v}.
+   * @return True iff the interval of {@code v} has been narrowed.
+   */
+  private static boolean narrow(EE_Variable v, String op, long[] other, Map<EE_Variable,long[]> bounds) {
+    long lo = NEG_INF;
+    long hi = POS_INF;
+    if ( op.equals("=") ) { lo = other[0]; hi = other[1]; }
+    else if ( op.equals("<") ) { hi = add(other[1], -1); }
+    else if ( op.equals("<=") ) { hi = other[1]; }
+    else if ( op.equals(">") ) { lo = add(other[0], 1); }
+    else if ( op.equals(">=") ) { lo = other[0]; }
+    else return false;
+
+    long[] b = bounds.get(v);
+    if ( b == null ) {
+      b = FULL.clone();
+      bounds.put(v, b);
+    }
+    boolean narrowed = false;
+    if ( lo > b[0] ) { b[0] = lo; narrowed = true; }
+    if ( hi < b[1] ) { b[1] = hi; narrowed = true; }
+    return narrowed;
+  }
+
+  /**
+   * Tests if an expression is an integer variable.
+   *
+   * @param exp The expression.
+   * @return True iff {@code exp} is a variable of type INT.
+   */
+  private static boolean isIntVariable(EExpression exp) {
+    return (exp instanceof EE_Variable) && exp.getType() == EExpression.Type.INT;
+  }
+
+  /**
+   * Returns the comparison operator obtained by swapping the operands.
+   *
+   * @param op The SMT2 name of a comparison operator.
+   * @return The SMT2 name of the mirrored operator.
+   */
+  private static String mirror(String op) {
+    if ( op.equals("<") ) return ">";
+    if ( op.equals("<=") ) return ">=";
+    if ( op.equals(">") ) return "<";
+    if ( op.equals(">=") ) return "<=";
+    return op;
+  }
+
+  /**
+   * Returns the SMT2 name of a comparison operation.
+   *
+   * @param exp An expression.
+   * @return The SMT2 name of its operator, or {@code null} if it is not a
+   *   comparison.
+   */
+  private static String comparisonOf(EExpression exp) {
+    if ( exp instanceof EE_BinaryOperation.EQ ) return "=";
+    if ( exp instanceof EE_BinaryOperation.NE ) return "distinct";
+    if ( exp instanceof EE_BinaryOperation.LT ) return "<";
+    if ( exp instanceof EE_BinaryOperation.LE ) return "<=";
+    if ( exp instanceof EE_BinaryOperation.GT ) return ">";
+    if ( exp instanceof EE_BinaryOperation.GE ) return ">=";
+    return null;
+  }
+
+  /**
+   * Evaluates a formula in three-valued logic over the intervals.
+   *
+   * @param formula The formula.
+   * @param bounds The intervals of the integer variables.
+   * @return TRUE (resp. FALSE) if the formula holds (resp. does not hold)
+   *   for all values in the intervals, UNKNOWN otherwise.
+   */
+  private static Truth truthOf(EFormula formula, Map<EE_Variable,long[]> bounds) {
+    if ( formula instanceof EF_NaryOperation ) {
+      boolean conjunction = (formula instanceof EF_Conjunction);
+      Truth absorbing = conjunction ? Truth.FALSE : Truth.TRUE;
+      Truth res = conjunction ? Truth.TRUE : Truth.FALSE;
+      for (EFormula sub: formula.getSubFormulas()) {
+        Truth t = truthOf(sub, bounds);
+        if ( t == absorbing ) return absorbing;
+        if ( t == Truth.UNKNOWN ) res = Truth.UNKNOWN;
+      }
+      return res;
+    }
+    if ( formula instanceof EF_Negation ) return truthOf(((EF_Negation) formula).getNegatedFormula(), bounds).not();
+    if ( formula instanceof EF_Relation ) {
+      EF_Relation rel = (EF_Relation) formula;
+      return truthOfComparison(rel.getOperator().toString(EFormula.StrEncoding.SMT2), rel.getLeftHandSide(), rel.getRightHandSide(), bounds);
+    }
+    if ( formula instanceof EF_Valuation ) return truthOf(((EF_Valuation) formula).getExpression(), bounds);
+    return Truth.UNKNOWN;
+  }
+
+  /**
+   * Evaluates a boolean expression in three-valued logic over the intervals.
+   *
+   * @param exp The expression.
+   * @param bounds The intervals of the integer variables.
+   * @return TRUE (resp. FALSE) if the expression is true (resp. false) for
+   *   all values in the intervals, UNKNOWN otherwise.
+   */
+  private static Truth truthOf(EExpression exp, Map<EE_Variable,long[]> bounds) {
+    if ( exp instanceof EE_Constant ) {
+      Object value = ((EE_Constant) exp).getValue();
+      return (value instanceof Boolean) ? Truth.of(((Boolean) value).booleanValue()) : Truth.UNKNOWN;
+    }
+    if ( exp instanceof EE_UnaryOperation.NOT ) return truthOf(((EE_UnaryOperation) exp).getOperand(), bounds).not();
+    if ( exp instanceof EE_BinaryOperation ) {
+      String op = comparisonOf(exp);
+      if ( op == null ) return Truth.UNKNOWN;
+      EE_BinaryOperation bin = (EE_BinaryOperation) exp;
+      return truthOfComparison(op, bin.getLeftHandSide(), bin.getRightHandSide(), bounds);
+    }
+    if ( exp instanceof EE_NaryOperation.AND || exp instanceof EE_NaryOperation.OR ) {
+      boolean conjunction = (exp instanceof EE_NaryOperation.AND);
+      Truth absorbing = conjunction ? Truth.FALSE : Truth.TRUE;
+      Truth res = conjunction ? Truth.TRUE : Truth.FALSE;
+      for (EExpression operand: ((EE_NaryOperation) exp).getOperands()) {
+        Truth t = truthOf(operand, bounds);
+        if ( t == absorbing ) return absorbing;
+        if ( t == Truth.UNKNOWN ) res = Truth.UNKNOWN;
+      }
+      return res;
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      Truth c = truthOf(ite.getOperand1(), bounds);
+      Truth a = truthOf(ite.getOperand2(), bounds);
+      Truth b = truthOf(ite.getOperand3(), bounds);
+      if ( c == Truth.TRUE ) return a;
+      if ( c == Truth.FALSE ) return b;
+      return (a == b) ? a : Truth.UNKNOWN;
+    }
+    return Truth.UNKNOWN;
+  }
+
+  /**
+   * Evaluates a comparison in three-valued logic over the intervals.
+   * Constants of any type are folded; other operands are compared through
+   * their intervals.
+   *
+   * @param op The SMT2 name of the comparison operator.
+   * @param lhs The left hand side operand.
+   * @param rhs The right hand side operand.
+   * @param bounds The intervals of the integer variables.
+   * @return The truth value of the comparison.
+   */
+  @SuppressWarnings("unchecked")
+  private static Truth truthOfComparison(String op, EExpression lhs, EExpression rhs, Map<EE_Variable,long[]> bounds) {
+    if ( lhs instanceof EE_Constant && rhs instanceof EE_Constant
+         && lhs.getType() == rhs.getType() && lhs.getType() != EExpression.Type.INT ) {
+      Object a = ((EE_Constant) lhs).getValue();
+      Object b = ((EE_Constant) rhs).getValue();
+      if ( op.equals("=") ) return Truth.of(a.equals(b));
+      if ( op.equals("distinct") ) return Truth.of(! a.equals(b));
+      if ( ! (a instanceof Comparable) || a.getClass() != b.getClass() ) return Truth.UNKNOWN;
+      return truthOfSign(op, ((Comparable<Object>) a).compareTo(b));
+    }
+
+    long[] a = intervalOf(lhs, bounds);
+    long[] b = intervalOf(rhs, bounds);
+    if ( a == FULL || b == FULL ) return Truth.UNKNOWN;
+    if ( op.equals("=") || op.equals("distinct") ) {
+      Truth eq = Truth.UNKNOWN;
+      if ( a[1] < b[0] || b[1] < a[0] ) eq = Truth.FALSE;
+      else if ( a[0] == a[1] && b[0] == b[1] && a[0] != NEG_INF && a[0] != POS_INF ) eq = Truth.TRUE;
+      return op.equals("=") ? eq : eq.not();
+    }
+    if ( op.equals(">") || op.equals(">=") ) {
+      long[] tmp = a; a = b; b = tmp;
+      op = mirror(op);
+    }
+    if ( op.equals("<") ) {
+      if ( a[1] < b[0] ) return Truth.TRUE;
+      if ( a[0] >= b[1] ) return Truth.FALSE;
+    } else if ( op.equals("<=") ) {
+      if ( a[1] <= b[0] ) return Truth.TRUE;
+      if ( a[0] > b[1] ) return Truth.FALSE;
+    }
+    return Truth.UNKNOWN;
+  }
+
+  /**
+   * Evaluates a comparison of the result of a three-way comparison with 0.
+   *
+   * @param op The SMT2 name of the comparison operator.
+   * @param cmp The result of the three-way comparison.
+   * @return The truth value of the comparison.
+   */
+  private static Truth truthOfSign(String op, int cmp) {
+    if ( op.equals("<") ) return Truth.of(cmp < 0);
+    if ( op.equals("<=") ) return Truth.of(cmp <= 0);
+    if ( op.equals(">") ) return Truth.of(cmp > 0);
+    if ( op.equals(">=") ) return Truth.of(cmp >= 0);
+    return Truth.UNKNOWN;
+  }
+
+  /**
+   * Computes an interval containing all the values of an integer expression.
+   * Expressions which are not integer, or whose operators are not handled,
+   * are given the interval {@link #FULL}.
+   *
+   * @param exp The expression.
+   * @param bounds The intervals of the integer variables.
+   * @return The interval of the expression; {@link #FULL} itself if nothing
+   *   is known about it.
+   */
+  private static long[] intervalOf(EExpression exp, Map<EE_Variable,long[]> bounds) {
+    if ( exp instanceof EE_Variable ) {
+      long[] b = bounds.get(exp);
+      return ( b == null || exp.getType() != EExpression.Type.INT ) ? FULL : b;
+    }
+    if ( exp instanceof EE_Constant ) {
+      Object value = ((EE_Constant) exp).getValue();
+      if ( exp.getType() != EExpression.Type.INT || ! (value instanceof Number) ) return FULL;
+      long c = ((Number) value).longValue();
+      return new long[] { c, c };
+    }
+    if ( exp instanceof EE_UnaryOperation.NEG ) {
+      long[] a = intervalOf(((EE_UnaryOperation) exp).getOperand(), bounds);
+      return (a == FULL) ? FULL : interval(neg(a[1]), neg(a[0]));
+    }
+    if ( exp instanceof EE_UnaryOperation.LENGTH ) return new long[] { 0, POS_INF };
+    if ( exp instanceof EE_BinaryOperation.CMP ) return new long[] { -1, 1 };
+    if ( exp instanceof EE_BinaryOperation.MINUS ) {
+      long[] a = intervalOf(((EE_BinaryOperation) exp).getLeftHandSide(), bounds);
+      long[] b = intervalOf(((EE_BinaryOperation) exp).getRightHandSide(), bounds);
+      if ( a == FULL || b == FULL ) return FULL;
+      return interval(add(a[0], neg(b[1])), add(a[1], neg(b[0])));
+    }
+    if ( exp instanceof EE_BinaryOperation.IDIV || exp instanceof EE_BinaryOperation.MOD ) {
+      long[] a = intervalOf(((EE_BinaryOperation) exp).getLeftHandSide(), bounds);
+      long[] b = intervalOf(((EE_BinaryOperation) exp).getRightHandSide(), bounds);
+      // Only divisions by a non-zero constant are handled.
+      if ( b == FULL || b[0] != b[1] || b[0] == 0 || b[0] == NEG_INF || b[0] == POS_INF ) return FULL;
+      long c = b[0];
+      if ( exp instanceof EE_BinaryOperation.MOD ) {
+        long m = Math.abs(c) - 1;
+        if ( a != FULL && a[0] >= 0 && a[1] <= m ) return a;
+        return new long[] { 0, m };
+      }
+      if ( a == FULL || c < 0 ) return FULL;
+      // With a positive divisor, the euclidean division rounds towards minus infinity.
+      return interval(floorDiv(a[0], c), floorDiv(a[1], c));
+    }
+    if ( exp instanceof EE_TernaryOperation ) {
+      EE_TernaryOperation ite = (EE_TernaryOperation) exp;
+      Truth c = truthOf(ite.getOperand1(), bounds);
+      long[] a = intervalOf(ite.getOperand2(), bounds);
+      long[] b = intervalOf(ite.getOperand3(), bounds);
+      if ( c == Truth.TRUE ) return a;
+      if ( c == Truth.FALSE ) return b;
+      if ( a == FULL || b == FULL ) return FULL;
+      return interval(Math.min(a[0], b[0]), Math.max(a[1], b[1]));
+    }
+    if ( exp instanceof EE_NaryOperation.PLUS || exp instanceof EE_NaryOperation.MUL ) {
+      boolean plus = (exp instanceof EE_NaryOperation.PLUS);
+      long[] res = plus ? new long[] { 0, 0 } : new long[] { 1, 1 };
+      for (EExpression operand: ((EE_NaryOperation) exp).getOperands()) {
+        long[] a = intervalOf(operand, bounds);
+        if ( a == FULL ) return FULL;
+        res = plus ? interval(add(res[0], a[0]), add(res[1], a[1])) : mul(res, a);
+        if ( res == FULL ) return FULL;
+      }
+      return res;
+    }
+    return FULL;
+  }
+
+  /**
+   * Builds an interval, returning {@link #FULL} if it is unbounded on both
+   * sides.
+   *
+   * @param lo The lower bound.
+   * @param hi The upper bound.
+   * @return The interval.
+   */
+  private static long[] interval(long lo, long hi) {
+    return ( lo == NEG_INF && hi == POS_INF ) ? FULL : new long[] { lo, hi };
+  }
+
+  /**
+   * Negates a bound, infinities included.
+   *
+   * @param x A bound.
+   * @return The opposite bound.
+   */
+  private static long neg(long x) {
+    if ( x == NEG_INF ) return POS_INF;
+    if ( x == POS_INF ) return NEG_INF;
+    return -x;
+  }
+
+  /**
+   * Adds two bounds, saturating to infinity on overflow. Adding opposite
+   * infinities does not happen as lower bounds are only added to lower
+   * bounds, and upper bounds to upper bounds.
+   *
+   * @param x A bound.
+   * @param y A bound.
+   * @return The sum of the bounds.
+   */
+  private static long add(long x, long y) {
+    if ( x == NEG_INF || y == NEG_INF ) return NEG_INF;
+    if ( x == POS_INF || y == POS_INF ) return POS_INF;
+    long r = x + y;
+    if ( ((x ^ r) & (y ^ r)) < 0 ) return (x < 0) ? NEG_INF : POS_INF;
+    return r;
+  }
+
+  /**
+   * Multiplies two intervals; the result is {@link #FULL} if one of them is
+   * unbounded or on overflow.
+   *
+   * @param a An interval.
+   * @param b An interval.
+   * @return An interval containing all the products.
+   */
+  private static long[] mul(long[] a, long[] b) {
+    long lo = POS_INF;
+    long hi = NEG_INF;
+    for (long x: a) {
+      for (long y: b) {
+        if ( x == NEG_INF || x == POS_INF || y == NEG_INF || y == POS_INF ) return FULL;
+        long r = x * y;
+        if ( x != 0 && (r / x != y || (x == -1 && y == Long.MIN_VALUE)) ) return FULL;
+        if ( r == NEG_INF || r == POS_INF ) return FULL;
+        lo = Math.min(lo, r);
+        hi = Math.max(hi, r);
+      }
+    }
+    return new long[] { lo, hi };
+  }
+
+  /**
+   * Divides a bound by a positive integer, rounding towards minus infinity.
+   *
+   * @param x A bound.
+   * @param c A positive integer.
+   * @return The quotient.
+   */
+  private static long floorDiv(long x, long c) {
+    if ( x == NEG_INF || x == POS_INF ) return x;
+    long q = x / c;
+    if ( q * c != x && x < 0 ) q--;
+    return q;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
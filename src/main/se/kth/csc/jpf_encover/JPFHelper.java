@@ -142,6 +142,22 @@ public class JPFHelper extends LoggerStaticUser {
     return res;
   }
 
+  /**
+   * Returns a formula describing the current path condition registered by
+   * JPF, reusing the translations of the constraints already translated by
+   * {@code translator}.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param translator The translator caching the translated constraints.
+   * @return Formula representing the current path conditions.
+   */
+  public static EFormula vm2pcFormula(JVM vm, PathConditionTranslator translator) {
+    if ( vm == null ) throw new Error("vm parameter is null!");
+    PathCondition pc = PathCondition.getPC(vm);
+    if ( pc == null ) return new EF_Valuation(new EE_Constant.TRUE());
+    return translator.translate(pc);
+  }
+
   /**
    * Transforms a {@link PathCondition} object into an {@link EFormula} object.
    *
@@ -173,30 +189,40 @@ public class JPFHelper extends LoggerStaticUser {
     if ( cstr == null ) {
       res = new EF_Conjunction();
     } else {
-      EF_Relation.Operator headFOp = null;
-      switch ( cstr.getComparator() ) {
-      case EQ: headFOp = EF_Relation.Operator.EQ; break;
-      case GE: headFOp = EF_Relation.Operator.GE; break;
-      case GT: headFOp = EF_Relation.Operator.GT; break;
-      case LE: headFOp = EF_Relation.Operator.LE; break;
-      case LT: headFOp = EF_Relation.Operator.LT; break;
-      case NE: headFOp = EF_Relation.Operator.NE; break;
-      default:
-        String errMsg =
-          "The Comperator " + cstr.getComparator()
-          + " is not handled by JPFHelper.constraint2formula(Constraint).";
-        throw new Error(errMsg);
-      }
-      EExpression lhs = sExpression2eExpression(cstr.getLeft());
-      EExpression rhs = sExpression2eExpression(cstr.getRight());
-      EFormula headF = new EF_Relation(headFOp, lhs, rhs);
-
+      EFormula headF = constraint2relation(cstr);
       EFormula tailF = constraint2formula(cstr.getTail());
       res = ((EF_Conjunction) tailF).prepend(headF);
     }
     return res;
   }
 
+  /**
+   * Transforms the head of a {@link Constraint} object (ignoring its tail)
+   * into an {@link EFormula} object.
+   *
+   * @param cstr The Constraint object whose head is to be transformed.
+   * @return An EFormula object equivalent to the head of cstr.
+   */
+  public static EFormula constraint2relation(Constraint cstr) {
+    EF_Relation.Operator headFOp = null;
+    switch ( cstr.getComparator() ) {
+    case EQ: headFOp = EF_Relation.Operator.EQ; break;
+    case GE: headFOp = EF_Relation.Operator.GE; break;
+    case GT: headFOp = EF_Relation.Operator.GT; break;
+    case LE: headFOp = EF_Relation.Operator.LE; break;
+    case LT: headFOp = EF_Relation.Operator.LT; break;
+    case NE: headFOp = EF_Relation.Operator.NE; break;
+    default:
+      String errMsg =
+        "The Comperator " + cstr.getComparator()
+        + " is not handled by JPFHelper.constraint2formula(Constraint).";
+      throw new Error(errMsg);
+    }
+    EExpression lhs = sExpression2eExpression(cstr.getLeft());
+    EExpression rhs = sExpression2eExpression(cstr.getRight());
+    return new EF_Relation(headFOp, lhs, rhs);
+  }
+
   /**
    * Transforms an {@link Expression} object into an {@link EExpression} object.
    *
@@ -722,6 +748,149 @@ public class JPFHelper extends LoggerStaticUser {
     return dsId;
   }
 
+  /**
+   * Returns a numeric key of the current dynamic state of a JPF virtual
+   * machine. This key is derived from the static state id and, if extended
+   * dynamic state ids are used, from the path choices; it identifies the same
+   * dynamic states as {@link #vm2dynamicStateId(JVM, boolean)} without
+   * building a string. This method scans the choice generators of the VM,
+   * {@link PathKeyTracker} maintains the same key incrementally.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param backtraking To be set to true if the VM is backtraking (see
+   *   {@link #vm2dynamicStateId(JVM, boolean)}).
+   * @return A numeric key of the current dynamic state of JPF.
+   */
+  public static long vm2dynamicStateKey(JVM vm, boolean backtraking) {
+    if ( vm == null )
+      throw new Error("Unable to produce a dynamic state key from a 'null' VM.");
+    long pathKey = EMPTY_PATH_KEY;
+    for (PCChoiceGenerator cg: vm2pathChoiceGenerators(vm, backtraking))
+      pathKey = extendPathKey(pathKey, cg);
+    return dynamicStateKey(vm.getStateId(), pathKey);
+  }
+
+  /**
+   * Returns the check value of the current dynamic state key of a JPF
+   * virtual machine (see {@link #dynamicStateCheck(int)}). This method scans
+   * the choice generators of the VM, {@link PathKeyTracker} maintains the
+   * same value incrementally.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param backtraking To be set to true if the VM is backtraking (see
+   *   {@link #vm2dynamicStateId(JVM, boolean)}).
+   * @return The check value of the current dynamic state key.
+   */
+  public static int vm2dynamicStateCheck(JVM vm, boolean backtraking) {
+    if ( vm == null )
+      throw new Error("Unable to produce a dynamic state check from a 'null' VM.");
+    int pathCheck = EMPTY_PATH_CHECK;
+    for (PCChoiceGenerator cg: vm2pathChoiceGenerators(vm, backtraking))
+      pathCheck = extendPathCheck(pathCheck, cg);
+    return dynamicStateCheck(pathCheck);
+  }
+
+  /**
+   * Returns the path condition choice generators of a JPF virtual machine
+   * whose choices are folded into the dynamic state key. None are returned
+   * if extended dynamic state ids are not used.
+   *
+   * @param vm Current instance of the JPF virtual machine.
+   * @param backtraking If true, the last path condition choice generator is
+   *   excluded (see {@link #vm2dynamicStateId(JVM, boolean)}).
+   * @return The path condition choice generators, from the oldest one.
+   */
+  private static List<PCChoiceGenerator> vm2pathChoiceGenerators(JVM vm, boolean backtraking) {
+    List<PCChoiceGenerator> res = new ArrayList<PCChoiceGenerator>();
+    if ( ! useExtendedDynamicStateId ) return res;
+    ChoiceGenerator[] choiceGenerators = null;
+    try { choiceGenerators = vm.getChoiceGenerators(); }
+    catch(NullPointerException e) {
+      // Unhandeled NullPointerException in gov.nasa.jpf.jvm.SystemState.getChoiceGenerators
+    }
+    if ( choiceGenerators != null ) {
+      for (int i = 0; i < choiceGenerators.length; i++) {
+        if ( choiceGenerators[i] instanceof PCChoiceGenerator )
+          res.add((PCChoiceGenerator) choiceGenerators[i]);
+      }
+      if ( backtraking && ! res.isEmpty() ) res.remove(res.size() - 1);
+    }
+    return res;
+  }
+
+  /** Key of the path without any choice. */
+  static final long EMPTY_PATH_KEY = 0xCBF29CE484222325L;
+
+  /** Check value of the path without any choice. */
+  static final int EMPTY_PATH_CHECK = 0x811C9DC5;
+
+  /**
+   * Extends a path key with the current choice of a path condition choice
+   * generator (FNV-1a like mixing). Distinct paths are assumed to get
+   * distinct keys; this is not guaranteed, hence the independent hash of
+   * the choices stored next to each key (see
+   * {@link #extendPathCheck(int, PCChoiceGenerator)}).
+   *
+   * @param pathKey The key of the path so far.
+   * @param cg The choice generator whose current choice extends the path.
+   * @return The key of the extended path.
+   */
+  static long extendPathKey(long pathKey, PCChoiceGenerator cg) {
+    Integer choice = cg.getNextChoice();
+    int c = (choice == null) ? -1 : choice.intValue();
+    return (pathKey ^ (c + 2)) * 0x100000001B3L;
+  }
+
+  /**
+   * Extends a path check value with the current choice of a path condition
+   * choice generator. The mixing (MurmurHash3 like) is unrelated to the one
+   * of {@link #extendPathKey(long, PCChoiceGenerator)}, so two paths
+   * colliding on their key are unlikely to also collide on their check
+   * value.
+   *
+   * @param pathCheck The check value of the path so far.
+   * @param cg The choice generator whose current choice extends the path.
+   * @return The check value of the extended path.
+   */
+  static int extendPathCheck(int pathCheck, PCChoiceGenerator cg) {
+    Integer choice = cg.getNextChoice();
+    int c = (choice == null) ? -1 : choice.intValue();
+    int k = (c + 2) * 0xCC9E2D51;
+    k = Integer.rotateLeft(k, 15) * 0x1B873593;
+    int h = Integer.rotateLeft(pathCheck ^ k, 13);
+    return h * 5 + 0xE6546B64;
+  }
+
+  /**
+   * Combines a static state id and a path key into a dynamic state key. The
+   * path key is ignored if extended dynamic state ids are not used.
+   *
+   * @param stateId The static state id.
+   * @param pathKey The key of the path choices.
+   * @return The dynamic state key.
+   */
+  static long dynamicStateKey(int stateId, long pathKey) {
+    if ( ! useExtendedDynamicStateId ) return stateId;
+    return pathKey * 0x9E3779B97F4A7C15L + stateId;
+  }
+
+  /**
+   * Returns a value which, together with a dynamic state key, must identify
+   * the same dynamic state. It is a second hash of the path choices,
+   * independent from the path key (see
+   * {@link #extendPathCheck(int, PCChoiceGenerator)}): two different paths
+   * colliding on the same key are detected (see
+   * {@link BacktrackTable#lookup(long, int)}) unless they also collide on
+   * this 32-bit value. If extended dynamic state ids are not used, the key
+   * is the static state id itself and the check value is 0.
+   *
+   * @param pathCheck The check value of the path choices.
+   * @return The check value of the dynamic state key.
+   */
+  static int dynamicStateCheck(int pathCheck) {
+    return useExtendedDynamicStateId ? pathCheck : 0;
+  }
+
   /**
    * Returns the object in the symbolic state representing a precise argument of
    * the provided invoke instruction.
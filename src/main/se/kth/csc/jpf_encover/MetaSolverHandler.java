@@ -21,7 +21,11 @@
 
 package se.kth.csc.jpf_encover;
 
-import java.util.SortedMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Meta solver that relies on other solvers to accomplish the desired tasks.
@@ -32,6 +36,8 @@ import java.util.SortedMap;
 public final class MetaSolverHandler extends SolverHandler {
 
   private SolverHandler Z3 = null;
+  private IntervalSolverHandler prefilter = null;
+  private EnumerationSolverHandler enumerator = null;
 
   /**
    * Default constructor for meta solvers.
@@ -40,8 +46,75 @@ public final class MetaSolverHandler extends SolverHandler {
    * @param l Logger to use to log information.
    */
   public MetaSolverHandler(EncoverLogger l) {
+    this(l, 1);
+  }
+
+  /**
+   * Constructor for meta solvers able to answer concurrent queries.
+   * If more than one worker is requested, the current implementation creates a
+   * pool of Z3 processes; otherwise it simply creates a Z3 handler.
+   *
+   * @param l Logger to use to log information.
+   * @param nbWorkers The number of queries that can be answered concurrently.
+   */
+  public MetaSolverHandler(EncoverLogger l, int nbWorkers) {
+    this(l, nbWorkers, Arrays.asList("default"), 0, "process", 0, false);
+  }
+
+  /**
+   * Constructor for meta solvers running a portfolio of Z3 configurations.
+   * If more than one configuration is provided, every satisfiability query
+   * is run on all of them at once and the first definitive answer is kept
+   * (see {@link Z3_PortfolioHandler}). If more than one worker is requested,
+   * as many such portfolios answer queries concurrently.
+   *
+   * @param l Logger to use to log information.
+   * @param nbWorkers The number of queries that can be answered concurrently.
+   * @param portfolio The names of the Z3 configurations to use (see
+   *   {@link Z3_Configuration}).
+   * @param timeoutMillis The time limit of each query in milliseconds (0 for
+   *   no limit).
+   * @param backend The way to run Z3: "process" to talk to Z3 processes, or
+   *   "api" to run Z3 in process through its Java bindings (see
+   *   {@link Z3_ApiHandler}). The process backend is used if the bindings can
+   *   not be loaded. The portfolio is ignored by the "api" backend.
+   * @param enumerationThreshold Queries having at most this number of
+   *   assignments are decided by enumeration (see
+   *   {@link EnumerationSolverHandler}) rather than by Z3 (0 to always use
+   *   Z3).
+   * @param prefilter If true, queries are first examined by interval analysis
+   *   (see {@link IntervalSolverHandler}) which decides the easy ones.
+   */
+  public MetaSolverHandler(EncoverLogger l, int nbWorkers, List<String> portfolio, long timeoutMillis, String backend, long enumerationThreshold, boolean prefilter) {
     setLogger(l);
-    Z3 = new Z3_Handler(l);
+    if ( prefilter ) this.prefilter = new IntervalSolverHandler(l);
+    if ( enumerationThreshold > 0 ) enumerator = new EnumerationSolverHandler(l, enumerationThreshold);
+
+    if ( backend.equals("api") ) {
+      if ( Z3_ApiHandler.isAvailable() ) {
+        List<SolverHandler> handlers = new ArrayList<SolverHandler>();
+        for (int i = 0; i < nbWorkers; i++) handlers.add(new Z3_ApiHandler(l, timeoutMillis));
+        Z3 = (nbWorkers > 1) ? new Z3_PoolHandler(handlers, l) : handlers.get(0);
+        return;
+      }
+      l.println("The Z3 Java bindings can not be loaded, Z3 processes are used instead.");
+    } else if ( ! backend.equals("process") ) {
+      throw new Error("Unknown solver backend: " + backend);
+    }
+
+    List<Z3_Configuration> configurations = new ArrayList<Z3_Configuration>();
+    for (String name: portfolio) configurations.add(Z3_Configuration.get(name).withTimeout(timeoutMillis));
+
+    if ( configurations.size() > 1 ) {
+      List<SolverHandler> portfolios = new ArrayList<SolverHandler>();
+      for (int i = 0; i < nbWorkers; i++) portfolios.add(new Z3_PortfolioHandler(configurations, l));
+      Z3 = (nbWorkers > 1) ? new Z3_PoolHandler(portfolios, l) : portfolios.get(0);
+    } else {
+      Z3_Configuration conf = configurations.isEmpty() ? Z3_Configuration.DEFAULT.withTimeout(timeoutMillis) : configurations.get(0);
+      List<SolverHandler> handlers = new ArrayList<SolverHandler>();
+      for (int i = 0; i < nbWorkers; i++) handlers.add(new Z3_Handler(l, conf));
+      Z3 = (nbWorkers > 1) ? new Z3_PoolHandler(handlers, l) : handlers.get(0);
+    }
   }
 
   /**
@@ -69,6 +142,7 @@ public final class MetaSolverHandler extends SolverHandler {
    * @return True iff successfully exited the solver.
    */
   public boolean exit() {
+    if ( enumerator != null ) enumerator.exit();
     return Z3.exit();
   }
 
@@ -93,15 +167,73 @@ public final class MetaSolverHandler extends SolverHandler {
   }
 
   /**
-   * Calls the solver to check satisfiability of the provided formula.
-   * The current implementation simply rely on Z3 to do the simplification.
+   * Calls the solver to decide satisfiability of the provided formula.
+   * Easy queries are decided by interval analysis, small queries by
+   * enumeration, the others by Z3.
    *
    * @param formula The formula whose satisfiability is to be checked.
-   * @return {@code null} iff the formula is unsatisfiable; otherwise it returns
-   *   a satisfying assignment of the variables.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula formula) {
+    if ( prefilter != null ) {
+      SolverResult result = prefilter.tryToSolve(null, formula);
+      if ( result != null ) return result;
+    }
+    if ( enumerator != null ) {
+      SolverResult result = enumerator.tryToSolve(null, formula);
+      if ( result != null ) return result;
+    }
+    return Z3.solve(formula);
+  }
+
+  /**
+   * Calls the solver to decide satisfiability of the conjunction of a
+   * background formula and a query formula.
+   * Easy queries are decided by interval analysis, small queries by
+   * enumeration, the others by Z3.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    if ( prefilter != null ) {
+      SolverResult result = prefilter.tryToSolve(background, formula);
+      if ( result != null ) return result;
+    }
+    if ( enumerator != null ) {
+      SolverResult result = enumerator.tryToSolve(background, formula);
+      if ( result != null ) return result;
+    }
+    return Z3.solve(background, formula);
+  }
+
+  /**
+   * Returns the number of solver processes spawned so far by this handler.
+   *
+   * @return The number of solver processes spawned so far.
+   */
+  public int getNbProcessSpawns() {
+    return Z3.getNbProcessSpawns();
+  }
+
+  /**
+   * Aborts the queries currently being answered.
+   */
+  public void abort() {
+    Z3.abort();
+  }
+
+  /**
+   * Returns statistics about the queries answered so far by this handler.
+   *
+   * @return The statistics collected by the underlying solvers.
    */
-  public SortedMap<EE_Variable,EE_Constant> checkSatisfiability(EFormula formula) {
-    return Z3.checkSatisfiability(formula);
+  public Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>(Z3.getStatistics());
+    if ( prefilter != null ) stats.putAll(prefilter.getStatistics());
+    if ( enumerator != null ) stats.putAll(enumerator.getStatistics());
+    return stats;
   }
 
 }
@@ -56,11 +56,7 @@ import com.mxgraph.layout.mxCompactTreeLayout;
 class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
 
   private DirectedGraph<OFG_Vertex, DefaultEdge> graph;
-  private Map<String, OFG_Vertex> backtrackablePointId2vertex;
-  private Map<String, String> backtrackablePointId2policy;
-  private Map<String, Boolean> backtrackablePointId2policyChanged;
-  private Map<String, Integer> backtrackablePointId2numberOfPolicyChanges;
-  private Map<String, Integer> backtrackablePointId2depth;
+  private BacktrackTable backtrackablePoints;
   private int vertexCounter = 0;
   private OFG_Vertex root;
   private OFG_Vertex end;
@@ -69,6 +65,12 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   private Boolean currentPolicyChanged;
   private int currentNumberOfPolicyChanges;
   private int currentDepth;
+  /** Output vertices indexed by depth, then by number of policy changes */
+  private transient Map<Integer, SortedMap<Integer, Set<OFG_Vertex>>> depth2npc2vertices;
+  /** Output vertices indexed by depth */
+  private transient Map<Integer, Set<OFG_Vertex>> depth2vertices;
+  /** Full path conditions of the most recently used output vertices */
+  private transient PathConditionDelta.ViewCache<OutputVertex> pathConditions;
 
   /**
    * Default constructor.
@@ -76,11 +78,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
    */
   public OFG_BasedOnJGraphT() {
     graph = new DefaultDirectedGraph(DefaultEdge.class);
-    backtrackablePointId2vertex = new HashMap();
-    backtrackablePointId2policy = new HashMap();
-    backtrackablePointId2policyChanged = new HashMap();
-    backtrackablePointId2numberOfPolicyChanges = new HashMap();
-    backtrackablePointId2depth = new HashMap();
+    backtrackablePoints = new BacktrackTable();
     root = new RootVertex();
     graph.addVertex(root);
     end = new EndVertex();
@@ -92,48 +90,56 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     currentDepth = 0;
   }
 
+  /**
+   * Returns the cache of full path conditions, creating it if needed (it is
+   * not serialized).
+   *
+   * @return The cache of full path conditions.
+   */
+  private PathConditionDelta.ViewCache<OutputVertex> getPathConditions() 
+  {
+    if ( pathConditions == null ) 
+      pathConditions = new PathConditionDelta.ViewCache<OutputVertex>(PathConditionDelta.VIEW_CACHE_CAPACITY);
+    return pathConditions;
+  }
+
   /**
    * Update the internal data structure to prepare futur potential backtracks.
    *
    * @param id Identifier of a potential future backtrack destination
+   * @param check Check value of {@code id}
    */
-  public void registerBacktrackablePoint(String id) 
+  public void registerBacktrackablePoint(long id, int check) 
   {
-    if ( backtrackablePointId2vertex.containsKey(id)  ) 
+    int registered = backtrackablePoints.lookup(id, check);
+    if ( registered != BacktrackTable.NO_SNAPSHOT && backtrackablePoints.getPosition(registered) != currentPosition ) 
     {
-      OFG_Vertex registeredPos = backtrackablePointId2vertex.get(id);
-      if ( currentPosition != registeredPos) 
-      {
-        String errorDescr = "ERROR: a different OFG position is already registered for " + id + ".";
-        throw new Error(errorDescr);
-      }
+      String errorDescr = "ERROR: a different OFG position is already registered for " + id + ".";
+      throw new Error(errorDescr);
     }
-    backtrackablePointId2vertex.put(id, currentPosition);
-    backtrackablePointId2policy.put(id, currentPolicy);
-    backtrackablePointId2policyChanged.put(id, currentPolicyChanged);
-    backtrackablePointId2numberOfPolicyChanges.put(id, currentNumberOfPolicyChanges);
-    backtrackablePointId2depth.put(id, currentDepth);
+    backtrackablePoints.put(id, check, currentPosition, currentPolicy, currentPolicyChanged, currentNumberOfPolicyChanges, currentDepth);
   }
 
   /**
    * Update the internal data structure to reflect a backtrack in the search process.
    *
    * @param id Identifier of the destination of the backtrack.
+   * @param check Check value of {@code id}.
    */
-  public void backtrackTo(String id) 
+  public void backtrackTo(long id, int check) 
   {
-    OFG_Vertex newPos = backtrackablePointId2vertex.get(id);
-    if ( newPos == null ) 
+    int snapshot = backtrackablePoints.lookup(id, check);
+    if ( snapshot == BacktrackTable.NO_SNAPSHOT ) 
     {
-      Set<String> keys = backtrackablePointId2vertex.keySet() ;
-      String errorDescr = "There is no backtrackable point registered for " + id + " in " + keys + ".";
+      String errorDescr = "There is no backtrackable point registered for " + id + " (among " + backtrackablePoints.size() + ").";
       throw new Error(errorDescr);
     }
-    currentPosition = newPos;
-    currentPolicy = backtrackablePointId2policy.get(id);
-    currentPolicyChanged = backtrackablePointId2policyChanged.get(id);
-    currentNumberOfPolicyChanges = backtrackablePointId2numberOfPolicyChanges.get(id);
-    currentDepth = backtrackablePointId2depth.get(id);
+    currentPosition = (OFG_Vertex) backtrackablePoints.getPosition(snapshot);
+    getPathConditions().backtrackTo((currentPosition instanceof OutputVertex) ? (OutputVertex) currentPosition : null);
+    currentPolicy = backtrackablePoints.getPolicy(snapshot);
+    currentPolicyChanged = backtrackablePoints.getPolicyChanged(snapshot);
+    currentNumberOfPolicyChanges = backtrackablePoints.getNumberOfPolicyChanges(snapshot);
+    currentDepth = backtrackablePoints.getDepth(snapshot);
   }
 
   /**
@@ -148,9 +154,12 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     if ( pc == null ) { throw new Error("The PC must not be null"); }
 
     currentDepth += 1;
-    OFG_Vertex newPos = new OutputVertex(output, pc, currentPolicy, currentPolicyChanged, currentNumberOfPolicyChanges, currentDepth);
+    OutputVertex parentPos = (currentPosition instanceof OutputVertex) ? (OutputVertex) currentPosition : null;
+    OFG_Vertex newPos = new OutputVertex(output, pc, parentPos, currentPolicy, currentPolicyChanged, currentNumberOfPolicyChanges, currentDepth);
     graph.addVertex(newPos);
     graph.addEdge(currentPosition, newPos);
+    getPathConditions().enter((OutputVertex) newPos, pc);
+    indexVertex(newPos);
     currentPolicyChanged = false;
     currentPosition = newPos;
     return newPos;
@@ -177,6 +186,16 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     currentPosition = end;
   }
 
+  /**
+   * Returns the depth of the current position in the OFG, i.e. the number of
+   * outputs registered on the path leading to it.
+   *
+   * @return The depth of the current position.
+   */
+  public int getCurrentDepth() {
+    return currentDepth;
+  }
+
   /**
    * Returns all the vertices/nodes in the OFG.
    * In particular, in this implementation there are internal nodes root and end
@@ -205,24 +224,101 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   */
   public Set<OFG_Vertex> getAllVertices_Forgetful(int npc, int depth) 
   {
-    Set<OFG_Vertex> res = new HashSet(graph.vertexSet());
-    res.remove(root);
-    res.remove(end);
+    Set<OFG_Vertex> res = new HashSet();
+    for (Set<OFG_Vertex> bucket: getVertexBuckets_Forgetful(npc, depth)) res.addAll(bucket);
+    return res;
+  }
 
-    Set<OFG_Vertex> invalidVertices = new HashSet();
-    Iterator<OFG_Vertex> ite = res.iterator();
-    while ( ite.hasNext() ) 
+  /**
+   * Returns the buckets of the vertex index holding the vertices which are
+   * valid w.r.t the npc and depth: the vertices at depth {@code depth} and
+   * the vertices having at least {@code npc} policy changes.
+   *
+   * @param npc Number of policy changes of the vertex from which we want to get all the vertices.
+   * @param depth Depth of the vertex from which we want to get all the vertices.
+   * @return The buckets of valid vertices.
+   */
+  private List<Set<OFG_Vertex>> getVertexBuckets_Forgetful(int npc, int depth) 
+  {
+    List<Set<OFG_Vertex>> buckets = new ArrayList<Set<OFG_Vertex>>();
+    for (Map.Entry<Integer, SortedMap<Integer, Set<OFG_Vertex>>> level: getDepthIndex().entrySet()) 
     {
-      OFG_Vertex v = ite.next();
-      if (v.getNumberOfPolicyChanges() < npc && v.getDepth() != depth)
-      {
-        invalidVertices.add(v);
-      }
+      SortedMap<Integer, Set<OFG_Vertex>> npc2vertices = level.getValue();
+      if ( level.getKey().intValue() != depth ) npc2vertices = npc2vertices.tailMap(npc);
+      buckets.addAll(npc2vertices.values());
     }
+    return buckets;
+  }
 
-    res.removeAll(invalidVertices);
+  /**
+   * Returns the output vertices at the provided depth.
+   *
+   * @param depth The depth of the vertices.
+   * @return An unmodifiable view of the vertices at depth {@code depth}.
+   */
+  public Set<OFG_Vertex> getVerticesAtDepth(int depth) 
+  {
+    getDepthIndex();
+    Set<OFG_Vertex> res = depth2vertices.get(depth);
+    return ( res == null ) ? Collections.<OFG_Vertex>emptySet() : Collections.unmodifiableSet(res);
+  }
 
-    return res;
+  /**
+   * Returns the index of the output vertices by depth and number of policy
+   * changes, building it from the graph if needed (e.g. after
+   * deserialization).
+   *
+   * @return The index of the output vertices.
+   */
+  private Map<Integer, SortedMap<Integer, Set<OFG_Vertex>>> getDepthIndex() 
+  {
+    if ( depth2npc2vertices == null ) 
+    {
+      depth2npc2vertices = new TreeMap();
+      depth2vertices = new HashMap();
+      for (OFG_Vertex v: graph.vertexSet())
+        if ( v instanceof OutputVertex ) indexVertex(v);
+    }
+    return depth2npc2vertices;
+  }
+
+  /**
+   * Adds an output vertex to the index.
+   *
+   * @param v The vertex to index.
+   */
+  private void indexVertex(OFG_Vertex v) 
+  {
+    Integer depth = v.getDepth();
+    SortedMap<Integer, Set<OFG_Vertex>> npc2vertices = getDepthIndex().get(depth);
+    if ( npc2vertices == null ) 
+    {
+      npc2vertices = new TreeMap();
+      depth2npc2vertices.put(depth, npc2vertices);
+      depth2vertices.put(depth, new LinkedHashSet());
+    }
+    Set<OFG_Vertex> bucket = npc2vertices.get(v.getNumberOfPolicyChanges());
+    if ( bucket == null ) 
+    {
+      bucket = new LinkedHashSet();
+      npc2vertices.put(v.getNumberOfPolicyChanges(), bucket);
+    }
+    bucket.add(v);
+    depth2vertices.get(depth).add(v);
+  }
+
+  /**
+   * Removes an output vertex from the index.
+   *
+   * @param v The vertex to remove.
+   */
+  private void unindexVertex(OFG_Vertex v) 
+  {
+    SortedMap<Integer, Set<OFG_Vertex>> npc2vertices = getDepthIndex().get(v.getDepth());
+    if ( npc2vertices == null ) return;
+    Set<OFG_Vertex> bucket = npc2vertices.get(v.getNumberOfPolicyChanges());
+    if ( bucket != null ) bucket.remove(v);
+    depth2vertices.get(v.getDepth()).remove(v);
   }
 
   /**
@@ -255,6 +351,25 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     return res;
   }
 
+  /**
+   * Returns the output vertex preceding the provided vertex.
+   *
+   * @param vertex The vertex whose parent is to be retrieved.
+   * @return The parent output vertex, or {@code null} if there is none.
+   */
+  public OFG_Vertex getParentOf(OFG_Vertex vertex) 
+  {
+    OFG_Vertex res = null;
+    for (DefaultEdge e: graph.incomingEdgesOf(vertex)) 
+    {
+      OFG_Vertex source = graph.getEdgeSource(e);
+      if ( source == root || source == end ) continue;
+      if ( res != null ) throw new Error("OFG_BasedOnJGraphT.getParentOf(OFG_Vertex) works only for trees!");
+      res = source;
+    }
+    return res;
+  }
+
   /**
    * Returns the vertices that are successors of the provided vertex.
    *
@@ -275,6 +390,46 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     return res;
   }
 
+  /**
+   * Returns the first successor of the provided vertex, in the order of the
+   * outgoing edges.
+   *
+   * @param vertex The vertex whose successors are to be walked, or
+   *   {@code null} to walk the initial vertices.
+   * @return The first successor, or {@code null} if there is none.
+   */
+  public OFG_Vertex getFirstSuccessorOf(OFG_Vertex vertex) 
+  {
+    for (DefaultEdge e: graph.outgoingEdgesOf(vertex == null ? root : vertex)) 
+    {
+      OFG_Vertex target = graph.getEdgeTarget(e);
+      if ( target != root && target != end ) return target;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the vertex following the provided vertex among the successors of
+   * its parent, in the order of the outgoing edges of the parent.
+   *
+   * @param vertex The vertex whose next sibling is to be retrieved.
+   * @return The next sibling, or {@code null} if there is none.
+   */
+  public OFG_Vertex getNextSiblingOf(OFG_Vertex vertex) 
+  {
+    Set<DefaultEdge> inEdges = graph.incomingEdgesOf(vertex);
+    if ( inEdges.size() != 1 ) throw new Error("OFG_BasedOnJGraphT.getNextSiblingOf(OFG_Vertex) works only for trees!");
+    OFG_Vertex parent = graph.getEdgeSource(inEdges.iterator().next());
+    boolean found = false;
+    for (DefaultEdge e: graph.outgoingEdgesOf(parent)) 
+    {
+      OFG_Vertex target = graph.getEdgeTarget(e);
+      if ( found && target != root && target != end ) return target;
+      if ( target == vertex ) found = true;
+    }
+    return null;
+  }
+
   /**
    * Test if the provided vertex can be the start of an output sequence.
    *
@@ -305,14 +460,8 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   public Set<EE_Variable> getVariables() 
   {
     Set<EE_Variable> res = new HashSet();
-    Iterator<OFG_Vertex> ite = getAllVertices().iterator();
-    while ( ite.hasNext() ) 
-    {
-      OFG_Vertex v = ite.next();
-      res.addAll(v.getOutput().getVariables());
-      res.addAll(v.getPathCondition().getVariables());
-      res.addAll(v.getOtherProperties().getVariables());
-    }
+    for (Set<OFG_Vertex> level: getDepthIndexByDepth().values())
+      for (OFG_Vertex v: level) addVariablesOf(v, res);
     return res;
   }
 
@@ -324,17 +473,36 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   public Set<EE_Variable> getVariables_Forgetful(int npc, int depth) 
   {
     Set<EE_Variable> res = new HashSet();
-    Iterator<OFG_Vertex> ite = getAllVertices_Forgetful(npc, depth).iterator();
-    while ( ite.hasNext() ) 
-    {
-      OFG_Vertex v = ite.next();
-      res.addAll(v.getOutput().getVariables());
-      res.addAll(v.getPathCondition().getVariables());
-      res.addAll(v.getOtherProperties().getVariables());
-    }
+    for (Set<OFG_Vertex> bucket: getVertexBuckets_Forgetful(npc, depth))
+      for (OFG_Vertex v: bucket) addVariablesOf(v, res);
     return res;
   }
 
+  /**
+   * Returns the output vertices indexed by depth.
+   *
+   * @return The index of the output vertices by depth.
+   */
+  private Map<Integer, Set<OFG_Vertex>> getDepthIndexByDepth() 
+  {
+    getDepthIndex();
+    return depth2vertices;
+  }
+
+  /**
+   * Collects the variables occuring in the output, path condition and other
+   * properties of a vertex.
+   *
+   * @param v The vertex.
+   * @param vars Updated with the variables of {@code v}.
+   */
+  private static void addVariablesOf(OFG_Vertex v, Set<EE_Variable> vars) 
+  {
+    vars.addAll(v.getOutput().getVariables());
+    vars.addAll(v.getPathCondition().getVariables());
+    vars.addAll(v.getOtherProperties().getVariables());
+  }
+
   /**
    * Retrieves the number of nodes in this output flow graph.
    *
@@ -342,7 +510,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
    */
   public int getNbNodes() 
   {
-    return this.getAllVertices().size();
+    return graph.vertexSet().size() - 2;
   }
 
   /**
@@ -529,6 +697,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   private abstract class StructuralVertex implements OFG_Vertex, Serializable {
     public EExpression getOutput() { throw new Error("StructuralVertices do not have an output."); }
     public EFormula getPathCondition() { throw new Error("StructuralVertices do not have path conditions."); }
+    public EFormula getPathConditionDelta() { throw new Error("StructuralVertices do not have path conditions."); }
     public EFormula getOtherProperties() { throw new Error("StructuralVertices do not have properties."); }
     public String getPolicy() { throw new Error("StructuralVertices do not have policy."); }
     public Boolean getPolicyChanged() { throw new Error("StructuralVertices do not have policy changed."); }
@@ -546,6 +715,8 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
 
     public EFormula getLeakedPC() { throw new Error("StructuralVertices do not have leakedPC."); }
     public void setLeakedPC(EFormula leakedPC) { throw new Error("StructuralVertices do not have leakedPC."); }
+    public OutputSequence getOutputSequence() { throw new Error("StructuralVertices do not have output sequences."); }
+    public void setOutputSequence(OutputSequence seq) { throw new Error("StructuralVertices do not have output sequences."); }
   }
 
   /**
@@ -588,7 +759,13 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
   private class OutputVertex implements OFG_Vertex, Serializable {
     private final int id;
     private EExpression output;
-    private EFormula pathCondition;
+    /**
+     * Conjuncts added to the path condition of the predecessor (if {@code
+     * pcIsDelta}, {@code null} if there are none), or the whole path
+     * condition. The full path condition is rebuilt on demand.
+     */
+    private EFormula pcDelta;
+    private boolean pcIsDelta;
     private EFormula otherProperties;
     private String policy;
     private boolean policyChanged;
@@ -596,6 +773,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     private int depth;
 
     private EFormula leakedPC;
+    private transient OutputSequence outputSequence = null;
 
     /**
      * Constructor of output vertices.
@@ -606,7 +784,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     private OutputVertex(EExpression out, EFormula pc) {
       id = vertexCounter++;
       output = out;
-      pathCondition = pc;
+      setPathCondition(pc);
       otherProperties = new EF_Conjunction();
       policy = null;
       policyChanged = false;
@@ -621,16 +799,19 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
      *
      * @param out The "value" outputted.
      * @param pc The path condition to reach this output.
+     * @param parentPos The predecessor output vertex, or {@code null}.
      * @param plc Active policy at this output.
      * @param plcChanged Is this the first output after a policy change?.
      * @param npc Number of policy changes up to this vertex.
      * @param dep The depth of this vertex.
      */
-    private OutputVertex(EExpression out, EFormula pc, String plc, boolean plcChanged, int npc, int dep) 
+    private OutputVertex(EExpression out, EFormula pc, OutputVertex parentPos, String plc, boolean plcChanged, int npc, int dep) 
     {
       id = vertexCounter++;
       output = out;
-      pathCondition = pc;
+      EF_Conjunction delta = (parentPos == null) ? null : PathConditionDelta.extract(pc, parentPos.getPathCondition());
+      pcIsDelta = (delta != null);
+      pcDelta = pcIsDelta ? (delta.getSubFormulas().isEmpty() ? null : delta) : pc;
       otherProperties = new EF_Conjunction();
       policy = plc;
       policyChanged = plcChanged;
@@ -660,6 +841,26 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
       leakedPC = lpc; 
     }
 
+    /**
+     * Retrieves the memorized output sequence of this vertex.
+     *
+     * @return The output sequence of this vertex, or {@code null}.
+     */
+    public OutputSequence getOutputSequence()
+    {
+      return outputSequence;
+    }
+
+    /**
+     * Memorizes the output sequence of this vertex.
+     *
+     * @param seq The output sequence of this vertex.
+     */
+    public void setOutputSequence(OutputSequence seq)
+    {
+      outputSequence = seq;
+    }
+
     /**
      * Retrieve the unique ID of this vertex.
      *
@@ -681,13 +882,58 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     }
 
     /**
-     * Retrieve the path condition to reach this vertex.
+     * Retrieve the path condition to reach this vertex. If it is not cached,
+     * it is rebuilt from the deltas of this vertex and its predecessors.
      *
      * @return The path condition.
      */
     public EFormula getPathCondition() 
     {
-      return pathCondition;
+      if ( ! pcIsDelta ) return pcDelta;
+      PathConditionDelta.ViewCache<OutputVertex> views = getPathConditions();
+      EFormula pc = views.get(this);
+      if ( pc == null ) 
+      {
+        LinkedList<OutputVertex> toRebuild = new LinkedList<OutputVertex>();
+        OutputVertex v = this;
+        while ( pc == null && v.pcIsDelta ) 
+        {
+          toRebuild.addFirst(v);
+          v = v.getPredecessor();
+          pc = views.get(v);
+        }
+        if ( pc == null ) pc = v.pcDelta;
+        for (OutputVertex w: toRebuild) 
+        {
+          if ( w.pcDelta != null ) pc = PathConditionDelta.expand(w.pcDelta, pc);
+          views.put(w, pc);
+        }
+      }
+      return pc;
+    }
+
+    /**
+     * Retrieve the conjuncts added by the path condition of this vertex to the
+     * path condition of its predecessor output vertex.
+     *
+     * @return The added conjuncts, or the whole path condition if this vertex
+     *   has no predecessor output vertex.
+     */
+    public EFormula getPathConditionDelta() 
+    {
+      if ( pcIsDelta ) return ( pcDelta == null ) ? new EF_Conjunction() : pcDelta;
+      OutputVertex p = getPredecessor();
+      return ( p == null ) ? pcDelta : PathConditionDelta.difference(pcDelta, p.getPathCondition());
+    }
+
+    /**
+     * Retrieves the output vertex preceding this vertex.
+     *
+     * @return The predecessor output vertex, or {@code null} if there is none.
+     */
+    private OutputVertex getPredecessor() 
+    {
+      return (OutputVertex) getParentOf(this);
     }
 
     /**
@@ -749,16 +995,21 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     public void setOutput(EExpression exp) 
     {
       output = exp;
+      outputSequence = null;
     }
 
     /**
-     * Sets the path condition to reach this vertex.
+     * Sets the path condition to reach this vertex. It is stored as a whole,
+     * not as a delta. The cached path conditions are dropped since some of
+     * them may have been rebuilt from the replaced one.
      *
      * @param path The path condition for this vertex.
      */
     public void setPathCondition(EFormula path)
     {
-      pathCondition = path;
+      pcDelta = path;
+      pcIsDelta = false;
+      getPathConditions().clear();
     }
 
     /**
@@ -798,7 +1049,10 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     */
     public void setNumberOfPolicyChanges(int npc)
     {
+      unindexVertex(this);
       numberOfPolicyChanges = npc;
+      indexVertex(this);
+      outputSequence = null;
     }
 
     /**
@@ -808,7 +1062,10 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
     */
     public void setDepth(int dep)
     {
+      unindexVertex(this);
       depth = dep;
+      indexVertex(this);
+      outputSequence = null;
     }
 
     /**
@@ -825,7 +1082,7 @@ class OFG_BasedOnJGraphT implements OutputFlowGraph, Serializable {
         ", New policy: " + policyChanged + 
         ", NPC: " + numberOfPolicyChanges +
         ", Depth: " + depth +
-        ", IFF: " + pathCondition +
+        ", IFF: " + getPathCondition() +
         ", UTC: " + otherProperties + " ]]"; }
       return retVal;
     }
@@ -0,0 +1,1190 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.*;
+import java.util.*;
+import java.awt.Dimension;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+
+import com.mxgraph.view.mxGraph;
+import com.mxgraph.swing.mxGraphComponent;
+import com.mxgraph.layout.mxCompactTreeLayout;
+
+
+/**
+ * This class implements {@link OutputFlowGraph} as a tree stored in arrays.
+ * Vertices are identified by int slots: slot {@link #ROOT} and {@link #END}
+ * are the internal root and end vertices, output vertices occupy the
+ * following slots in the order of their registration. The tree structure is
+ * kept in parent/first-child/next-sibling arrays and the properties of the
+ * output vertices in parallel arrays (structure of arrays); policies are
+ * stored as indexes in a table of the policies encountered. Walking up the
+ * tree with {@link #getParentOf(OFG_Vertex)}, or along the children of a
+ * vertex with {@link #getFirstSuccessorOf(OFG_Vertex)} and
+ * {@link #getNextSiblingOf(OFG_Vertex)}, reads the arrays and does not
+ * allocate; sets of children are views walking the same arrays.
+ *
+ * Compared to {@link OFG_BasedOnJGraphT}, there are no edge objects nor per
+ * vertex edge containers, which lowers the memory needed per vertex.
+ *
+ * @see OFG_BasedOnJGraphT
+ * 
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class OFG_CompactTree implements OutputFlowGraph, Serializable {
+
+  /** Slot of the internal root vertex. */
+  static final int ROOT = 0;
+  /** Slot of the internal end vertex. */
+  static final int END = 1;
+  /** Parent slot of the root and end vertices, and absent child or sibling. */
+  static final int NO_VERTEX = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Number of used slots (including root and end). */
+  private int nbSlots;
+  private int[] parent;
+  private int[] firstChild;
+  private int[] lastChild;
+  private int[] nextSibling;
+  private int[] depth;
+  private int[] numberOfPolicyChanges;
+  private int[] policyIndex;
+  private BitSet policyChanged;
+  private BitSet endOfExecution;
+  private EExpression[] output;
+  /**
+   * Conjuncts added to the path condition of the parent (if set in {@code
+   * pcIsDelta}, {@code null} if there are none), or whole path conditions.
+   */
+  private EFormula[] pcDelta;
+  private BitSet pcIsDelta;
+  /** Full path conditions of the most recently used slots, rebuilt on demand from {@code pcDelta}. */
+  private transient PathConditionDelta.ViewCache<Integer> pathConditions;
+  private EFormula[] otherProperties;
+  private EFormula[] leakedPC;
+  private transient OutputSequence[] outputSequence;
+  private OFG_Vertex[] vertex;
+
+  /** Table of the policies, vertices refer to them by index. */
+  private List<String> policies;
+  private Map<String, Integer> policy2index;
+
+  private BacktrackTable backtrackablePoints;
+  private int currentPosition;
+  private int currentPolicy;
+  private boolean currentPolicyChanged;
+  private int currentNumberOfPolicyChanges;
+  private int currentDepth;
+
+  /** Output vertices indexed by depth, then by number of policy changes */
+  private transient List<SortedMap<Integer, Set<OFG_Vertex>>> depth2npc2vertices;
+  /** Output vertices indexed by depth */
+  private transient List<Set<OFG_Vertex>> depth2vertices;
+
+  /**
+   * Default constructor.
+   * Initializes the data structures.
+   */
+  public OFG_CompactTree() {
+    parent = new int[INITIAL_CAPACITY];
+    firstChild = new int[INITIAL_CAPACITY];
+    lastChild = new int[INITIAL_CAPACITY];
+    nextSibling = new int[INITIAL_CAPACITY];
+    depth = new int[INITIAL_CAPACITY];
+    numberOfPolicyChanges = new int[INITIAL_CAPACITY];
+    policyIndex = new int[INITIAL_CAPACITY];
+    policyChanged = new BitSet();
+    endOfExecution = new BitSet();
+    output = new EExpression[INITIAL_CAPACITY];
+    pcDelta = new EFormula[INITIAL_CAPACITY];
+    pcIsDelta = new BitSet();
+    otherProperties = new EFormula[INITIAL_CAPACITY];
+    leakedPC = new EFormula[INITIAL_CAPACITY];
+    outputSequence = new OutputSequence[INITIAL_CAPACITY];
+    vertex = new OFG_Vertex[INITIAL_CAPACITY];
+    policies = new ArrayList<String>();
+    policy2index = new HashMap<String, Integer>();
+    backtrackablePoints = new BacktrackTable();
+
+    nbSlots = 0;
+    newSlot(NO_VERTEX, new StructuralVertex("root"));
+    newSlot(NO_VERTEX, new StructuralVertex("end"));
+    currentPosition = ROOT;
+    currentPolicy = indexOfPolicy("");
+    currentPolicyChanged = false;
+    currentNumberOfPolicyChanges = 0;
+    currentDepth = 0;
+  }
+
+  /**
+   * Allocates a new slot, links it as the last child of {@code parentSlot}
+   * (if any) and associates it to its vertex object.
+   *
+   * @param parentSlot The slot of the parent, or {@link #NO_VERTEX}.
+   * @param v The vertex object of the new slot.
+   * @return The new slot.
+   */
+  private int newSlot(int parentSlot, OFG_Vertex v) 
+  {
+    if ( nbSlots == parent.length ) grow(2 * nbSlots);
+    int slot = nbSlots++;
+    parent[slot] = parentSlot;
+    firstChild[slot] = NO_VERTEX;
+    lastChild[slot] = NO_VERTEX;
+    nextSibling[slot] = NO_VERTEX;
+    vertex[slot] = v;
+    if ( parentSlot != NO_VERTEX ) 
+    {
+      if ( lastChild[parentSlot] == NO_VERTEX ) firstChild[parentSlot] = slot;
+      else nextSibling[lastChild[parentSlot]] = slot;
+      lastChild[parentSlot] = slot;
+    }
+    return slot;
+  }
+
+  /**
+   * Grows the arrays to the provided capacity.
+   *
+   * @param capacity The new capacity of the arrays.
+   */
+  private void grow(int capacity) 
+  {
+    parent = Arrays.copyOf(parent, capacity);
+    firstChild = Arrays.copyOf(firstChild, capacity);
+    lastChild = Arrays.copyOf(lastChild, capacity);
+    nextSibling = Arrays.copyOf(nextSibling, capacity);
+    depth = Arrays.copyOf(depth, capacity);
+    numberOfPolicyChanges = Arrays.copyOf(numberOfPolicyChanges, capacity);
+    policyIndex = Arrays.copyOf(policyIndex, capacity);
+    output = Arrays.copyOf(output, capacity);
+    pcDelta = Arrays.copyOf(pcDelta, capacity);
+    otherProperties = Arrays.copyOf(otherProperties, capacity);
+    leakedPC = Arrays.copyOf(leakedPC, capacity);
+    outputSequence = Arrays.copyOf(getOutputSequences(), capacity);
+    vertex = Arrays.copyOf(vertex, capacity);
+  }
+
+  /**
+   * Returns the index of a policy in the table of policies, adding it if
+   * needed.
+   *
+   * @param plc The policy.
+   * @return The index of {@code plc}.
+   */
+  private int indexOfPolicy(String plc) 
+  {
+    Integer idx = policy2index.get(plc);
+    if ( idx == null ) 
+    {
+      idx = policies.size();
+      policies.add(plc);
+      policy2index.put(plc, idx);
+    }
+    return idx;
+  }
+
+  /**
+   * Returns the memorized output sequences, recreating the array after
+   * deserialization.
+   *
+   * @return The output sequences by slot.
+   */
+  private OutputSequence[] getOutputSequences() 
+  {
+    if ( outputSequence == null ) outputSequence = new OutputSequence[parent.length];
+    return outputSequence;
+  }
+
+  /**
+   * Returns the cache of the full path conditions, allocating it after
+   * deserialization.
+   *
+   * @return The cache of the full path conditions.
+   */
+  private PathConditionDelta.ViewCache<Integer> getPathConditions() 
+  {
+    if ( pathConditions == null ) 
+      pathConditions = new PathConditionDelta.ViewCache<Integer>(PathConditionDelta.VIEW_CACHE_CAPACITY);
+    return pathConditions;
+  }
+
+  /**
+   * Returns the path condition of an output vertex, rebuilding it (and the
+   * ones of its ancestors) from the deltas if it is not cached.
+   *
+   * @param slot The slot of an output vertex.
+   * @return The path condition of the vertex.
+   */
+  private EFormula pathConditionOf(int slot) 
+  {
+    if ( ! pcIsDelta.get(slot) ) return pcDelta[slot];
+    PathConditionDelta.ViewCache<Integer> views = getPathConditions();
+    EFormula pc = views.get(slot);
+    if ( pc == null ) 
+    {
+      List<Integer> toRebuild = new ArrayList<Integer>();
+      int s = slot;
+      while ( pc == null && pcIsDelta.get(s) ) 
+      {
+        toRebuild.add(s);
+        s = parent[s];
+        pc = views.get(s);
+      }
+      if ( pc == null ) pc = pcDelta[s];
+      for (int i = toRebuild.size() - 1; i >= 0; i--) 
+      {
+        int c = toRebuild.get(i);
+        if ( pcDelta[c] != null ) pc = PathConditionDelta.expand(pcDelta[c], pc);
+        views.put(c, pc);
+      }
+    }
+    return pc;
+  }
+
+  /**
+   * Sets the path condition of an output vertex, storing it as a delta if it
+   * extends the path condition of the parent output vertex. Path conditions
+   * stored as a whole replace existing ones, so the cached path conditions
+   * possibly rebuilt from them are dropped.
+   *
+   * @param slot The slot of an output vertex.
+   * @param pc The path condition of the vertex.
+   * @param asDelta Should the path condition be stored as a delta if possible?
+   */
+  private void setPathConditionOf(int slot, EFormula pc, boolean asDelta) 
+  {
+    int p = parent[slot];
+    EF_Conjunction delta = null;
+    if ( asDelta && p != ROOT && p != END ) delta = PathConditionDelta.extract(pc, pathConditionOf(p));
+    pcIsDelta.set(slot, delta != null);
+    if ( delta == null ) 
+    {
+      pcDelta[slot] = pc;
+      if ( ! asDelta ) getPathConditions().clear();
+    } 
+    else 
+    {
+      pcDelta[slot] = delta.getSubFormulas().isEmpty() ? null : delta;
+    }
+  }
+
+  /**
+   * Returns the slot of an output vertex of this OFG.
+   *
+   * @param v An output vertex of this OFG.
+   * @return The slot of {@code v}.
+   */
+  private int slotOf(OFG_Vertex v) 
+  {
+    if ( v instanceof OutputVertex && ((OutputVertex) v).getGraph() == this )
+      return ((OutputVertex) v).slot;
+    if ( v == vertex[ROOT] ) return ROOT;
+    if ( v == vertex[END] ) return END;
+    throw new Error("The vertex " + v + " does not belong to this OFG.");
+  }
+
+  /**
+   * Update the internal data structure to prepare futur potential backtracks.
+   *
+   * @param id Identifier of a potential future backtrack destination
+   * @param check Check value of {@code id}
+   */
+  public void registerBacktrackablePoint(long id, int check) 
+  {
+    int registered = backtrackablePoints.lookup(id, check);
+    if ( registered != BacktrackTable.NO_SNAPSHOT && backtrackablePoints.getPosition(registered) != vertex[currentPosition] ) 
+    {
+      String errorDescr = "ERROR: a different OFG position is already registered for " + id + ".";
+      throw new Error(errorDescr);
+    }
+    backtrackablePoints.put(id, check, vertex[currentPosition], policies.get(currentPolicy), currentPolicyChanged, currentNumberOfPolicyChanges, currentDepth);
+  }
+
+  /**
+   * Update the internal data structure to reflect a backtrack in the search process.
+   *
+   * @param id Identifier of the destination of the backtrack.
+   * @param check Check value of {@code id}.
+   */
+  public void backtrackTo(long id, int check) 
+  {
+    int snapshot = backtrackablePoints.lookup(id, check);
+    if ( snapshot == BacktrackTable.NO_SNAPSHOT ) 
+    {
+      String errorDescr = "There is no backtrackable point registered for " + id + " (among " + backtrackablePoints.size() + ").";
+      throw new Error(errorDescr);
+    }
+    currentPosition = slotOf((OFG_Vertex) backtrackablePoints.getPosition(snapshot));
+    getPathConditions().backtrackTo(currentPosition);
+    currentPolicy = indexOfPolicy(backtrackablePoints.getPolicy(snapshot));
+    currentPolicyChanged = backtrackablePoints.getPolicyChanged(snapshot);
+    currentNumberOfPolicyChanges = backtrackablePoints.getNumberOfPolicyChanges(snapshot);
+    currentDepth = backtrackablePoints.getDepth(snapshot);
+  }
+
+  /**
+   * Registers an output in the internal data structures.
+   *
+   * @param out The "value" outputted
+   * @param pc The path condition to reach this output
+   * @return The node add to the OFG to represent this output
+   */
+  public OFG_Vertex registerOutput(EExpression out, EFormula pc) 
+  {
+    if ( pc == null ) { throw new Error("The PC must not be null"); }
+
+    currentDepth += 1;
+    int slot = newSlot(currentPosition, null);
+    OFG_Vertex v = new OutputVertex(slot);
+    vertex[slot] = v;
+    output[slot] = out;
+    setPathConditionOf(slot, pc, true);
+    getPathConditions().enter(slot, pc);
+    otherProperties[slot] = null;
+    leakedPC[slot] = null;
+    getOutputSequences()[slot] = null;
+    policyIndex[slot] = currentPolicy;
+    policyChanged.set(slot, currentPolicyChanged);
+    numberOfPolicyChanges[slot] = currentNumberOfPolicyChanges;
+    depth[slot] = currentDepth;
+    indexVertex(v);
+    currentPolicyChanged = false;
+    currentPosition = slot;
+    return v;
+  }
+
+  /**
+   * Sets the active policy
+   *
+   * @param plc input policy
+   */
+  public void setActivePolicy(String plc) 
+  {
+    currentPolicy = indexOfPolicy(plc);
+    currentPolicyChanged = true;
+    currentNumberOfPolicyChanges += 1;
+  }
+
+  /**
+   * Registers that the current state can be an end of execution, and therefore
+   * an end of output sequence.
+   */
+  public void registerEndOfExecution() {
+    if ( currentPosition != END ) endOfExecution.set(currentPosition);
+    currentPosition = END;
+  }
+
+  /**
+   * Returns the depth of the current position in the OFG, i.e. the number of
+   * outputs registered on the path leading to it.
+   *
+   * @return The depth of the current position.
+   */
+  public int getCurrentDepth() {
+    return currentDepth;
+  }
+
+  /**
+   * Returns all the vertices/nodes in the OFG.
+   * In particular, in this implementation there are internal nodes root and end
+   * which are not returned by this method.
+   *
+   * @return The set of vertices belonging to this OFG.
+   */
+  public Set<OFG_Vertex> getAllVertices() 
+  {
+    Set<OFG_Vertex> res = new HashSet();
+    for (int slot = END + 1; slot < nbSlots; slot++) res.add(vertex[slot]);
+    return res;
+  }
+
+  /**
+   * Returns all the (non-internal) vertices/nodes in the OFG which are valid w.r.t the npc and depth.
+   * In particular, in this implementation there are internal nodes root and end
+   * which are not returned by this method.
+   *
+   * @param npc Number of policy changes of the vertex from which we want to get all the vertices.
+   * @param dep Depth of the vertex from which we want to get all the vertices.
+   * @return The set of vertices belonging to this OFG.
+  */
+  public Set<OFG_Vertex> getAllVertices_Forgetful(int npc, int dep) 
+  {
+    Set<OFG_Vertex> res = new HashSet();
+    for (Set<OFG_Vertex> bucket: getVertexBuckets_Forgetful(npc, dep)) res.addAll(bucket);
+    return res;
+  }
+
+  /**
+   * Returns the buckets of the vertex index holding the vertices which are
+   * valid w.r.t the npc and depth: the vertices at depth {@code dep} and
+   * the vertices having at least {@code npc} policy changes.
+   *
+   * @param npc Number of policy changes of the vertex from which we want to get all the vertices.
+   * @param dep Depth of the vertex from which we want to get all the vertices.
+   * @return The buckets of valid vertices.
+   */
+  private List<Set<OFG_Vertex>> getVertexBuckets_Forgetful(int npc, int dep) 
+  {
+    List<Set<OFG_Vertex>> buckets = new ArrayList<Set<OFG_Vertex>>();
+    List<SortedMap<Integer, Set<OFG_Vertex>>> index = getDepthIndex();
+    for (int d = 0; d < index.size(); d++) 
+    {
+      SortedMap<Integer, Set<OFG_Vertex>> npc2vertices = index.get(d);
+      if ( npc2vertices == null ) continue;
+      if ( d != dep ) npc2vertices = npc2vertices.tailMap(npc);
+      buckets.addAll(npc2vertices.values());
+    }
+    return buckets;
+  }
+
+  /**
+   * Returns the output vertices at the provided depth.
+   *
+   * @param dep The depth of the vertices.
+   * @return An unmodifiable view of the vertices at depth {@code dep}.
+   */
+  public Set<OFG_Vertex> getVerticesAtDepth(int dep) 
+  {
+    getDepthIndex();
+    Set<OFG_Vertex> res = ( dep >= 0 && dep < depth2vertices.size() ) ? depth2vertices.get(dep) : null;
+    return ( res == null ) ? Collections.<OFG_Vertex>emptySet() : Collections.unmodifiableSet(res);
+  }
+
+  /**
+   * Returns the index of the output vertices by depth and number of policy
+   * changes, building it from the arrays if needed (e.g. after
+   * deserialization).
+   *
+   * @return The index of the output vertices.
+   */
+  private List<SortedMap<Integer, Set<OFG_Vertex>>> getDepthIndex() 
+  {
+    if ( depth2npc2vertices == null ) 
+    {
+      depth2npc2vertices = new ArrayList<SortedMap<Integer, Set<OFG_Vertex>>>();
+      depth2vertices = new ArrayList<Set<OFG_Vertex>>();
+      for (int slot = END + 1; slot < nbSlots; slot++) indexVertex(vertex[slot]);
+    }
+    return depth2npc2vertices;
+  }
+
+  /**
+   * Adds an output vertex to the index.
+   *
+   * @param v The vertex to index.
+   */
+  private void indexVertex(OFG_Vertex v) 
+  {
+    int dep = v.getDepth();
+    List<SortedMap<Integer, Set<OFG_Vertex>>> index = getDepthIndex();
+    while ( index.size() <= dep ) 
+    {
+      index.add(null);
+      depth2vertices.add(null);
+    }
+    SortedMap<Integer, Set<OFG_Vertex>> npc2vertices = index.get(dep);
+    if ( npc2vertices == null ) 
+    {
+      npc2vertices = new TreeMap();
+      index.set(dep, npc2vertices);
+      depth2vertices.set(dep, new LinkedHashSet());
+    }
+    Set<OFG_Vertex> bucket = npc2vertices.get(v.getNumberOfPolicyChanges());
+    if ( bucket == null ) 
+    {
+      bucket = new LinkedHashSet();
+      npc2vertices.put(v.getNumberOfPolicyChanges(), bucket);
+    }
+    bucket.add(v);
+    depth2vertices.get(dep).add(v);
+  }
+
+  /**
+   * Removes an output vertex from the index.
+   *
+   * @param v The vertex to remove.
+   */
+  private void unindexVertex(OFG_Vertex v) 
+  {
+    int dep = v.getDepth();
+    List<SortedMap<Integer, Set<OFG_Vertex>>> index = getDepthIndex();
+    if ( dep < 0 || dep >= index.size() || index.get(dep) == null ) return;
+    Set<OFG_Vertex> bucket = index.get(dep).get(v.getNumberOfPolicyChanges());
+    if ( bucket != null ) bucket.remove(v);
+    depth2vertices.get(dep).remove(v);
+  }
+
+  /**
+   * Returns the first child of a slot.
+   *
+   * @param slot The slot whose first child is to be retrieved.
+   * @return The slot of the first child, or {@link #NO_VERTEX}.
+   */
+  int getFirstChild(int slot) { return firstChild[slot]; }
+
+  /**
+   * Returns the next sibling of a slot.
+   *
+   * @param slot The slot whose next sibling is to be retrieved.
+   * @return The slot of the next sibling, or {@link #NO_VERTEX}.
+   */
+  int getNextSibling(int slot) { return nextSibling[slot]; }
+
+  /**
+   * Returns the output vertices among the children of the provided slot, as
+   * an unmodifiable view walking the first-child/next-sibling arrays.
+   *
+   * @param slot The slot whose children are to be retrieved.
+   * @return The set of children of {@code slot}.
+   */
+  private Set<OFG_Vertex> getChildrenOf(final int slot) 
+  {
+    return new AbstractSet<OFG_Vertex>() {
+      public Iterator<OFG_Vertex> iterator() {
+        return new Iterator<OFG_Vertex>() {
+          private int next = getFirstChild(slot);
+          public boolean hasNext() { return next != NO_VERTEX; }
+          public OFG_Vertex next() {
+            if ( next == NO_VERTEX ) throw new NoSuchElementException();
+            OFG_Vertex res = vertex[next];
+            next = getNextSibling(next);
+            return res;
+          }
+          public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+      public int size() {
+        int res = 0;
+        for (int c = getFirstChild(slot); c != NO_VERTEX; c = getNextSibling(c)) res++;
+        return res;
+      }
+    };
+  }
+
+  /**
+   * Returns the vertices that can be the start of an output sequence.
+   *
+   * @return An unmodifiable view of the vertices starting an output sequence.
+   */
+  public Set<OFG_Vertex> getInitialVertices() 
+  {
+    return getChildrenOf(ROOT);
+  }
+
+  /**
+   * Returns the vertices that are predecessors of the provided vertex. In a
+   * tree, there is at most one.
+   *
+   * @param v The vertex whose predecessors are to be retrieved.
+   * @return The set of predecessors of {@code v}.
+   */
+  public Set<OFG_Vertex> getPredecessorsOf(OFG_Vertex v) 
+  {
+    int p = parent[slotOf(v)];
+    if ( p == NO_VERTEX || p == ROOT || p == END ) return Collections.<OFG_Vertex>emptySet();
+    return Collections.singleton(vertex[p]);
+  }
+
+  /**
+   * Returns the output vertex preceding the provided vertex, read from the
+   * parent array.
+   *
+   * @param v The vertex whose parent is to be retrieved.
+   * @return The parent output vertex, or {@code null} if there is none.
+   */
+  public OFG_Vertex getParentOf(OFG_Vertex v) 
+  {
+    int p = parent[slotOf(v)];
+    return ( p == NO_VERTEX || p == ROOT || p == END ) ? null : vertex[p];
+  }
+
+  /**
+   * Returns the vertices that are successors of the provided vertex.
+   *
+   * @param v The vertex whose successors are to be retrieved.
+   * @return An unmodifiable view of the successors of {@code v}.
+   */
+  public Set<OFG_Vertex> getSuccessorsOf(OFG_Vertex v) 
+  {
+    return getChildrenOf(slotOf(v));
+  }
+
+  /**
+   * Returns the first successor of the provided vertex, read from the
+   * first-child array.
+   *
+   * @param v The vertex whose successors are to be walked, or {@code null}
+   *   to walk the initial vertices.
+   * @return The first successor, or {@code null} if there is none.
+   */
+  public OFG_Vertex getFirstSuccessorOf(OFG_Vertex v) 
+  {
+    int c = getFirstChild(v == null ? ROOT : slotOf(v));
+    return ( c == NO_VERTEX ) ? null : vertex[c];
+  }
+
+  /**
+   * Returns the vertex following the provided vertex among the children of
+   * its parent, read from the next-sibling array.
+   *
+   * @param v The vertex whose next sibling is to be retrieved.
+   * @return The next sibling, or {@code null} if there is none.
+   */
+  public OFG_Vertex getNextSiblingOf(OFG_Vertex v) 
+  {
+    int s = getNextSibling(slotOf(v));
+    return ( s == NO_VERTEX ) ? null : vertex[s];
+  }
+
+  /**
+   * Test if the provided vertex can be the start of an output sequence.
+   *
+   * @param v The vertex to test.
+   * @return True iff there is an output sequence for which {@code v} is the starting state.
+   */
+  public boolean isPotentialStartOfOutputSequence(OFG_Vertex v) 
+  {
+    return parent[slotOf(v)] == ROOT;
+  }
+
+  /**
+   * Test if the provided vertex can be the end of an output sequence.
+   *
+   * @param v The vertex to test.
+   * @return True iff there is an output sequence for which {@code v} is the ending state.
+   */
+  public boolean isPotentialEndOfOutputSequence(OFG_Vertex v) 
+  {
+    return endOfExecution.get(slotOf(v));
+  }
+
+  /**
+   * Retrieves the set of variables occuring in this output flow graph.
+   *
+   * @return The set of variables occuring in this output flow graph.
+   */
+  public Set<EE_Variable> getVariables() 
+  {
+    Set<EE_Variable> res = new HashSet();
+    for (int slot = END + 1; slot < nbSlots; slot++) addVariablesOf(vertex[slot], res);
+    return res;
+  }
+
+  /**
+   * Retrieves the set of variables occuring in this output flow graph w.r.t the forgetful attacker.
+   *
+   * @return The set of variables occuring in this output flow graph w.r.t the forgetful attacker.
+   */
+  public Set<EE_Variable> getVariables_Forgetful(int npc, int dep) 
+  {
+    Set<EE_Variable> res = new HashSet();
+    for (Set<OFG_Vertex> bucket: getVertexBuckets_Forgetful(npc, dep))
+      for (OFG_Vertex v: bucket) addVariablesOf(v, res);
+    return res;
+  }
+
+  /**
+   * Collects the variables occuring in the output, path condition and other
+   * properties of a vertex.
+   *
+   * @param v The vertex.
+   * @param vars Updated with the variables of {@code v}.
+   */
+  private static void addVariablesOf(OFG_Vertex v, Set<EE_Variable> vars) 
+  {
+    vars.addAll(v.getOutput().getVariables());
+    vars.addAll(v.getPathCondition().getVariables());
+    vars.addAll(v.getOtherProperties().getVariables());
+  }
+
+  /**
+   * Retrieves the number of nodes in this output flow graph.
+   *
+   * @return The number of nodes in this output flow graph.
+   */
+  public int getNbNodes() 
+  {
+    return nbSlots - 2;
+  }
+
+  /**
+   * Retrieves the number of edges in this output flow graph, i.e. the number
+   * of output vertices which are not the start of an output sequence.
+   *
+   * @return The number of edges in this output flow graph.
+   */
+  public int getNbEdges() 
+  {
+    int res = 0;
+    for (int slot = END + 1; slot < nbSlots; slot++)
+      if ( parent[slot] != ROOT ) res++;
+    return res;
+  }
+
+  /**
+   * Retrieves the depth of this output flow graph. It corresponds to the length of
+   * the longest sequence of observables generated by this model.
+   * Parents being allocated before their children, the heights of the
+   * vertices are computed in a single pass over the slots.
+   *
+   * @return The depth of this output flow graph.
+   */
+  public int getDepth() {
+    int[] height = new int[nbSlots];
+    int res = 0;
+    for (int slot = END + 1; slot < nbSlots; slot++) {
+      int p = parent[slot];
+      if ( p == ROOT ) height[slot] = 1;
+      else if ( p != END && height[p] > 0 ) height[slot] = height[p] + 1;
+      if ( height[slot] > res ) res = height[slot];
+    }
+    return res;
+  }
+
+  /**
+   * Retrieves the width of this output flow graph. It corresponds to the maximum
+   * number of nodes at any level.
+   *
+   * @return The width of this output flow graph.
+   */
+  public int getWidth() {
+    int[] height = new int[nbSlots];
+    int[] nbNodesAtHeight = new int[nbSlots];
+    int width = 0;
+    for (int slot = END + 1; slot < nbSlots; slot++) {
+      int p = parent[slot];
+      if ( p == ROOT ) height[slot] = 1;
+      else if ( p != END && height[p] > 0 ) height[slot] = height[p] + 1;
+      if ( height[slot] > 0 ) {
+        nbNodesAtHeight[height[slot]] += 1;
+        if ( nbNodesAtHeight[height[slot]] > width ) width = nbNodesAtHeight[height[slot]];
+      }
+    }
+    return width;
+  }
+
+  /**
+   * Returns a String representation of this OFG.
+   *
+   * @return The OFG as a String.
+   */
+  public String toString() {
+    StringBuilder res = new StringBuilder("([");
+    for (int slot = 0; slot < nbSlots; slot++) {
+      if ( slot > 0 ) res.append(", ");
+      res.append(vertex[slot].getId());
+    }
+    res.append("], [");
+    String sep = "";
+    for (int slot = END + 1; slot < nbSlots; slot++) {
+      res.append(sep).append("(").append(vertex[parent[slot]].getId()).append(",").append(vertex[slot].getId()).append(")");
+      sep = ", ";
+    }
+    for (int slot = endOfExecution.nextSetBit(0); slot >= 0; slot = endOfExecution.nextSetBit(slot + 1)) {
+      res.append(sep).append("(").append(vertex[slot].getId()).append(",end)");
+      sep = ", ";
+    }
+    res.append("])\n\n");
+    res.append("Contains variables:");
+    Iterator<EE_Variable> varIte = getVariables().iterator();
+    while ( varIte.hasNext() ) {
+      res.append(" ").append(varIte.next().getName());
+    }
+    res.append("\n\n");
+    for (int slot = END + 1; slot < nbSlots; slot++) {
+      OFG_Vertex v = vertex[slot];
+      res.append(v.getId()).append(" = ").append(v.getTextualDescription()).append("\n");
+    }
+    return res.toString();
+  }
+
+  /**
+   * Returns a vertex list of the vertices in this OFG, in the order of
+   * {@link OFG_BasedOnJGraphT#depthFirstTaversal()}: children are visited
+   * in the reverse order of their registration. Output vertices registered
+   * after an end of execution (without backtrack) come last.
+   *
+   * @return The list of vertices.
+   */
+  public ArrayList<OFG_Vertex> depthFirstTaversal() 
+  {
+    ArrayList<OFG_Vertex> vertices = new ArrayList<OFG_Vertex>(nbSlots - 2);
+    int[] stack = new int[nbSlots];
+    int top = 0;
+    for (int start = ROOT; start <= END; start++) {
+      for (int c = firstChild[start]; c != NO_VERTEX; c = nextSibling[c]) stack[top++] = c;
+      while ( top > 0 ) {
+        int slot = stack[--top];
+        vertices.add(vertex[slot]);
+        for (int c = firstChild[slot]; c != NO_VERTEX; c = nextSibling[c]) stack[top++] = c;
+      }
+    }
+    return vertices;
+  }
+
+  /**
+   * Display the OFG on the screen in an other window.
+   */
+  public void display() {
+    mxGraph mxGraph = new mxGraph();
+    Object rootCell = mxGraph.getDefaultParent();
+    mxGraph.getModel().beginUpdate();
+    try {
+      Object[] displayVertex = new Object[nbSlots];
+      for (int slot = 0; slot < nbSlots; slot++) {
+        String vId = vertex[slot].getId();
+        displayVertex[slot] = mxGraph.insertVertex(rootCell, vId, vId, 0, 0, 80, 30, "ROUNDED;fillColor=green");
+      }
+      for (int slot = END + 1; slot < nbSlots; slot++)
+        mxGraph.insertEdge(rootCell, null, "", displayVertex[parent[slot]], displayVertex[slot]);
+      for (int slot = endOfExecution.nextSetBit(0); slot >= 0; slot = endOfExecution.nextSetBit(slot + 1))
+        mxGraph.insertEdge(rootCell, null, "", displayVertex[slot], displayVertex[END]);
+    } finally {
+      mxGraph.getModel().endUpdate();
+    }
+    mxCompactTreeLayout gLayout = new mxCompactTreeLayout(mxGraph, false);
+    gLayout.execute(rootCell);
+    JFrame window = new JFrame("Output Flow Graph");
+    window.getContentPane().add(new JScrollPane(new mxGraphComponent(mxGraph)));
+    window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    window.pack();
+    Dimension windowDim = window.getSize();
+    window.setSize((int) windowDim.getWidth() + 25, (int) windowDim.getHeight() + 25);
+    window.setVisible(true);
+  }
+
+  /**
+   * Internal representation of the root and end vertices.
+   */
+  private static class StructuralVertex implements OFG_Vertex, Serializable {
+    private final String id;
+    private StructuralVertex(String name) { id = name; }
+    public String getId() { return id; }
+    public EExpression getOutput() { throw new Error("StructuralVertices do not have an output."); }
+    public EFormula getPathCondition() { throw new Error("StructuralVertices do not have path conditions."); }
+    public EFormula getPathConditionDelta() { throw new Error("StructuralVertices do not have path conditions."); }
+    public EFormula getOtherProperties() { throw new Error("StructuralVertices do not have properties."); }
+    public String getPolicy() { return ""; }
+    public Boolean getPolicyChanged() { return false; }
+    public int getNumberOfPolicyChanges() { return 0; }
+    public int getDepth() { return 0; }
+    public void setOutput(EExpression exp) { throw new Error("StructuralVertices do not have an output."); }
+    public void setPathCondition(EFormula path) { throw new Error("StructuralVertices do not have path conditions."); }
+    public void setOtherProperties(EFormula prop) { throw new Error("StructuralVertices do not have properties."); }
+    public void setPolicy(String plc) { throw new Error("StructuralVertices do not have policy."); }
+    public void setPolicyChanged(boolean plcChanged) { throw new Error("StructuralVertices do not have policy changed."); }
+    public void setNumberOfPolicyChanges(int npc) { }
+    public void setDepth(int dep) { }
+    public String getTextualDescription() { return getId(); }
+    public String toString() { return getId(); }
+    public EFormula getLeakedPC() { return null; }
+    public void setLeakedPC(EFormula lpc) { }
+    public OutputSequence getOutputSequence() { throw new Error("StructuralVertices do not have output sequences."); }
+    public void setOutputSequence(OutputSequence seq) { throw new Error("StructuralVertices do not have output sequences."); }
+  }
+
+  /**
+   * Internal representation of output vertices. The vertex only holds its
+   * slot, its properties are stored in the arrays of the tree.
+   */
+  private class OutputVertex implements OFG_Vertex, Serializable {
+    private final int slot;
+
+    /**
+     * Constructor of output vertices.
+     *
+     * @param s The slot of this vertex.
+     */
+    private OutputVertex(int s) 
+    {
+      slot = s;
+    }
+
+    /**
+     * Retrieves the tree this vertex belongs to.
+     *
+     * @return The tree of this vertex.
+     */
+    private OFG_CompactTree getGraph() 
+    {
+      return OFG_CompactTree.this;
+    }
+
+    /**
+     * Retrieves the leaking pc of this vertex.
+     *
+     * @return leaking pc of this vertex.
+    */
+    public EFormula getLeakedPC() 
+    { 
+      return leakedPC[slot]; 
+    }
+
+    /**
+     * Sets the leaking pc of this vertex.
+     *
+     * @param lpc The leaking pc.
+    */
+    public void setLeakedPC(EFormula lpc) 
+    { 
+      leakedPC[slot] = lpc; 
+    }
+
+    /**
+     * Retrieves the memorized output sequence of this vertex.
+     *
+     * @return The output sequence of this vertex, or {@code null}.
+     */
+    public OutputSequence getOutputSequence()
+    {
+      return getOutputSequences()[slot];
+    }
+
+    /**
+     * Memorizes the output sequence of this vertex.
+     *
+     * @param seq The output sequence of this vertex.
+     */
+    public void setOutputSequence(OutputSequence seq)
+    {
+      getOutputSequences()[slot] = seq;
+    }
+
+    /**
+     * Retrieve the unique ID of this vertex.
+     *
+     * @return The unique ID of this vertex.
+     */
+    public String getId() 
+    {
+      return ("V" + (slot - END - 1));
+    }
+    
+    /**
+     * Retrieves the output generated by this vertex.
+     *
+     * @return The output.
+     */
+    public EExpression getOutput() 
+    {
+      return output[slot];
+    }
+
+    /**
+     * Retrieve the path condition to reach this vertex.
+     *
+     * @return The path condition.
+     */
+    public EFormula getPathCondition() 
+    {
+      return pathConditionOf(slot);
+    }
+
+    /**
+     * Retrieve the conjuncts added by the path condition of this vertex to the
+     * path condition of its predecessor output vertex.
+     *
+     * @return The added conjuncts, or the whole path condition if this vertex
+     *   has no predecessor output vertex.
+     */
+    public EFormula getPathConditionDelta() 
+    {
+      if ( pcIsDelta.get(slot) ) return ( pcDelta[slot] == null ) ? new EF_Conjunction() : pcDelta[slot];
+      int p = parent[slot];
+      if ( p == ROOT || p == END ) return pcDelta[slot];
+      return PathConditionDelta.difference(pcDelta[slot], pathConditionOf(p));
+    }
+
+    /**
+     * Retrieves a conjunction of the properties (except path-elated properties)
+     * that hold at this vertex. The empty conjunction is only allocated when
+     * requested.
+     *
+     * @return Properties holding.
+     */
+    public EFormula getOtherProperties() 
+    {
+      if ( otherProperties[slot] == null ) otherProperties[slot] = new EF_Conjunction();
+      return otherProperties[slot];
+    }
+
+     /**
+     * Retrieves the policy on this vertex.
+     *
+     * @return The policy.
+     */
+    public String getPolicy() 
+    {
+      return policies.get(policyIndex[slot]);
+    }
+
+    /**
+     * Retrieves the policy changed boolean of this vertex.
+     *
+     * @return Is this a new output after a policy change?.
+     */
+    public Boolean getPolicyChanged() 
+    {
+      return policyChanged.get(slot);
+    }
+
+    /**
+    * Gets the number of policy changes from root up to this vertex.
+    *
+    * @return The number of policy changes.
+    */
+    public int getNumberOfPolicyChanges()
+    {
+      return numberOfPolicyChanges[slot];
+    }
+
+    /**
+    * Returns the depth of this vertex.
+    *
+    * @return The depth.
+    */
+    public int getDepth()
+    {
+      return depth[slot];
+    }
+
+    /**
+     * Sets the output generated by this vertex.
+     *
+     * @param exp Expression representing the ouptut.
+     */
+    public void setOutput(EExpression exp) 
+    {
+      output[slot] = exp;
+      getOutputSequences()[slot] = null;
+    }
+
+    /**
+     * Sets the path condition to reach this vertex. It is stored as a whole,
+     * not as a delta.
+     *
+     * @param path The path condition for this vertex.
+     */
+    public void setPathCondition(EFormula path)
+    {
+      setPathConditionOf(slot, path, false);
+    }
+
+    /**
+     * Sets the properties (except path-elated properties) that hold at this vertex.
+     *
+     * @param prop The properties holding at this vertex.
+     */
+    public void setOtherProperties(EFormula prop) 
+    {
+      otherProperties[slot] = prop;
+    }
+
+    /**
+     * Sets the policy at this vertex.
+     *
+     * @param plc The properties holding at this vertex.
+     */
+    public void setPolicy(String plc) 
+    {
+      policyIndex[slot] = indexOfPolicy(plc);
+    }
+
+    /**
+     * Sets the policy changed boolean at this vertex.
+     *
+     * @param plcChanged Is this vertex after a policy change.
+     */
+    public void setPolicyChanged(boolean plcChanged) 
+    {
+      policyChanged.set(slot, plcChanged);
+    }
+
+    /**
+    * Sets the number of policy changes from root up to this vertex.
+    *
+    * @param npc The number of policy changes.
+    */
+    public void setNumberOfPolicyChanges(int npc)
+    {
+      unindexVertex(this);
+      numberOfPolicyChanges[slot] = npc;
+      indexVertex(this);
+      getOutputSequences()[slot] = null;
+    }
+
+    /**
+    * Sets the depth of this vertex.
+    *
+    * @param dep The depth.
+    */
+    public void setDepth(int dep)
+    {
+      unindexVertex(this);
+      depth[slot] = dep;
+      indexVertex(this);
+      getOutputSequences()[slot] = null;
+    }
+
+    /**
+     * Retrieve a textual description of this vertex.
+     *
+     * @return A textual description of this vertex.
+     */
+    public String getTextualDescription() 
+    {
+      String retVal;
+      if ( getOutput() == null ) { retVal = "null"; }
+      else { retVal = getOutput() + 
+        ", [[ Policy: " + getPolicy() + 
+        ", New policy: " + getPolicyChanged() + 
+        ", NPC: " + getNumberOfPolicyChanges() +
+        ", Depth: " + getDepth() +
+        ", IFF: " + getPathCondition() +
+        ", UTC: " + getOtherProperties() + " ]]"; }
+      return retVal;
+    }
+
+    /**
+     * Retrieve a short String identifying and describing this vertex.
+     *
+     * @return Short string identifying this vertex.
+     */
+    public String toString() 
+    {
+      return getId();
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -112,12 +112,9 @@ public class OFG_Handler {
   {
     Set<OFG_Vertex> res = new HashSet();
 
-    Iterator<OFG_Vertex> parentIter = ofg.getPredecessorsOf(vertex).iterator();
-    if (parentIter.hasNext())
+    for (OFG_Vertex v = ofg.getParentOf(vertex); v != null; v = ofg.getParentOf(v))
     {
-      OFG_Vertex v = parentIter.next();
       res.add(v);
-      res.addAll(getPathToRoot(ofg, v));
     }
 
     return res;
@@ -138,11 +135,8 @@ public class OFG_Handler {
     Set<OFG_Vertex> res = new HashSet();
     res.add(vertex);
 
-    Iterator<OFG_Vertex> childrenIter = ofg.getSuccessorsOf(vertex).iterator();
-    while (childrenIter.hasNext())
+    for (OFG_Vertex v = ofg.getFirstSuccessorOf(vertex); v != null; v = ofg.getNextSiblingOf(v))
     {
-      OFG_Vertex v = childrenIter.next();
-
       if (!v.getPolicyChanged())
       {
         res.add(v);
@@ -172,35 +166,12 @@ public class OFG_Handler {
     SolverHandler solver) 
   {
 
-    Iterator<OFG_Vertex> verteciesPreIter = ofg.getPredecessorsOf(vertex).iterator();
-    EFormula newPC;
+    EFormula newPC = vertex.getPathConditionDelta();
 
-    if (verteciesPreIter.hasNext())
+    if (ofg.getParentOf(vertex) != null
+        && newPC instanceof EF_Conjunction && newPC.getSubFormulas().isEmpty())
     {
-      OFG_Vertex parent = verteciesPreIter.next();
-      
-      if (!parent.getPathCondition().toString().equals(vertex.getPathCondition().toString()))
-      {
-        List<EFormula> listOfPcSubFormulas = new ArrayList<EFormula>(vertex.getPathCondition().getSubFormulas()); 
-        int sizeOfParentPC = parent.getPathCondition().getSubFormulas().size();
-        listOfPcSubFormulas.subList(listOfPcSubFormulas.size() - sizeOfParentPC, listOfPcSubFormulas.size()).clear();
-
-        EF_Conjunction newPC_Formula = new EF_Conjunction();
-
-        for (EFormula formula : listOfPcSubFormulas)
-        {
-            newPC_Formula.append(formula);
-        }
-        newPC = newPC_Formula;
-      }
-      else
-      {
-        newPC = null;
-      }
-    }
-    else
-    {
-      newPC = vertex.getPathCondition();
+      newPC = null;
     }
 
     if (newPC != null)
@@ -296,10 +267,8 @@ public class OFG_Handler {
           f.println("  " + fakedSrcId + " [ label=\"\", shape=\"none\" ];");
           f.println("  " + fakedSrcId + " -> " + srcId + ";");
         }
-        Iterator<OFG_Vertex> tIte = ofg.getSuccessorsOf(srcVertex).iterator();
-        while ( tIte.hasNext() ) {
-          String trgId = tIte.next().getId();
-          f.println("  " + srcId + " -> " + trgId + ";");
+        for (OFG_Vertex trg = ofg.getFirstSuccessorOf(srcVertex); trg != null; trg = ofg.getNextSiblingOf(trg)) {
+          f.println("  " + srcId + " -> " + trg.getId() + ";");
         }
       }
 
@@ -436,6 +405,42 @@ public class OFG_Handler {
     return true;
   }
 
+  /**
+   * Returns the sequence of outputs generated by the path going from the start
+   * of {@code ofg} to {@code v} included. Sequences are memorized on the
+   * vertices and share their prefixes (see {@link OutputSequence}): the
+   * sequence of a vertex is built once, by extending the sequence of its
+   * predecessor. Outputs of vertices are assumed not to be modified once
+   * their successors have been asked for their sequences.
+   *
+   * @param ofg The output flow graph in which to find the path.
+   * @param v The destination of the path.
+   * @return The output sequence of {@code v}.
+   */
+  static OutputSequence getOutputSequence(OutputFlowGraph ofg, OFG_Vertex v)
+  {
+    // Climb up to the closest vertex whose sequence is known.
+    LinkedList<OFG_Vertex> path = new LinkedList();
+    OutputSequence seq = OutputSequence.EMPTY;
+    OFG_Vertex current = v;
+    while ( current != null ) {
+      OutputSequence known = current.getOutputSequence();
+      if ( known != null ) {
+        seq = known;
+        break;
+      }
+      path.addFirst(current);
+      current = ofg.getParentOf(current);
+    }
+
+    // Extend it down to v, memorizing the intermediate sequences.
+    for (OFG_Vertex u: path) {
+      seq = seq.append(u);
+      u.setOutputSequence(seq);
+    }
+    return seq;
+  }
+
   /**
    * Returns the output sequence generated by the path going from the start of
    * {@code ofg} to {@code v} include.
@@ -444,33 +449,11 @@ public class OFG_Handler {
    * @param v The destination of the path.
    * @param npc Number of policy changes in the vertex we what the output sequence of.
    * @param depth Depth of the vertex we what the output sequence of.
-   * @return The output sequence collected.
+   * @return The output sequence collected, as an unmodifiable list.
    */
   public static List<EExpression> getOutputSequence_Forgetful(OutputFlowGraph ofg, OFG_Vertex v, int npc, int depth) 
   {
-    List<EExpression> outputSequence = new ArrayList();
-    EExpression vOutput = v.getOutput();
-
-    Set<OFG_Vertex> predecessors = ofg.getPredecessorsOf(v);
-    if ( predecessors.size() > 1 )
-      throw new Error("OFG_Handler.getOutputSequences(OutputFlowGraph, Vertex) works only for trees!");
-    if ( predecessors.size() == 1 ) 
-    {
-      outputSequence = getOutputSequence_Forgetful(ofg, predecessors.iterator().next(), npc, depth);
-    } else {
-      outputSequence = new ArrayList();
-    }
-
-    if (v.getNumberOfPolicyChanges() < npc && v.getDepth() != depth)
-    {
-      outputSequence.add(new EE_Constant.TRUE());
-    }
-    else
-    {
-      outputSequence.add(vOutput);
-    }
-
-    return outputSequence;
+    return getOutputSequence(ofg, v).getForgetfulView(npc, depth);
   }
 
 
@@ -481,31 +464,11 @@ public class OFG_Handler {
    * @param ofg The output flow graph in which to find the path.
    * @param v The destination of the path.
    * @param memory The capacity of the attacker's memory, so is the lenth of output secquence.
-   * @return The output sequence collected.
+   * @return The output sequence collected, as an unmodifiable list.
    */
   public static List<EExpression> getOutputSequence_Bounded(OutputFlowGraph ofg, OFG_Vertex v, int memory ) 
   {
-    List<EExpression> outputSequence = new ArrayList();
-    EExpression vOutput = v.getOutput();
-
-    Set<OFG_Vertex> predecessors = ofg.getPredecessorsOf(v);
-    if ( predecessors.size() > 1 )
-      throw new Error("OFG_Handler.getOutputSequences(OutputFlowGraph, Vertex) works only for trees!");
-    if ( predecessors.size() == 1 ) 
-    {
-      outputSequence = getOutputSequence_Bounded(ofg, predecessors.iterator().next(), memory-1);
-    } 
-    else 
-    {
-      outputSequence = new ArrayList();
-    }
-
-    if (memory > 0)
-    {
-        outputSequence.add(vOutput);
-    }
-
-    return outputSequence;
+    return getOutputSequence(ofg, v).getBoundedView(memory);
   }
 
   /**
@@ -514,25 +477,11 @@ public class OFG_Handler {
    *
    * @param ofg The output flow graph in which to find the path.
    * @param v The destination of the path.
-   * @return The output sequence collected.
+   * @return The output sequence collected, as an unmodifiable list.
    */
   public static List<EExpression> getOutputSequence_Perfect(OutputFlowGraph ofg, OFG_Vertex v) 
   {
-    List<EExpression> outputSequence = new ArrayList();
-    EExpression vOutput = v.getOutput();
-
-    Set<OFG_Vertex> predecessors = ofg.getPredecessorsOf(v);
-    if ( predecessors.size() > 1 )
-      throw new Error("OFG_Handler.getOutputSequences(OutputFlowGraph, Vertex) works only for trees!");
-    if ( predecessors.size() == 1 ) {
-      outputSequence = getOutputSequence_Perfect(ofg, predecessors.iterator().next());
-    } else {
-      outputSequence = new ArrayList();
-    }
-
-    outputSequence.add(vOutput);
-
-    return outputSequence;
+    return getOutputSequence(ofg, v).getPerfectView();
   }
 
 
@@ -558,126 +507,107 @@ public class OFG_Handler {
       Set<EExpression> harbored,
       AttackerType attackerType,
       int attackerMemoryCapacity) 
-    {
+  {
+    return generateInterferenceFormula(ofg, vertex, domains, leaked, harbored, attackerType, attackerMemoryCapacity, true);
+  }
 
-    Set<OFG_Vertex> vertices = new HashSet();
-    // Set of vertices based on each attacker.
-    switch(attackerType) 
-    {
-      case PERFECT:
-        vertices = ofg.getAllVertices();
-        break;
-      case BOUNDED:
-        vertices = ofg.getAllVertices();
-        break;
-      case FORGETFUL:
-        vertices = ofg.getAllVertices_Forgetful(vertex.getNumberOfPolicyChanges(), vertex.getDepth());
-        break;
-    }
 
-    Set<EE_Variable> variables = new HashSet();
-    // Set of variables based on each attacker.
-    switch(attackerType) 
-    {
-      case PERFECT:
-        variables = ofg.getVariables();
-        break;
-      case BOUNDED:
-        variables = ofg.getVariables();
-        break;
-      case FORGETFUL:
-        variables = ofg.getVariables_Forgetful(vertex.getNumberOfPolicyChanges(), vertex.getDepth());
-        break;
-    }
+  /**
+   * Generates the background of interference formulas, i.e. the part which
+   * does not depend on the vertex checked: the domain constraints on the inputs
+   * and the equalities on the leaked expressions.
+   *
+   * @param domains The domains of the inputs.
+   * @param leaked A set of expressions corresponding to the initialy leaked information.
+   * @return The background of interference formulas.
+   * @see #generateInterferenceFormula(OutputFlowGraph, OFG_Vertex, Map, Set, Set, AttackerType, int, boolean)
+   */
+  public static EFormula generateBackgroundFormula(
+      Map<EE_Variable,List<EE_Constant>> domains,
+      Set<EExpression> leaked)
+  {
+    return new SelfCompositionContext(domains).getBackgroundFormula(leaked);
+  }
 
-    variables.addAll(domains.keySet());
 
-    Iterator<EExpression> leakedIte = leaked.iterator();
-    while ( leakedIte.hasNext() ) variables.addAll(leakedIte.next().getVariables());
+  /**
+   * Generates a formula that is satisfiable iff the provided output flow graph
+   * corresponds to an interfering program, possibly leaving out its
+   * background (see {@link #generateBackgroundFormula(Map, Set)}).
+   *
+   * @param ofg The output flow graph for which the interference formula has to
+   *   be generated.
+   * @param vertex The vertex from which the interference formula has to
+   *   be generated.
+   * @param leaked A set of expressions corresponding to the initialy leaked information.
+   * @param harbored A set of expressions corresponding to the harbored information.
+   * @param attackerType The type of the attacker, against which the program is being checked.
+   * @param attackerMemoryCapacity The size of attackers memory buffer. (only used for bounded memory attacker)
+   * @param withBackground If {@code false}, the domain constraints and leaked
+   *   equalities are left out of the generated formula.
+   * @return An interference formula for the provided OFG.
+   */
+  public static EFormula generateInterferenceFormula(
+      OutputFlowGraph ofg, 
+      OFG_Vertex vertex,
+      Map<EE_Variable,List<EE_Constant>> domains,
+      Set<EExpression> leaked, 
+      Set<EExpression> harbored,
+      AttackerType attackerType,
+      int attackerMemoryCapacity,
+      boolean withBackground) 
+  {
+    SelfCompositionContext context = new SelfCompositionContext(domains);
+    return generateInterferenceFormula(ofg, vertex, context, leaked, harbored, attackerType, attackerMemoryCapacity, withBackground);
+  }
 
-    Iterator<EExpression> harboredIte = harbored.iterator();
-    while ( harboredIte.hasNext() ) variables.addAll(harboredIte.next().getVariables());
 
-    Map<EE_Variable,EE_Variable> renaming = new HashMap();
-    Iterator<EE_Variable> varIte = variables.iterator();
-    while ( varIte.hasNext() ) {
-      EE_Variable var = varIte.next();
-      EE_Variable newVar = var.clone("_bis");
-      renaming.put(var, newVar);
-    }
+  /**
+   * Generates a formula that is satisfiable iff the provided output flow graph
+   * corresponds to an interfering program, assembling the pieces of the
+   * self-composition prebuilt by the provided context.
+   *
+   * @param ofg The output flow graph for which the interference formula has to
+   *   be generated.
+   * @param vertex The vertex from which the interference formula has to
+   *   be generated.
+   * @param context The self-composition context of the analysis, providing
+   *   the domain constraints and the renamed copies of path conditions and
+   *   outputs.
+   * @param leaked A set of expressions corresponding to the initialy leaked information.
+   * @param harbored A set of expressions corresponding to the harbored information.
+   * @param attackerType The type of the attacker, against which the program is being checked.
+   * @param attackerMemoryCapacity The size of attackers memory buffer. (only used for bounded memory attacker)
+   * @param withBackground If {@code false}, the domain constraints and leaked
+   *   equalities are left out of the generated formula.
+   * @return An interference formula for the provided OFG.
+   */
+  static EFormula generateInterferenceFormula(
+      OutputFlowGraph ofg, 
+      OFG_Vertex vertex,
+      SelfCompositionContext context,
+      Set<EExpression> leaked, 
+      Set<EExpression> harbored,
+      AttackerType attackerType,
+      int attackerMemoryCapacity,
+      boolean withBackground) 
+  {
+    // Only the vertices at the depth of the checked vertex are compared with
+    // it, whatever the attacker: for the forgetful attacker, the vertices at
+    // this depth are all valid w.r.t. the npc and depth of the checked vertex.
+    Set<OFG_Vertex> vertices = ofg.getVerticesAtDepth(vertex.getDepth());
 
     EF_Conjunction interferenceFml = new EF_Conjunction();
 
-    EF_Conjunction domainsConj = new EF_Conjunction();
-    Iterator<Map.Entry<EE_Variable,List<EE_Constant>>> domIte =
-      domains.entrySet().iterator();
-    while ( domIte.hasNext() ) {
-      Map.Entry<EE_Variable,List<EE_Constant>> dom = domIte.next();
-      EE_Variable var = dom.getKey();
-      List<EE_Constant> boundaries = dom.getValue();
-      EE_Constant min = boundaries.get(0);
-      EE_Constant max = boundaries.get(1);
-
-      EE_BinaryOperation lowerBound = new EE_BinaryOperation.LE();
-      lowerBound.setLeftHandSide(min);
-      lowerBound.setRightHandSide(var);
-      domainsConj.append(new EF_Valuation(lowerBound));
-      EE_BinaryOperation upperBound = new EE_BinaryOperation.LE();
-      upperBound.setLeftHandSide(var);
-      upperBound.setRightHandSide(max);
-      domainsConj.append(new EF_Valuation(upperBound));
-
-      EE_BinaryOperation lowerBound_bis = new EE_BinaryOperation.LE();
-      lowerBound_bis.setLeftHandSide(min);
-      lowerBound_bis.setRightHandSide(var.clone(renaming));
-      domainsConj.append(new EF_Valuation(lowerBound_bis));
-      EE_BinaryOperation upperBound_bis = new EE_BinaryOperation.LE();
-      upperBound_bis.setLeftHandSide(var.clone(renaming));
-      upperBound_bis.setRightHandSide(max);
-      domainsConj.append(new EF_Valuation(upperBound_bis));
-    }
-    interferenceFml.append(domainsConj);
-
-    EF_Conjunction leakedConj = new EF_Conjunction();
-    leakedIte = leaked.iterator();
-    while ( leakedIte.hasNext() ) {
-      EExpression leakedExp = leakedIte.next();
-      EE_BinaryOperation equalExp = new EE_BinaryOperation.EQ();
-      equalExp.setLeftHandSide(leakedExp);
-      equalExp.setRightHandSide(leakedExp.clone(renaming));
-      leakedConj.append(new EF_Valuation(equalExp));
+    if ( withBackground ) {
+      interferenceFml.append(context.getDomainsConjunction());
+      interferenceFml.append(context.getLeakedConjunction(leaked));
     }
-    interferenceFml.append(leakedConj);
-
-    EF_Disjunction harboredDisj = new EF_Disjunction();
-    harboredIte = harbored.iterator();
-    while ( harboredIte.hasNext() ) {
-      EExpression harboredExp = harboredIte.next();
-      EE_BinaryOperation diffExp = new EE_BinaryOperation.NE();
-      diffExp.setLeftHandSide(harboredExp);
-      diffExp.setRightHandSide(harboredExp.clone(renaming));
-      harboredDisj.append(new EF_Valuation(diffExp));
-    }
-    interferenceFml.append(harboredDisj);
+    interferenceFml.append(context.getHarboredDisjunction(harbored));
 
     EF_Conjunction v1Formula = new EF_Conjunction();
     EF_Conjunction bigInner = new EF_Conjunction();
-    EFormula pc1 = vertex.getPathCondition();
-    List<EExpression> o1 = new ArrayList();
-
-    // Different outputs based on each attacker.
-    switch(attackerType) 
-    {
-      case PERFECT:
-        o1 = OFG_Handler.getOutputSequence_Perfect(ofg, vertex); 
-        break;
-      case BOUNDED:
-        o1 = OFG_Handler.getOutputSequence_Bounded(ofg, vertex, attackerMemoryCapacity);
-        break;
-      case FORGETFUL:
-        o1 = OFG_Handler.getOutputSequence_Forgetful(ofg, vertex, vertex.getNumberOfPolicyChanges(), vertex.getDepth());
-        break;
-    }
+    List<EExpression> o1 = getObservedOutputSequence(ofg, vertex, vertex, attackerType, attackerMemoryCapacity);
 
     v1Formula.append(vertex.getPathCondition());
     
@@ -685,36 +615,19 @@ public class OFG_Handler {
     while ( vIte2.hasNext() ) 
     {
       OFG_Vertex v2 = vIte2.next();
-      EFormula pc2 = v2.getPathCondition();
-      List<EExpression> o2 = new ArrayList();
 
-      if ( vertex.getDepth() == v2.getDepth() ) 
-      {
-        // Different outputs based on each attacker.
-        switch(attackerType) 
-        {
-          case PERFECT:
-            o2 = OFG_Handler.getOutputSequence_Perfect(ofg, v2); 
-            break;
-          case BOUNDED:
-            o2 = OFG_Handler.getOutputSequence_Bounded(ofg, v2, attackerMemoryCapacity);
-            break;
-          case FORGETFUL:
-            o2 = OFG_Handler.getOutputSequence_Forgetful(ofg, v2, vertex.getNumberOfPolicyChanges(), vertex.getDepth());
-            break;
-        }
+      List<EExpression> o2 = getObservedOutputSequence(ofg, v2, vertex, attackerType, attackerMemoryCapacity);
 
-        EF_Conjunction v1v2Formula = new EF_Conjunction();
-        v1v2Formula.append(v2.getPathCondition().clone(renaming));
-        for (int i = 0; i < o1.size(); i++) 
-        {
-          EE_BinaryOperation equalOut = new EE_BinaryOperation.EQ();
-          equalOut.setLeftHandSide(o2.get(i).clone(renaming));
-          equalOut.setRightHandSide(o1.get(i));
-          v1v2Formula.append(new EF_Valuation(equalOut));
-        }
-        bigInner.append(new EF_Negation(v1v2Formula));
+      EF_Conjunction v1v2Formula = new EF_Conjunction();
+      v1v2Formula.append(context.getPrimedPathCondition(v2));
+      for (int i = 0; i < o1.size(); i++) 
+      {
+        EE_BinaryOperation equalOut = new EE_BinaryOperation.EQ();
+        equalOut.setLeftHandSide(context.getPrimed(o2.get(i)));
+        equalOut.setRightHandSide(o1.get(i));
+        v1v2Formula.append(new EF_Valuation(equalOut));
       }
+      bigInner.append(new EF_Negation(v1v2Formula));
     }
 
     v1Formula.append(bigInner);
@@ -724,6 +637,37 @@ public class OFG_Handler {
   }
 
 
+  /**
+   * Retrieves the output sequence of a vertex as observed by an attacker.
+   *
+   * @param ofg The output flow graph containing the vertex.
+   * @param v The vertex whose output sequence is retrieved.
+   * @param checkedVertex The vertex being checked, whose number of policy
+   *   changes and depth define the view of the forgetful attacker.
+   * @param attackerType The type of the attacker.
+   * @param attackerMemoryCapacity The size of attackers memory buffer. (only used for bounded memory attacker)
+   * @return The output sequence of {@code v} observed by the attacker.
+   */
+  private static List<EExpression> getObservedOutputSequence(
+      OutputFlowGraph ofg,
+      OFG_Vertex v,
+      OFG_Vertex checkedVertex,
+      AttackerType attackerType,
+      int attackerMemoryCapacity)
+  {
+    switch(attackerType) 
+    {
+      case PERFECT:
+        return OFG_Handler.getOutputSequence_Perfect(ofg, v); 
+      case BOUNDED:
+        return OFG_Handler.getOutputSequence_Bounded(ofg, v, attackerMemoryCapacity);
+      case FORGETFUL:
+        return OFG_Handler.getOutputSequence_Forgetful(ofg, v, checkedVertex.getNumberOfPolicyChanges(), checkedVertex.getDepth());
+    }
+    throw new Error("Unknown attacker type: " + attackerType);
+  }
+
+
 
   /**
    * Loads the OFG in the file {@code args[0]} and display information about it.
@@ -53,6 +53,15 @@ public interface OFG_Vertex {
    * @return The path condition.
    */
   public EFormula getPathCondition();
+
+  /**
+   * Retrieve the conjuncts added by the path condition of this vertex to the
+   * path condition of its predecessor output vertex.
+   *
+   * @return The added conjuncts, or the whole path condition if this vertex
+   *   has no predecessor output vertex.
+   */
+  public EFormula getPathConditionDelta();
   
   /**
    * Retrieves a conjunction of the properties (except path-elated properties)
@@ -170,6 +179,23 @@ public interface OFG_Vertex {
    * @param leakedPC The leaking pc.
    */
   public void setLeakedPC(EFormula leakedPC);
+
+  /**
+   * Retrieves the memorized sequence of the outputs generated from the start
+   * of the OFG up to this vertex included.
+   *
+   * @return The output sequence of this vertex, or {@code null} if it has not
+   *   been memorized yet.
+   */
+  public OutputSequence getOutputSequence();
+
+  /**
+   * Memorizes the sequence of the outputs generated from the start of the OFG
+   * up to this vertex included.
+   *
+   * @param seq The output sequence of this vertex.
+   */
+  public void setOutputSequence(OutputSequence seq);
 }
 
 
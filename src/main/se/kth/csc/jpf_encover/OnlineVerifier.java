@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Driver checking interference checks while the program is still being
+ * explored.
+ * Checks are submitted by the thread exploring the program as soon as they can
+ * be generated, and put in a bounded queue from which a fixed number of worker
+ * threads take them; the submitting thread is paused while the queue is full.
+ * Checks are submitted in no particular order: once all of them are answered,
+ * the check reported is the first satisfiable one in the order in which the
+ * post-hoc verification visits the vertices, exactly as if the checks were
+ * run one after another once the exploration finished.
+ * When asked to stop on the first satisfiable check, the checks answered
+ * after one is found satisfiable, in whatever order, are skipped.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class OnlineVerifier extends LoggerUser {
+
+  /** Marker put in the queue to stop the workers */
+  private static final InterferenceCheck NO_MORE_CHECKS =
+    new InterferenceCheck(InterferenceCheck.Kind.SECURITY, null, null, null, null);
+
+  private final SolverSession session;
+  private final BlockingQueue<InterferenceCheck> pendingChecks;
+  private final Thread[] workers;
+  private final Map<OFG_Vertex,List<InterferenceCheck>> vertex2checks = new HashMap<OFG_Vertex,List<InterferenceCheck>>();
+  private final List<InterferenceCheck> inconclusiveChecks = new ArrayList<InterferenceCheck>();
+  private final AtomicInteger nbAnsweredChecks = new AtomicInteger(0);
+  private final boolean stopOnSatisfiable;
+  private volatile InterferenceCheck firstFoundSatisfiable = null;
+  private int nbSubmittedChecks = 0;
+  private boolean finished = false;
+  private EncoverLogger log = null;
+
+  /**
+   * Constructor of online verifiers. The worker threads are started
+   * immediately.
+   *
+   * @param s The solver session answering the checks. Its solver must accept
+   *   concurrent queries if there is more than one worker.
+   * @param nbWorkers The number of checks answered concurrently.
+   * @param queueCapacity The maximal number of checks waiting for a worker.
+   * @param stopOnSat If {@code true}, no check is answered anymore once one
+   *   is found satisfiable.
+   * @param l Logger to use to log information.
+   */
+  OnlineVerifier(SolverSession s, int nbWorkers, int queueCapacity, boolean stopOnSat, EncoverLogger l) {
+    setLogger(l);
+    log = l;
+    session = s;
+    stopOnSatisfiable = stopOnSat;
+    pendingChecks = new ArrayBlockingQueue<InterferenceCheck>(queueCapacity);
+    workers = new Thread[nbWorkers];
+    for (int i = 0; i < nbWorkers; i++) {
+      workers[i] = new Thread(new Runnable() {
+          public void run() { answerChecks(); }
+        }, "Encover online verifier " + (i + 1));
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Loop of the worker threads: answers the checks of the queue until the end
+   * marker is met.
+   */
+  private void answerChecks() {
+    while ( true ) {
+      InterferenceCheck check = null;
+      try {
+        check = pendingChecks.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if ( check == NO_MORE_CHECKS ) {
+        // Leaves the marker for the other workers.
+        pendingChecks.offer(NO_MORE_CHECKS);
+        return;
+      }
+      if ( stopOnSatisfiable && firstFoundSatisfiable != null ) continue;
+      try {
+        check.run(session);
+      } catch (RuntimeException e) {
+        check.setError(new Error(e));
+      }
+      nbAnsweredChecks.incrementAndGet();
+      if ( check.isSatisfiable() ) {
+        synchronized (this) {
+          if ( firstFoundSatisfiable == null ) {
+            logln("satisfiable check found: " + check);
+            firstFoundSatisfiable = check;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Submits a check, waiting for room in the queue if it is full.
+   * This method must always be called from the same thread. When stopping on
+   * the first satisfiable check, checks submitted after it is found are
+   * dropped.
+   *
+   * @param check The check to answer.
+   */
+  void submit(InterferenceCheck check) {
+    if ( finished ) throw new Error("No check can be submitted after the verification finished.");
+    if ( stopOnSatisfiable && firstFoundSatisfiable != null ) return;
+    List<InterferenceCheck> checks = vertex2checks.get(check.getVertex());
+    if ( checks == null ) {
+      checks = new ArrayList<InterferenceCheck>(1);
+      vertex2checks.put(check.getVertex(), checks);
+    }
+    checks.add(check);
+    nbSubmittedChecks++;
+    logln("submitting " + check);
+    try {
+      pendingChecks.put(check);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while submitting an interference check.", e);
+    }
+  }
+
+  /**
+   * Waits for all the submitted checks to be answered and stops the worker
+   * threads. No check can be submitted afterwards.
+   */
+  void finish() {
+    if ( finished ) return;
+    finished = true;
+    try {
+      pendingChecks.put(NO_MORE_CHECKS);
+      for (Thread worker: workers) worker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while waiting for the interference checks.", e);
+    }
+  }
+
+  /**
+   * Returns the first satisfiable check, visiting the vertices in the provided
+   * order and the checks of a vertex in the order in which they were
+   * submitted. Checks preceding it whose verdict is unknown are recorded (see
+   * {@link #getInconclusiveChecks()}). Waits for all the checks to be answered
+   * first.
+   *
+   * @param vertices The vertices, in the order in which the post-hoc
+   *   verification visits them.
+   * @return The first satisfiable check, or {@code null} if none is
+   *   satisfiable.
+   */
+  InterferenceCheck findFirstSatisfiable(List<OFG_Vertex> vertices) {
+    finish();
+    inconclusiveChecks.clear();
+    Iterator<OFG_Vertex> vertexIte = vertices.iterator();
+    while ( vertexIte.hasNext() ) {
+      List<InterferenceCheck> checks = vertex2checks.get(vertexIte.next());
+      if ( checks == null ) continue;
+      Iterator<InterferenceCheck> checkIte = checks.iterator();
+      while ( checkIte.hasNext() ) {
+        InterferenceCheck check = checkIte.next();
+        if ( check.getError() != null ) {
+          log.println("Impossible to check satisfiability of interference formula: " + check.getError().getMessage());
+        } else if ( check.isSatisfiable() ) {
+          logln("first satisfiable check: " + check);
+          return check;
+        } else if ( check.isInconclusive() ) {
+          inconclusiveChecks.add(check);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the first check found satisfiable by the workers, which is not
+   * necessarily the first one in the order of the post-hoc verification.
+   *
+   * @return The first check found satisfiable, or {@code null} if none has
+   *   been found yet.
+   */
+  InterferenceCheck getFirstFoundSatisfiable() { return firstFoundSatisfiable; }
+
+  /**
+   * Returns the checks whose verdict was unknown, among the checks preceding
+   * the one returned by the last call to {@link #findFirstSatisfiable(List)},
+   * in order.
+   *
+   * @return The inconclusive checks.
+   */
+  List<InterferenceCheck> getInconclusiveChecks() {
+    return Collections.unmodifiableList(inconclusiveChecks);
+  }
+
+  /**
+   * Returns the number of checks submitted so far.
+   *
+   * @return The number of submitted checks.
+   */
+  int getNbSubmittedChecks() { return nbSubmittedChecks; }
+
+  /**
+   * Returns the number of checks answered so far.
+   *
+   * @return The number of answered checks.
+   */
+  int getNbAnsweredChecks() { return nbAnsweredChecks.get(); }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
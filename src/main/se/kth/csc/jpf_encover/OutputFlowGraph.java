@@ -41,16 +41,20 @@ public interface OutputFlowGraph {
   /**
    * Register a node to which future backtracks could lead.
    *
-   * @param id Identifier of the backtrackable point.
+   * @param id Numeric identifier of the backtrackable point (see
+   *   {@link JPFHelper#vm2dynamicStateKey(gov.nasa.jpf.jvm.JVM, boolean)}).
+   * @param check Check value of {@code id} (see
+   *   {@link JPFHelper#dynamicStateCheck(int)}).
    */
-  public void registerBacktrackablePoint(String id);
+  public void registerBacktrackablePoint(long id, int check);
 
   /**
    * Backtrack to the specified node.
    *
-   * @param id Identifier of the point to backtrack to.
+   * @param id Numeric identifier of the point to backtrack to.
+   * @param check Check value of {@code id}.
    */
-  public void backtrackTo(String id);
+  public void backtrackTo(long id, int check);
 
   /**
    * Create a new OFG node for the provided parameters.
@@ -77,6 +81,14 @@ public interface OutputFlowGraph {
    */
   public void registerEndOfExecution();
 
+  /**
+   * Returns the depth of the current position in the OFG, i.e. the number of
+   * outputs registered on the path leading to it.
+   *
+   * @return The depth of the current position.
+   */
+  public int getCurrentDepth();
+
   /**
    * Returns all the vertices in the graph (except internal vertices).
    *
@@ -95,6 +107,16 @@ public interface OutputFlowGraph {
   */
   public Set<OFG_Vertex> getAllVertices_Forgetful(int npc, int depth); 
 
+  /**
+   * Returns the (non-internal) vertices at the provided depth. The index of
+   * vertices by depth is maintained as outputs are registered, the returned
+   * set is a view of this index.
+   *
+   * @param depth The depth of the vertices.
+   * @return An unmodifiable view of the vertices at depth {@code depth}.
+   */
+  public Set<OFG_Vertex> getVerticesAtDepth(int depth);
+
   /**
    * Returns all the vertices that represent the start of a potential output
    * sequence.
@@ -112,6 +134,17 @@ public interface OutputFlowGraph {
    */
   public Set<OFG_Vertex> getPredecessorsOf(OFG_Vertex vertex);
 
+  /**
+   * Returns the output vertex preceding the vertex given in parameter, the
+   * OFG being a tree. Unlike {@link #getPredecessorsOf(OFG_Vertex)}, no
+   * collection is allocated, which matters for walks up the tree.
+   *
+   * @param vertex The vertex whose parent has to be retrieved.
+   * @return The parent output vertex, or {@code null} if {@code vertex} is
+   *   the start of an output sequence.
+   */
+  public OFG_Vertex getParentOf(OFG_Vertex vertex);
+
   /**
    * Returns all the vertices which are successors of the vertex given in
    * parameter.
@@ -121,6 +154,27 @@ public interface OutputFlowGraph {
    */
   public Set<OFG_Vertex> getSuccessorsOf(OFG_Vertex vertex);
 
+  /**
+   * Returns the first successor of the vertex given in parameter, the next
+   * ones being reached with {@link #getNextSiblingOf(OFG_Vertex)}. Unlike
+   * {@link #getSuccessorsOf(OFG_Vertex)}, no collection is allocated.
+   *
+   * @param vertex The vertex whose successors have to be walked, or
+   *   {@code null} to walk the initial vertices.
+   * @return The first successor, or {@code null} if there is none.
+   */
+  public OFG_Vertex getFirstSuccessorOf(OFG_Vertex vertex);
+
+  /**
+   * Returns the vertex following the vertex given in parameter among the
+   * successors of its parent, the OFG being a tree.
+   *
+   * @param vertex The vertex whose next sibling has to be retrieved.
+   * @return The next sibling, or {@code null} if {@code vertex} is the last
+   *   successor of its parent.
+   */
+  public OFG_Vertex getNextSiblingOf(OFG_Vertex vertex);
+
   /**
    * Returns true iff the vertex given in parameter can represent the first
    * output of an execution.
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Persistent sequence of the outputs generated along a path of an OFG.
+ * Sequences are cons lists sharing their prefixes: the sequence of a vertex
+ * is the sequence of its predecessor extended by the output of the vertex, so
+ * that building the sequences of all the vertices of a tree costs one cell per
+ * vertex. Along with every output are kept the number of policy changes and the
+ * depth of the vertex that generated it, from which the views of the different
+ * attackers are derived (see {@link #getPerfectView()},
+ * {@link #getBoundedView(int)} and {@link #getForgetfulView(int, int)}).
+ * Random access to the elements is provided by arrays materialized on first
+ * use.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+final class OutputSequence {
+
+  /** The empty sequence */
+  static final OutputSequence EMPTY = new OutputSequence(null, 0, 0, null);
+
+  private final EExpression output;
+  private final int numberOfPolicyChanges;
+  private final int depth;
+  private final OutputSequence prefix;
+  private final int length;
+
+  private EExpression[] outputs = null;
+  private int[] npcs = null;
+  private int[] depths = null;
+  private List<EExpression> perfectView = null;
+
+  /**
+   * Builds a sequence made of a prefix followed by one more output.
+   *
+   * @param out The last output of the sequence.
+   * @param npc The number of policy changes of the vertex generating it.
+   * @param dep The depth of the vertex generating it.
+   * @param pre The prefix of the sequence, or {@code null} for the empty
+   *   sequence.
+   */
+  private OutputSequence(EExpression out, int npc, int dep, OutputSequence pre) {
+    output = out;
+    numberOfPolicyChanges = npc;
+    depth = dep;
+    prefix = pre;
+    length = (pre == null) ? 0 : pre.length + 1;
+  }
+
+  /**
+   * Returns the sequence made of this one followed by the output of a vertex.
+   * This sequence is shared, not copied.
+   *
+   * @param v The vertex generating the next output.
+   * @return The extended sequence.
+   */
+  OutputSequence append(OFG_Vertex v) {
+    return new OutputSequence(v.getOutput(), v.getNumberOfPolicyChanges(), v.getDepth(), this);
+  }
+
+  /**
+   * Returns the number of outputs in the sequence.
+   *
+   * @return The length of the sequence.
+   */
+  int size() { return length; }
+
+  /**
+   * Materializes the outputs of the sequence, and the properties of the
+   * vertices generating them, into arrays.
+   */
+  private synchronized void materialize() {
+    if ( outputs != null ) return;
+    EExpression[] outs = new EExpression[length];
+    int[] ns = new int[length];
+    int[] ds = new int[length];
+    OutputSequence cell = this;
+    for (int i = length - 1; i >= 0; i--) {
+      outs[i] = cell.output;
+      ns[i] = cell.numberOfPolicyChanges;
+      ds[i] = cell.depth;
+      cell = cell.prefix;
+    }
+    npcs = ns;
+    depths = ds;
+    outputs = outs;
+  }
+
+  /**
+   * Returns the outputs of the sequence, in order.
+   *
+   * @return The outputs of the sequence.
+   */
+  private EExpression[] getOutputs() {
+    materialize();
+    return outputs;
+  }
+
+  /**
+   * Returns the whole sequence, as seen by a perfect attacker.
+   *
+   * @return An unmodifiable view of the sequence.
+   */
+  synchronized List<EExpression> getPerfectView() {
+    if ( perfectView == null ) perfectView = Collections.unmodifiableList(Arrays.asList(getOutputs()));
+    return perfectView;
+  }
+
+  /**
+   * Returns the last outputs of the sequence, as seen by an attacker with a
+   * bounded memory.
+   *
+   * @param memory The number of outputs remembered by the attacker.
+   * @return An unmodifiable view of the at most {@code memory} last outputs.
+   */
+  List<EExpression> getBoundedView(int memory) {
+    if ( memory <= 0 ) return Collections.emptyList();
+    return getPerfectView().subList(Math.max(0, length - memory), length);
+  }
+
+  /**
+   * Returns the sequence as seen by a forgetful attacker observing the vertex
+   * of depth {@code depth} with {@code npc} policy changes: the outputs
+   * generated before the last policy change are forgotten, except the one at
+   * the same depth, and replaced by {@code true}.
+   *
+   * @param npc The number of policy changes of the observed vertex.
+   * @param depth The depth of the observed vertex.
+   * @return An unmodifiable view of the sequence.
+   */
+  List<EExpression> getForgetfulView(final int npc, final int depth) {
+    final EExpression[] outs = getOutputs();
+    return new AbstractList<EExpression>() {
+      private final EExpression forgotten = new EE_Constant.TRUE();
+      public int size() { return outs.length; }
+      public EExpression get(int i) {
+        if ( npcs[i] < npc && depths[i] != depth ) return forgotten;
+        return outs[i];
+      }
+    };
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Driver checking a sequence of interference checks concurrently.
+ * The checks are pulled lazily from the provided iterator (on the calling
+ * thread) and submitted to a fixed number of worker threads, at most a few
+ * checks ahead of the first unanswered one. Answers are consumed in the order
+ * of the sequence, so that the check reported is always the first satisfiable
+ * one in this order, exactly as if the checks were run one after another.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class ParallelVerifier extends LoggerUser {
+
+  private final SolverSession session;
+  private final ExecutorService executor;
+  private final int windowSize;
+  private final List<InterferenceCheck> inconclusiveChecks = new ArrayList<InterferenceCheck>();
+  private EncoverLogger log = null;
+
+  /**
+   * Constructor of parallel verifiers.
+   *
+   * @param s The solver session answering the checks. Its solver must accept
+   *   concurrent queries.
+   * @param nbWorkers The number of checks answered concurrently.
+   * @param l Logger to use to log information.
+   */
+  ParallelVerifier(SolverSession s, int nbWorkers, EncoverLogger l) {
+    setLogger(l);
+    log = l;
+    session = s;
+    windowSize = 2 * nbWorkers;
+    executor = Executors.newFixedThreadPool(nbWorkers, new ThreadFactory() {
+        private int nbThreads = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Encover verifier " + (++nbThreads));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+  }
+
+  /**
+   * Runs the provided checks and returns the first one, in the order of the
+   * iterator, whose interference formula is satisfiable. Checks following it
+   * which are not yet started are cancelled, and the iterator is not consumed
+   * any further. Checks preceding it whose verdict is unknown are recorded
+   * (see {@link #getInconclusiveChecks()}).
+   *
+   * @param checks The checks to run, in the order in which they would be run
+   *   sequentially.
+   * @return The first satisfiable check, or {@code null} if none is
+   *   satisfiable.
+   */
+  InterferenceCheck findFirstSatisfiable(Iterator<InterferenceCheck> checks) {
+    LinkedList<Future<InterferenceCheck>> submitted = new LinkedList<Future<InterferenceCheck>>();
+    try {
+      while ( true ) {
+        while ( submitted.size() < windowSize && checks.hasNext() ) {
+          final InterferenceCheck check = checks.next();
+          logln("submitting " + check);
+          submitted.add(executor.submit(new Callable<InterferenceCheck>() {
+              public InterferenceCheck call() { return check.run(session); }
+            }));
+        }
+        if ( submitted.isEmpty() ) return null;
+
+        InterferenceCheck check = waitFor(submitted.removeFirst());
+        if ( check.getError() != null ) {
+          log.println("Impossible to check satisfiability of interference formula: " + check.getError().getMessage());
+        } else if ( check.isSatisfiable() ) {
+          logln("first satisfiable check: " + check);
+          return check;
+        } else if ( check.isInconclusive() ) {
+          inconclusiveChecks.add(check);
+        }
+      }
+    } finally {
+      // Running checks are not interrupted, as it would leave their solver
+      // process in the middle of a request.
+      for (Future<InterferenceCheck> f: submitted) f.cancel(false);
+    }
+  }
+
+  /**
+   * Returns the checks whose verdict was unknown, among the checks consumed by
+   * the last calls to {@link #findFirstSatisfiable(Iterator)}, in order.
+   *
+   * @return The inconclusive checks.
+   */
+  List<InterferenceCheck> getInconclusiveChecks() {
+    return Collections.unmodifiableList(inconclusiveChecks);
+  }
+
+  /**
+   * Waits for a submitted check to be answered.
+   *
+   * @param f The future of the submitted check.
+   * @return The answered check.
+   */
+  private InterferenceCheck waitFor(Future<InterferenceCheck> f) {
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while waiting for an interference check.", e);
+    } catch (ExecutionException e) {
+      throw new Error("Unexpected failure of an interference check.", e.getCause());
+    }
+  }
+
+  /**
+   * Stops the worker threads, waiting for the running checks to terminate.
+   */
+  void shutdown() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Helpers used by the output flow graphs to store the path condition of an
+ * output vertex as a delta: the conjuncts it adds to the path condition of
+ * its predecessor output vertex. The full path condition is rebuilt on
+ * demand by prepending the delta to the path condition of the predecessor,
+ * as a {@link PersistentFormulaList} sharing the conjuncts of the
+ * predecessor. Rebuilt path conditions are kept in a bounded
+ * {@link ViewCache}, so that only the path conditions of the most recently
+ * used vertices stay in memory. The path conditions of the current position
+ * of the exploration and of its ancestors are the ones registered, and are
+ * never evicted: the next registered path condition extends the very list
+ * of its predecessor, and its delta is extracted in time linear in its
+ * size.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+final class PathConditionDelta {
+
+  /** Default number of full path conditions kept by a {@link ViewCache}. */
+  static final int VIEW_CACHE_CAPACITY = 1 << 12;
+
+  /**
+   * No instance of this class.
+   */
+  private PathConditionDelta() { }
+
+  /**
+   * Bounded cache of full path conditions, evicting the least recently used
+   * one when full, except for the path conditions of the vertices on the
+   * current path of the exploration which are kept apart until it
+   * backtracks above them. Its methods are synchronized since path
+   * conditions may be requested outside of the thread exploring the
+   * program.
+   *
+   * @param <K> The type of the keys identifying the vertices.
+   */
+  static final class ViewCache<K> {
+    private final LinkedHashMap<K,EFormula> views;
+    /** Keys of the vertices on the current path, each a successor of the previous one */
+    private final ArrayList<K> path = new ArrayList<K>();
+    /** Path conditions of the vertices on the current path */
+    private final HashMap<K,EFormula> pathViews = new HashMap<K,EFormula>();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximal number of path conditions kept.
+     */
+    ViewCache(final int capacity) {
+      views = new LinkedHashMap<K,EFormula>(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry<K,EFormula> eldest) {
+            return size() > capacity;
+          }
+        };
+    }
+
+    /**
+     * Retrieves a cached path condition.
+     *
+     * @param key The key of a vertex.
+     * @return The path condition of the vertex, or {@code null} if not cached.
+     */
+    synchronized EFormula get(K key) {
+      EFormula pc = pathViews.get(key);
+      return (pc != null) ? pc : views.get(key);
+    }
+
+    /**
+     * Caches a path condition.
+     *
+     * @param key The key of a vertex.
+     * @param pc The path condition of the vertex.
+     */
+    synchronized void put(K key, EFormula pc) {
+      views.put(key, pc);
+    }
+
+    /**
+     * Caches the path condition of the new current position of the
+     * exploration, a successor of the previous one. It is not evicted until
+     * the exploration backtracks above it.
+     *
+     * @param key The key of the vertex reached.
+     * @param pc The path condition registered for the vertex.
+     */
+    synchronized void enter(K key, EFormula pc) {
+      path.add(key);
+      pathViews.put(key, pc);
+    }
+
+    /**
+     * Moves the current position of the exploration back to one of the
+     * vertices of the current path. The path conditions of the vertices
+     * below it become evictable. If the vertex is not on the current path,
+     * all of them do.
+     *
+     * @param key The key of the vertex backtracked to, or {@code null} if it
+     *   has no path condition.
+     */
+    synchronized void backtrackTo(K key) {
+      int top = path.size() - 1;
+      while ( top >= 0 && ! path.get(top).equals(key) ) {
+        K k = path.remove(top--);
+        views.put(k, pathViews.remove(k));
+      }
+    }
+
+    /**
+     * Empties the cache, for instance when a path condition has been
+     * replaced and those rebuilt from it are stale.
+     */
+    synchronized void clear() {
+      views.clear();
+      path.clear();
+      pathViews.clear();
+    }
+  }
+
+  /**
+   * Computes the conjuncts added by a path condition to the path condition of
+   * its predecessor. When both path conditions share their conjuncts (see
+   * {@link PathConditionTranslator}), it is done in time linear in the number
+   * of added conjuncts.
+   *
+   * @param pc The path condition.
+   * @param parentPc The path condition of the predecessor.
+   * @return The conjunction of the conjuncts of {@code pc} not in {@code
+   *   parentPc}, or {@code null} if {@code pc} is not a conjunction extending
+   *   {@code parentPc}.
+   */
+  static EF_Conjunction extract(EFormula pc, EFormula parentPc) {
+    if ( !(pc instanceof EF_Conjunction) || !(parentPc instanceof EF_Conjunction) ) return null;
+    List<EFormula> subs = pc.getSubFormulas();
+    List<EFormula> parentSubs = parentPc.getSubFormulas();
+    int nbNew = subs.size() - parentSubs.size();
+    if ( nbNew < 0 ) return null;
+
+    EF_Conjunction delta = new EF_Conjunction();
+    List<EFormula> rest;
+    if ( subs instanceof PersistentFormulaList ) {
+      PersistentFormulaList l = (PersistentFormulaList) subs;
+      for (int i = 0; i < nbNew; i++) {
+        delta.append(l.getHead());
+        l = l.getTail();
+      }
+      rest = l;
+    } else {
+      for (int i = 0; i < nbNew; i++) delta.append(subs.get(i));
+      rest = subs.subList(nbNew, subs.size());
+    }
+    if ( rest != parentSubs && !sameConjuncts(rest, parentSubs) ) return null;
+    return delta;
+  }
+
+  /**
+   * Computes the conjuncts added by a path condition to the path condition of
+   * its predecessor, defaulting to the whole path condition.
+   *
+   * @param pc The path condition.
+   * @param parentPc The path condition of the predecessor.
+   * @return The conjunction of the conjuncts of {@code pc} not in {@code
+   *   parentPc}, the empty conjunction if both path conditions are the same,
+   *   and {@code pc} itself if it does not extend {@code parentPc}.
+   */
+  static EFormula difference(EFormula pc, EFormula parentPc) {
+    EFormula delta = extract(pc, parentPc);
+    if ( delta == null ) {
+      delta = pc.toString().equals(parentPc.toString()) ? new EF_Conjunction() : pc;
+    }
+    return delta;
+  }
+
+  /**
+   * Rebuilds a path condition from its delta and the path condition of its
+   * predecessor. The result shares the conjuncts of {@code parentPc} if they
+   * are stored in a {@link PersistentFormulaList}.
+   *
+   * @param delta The conjuncts added to the path condition of the predecessor.
+   * @param parentPc The path condition of the predecessor.
+   * @return The conjunction of {@code delta} and {@code parentPc}.
+   */
+  static EFormula expand(EFormula delta, EFormula parentPc) {
+    PersistentFormulaList l = toPersistentList(parentPc);
+    List<EFormula> newSubs = delta.getSubFormulas();
+    for (int i = newSubs.size() - 1; i >= 0; i--) l = l.prepend(newSubs.get(i));
+    return new EF_Conjunction(l);
+  }
+
+  /**
+   * Returns the conjuncts of a formula as a {@link PersistentFormulaList},
+   * copying them only if they are not already stored in such a list.
+   *
+   * @param f The formula.
+   * @return The conjuncts of {@code f}.
+   */
+  private static PersistentFormulaList toPersistentList(EFormula f) {
+    if ( !(f instanceof EF_Conjunction) ) return PersistentFormulaList.EMPTY.prepend(f);
+    List<EFormula> subs = f.getSubFormulas();
+    if ( subs instanceof PersistentFormulaList ) return (PersistentFormulaList) subs;
+    PersistentFormulaList l = PersistentFormulaList.EMPTY;
+    for (int i = subs.size() - 1; i >= 0; i--) l = l.prepend(subs.get(i));
+    return l;
+  }
+
+  /**
+   * Tests if two lists of conjuncts contain the same conjuncts, either
+   * identical or with the same textual representation.
+   *
+   * @param l1 The first list.
+   * @param l2 The second list.
+   * @return {@code true} iff both lists contain the same conjuncts.
+   */
+  private static boolean sameConjuncts(List<EFormula> l1, List<EFormula> l2) {
+    if ( l1.size() != l2.size() ) return false;
+    Iterator<EFormula> ite = l2.iterator();
+    for (EFormula f: l1) {
+      EFormula g = ite.next();
+      if ( f != g && !f.toString().equals(g.toString()) ) return false;
+    }
+    return true;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
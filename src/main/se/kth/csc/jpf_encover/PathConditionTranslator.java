@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gov.nasa.jpf.symbc.numeric.Constraint;
+import gov.nasa.jpf.symbc.numeric.PathCondition;
+
+
+/**
+ * Translator of symbc path conditions into formulas, reusing the
+ * translations of the constraints already translated.
+ * The constraints of a symbc path condition form a linked list from the
+ * last constraint added to the first one, and the path condition of a child
+ * state extends the one of its parent by prepending new constraints to the
+ * same list. The translation of each constraint (together with its tail) is
+ * cached by identity of the constraint, so that translating a path
+ * condition only translates the constraints added since the last
+ * translation of one of its tails. Translations are
+ * {@link PersistentFormulaList}s sharing the translation of their tail.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class PathConditionTranslator {
+
+  /** Default maximal number of constraints whose translation is cached */
+  static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private final int capacity;
+  private final Map<Constraint, Translation> cache = new IdentityHashMap<Constraint, Translation>();
+  private long nbTranslatedConstraints = 0;
+  private long nbReusedConstraints = 0;
+
+  /**
+   * Translation of a constraint and its tail.
+   */
+  private static class Translation {
+    /** The tail of the constraint when it was translated */
+    final Constraint tail;
+    final PersistentFormulaList conjuncts;
+
+    Translation(Constraint t, PersistentFormulaList c) {
+      tail = t;
+      conjuncts = c;
+    }
+  }
+
+  /**
+   * Default constructor.
+   */
+  PathConditionTranslator() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param cap Maximal number of constraints whose translation is cached;
+   *   the cache is emptied when it is reached.
+   */
+  PathConditionTranslator(int cap) {
+    capacity = cap;
+  }
+
+  /**
+   * Translates a path condition into a conjunction.
+   *
+   * @param pc The path condition to translate.
+   * @return A conjunction equivalent to {@code pc}.
+   */
+  EFormula translate(PathCondition pc) {
+    if ( pc == null ) throw new Error("pc parameter is null!");
+    return new EF_Conjunction(translate(pc.header));
+  }
+
+  /**
+   * Translates a list of constraints, reusing the longest tail already
+   * translated.
+   *
+   * @param cstr The first constraint of the list.
+   * @return The list of translated constraints.
+   */
+  PersistentFormulaList translate(Constraint cstr) {
+    List<Constraint> untranslated = new ArrayList<Constraint>();
+    PersistentFormulaList res = PersistentFormulaList.EMPTY;
+    for (Constraint c = cstr; c != null; c = c.getTail()) {
+      Translation t = cache.get(c);
+      if ( t != null && t.tail == c.getTail() ) {
+        res = t.conjuncts;
+        nbReusedConstraints += res.size();
+        break;
+      }
+      untranslated.add(c);
+    }
+    if ( cache.size() + untranslated.size() > capacity ) cache.clear();
+    for (int i = untranslated.size() - 1; i >= 0; i--) {
+      Constraint c = untranslated.get(i);
+      res = res.prepend(JPFHelper.constraint2relation(c));
+      cache.put(c, new Translation(c.getTail(), res));
+    }
+    nbTranslatedConstraints += untranslated.size();
+    return res;
+  }
+
+  /**
+   * Empties the cache.
+   */
+  void clear() {
+    cache.clear();
+  }
+
+  /**
+   * Returns the number of constraints translated so far.
+   *
+   * @return The number of constraints translated.
+   */
+  long getNbTranslatedConstraints() {
+    return nbTranslatedConstraints;
+  }
+
+  /**
+   * Returns the number of constraints whose translation was reused so far.
+   *
+   * @return The number of constraints reused.
+   */
+  long getNbReusedConstraints() {
+    return nbReusedConstraints;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.Arrays;
+
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.symbc.numeric.PCChoiceGenerator;
+
+
+/**
+ * Incremental tracker of the path choices of the JPF search, producing the
+ * same keys as {@link JPFHelper#vm2dynamicStateKey(gov.nasa.jpf.jvm.JVM, boolean)}
+ * without scanning the choice generators of the VM.
+ * It keeps a stack mirroring the chain of choice generators of the current
+ * path. Each entry holds the key of the path up to (and including) its
+ * choice and the key of the path before the last path condition choice
+ * generator, so that both keys are available in constant time. The stack is
+ * realigned on the choice generator notified by the VM: entries above it (or
+ * above its predecessor, for a new choice generator) belong to backtracked
+ * paths and are popped.
+ * Along with the keys, each entry holds the check values of the same paths:
+ * a second, independent hash of their choices (see
+ * {@link JPFHelper#extendPathCheck(int, PCChoiceGenerator)}). Keys are
+ * 64-bit hashes of the path; the check value is stored next to them (see
+ * {@link BacktrackTable}) to detect collisions.
+ * Each entry also holds a mark provided when it is pushed (the depth of the
+ * OFG for {@link EncoverListener}) and the smallest mark of the entries up
+ * to it whose choice generator has remaining choices. Only the top entry
+ * can advance, so only its minimum has to be refreshed on each event.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class PathKeyTracker {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Value of {@link #getOpenMark()} if no choice generator has remaining choices */
+  static final int NO_OPEN_MARK = Integer.MAX_VALUE;
+
+  private int size = 0;
+  private ChoiceGenerator<?>[] cgs = new ChoiceGenerator<?>[INITIAL_CAPACITY];
+  /** Key of the path up to and including the choice of each entry */
+  private long[] keyAfter = new long[INITIAL_CAPACITY];
+  /** Key of the path before the last path condition choice generator up to each entry */
+  private long[] keyBeforeLastPC = new long[INITIAL_CAPACITY];
+  /** Check value of the path up to and including the choice of each entry */
+  private int[] checkAfter = new int[INITIAL_CAPACITY];
+  /** Check value of the path before the last path condition choice generator up to each entry */
+  private int[] checkBeforeLastPC = new int[INITIAL_CAPACITY];
+  /** Mark provided when each entry was pushed */
+  private int[] marks = new int[INITIAL_CAPACITY];
+  /** Smallest mark of the entries up to each entry having remaining choices */
+  private int[] minOpenMarks = new int[INITIAL_CAPACITY];
+
+  /**
+   * To be called when a choice generator advances to its next choice.
+   *
+   * @param cg The choice generator which advanced.
+   * @param mark The mark of {@code cg} if it is new.
+   */
+  void choiceGeneratorAdvanced(ChoiceGenerator<?> cg, int mark) {
+    if ( cg == null ) return;
+    if ( alignOn(cg, mark) ) {
+      int top = size - 1;
+      if ( cg instanceof PCChoiceGenerator ) {
+        keyAfter[top] = JPFHelper.extendPathKey(keyBefore(top), (PCChoiceGenerator) cg);
+        checkAfter[top] = JPFHelper.extendPathCheck(checkBefore(top), (PCChoiceGenerator) cg);
+      }
+    }
+    refreshTop();
+  }
+
+  /**
+   * To be called when a choice generator has processed all its choices.
+   *
+   * @param cg The choice generator which is processed.
+   */
+  void choiceGeneratorProcessed(ChoiceGenerator<?> cg) {
+    if ( cg == null ) return;
+    alignOn(cg, inheritedMark());
+    refreshTop();
+  }
+
+  /**
+   * To be called when the search backtracks.
+   *
+   * @param cg The current choice generator of the restored state.
+   */
+  void stateBacktracked(ChoiceGenerator<?> cg) {
+    if ( cg == null ) return;
+    alignOn(cg, inheritedMark());
+    refreshTop();
+  }
+
+  /**
+   * Returns the mark given to a choice generator pushed without a mark of
+   * its own: the mark of the entry below it, which is not greater than its
+   * actual mark since marks grow along the path.
+   *
+   * @return The mark of the top entry, or 0.
+   */
+  private int inheritedMark() {
+    return (size > 0) ? marks[size - 1] : 0;
+  }
+
+  /**
+   * Recomputes the smallest open mark of the top entry, whose choice
+   * generator may have consumed its last choice.
+   */
+  private void refreshTop() {
+    if ( size == 0 ) return;
+    int top = size - 1;
+    int below = (top > 0) ? minOpenMarks[top - 1] : NO_OPEN_MARK;
+    minOpenMarks[top] = cgs[top].hasMoreChoices() ? Math.min(below, marks[top]) : below;
+  }
+
+  /**
+   * Sets the marks of all the entries to 0, for instance when the OFG the
+   * marks refer to is replaced.
+   */
+  void resetMarks() {
+    for (int i = 0; i < size; i++) {
+      marks[i] = 0;
+      minOpenMarks[i] = ( minOpenMarks[i] == NO_OPEN_MARK ) ? NO_OPEN_MARK : 0;
+    }
+  }
+
+  /**
+   * Realigns the stack on the provided choice generator: pops the entries
+   * which are neither this choice generator nor its predecessor, then pushes
+   * an entry for it if it is new.
+   *
+   * @param cg The current choice generator.
+   * @param mark The mark of {@code cg} if it is new.
+   * @return {@code true} iff {@code cg} was already on the stack.
+   */
+  private boolean alignOn(ChoiceGenerator<?> cg, int mark) {
+    ChoiceGenerator<?> previous = cg.getPreviousChoiceGenerator();
+    while ( size > 0 && cgs[size - 1] != cg && cgs[size - 1] != previous ) {
+      cgs[--size] = null;
+    }
+    if ( size > 0 && cgs[size - 1] == cg ) return true;
+    push(cg, mark);
+    return false;
+  }
+
+  /**
+   * Pushes a new entry for the provided choice generator.
+   *
+   * @param cg The new choice generator.
+   * @param mark The mark of {@code cg}.
+   */
+  private void push(ChoiceGenerator<?> cg, int mark) {
+    if ( size == cgs.length ) {
+      cgs = Arrays.copyOf(cgs, 2 * size);
+      keyAfter = Arrays.copyOf(keyAfter, 2 * size);
+      keyBeforeLastPC = Arrays.copyOf(keyBeforeLastPC, 2 * size);
+      checkAfter = Arrays.copyOf(checkAfter, 2 * size);
+      checkBeforeLastPC = Arrays.copyOf(checkBeforeLastPC, 2 * size);
+      marks = Arrays.copyOf(marks, 2 * size);
+      minOpenMarks = Arrays.copyOf(minOpenMarks, 2 * size);
+    }
+    int top = size++;
+    cgs[top] = cg;
+    marks[top] = mark;
+    long before = keyBefore(top);
+    int checkBefore = checkBefore(top);
+    if ( cg instanceof PCChoiceGenerator ) {
+      keyAfter[top] = JPFHelper.extendPathKey(before, (PCChoiceGenerator) cg);
+      keyBeforeLastPC[top] = before;
+      checkAfter[top] = JPFHelper.extendPathCheck(checkBefore, (PCChoiceGenerator) cg);
+      checkBeforeLastPC[top] = checkBefore;
+    } else {
+      keyAfter[top] = before;
+      keyBeforeLastPC[top] = (top > 0) ? keyBeforeLastPC[top - 1] : JPFHelper.EMPTY_PATH_KEY;
+      checkAfter[top] = checkBefore;
+      checkBeforeLastPC[top] = (top > 0) ? checkBeforeLastPC[top - 1] : JPFHelper.EMPTY_PATH_CHECK;
+    }
+  }
+
+  /**
+   * Returns the key of the path before the provided entry.
+   *
+   * @param idx The index of an entry.
+   * @return The key of the path before {@code idx}.
+   */
+  private long keyBefore(int idx) {
+    return (idx > 0) ? keyAfter[idx - 1] : JPFHelper.EMPTY_PATH_KEY;
+  }
+
+  /**
+   * Returns the check value of the path before the provided entry.
+   *
+   * @param idx The index of an entry.
+   * @return The check value of the path before {@code idx}.
+   */
+  private int checkBefore(int idx) {
+    return (idx > 0) ? checkAfter[idx - 1] : JPFHelper.EMPTY_PATH_CHECK;
+  }
+
+  /**
+   * Returns the key of the current path.
+   *
+   * @param backtraking If true, the last path condition choice is excluded
+   *   (see {@link JPFHelper#vm2dynamicStateId(gov.nasa.jpf.jvm.JVM, boolean)}).
+   * @return The key of the current path.
+   */
+  long getPathKey(boolean backtraking) {
+    if ( size == 0 ) return JPFHelper.EMPTY_PATH_KEY;
+    return backtraking ? keyBeforeLastPC[size - 1] : keyAfter[size - 1];
+  }
+
+  /**
+   * Returns the check value of the current path, an independent hash of the
+   * choices folded into its key (see {@link #getPathKey(boolean)}).
+   *
+   * @param backtraking If true, the last path condition choice is excluded.
+   * @return The check value of the current path.
+   */
+  int getPathCheck(boolean backtraking) {
+    if ( size == 0 ) return JPFHelper.EMPTY_PATH_CHECK;
+    return backtraking ? checkBeforeLastPC[size - 1] : checkAfter[size - 1];
+  }
+
+  /**
+   * Returns the smallest mark of the choice generators of the current path
+   * having remaining choices.
+   *
+   * @return The smallest open mark, or {@link #NO_OPEN_MARK}.
+   */
+  int getOpenMark() {
+    return (size > 0) ? minOpenMarks[size - 1] : NO_OPEN_MARK;
+  }
+
+  /**
+   * Returns the number of choice generators on the current path.
+   *
+   * @return The depth of the current path.
+   */
+  int getDepth() {
+    return size;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
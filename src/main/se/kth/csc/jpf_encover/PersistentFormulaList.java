@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Immutable list of formulas in which prepending a formula is done in
+ * constant time and shares the existing list as the tail of the new one.
+ * It is used to back conjunctions of path conditions: the path condition of
+ * an output and the one of a later output on the same path share the
+ * formulas of their common constraints.
+ * Iterating over the list is done in linear time, but {@link #get(int)} is
+ * linear in the index.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+final class PersistentFormulaList extends AbstractList<EFormula> implements Serializable {
+
+  /** The empty list. */
+  static final PersistentFormulaList EMPTY = new PersistentFormulaList(null, null);
+
+  private final EFormula head;
+  private final PersistentFormulaList tail;
+  private final int size;
+
+  /**
+   * Constructor of a non-empty list.
+   *
+   * @param h The first element.
+   * @param t The rest of the list.
+   */
+  private PersistentFormulaList(EFormula h, PersistentFormulaList t) {
+    head = h;
+    tail = t;
+    size = (t == null) ? 0 : t.size + 1;
+  }
+
+  /**
+   * Returns the list made of the provided formula followed by this list.
+   *
+   * @param f The formula to prepend.
+   * @return The extended list.
+   */
+  PersistentFormulaList prepend(EFormula f) {
+    return new PersistentFormulaList(f, this);
+  }
+
+  /**
+   * Returns the first formula of this list.
+   *
+   * @return The head of this list.
+   */
+  EFormula getHead() {
+    if ( size == 0 ) throw new NoSuchElementException("The empty list has no head.");
+    return head;
+  }
+
+  /**
+   * Returns the rest of this list (without its first element).
+   *
+   * @return The tail of this list.
+   */
+  PersistentFormulaList getTail() {
+    if ( size == 0 ) throw new NoSuchElementException("The empty list has no tail.");
+    return tail;
+  }
+
+  /**
+   * Returns the number of formulas in this list.
+   *
+   * @return The size of this list.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the formula at the provided position.
+   *
+   * @param index The position of the formula.
+   * @return The formula at position {@code index}.
+   */
+  public EFormula get(int index) {
+    if ( index < 0 || index >= size )
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    PersistentFormulaList l = this;
+    for (int i = 0; i < index; i++) l = l.tail;
+    return l.head;
+  }
+
+  /**
+   * Returns an iterator over the formulas of this list.
+   *
+   * @return An iterator over this list.
+   */
+  public Iterator<EFormula> iterator() {
+    return new Iterator<EFormula>() {
+      private PersistentFormulaList next = PersistentFormulaList.this;
+      public boolean hasNext() { return next.size > 0; }
+      public EFormula next() {
+        if ( next.size == 0 ) throw new NoSuchElementException();
+        EFormula f = next.head;
+        next = next.tail;
+        return f;
+      }
+      public void remove() { throw new UnsupportedOperationException("PersistentFormulaList is immutable."); }
+    };
+  }
+
+  /**
+   * Serializes this list as an {@link ArrayList}, avoiding a recursion as
+   * deep as the list.
+   *
+   * @return The list to serialize instead of this one.
+   */
+  private Object writeReplace() {
+    return new ArrayList<EFormula>(this);
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
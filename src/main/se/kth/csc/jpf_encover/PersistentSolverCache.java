@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+
+/**
+ * Content-addressed directory storing satisfiability answers across runs.
+ * Each answer is stored in its own file, named after the SHA-256 hash of the
+ * canonical key of the query (see {@link CanonicalQuery}) and containing the
+ * key itself, the verdict and the canonical model. Entries are written into a
+ * temporary file which is then renamed, so that readers never see partially
+ * written entries. Every write is also recorded in an append-only index,
+ * which is read once when the cache is opened and used to evict entries
+ * which are too old or exceed the size limit. Lookups of entries unknown to
+ * the index only check whether a concurrent analysis has written their file
+ * since. The size limit is also enforced when an entry is stored, by
+ * evicting the oldest known entries first. Index updates and evictions are
+ * performed under a file lock, making the directory safe for several
+ * concurrent analyses.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class PersistentSolverCache extends LoggerUser {
+
+  private static final String FORMAT_HEADER = "encover-solver-cache 1";
+  private static final String INDEX_FILE_NAME = "index";
+  private static final String LOCK_FILE_NAME = "index.lock";
+  private static final String ENTRY_SUFFIX = ".entry";
+
+  private final File directory;
+  private final long maxSize;
+  private final long maxAge;
+  /** Entries known to be present in the directory, from the oldest one */
+  private final LinkedHashMap<String,IndexEntry> knownEntries = new LinkedHashMap<String,IndexEntry>();
+  /** Total size of the known entries */
+  private long knownSize = 0;
+
+  /** Index entry: an entry file, its size and the time it was written */
+  private static final class IndexEntry {
+    final String hash;
+    final long time;
+    final long size;
+    IndexEntry(String h, long t, long s) { hash = h; time = t; size = s; }
+  }
+
+  /**
+   * Opens (and creates if needed) a cache directory, evicting stale entries.
+   *
+   * @param dir The cache directory.
+   * @param maxSizeMB The maximal size of the entries of the cache, in MB.
+   * @param maxAgeDays The maximal age of the entries of the cache, in days.
+   * @param l Logger to use to log information.
+   * @throws IOException If the directory can not be created or read.
+   */
+  PersistentSolverCache(File dir, long maxSizeMB, long maxAgeDays, EncoverLogger l) throws IOException {
+    setLogger(l);
+    directory = dir;
+    maxSize = maxSizeMB * 1024 * 1024;
+    maxAge = maxAgeDays * 24 * 60 * 60 * 1000;
+    if ( ! directory.isDirectory() && ! directory.mkdirs() )
+      throw new IOException("Impossible to create the solver cache directory " + directory);
+    evictStaleEntries();
+  }
+
+  /**
+   * Computes the hash naming the entry of a canonical key.
+   *
+   * @param key The canonical key of a query.
+   * @return The hexadecimal SHA-256 hash of the key.
+   */
+  private static String hash(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+      StringBuilder res = new StringBuilder();
+      for (byte b: digest) res.append(String.format("%02x", b));
+      return res.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("SHA-256 should be provided by every Java platform.", e);
+    } catch (UnsupportedEncodingException e) {
+      throw new Error("UTF-8 should be provided by every Java platform.", e);
+    }
+  }
+
+  /**
+   * Returns the file storing the entry with the provided hash.
+   *
+   * @param hash The hash of the entry.
+   * @return The entry file.
+   */
+  private File entryFile(String hash) {
+    return new File(new File(directory, hash.substring(0, 2)), hash + ENTRY_SUFFIX);
+  }
+
+  /**
+   * Looks up the answer memorized for a query.
+   *
+   * @param key The canonical key of the query.
+   * @param unsat The object to return if the memorized verdict is unsat.
+   * @return {@code unsat} if the query is memorized as unsatisfiable, its
+   *   canonical model if it is memorized as satisfiable, and {@code null} if
+   *   the query is not memorized.
+   */
+  synchronized Map<Integer,EE_Constant> lookup(String key, Map<Integer,EE_Constant> unsat) {
+    String hash = hash(key);
+    if ( ! knownEntries.containsKey(hash) ) {
+      // Possibly stored by a concurrent analysis since the index was read
+      File f = entryFile(hash);
+      if ( ! f.isFile() ) return null;
+      addKnownEntry(new IndexEntry(hash, f.lastModified(), f.length()));
+    }
+
+    BufferedReader in = null;
+    try {
+      in = new BufferedReader(new InputStreamReader(new FileInputStream(entryFile(hash)), "UTF-8"));
+      if ( ! FORMAT_HEADER.equals(in.readLine()) ) return null;
+      if ( ! key.equals(unescape(in.readLine())) ) return null;
+      String verdict = in.readLine();
+      if ( "unsat".equals(verdict) ) return unsat;
+      if ( ! "sat".equals(verdict) ) return null;
+      Map<Integer,EE_Constant> model = new HashMap<Integer,EE_Constant>();
+      String line;
+      while ( (line = in.readLine()) != null ) {
+        String[] fields = line.split(" ", 3);
+        model.put(Integer.valueOf(fields[0]), decodeConstant(fields[1], unescape(fields[2])));
+      }
+      return model;
+    } catch (FileNotFoundException e) {
+      // Evicted by another analysis
+      removeKnownEntry(hash);
+      return null;
+    } catch (Exception e) {
+      logln("Corrupted solver cache entry " + hash + ": " + e);
+      return null;
+    } finally {
+      if ( in != null ) try { in.close(); } catch (IOException e) {}
+    }
+  }
+
+  /**
+   * Memorizes the answer to a query.
+   *
+   * @param key The canonical key of the query.
+   * @param model The canonical model of the query, or {@code null} if the query
+   *   is unsatisfiable.
+   */
+  synchronized void store(String key, Map<Integer,EE_Constant> model) {
+    String hash = hash(key);
+    StringBuilder content = new StringBuilder();
+    content.append(FORMAT_HEADER).append('\n');
+    content.append(escape(key)).append('\n');
+    if ( model == null ) {
+      content.append("unsat\n");
+    } else {
+      content.append("sat\n");
+      for (Map.Entry<Integer,EE_Constant> entry: new TreeMap<Integer,EE_Constant>(model).entrySet()) {
+        EE_Constant cst = entry.getValue();
+        if ( ! isStorable(cst) ) return;
+        content.append(entry.getKey()).append(' ').append(cst.getType()).append(' ');
+        content.append(escape(cst.getValue().toString())).append('\n');
+      }
+    }
+
+    File target = entryFile(hash);
+    File tmp = null;
+    try {
+      byte[] bytes = content.toString().getBytes("UTF-8");
+      if ( bytes.length > maxSize ) return;
+      removeKnownEntry(hash);
+      evictToFit(bytes.length);
+      target.getParentFile().mkdirs();
+      tmp = File.createTempFile(hash, ".tmp", target.getParentFile());
+      OutputStream out = new FileOutputStream(tmp);
+      try { out.write(bytes); }
+      finally { out.close(); }
+      if ( ! tmp.renameTo(target) ) {
+        // Another analysis has just stored the same entry.
+        tmp.delete();
+        if ( ! target.exists() ) return;
+      }
+      IndexEntry entry = new IndexEntry(hash, System.currentTimeMillis(), target.length());
+      appendToIndex(entry);
+      addKnownEntry(entry);
+    } catch (IOException e) {
+      logln("Impossible to store a solver cache entry: " + e);
+      if ( tmp != null ) tmp.delete();
+    }
+  }
+
+  /**
+   * Records an entry as present in the directory.
+   *
+   * @param entry The entry.
+   */
+  private void addKnownEntry(IndexEntry entry) {
+    removeKnownEntry(entry.hash);
+    knownEntries.put(entry.hash, entry);
+    knownSize += entry.size;
+  }
+
+  /**
+   * Records an entry as absent from the directory.
+   *
+   * @param hash The hash of the entry.
+   */
+  private void removeKnownEntry(String hash) {
+    IndexEntry entry = knownEntries.remove(hash);
+    if ( entry != null ) knownSize -= entry.size;
+  }
+
+  /**
+   * Evicts the oldest known entries until an entry of the provided size can
+   * be stored without exceeding the size limit. The index still lists the
+   * evicted entries; they are dropped from it when it is next compacted.
+   *
+   * @param size The size of the entry to store.
+   */
+  private void evictToFit(long size) {
+    Iterator<IndexEntry> ite = knownEntries.values().iterator();
+    while ( knownSize + size > maxSize && ite.hasNext() ) {
+      IndexEntry oldest = ite.next();
+      ite.remove();
+      knownSize -= oldest.size;
+      entryFile(oldest.hash).delete();
+    }
+  }
+
+  /**
+   * Test if a constant can be stored in the cache.
+   *
+   * @param cst The constant.
+   * @return True iff the constant has a type handled by the cache.
+   */
+  private static boolean isStorable(EE_Constant cst) {
+    switch (cst.getType()) {
+    case BOOL: case INT: case REAL: case STR: return (cst.getValue() != null);
+    default: return false;
+    }
+  }
+
+  /**
+   * Rebuilds a constant stored in the cache.
+   *
+   * @param type The name of the type of the constant.
+   * @param value The textual representation of the value of the constant.
+   * @return The constant.
+   */
+  private static EE_Constant decodeConstant(String type, String value) {
+    EExpression.Type t = EExpression.Type.valueOf(type);
+    switch (t) {
+    case BOOL: return new EE_Constant(t, Boolean.valueOf(value));
+    case INT: return new EE_Constant(t, Integer.valueOf(value));
+    case REAL: return new EE_Constant(t, Double.valueOf(value));
+    case STR: return new EE_Constant(t, value);
+    default: throw new Error("Constants of type " + t + " are not stored in the solver cache.");
+    }
+  }
+
+  /**
+   * Escapes backslashes and line breaks so that a string fits on one line.
+   *
+   * @param s The string to escape.
+   * @return The escaped string.
+   */
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  /**
+   * Reverts {@link #escape(String)}.
+   *
+   * @param s The escaped string.
+   * @return The original string.
+   */
+  private static String unescape(String s) {
+    if ( s == null ) return null;
+    StringBuilder res = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char ch = s.charAt(i);
+      if ( ch == '\\' && i + 1 < s.length() ) {
+        char next = s.charAt(++i);
+        res.append(next == 'n' ? '\n' : (next == 'r' ? '\r' : next));
+      } else {
+        res.append(ch);
+      }
+    }
+    return res.toString();
+  }
+
+  /**
+   * Appends an entry to the index of the cache directory.
+   *
+   * @param entry The entry to record.
+   */
+  private void appendToIndex(IndexEntry entry) throws IOException {
+    RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+    try {
+      FileLock lock = lockFile.getChannel().lock();
+      try {
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, INDEX_FILE_NAME), true), "UTF-8");
+        try { out.write(entry.hash + " " + entry.time + " " + entry.size + "\n"); }
+        finally { out.close(); }
+      } finally {
+        lock.release();
+      }
+    } finally {
+      lockFile.close();
+    }
+  }
+
+  /**
+   * Reads the index, evicts entries which are too old or exceed the size limit
+   * (oldest first), rewrites a compacted index and records the remaining
+   * entries as known.
+   */
+  private void evictStaleEntries() throws IOException {
+    RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+    try {
+      FileLock lock = lockFile.getChannel().lock();
+      try {
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        Map<String,IndexEntry> entries = new HashMap<String,IndexEntry>();
+        if ( indexFile.exists() ) {
+          BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+          try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+              String[] fields = line.split(" ");
+              if ( fields.length != 3 ) continue;
+              try {
+                entries.put(fields[0], new IndexEntry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+              } catch (NumberFormatException e) {
+                logln("Ignoring corrupted index line: " + line);
+              }
+            }
+          } finally {
+            in.close();
+          }
+        }
+
+        List<IndexEntry> sorted = new ArrayList<IndexEntry>(entries.values());
+        Collections.sort(sorted, new Comparator<IndexEntry>() {
+            public int compare(IndexEntry e1, IndexEntry e2) {
+              return (e1.time < e2.time) ? 1 : ((e1.time > e2.time) ? -1 : 0);
+            }
+          });
+
+        long now = System.currentTimeMillis();
+        long totalSize = 0;
+        int nbEvicted = 0;
+        List<IndexEntry> kept = new ArrayList<IndexEntry>();
+        StringBuilder compacted = new StringBuilder();
+        for (IndexEntry entry: sorted) {
+          File f = entryFile(entry.hash);
+          if ( ! f.exists() ) continue;
+          if ( now - entry.time > maxAge || totalSize + entry.size > maxSize ) {
+            f.delete();
+            nbEvicted++;
+            continue;
+          }
+          totalSize += entry.size;
+          kept.add(entry);
+          compacted.append(entry.hash).append(' ').append(entry.time).append(' ').append(entry.size).append('\n');
+        }
+        for (int i = kept.size() - 1; i >= 0; i--) addKnownEntry(kept.get(i));
+        logln("solver cache " + directory + ": " + knownEntries.size() + " entries kept, " + nbEvicted + " evicted");
+
+        File tmp = File.createTempFile(INDEX_FILE_NAME, ".tmp", directory);
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try { out.write(compacted.toString()); }
+        finally { out.close(); }
+        indexFile.delete();
+        if ( ! tmp.renameTo(indexFile) ) {
+          tmp.delete();
+          throw new IOException("Impossible to rewrite the solver cache index " + indexFile);
+        }
+      } finally {
+        lock.release();
+      }
+    } finally {
+      lockFile.close();
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
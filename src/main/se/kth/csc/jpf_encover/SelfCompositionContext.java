@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Pieces of the self-composition shared by the interference formulas of an
+ * analysis.
+ * An interference formula compares a run of the program with a renamed copy
+ * of itself: every variable {@code x} is renamed into {@code x_bis}, the
+ * inputs and their copies are constrained to their domains, the leaked
+ * expressions are equal in both runs and at least one harbored expression
+ * differs. None of this depends on the vertex checked, and the renamed path
+ * condition and outputs of a vertex do not depend on the vertex they are
+ * compared with. This context builds each of those pieces once and hands out
+ * the same instance afterwards, so that generating the formula of a vertex
+ * only assembles prebuilt pieces.
+ * The pieces depending on the policy (leaked equalities and harbored
+ * disequalities) are memoized per policy, identified by the set of its
+ * expressions written with the ids of their variables (the pseudonyms of the
+ * calling thread may be shared by distinct variables, and policies are
+ * parsed anew into new expressions); the same background formula instance is
+ * thus returned for
+ * all the vertices sharing a policy, which lets incremental and slicing
+ * solvers recognize it.
+ * The formulas handed out are shared: they must not be modified.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class SelfCompositionContext {
+
+  /** Suffix of the renamed copies of the variables. */
+  static final String RENAMING_SUFFIX = "_bis";
+
+  /** Maximal number of renamed lists of conjuncts memorized. */
+  static final int PRIMED_TAILS_CAPACITY = 1 << 16;
+
+  /**
+   * Policy-dependent pieces of the self-composition.
+   */
+  private static final class PolicyPieces {
+    EF_Conjunction leakedConj = null;
+    EF_Disjunction harboredDisj = null;
+    EF_Conjunction background = null;
+  }
+
+  private final Map<EE_Variable,List<EE_Constant>> domains;
+  private final Map<EE_Variable,EE_Variable> renaming = new HashMap<EE_Variable,EE_Variable>();
+  private final Map<EE_Variable,EE_Variable> renamingView = Collections.unmodifiableMap(renaming);
+  private EF_Conjunction domainsConj = null;
+  private final Map<Set<String>,PolicyPieces> leaked2pieces = new HashMap<Set<String>,PolicyPieces>();
+  private final Map<Set<String>,PolicyPieces> harbored2pieces = new HashMap<Set<String>,PolicyPieces>();
+  private final Map<Object,Object> primedCopies = new IdentityHashMap<Object,Object>();
+  private final Map<PersistentFormulaList,PersistentFormulaList> primedTails =
+    new IdentityHashMap<PersistentFormulaList,PersistentFormulaList>();
+
+
+  /**
+   * Creates a self-composition context for inputs ranging over the provided
+   * domains.
+   *
+   * @param domains The domains of the inputs.
+   */
+  SelfCompositionContext(Map<EE_Variable,List<EE_Constant>> domains) {
+    this.domains = domains;
+  }
+
+  /**
+   * Returns the domains of the inputs this context was created with.
+   *
+   * @return The domains of the inputs.
+   */
+  Map<EE_Variable,List<EE_Constant>> getDomains() { return domains; }
+
+  /**
+   * Returns the renaming built so far, mapping each variable met to its copy.
+   *
+   * @return An unmodifiable view of the renaming.
+   */
+  synchronized Map<EE_Variable,EE_Variable> getRenaming() { return renamingView; }
+
+  /**
+   * Extends the renaming to the provided variables.
+   *
+   * @param variables Variables which have to be renamed.
+   */
+  private void extendRenaming(Set<EE_Variable> variables) {
+    Iterator<EE_Variable> varIte = variables.iterator();
+    while ( varIte.hasNext() ) {
+      EE_Variable var = varIte.next();
+      if ( ! renaming.containsKey(var) )
+        renaming.put(var, var.clone(RENAMING_SUFFIX));
+    }
+  }
+
+  /**
+   * Returns the renamed copy of an expression.
+   *
+   * @param exp The expression to rename.
+   * @return The renamed copy of {@code exp}, the same instance being returned
+   *   as long as {@code exp} is the same instance.
+   */
+  synchronized EExpression getPrimed(EExpression exp) {
+    if ( exp instanceof EE_Constant ) return exp;
+    EExpression res = (EExpression) primedCopies.get(exp);
+    if ( res == null ) {
+      extendRenaming(exp.getVariables());
+      res = exp.clone(renaming);
+      primedCopies.put(exp, res);
+    }
+    return res;
+  }
+
+  /**
+   * Returns the renamed copy of a formula.
+   *
+   * @param f The formula to rename.
+   * @return The renamed copy of {@code f}, the same instance being returned
+   *   as long as {@code f} is the same instance.
+   */
+  synchronized EFormula getPrimed(EFormula f) {
+    EFormula res = (EFormula) primedCopies.get(f);
+    if ( res == null ) {
+      extendRenaming(f.getVariables());
+      res = f.clone(renaming);
+      primedCopies.put(f, res);
+    }
+    return res;
+  }
+
+  /**
+   * Returns the renamed copy of the path condition of a vertex.
+   * Conjuncts are renamed one by one and their copies memorized. If the
+   * conjuncts are stored in a {@link PersistentFormulaList}, the renamed
+   * list shares the renamed copy of the tail it has in common with the path
+   * conditions already renamed, so that the copies of the path conditions of
+   * a path do not duplicate their common conjuncts.
+   *
+   * @param vertex The vertex whose path condition is renamed.
+   * @return The renamed copy of the path condition of {@code vertex}.
+   */
+  EFormula getPrimedPathCondition(OFG_Vertex vertex) {
+    EFormula pc = vertex.getPathCondition();
+    if ( ! (pc instanceof EF_Conjunction) ) return getPrimed(pc);
+    List<EFormula> conjuncts = pc.getSubFormulas();
+    if ( conjuncts instanceof PersistentFormulaList )
+      return new EF_Conjunction(getPrimedConjuncts((PersistentFormulaList) conjuncts));
+    EF_Conjunction res = new EF_Conjunction();
+    for (EFormula f: conjuncts) res.append(getPrimed(f));
+    return res;
+  }
+
+  /**
+   * Returns the renamed copy of a list of conjuncts, reusing the renamed
+   * copy of its longest tail already renamed. The memorized copies are
+   * forgotten when their number reaches {@link #PRIMED_TAILS_CAPACITY}.
+   *
+   * @param conjuncts The conjuncts to rename.
+   * @return The list of the renamed copies of {@code conjuncts}.
+   */
+  private synchronized PersistentFormulaList getPrimedConjuncts(PersistentFormulaList conjuncts) {
+    if ( primedTails.size() >= PRIMED_TAILS_CAPACITY ) primedTails.clear();
+    List<PersistentFormulaList> toRename = new ArrayList<PersistentFormulaList>();
+    PersistentFormulaList l = conjuncts;
+    PersistentFormulaList primed = null;
+    while ( l.size() > 0 && (primed = primedTails.get(l)) == null ) {
+      toRename.add(l);
+      l = l.getTail();
+    }
+    if ( primed == null ) primed = PersistentFormulaList.EMPTY;
+    for (int i = toRename.size() - 1; i >= 0; i--) {
+      PersistentFormulaList node = toRename.get(i);
+      primed = primed.prepend(getPrimed(node.getHead()));
+      primedTails.put(node, primed);
+    }
+    return primed;
+  }
+
+  /**
+   * Returns the conjunction of constraints stating that the inputs, and their
+   * renamed copies, belong to their domains.
+   *
+   * @return The conjunction of domain constraints.
+   */
+  synchronized EF_Conjunction getDomainsConjunction() {
+    if ( domainsConj == null ) {
+      extendRenaming(domains.keySet());
+      domainsConj = new EF_Conjunction();
+      Iterator<Map.Entry<EE_Variable,List<EE_Constant>>> domIte =
+        domains.entrySet().iterator();
+      while ( domIte.hasNext() ) {
+        Map.Entry<EE_Variable,List<EE_Constant>> dom = domIte.next();
+        EE_Variable var = dom.getKey();
+        EE_Variable var_bis = var.clone(renaming);
+        List<EE_Constant> boundaries = dom.getValue();
+        EE_Constant min = boundaries.get(0);
+        EE_Constant max = boundaries.get(1);
+
+        domainsConj.append(new EF_Valuation(lessOrEqual(min, var)));
+        domainsConj.append(new EF_Valuation(lessOrEqual(var, max)));
+        domainsConj.append(new EF_Valuation(lessOrEqual(min, var_bis)));
+        domainsConj.append(new EF_Valuation(lessOrEqual(var_bis, max)));
+      }
+    }
+    return domainsConj;
+  }
+
+  /**
+   * Returns the conjunction of equalities stating that the leaked expressions
+   * have the same value as their renamed copies.
+   *
+   * @param leaked A set of expressions corresponding to the initialy leaked information.
+   * @return The conjunction of leaked equalities.
+   */
+  synchronized EF_Conjunction getLeakedConjunction(Set<EExpression> leaked) {
+    PolicyPieces pieces = getPolicyPieces(leaked2pieces, leaked);
+    if ( pieces.leakedConj == null ) {
+      pieces.leakedConj = new EF_Conjunction();
+      Iterator<EExpression> leakedIte = leaked.iterator();
+      while ( leakedIte.hasNext() ) {
+        EExpression leakedExp = leakedIte.next();
+        EE_BinaryOperation equalExp = new EE_BinaryOperation.EQ();
+        equalExp.setLeftHandSide(leakedExp);
+        equalExp.setRightHandSide(getPrimed(leakedExp));
+        pieces.leakedConj.append(new EF_Valuation(equalExp));
+      }
+    }
+    return pieces.leakedConj;
+  }
+
+  /**
+   * Returns the disjunction of disequalities stating that at least one
+   * harbored expression differs from its renamed copy.
+   *
+   * @param harbored A set of expressions corresponding to the harbored information.
+   * @return The disjunction of harbored disequalities.
+   */
+  synchronized EF_Disjunction getHarboredDisjunction(Set<EExpression> harbored) {
+    PolicyPieces pieces = getPolicyPieces(harbored2pieces, harbored);
+    if ( pieces.harboredDisj == null ) {
+      pieces.harboredDisj = new EF_Disjunction();
+      Iterator<EExpression> harboredIte = harbored.iterator();
+      while ( harboredIte.hasNext() ) {
+        EExpression harboredExp = harboredIte.next();
+        EE_BinaryOperation diffExp = new EE_BinaryOperation.NE();
+        diffExp.setLeftHandSide(harboredExp);
+        diffExp.setRightHandSide(getPrimed(harboredExp));
+        pieces.harboredDisj.append(new EF_Valuation(diffExp));
+      }
+    }
+    return pieces.harboredDisj;
+  }
+
+  /**
+   * Returns the background of interference formulas: the domain constraints
+   * on the inputs and the equalities on the leaked expressions.
+   *
+   * @param leaked A set of expressions corresponding to the initialy leaked information.
+   * @return The background of interference formulas, the same instance being
+   *   returned for the same leaked expressions.
+   */
+  synchronized EFormula getBackgroundFormula(Set<EExpression> leaked) {
+    PolicyPieces pieces = getPolicyPieces(leaked2pieces, leaked);
+    if ( pieces.background == null ) {
+      pieces.background = new EF_Conjunction();
+      pieces.background.append(getDomainsConjunction());
+      pieces.background.append(getLeakedConjunction(leaked));
+    }
+    return pieces.background;
+  }
+
+  /**
+   * Retrieves the memoized pieces associated to a set of expressions.
+   *
+   * @param memo The pieces memoized for leaked sets, or for harbored sets.
+   * @param exps The leaked or harbored expressions.
+   * @return The pieces memoized for those expressions.
+   */
+  private PolicyPieces getPolicyPieces(Map<Set<String>,PolicyPieces> memo, Set<EExpression> exps) {
+    Set<String> key = new HashSet<String>();
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(EE_Variable.PseudonymPolicy.ID);
+    try {
+      for (EExpression exp: exps) key.add(exp.toString());
+    } finally {
+      EE_Variable.setPseudonymPolicy(oldPPolicy);
+    }
+    PolicyPieces pieces = memo.get(key);
+    if ( pieces == null ) {
+      pieces = new PolicyPieces();
+      memo.put(key, pieces);
+    }
+    return pieces;
+  }
+
+  /**
+   * Builds the expression {@code lhs <= rhs}.
+   *
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The comparison.
+   */
+  private static EE_BinaryOperation lessOrEqual(EExpression lhs, EExpression rhs) {
+    EE_BinaryOperation res = new EE_BinaryOperation.LE();
+    res.setLeftHandSide(lhs);
+    res.setRightHandSide(rhs);
+    return res;
+  }
+
+}
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
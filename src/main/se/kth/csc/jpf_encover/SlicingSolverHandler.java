@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Solver handler splitting queries into independent components before
+ * forwarding them to another solver handler.
+ * The conjuncts of a query are partitioned so that two conjuncts sharing a
+ * variable are in the same component; the query is satisfiable iff every
+ * component is, and a model of the query is the union of models of the
+ * components. Interference formulas constrain the domain of every variable
+ * of the OFG, whereas the path conditions and outputs compared often involve
+ * only a few of them: the component containing the harbored disjunction is
+ * then much smaller than the whole query.
+ * The components made only of background conjuncts (domain constraints and
+ * leaked equalities of variables not involved in the query) do not depend on
+ * the query: they are checked once per background and their verdict reused
+ * for all the queries sharing it. The background conjuncts involved in a query
+ * are passed as a background to the underlying solver, the same formula being
+ * reused whenever the same background components are involved, so that
+ * incremental solvers keep it asserted between queries.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class SlicingSolverHandler extends SolverHandler {
+
+  /**
+   * Partition of a set of conjuncts into variable-disjoint components.
+   */
+  private static final class Partition {
+    private final Map<EE_Variable,EE_Variable> parent = new HashMap<EE_Variable,EE_Variable>();
+
+    /**
+     * Returns the representative of the component of a variable.
+     *
+     * @param v A variable.
+     * @return The representative of its component.
+     */
+    EE_Variable find(EE_Variable v) {
+      EE_Variable p = parent.get(v);
+      if ( p == null ) {
+        parent.put(v, v);
+        return v;
+      }
+      if ( p == v ) return v;
+      EE_Variable root = find(p);
+      parent.put(v, root);
+      return root;
+    }
+
+    /**
+     * Puts all the provided variables in the same component.
+     *
+     * @param vars Some variables.
+     * @return The representative of their component, or {@code null} if no
+     *   variable is provided.
+     */
+    EE_Variable union(Collection<EE_Variable> vars) {
+      EE_Variable root = null;
+      for (EE_Variable v: vars) {
+        EE_Variable r = find(v);
+        if ( root == null ) root = r;
+        else if ( r != root ) parent.put(r, root);
+      }
+      return (root == null) ? null : find(root);
+    }
+  }
+
+  /**
+   * Background split into components, with the verdicts of the components
+   * already checked and the slices already built.
+   */
+  private static final class SlicedBackground {
+    final EFormula background;
+    final List<Set<EE_Variable>> variables = new ArrayList<Set<EE_Variable>>();
+    final List<List<EFormula>> conjuncts = new ArrayList<List<EFormula>>();
+    private final SolverResult[] verdicts;
+    private final Map<BitSet,EFormula> slices = new HashMap<BitSet,EFormula>();
+
+    /**
+     * Splits a background into components.
+     *
+     * @param bg The background formula.
+     */
+    SlicedBackground(EFormula bg) {
+      background = bg;
+      List<EFormula> all = new ArrayList<EFormula>();
+      flattenConjunction(bg, all);
+      Partition partition = new Partition();
+      List<Set<EE_Variable>> allVars = new ArrayList<Set<EE_Variable>>();
+      for (EFormula conjunct: all) {
+        Set<EE_Variable> vars = conjunct.getVariables();
+        allVars.add(vars);
+        partition.union(vars);
+      }
+      Map<EE_Variable,Integer> componentOf = new HashMap<EE_Variable,Integer>();
+      for (int i = 0; i < all.size(); i++) {
+        Set<EE_Variable> vars = allVars.get(i);
+        // Variable free conjuncts are gathered in a component of their own.
+        EE_Variable root = vars.isEmpty() ? null : partition.find(vars.iterator().next());
+        Integer c = componentOf.get(root);
+        if ( c == null ) {
+          c = variables.size();
+          componentOf.put(root, c);
+          variables.add(new HashSet<EE_Variable>());
+          conjuncts.add(new ArrayList<EFormula>());
+        }
+        variables.get(c).addAll(vars);
+        conjuncts.get(c).add(all.get(i));
+      }
+      verdicts = new SolverResult[variables.size()];
+    }
+
+    /**
+     * Returns the verdict of a component, if already known.
+     *
+     * @param c The index of the component.
+     * @return Its verdict, or {@code null} if it has not been checked yet.
+     */
+    synchronized SolverResult getVerdict(int c) { return verdicts[c]; }
+
+    /**
+     * Memorizes the verdict of a component, UNKNOWN verdicts excepted.
+     *
+     * @param c The index of the component.
+     * @param verdict Its verdict.
+     */
+    synchronized void setVerdict(int c, SolverResult verdict) {
+      if ( ! verdict.isUnknown() ) verdicts[c] = verdict;
+    }
+
+    /**
+     * Returns the conjunction of some components, always the same formula
+     * for the same components.
+     *
+     * @param components The indexes of the components.
+     * @return The conjunction of their conjuncts.
+     */
+    synchronized EFormula getSlice(BitSet components) {
+      EFormula slice = slices.get(components);
+      if ( slice == null ) {
+        if ( components.cardinality() == conjuncts.size() ) {
+          slice = background;
+        } else {
+          EF_Conjunction conj = new EF_Conjunction();
+          for (int c = components.nextSetBit(0); c >= 0; c = components.nextSetBit(c + 1))
+            for (EFormula conjunct: conjuncts.get(c)) conj.append(conjunct);
+          slice = conj;
+        }
+        slices.put((BitSet) components.clone(), slice);
+      }
+      return slice;
+    }
+  }
+
+  private final SolverHandler solver;
+  private SlicedBackground lastBackground = null;
+  private long nbSlicedQueries = 0;
+  private long nbSolvedComponents = 0;
+  private long nbDroppedConjuncts = 0;
+
+  /**
+   * Constructor of slicing solver handlers.
+   *
+   * @param s The solver handler answering the components of the queries.
+   * @param l Logger to use to log information.
+   */
+  SlicingSolverHandler(SolverHandler s, EncoverLogger l) {
+    setLogger(l);
+    solver = s;
+  }
+
+  /**
+   * Starts the underlying solver.
+   *
+   * @return True iff successfully started the solver.
+   */
+  public boolean start() { return solver.start(); }
+
+  /**
+   * Stops the underlying solver.
+   *
+   * @return True iff successfully stopped the solver.
+   */
+  public boolean stop() { return solver.stop(); }
+
+  /**
+   * Exits the underlying solver.
+   *
+   * @return True iff successfully exited the solver.
+   */
+  public boolean exit() { return solver.exit(); }
+
+  /**
+   * Test if the underlying solver is ready.
+   *
+   * @return True iff the solver is started and ready to receive queries.
+   */
+  public boolean isStarted() { return solver.isStarted(); }
+
+  /**
+   * Aborts the queries currently being answered by the underlying solver.
+   */
+  public void abort() { solver.abort(); }
+
+  /**
+   * Simplifies the provided formula with the underlying solver.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  public EFormula simplify(EFormula formula) { return solver.simplify(formula); }
+
+  /**
+   * Decides satisfiability of the provided formula, one independent
+   * component at a time.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula formula) {
+    List<EFormula> conjuncts = new ArrayList<EFormula>();
+    flattenConjunction(formula, conjuncts);
+    List<List<EFormula>> components = split(conjuncts, new Partition());
+    if ( components.size() <= 1 ) return solver.solve(formula);
+
+    synchronized (this) { nbSlicedQueries++; }
+    List<SolverResult> results = new ArrayList<SolverResult>();
+    for (List<EFormula> component: components) {
+      SolverResult result = solveComponent(null, component);
+      if ( result.isUnsat() ) return result;
+      results.add(result);
+    }
+    return merge(results);
+  }
+
+  /**
+   * Decides satisfiability of the conjunction of a background formula and a
+   * query formula, one independent component at a time.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    SlicedBackground bg = slice(background);
+    List<EFormula> conjuncts = new ArrayList<EFormula>();
+    flattenConjunction(formula, conjuncts);
+
+    // Variables of a background component are already connected.
+    Partition partition = new Partition();
+    for (Set<EE_Variable> vars: bg.variables) partition.union(vars);
+    List<List<EFormula>> components = split(conjuncts, partition);
+
+    BitSet untouched = new BitSet();
+    untouched.set(0, bg.variables.size());
+    List<BitSet> involved = new ArrayList<BitSet>();
+    for (List<EFormula> component: components) {
+      Set<EE_Variable> roots = new HashSet<EE_Variable>();
+      for (EFormula conjunct: component)
+        for (EE_Variable v: conjunct.getVariables()) roots.add(partition.find(v));
+      BitSet bgComponents = new BitSet();
+      for (int c = 0; c < bg.variables.size(); c++) {
+        Set<EE_Variable> vars = bg.variables.get(c);
+        if ( ! vars.isEmpty() && roots.contains(partition.find(vars.iterator().next())) ) bgComponents.set(c);
+      }
+      untouched.andNot(bgComponents);
+      involved.add(bgComponents);
+    }
+
+    if ( components.size() == 1 && untouched.isEmpty() ) return solver.solve(background, formula);
+
+    synchronized (this) {
+      nbSlicedQueries++;
+      for (int c = untouched.nextSetBit(0); c >= 0; c = untouched.nextSetBit(c + 1))
+        nbDroppedConjuncts += bg.conjuncts.get(c).size();
+    }
+    List<SolverResult> results = new ArrayList<SolverResult>();
+    for (int i = 0; i < components.size(); i++) {
+      BitSet bgComponents = involved.get(i);
+      EFormula bgSlice = bgComponents.isEmpty() ? null : bg.getSlice(bgComponents);
+      SolverResult result = solveComponent(bgSlice, components.get(i));
+      if ( result.isUnsat() ) return result;
+      results.add(result);
+    }
+    // The background components not involved in the query are checked once.
+    for (int c = untouched.nextSetBit(0); c >= 0; c = untouched.nextSetBit(c + 1)) {
+      SolverResult result = bg.getVerdict(c);
+      if ( result == null ) {
+        result = solveComponent(null, bg.conjuncts.get(c));
+        bg.setVerdict(c, result);
+      }
+      if ( result.isUnsat() ) return result;
+      results.add(result);
+    }
+    return merge(results);
+  }
+
+  /**
+   * Returns the background split into components, reusing the split of the
+   * previous query if it had the same background.
+   *
+   * @param background The background formula.
+   * @return The background split into components.
+   */
+  private synchronized SlicedBackground slice(EFormula background) {
+    if ( lastBackground == null || lastBackground.background != background )
+      lastBackground = new SlicedBackground(background);
+    return lastBackground;
+  }
+
+  /**
+   * Checks one component with the underlying solver.
+   *
+   * @param background The background conjuncts of the component, or
+   *   {@code null} if none.
+   * @param conjuncts The other conjuncts of the component.
+   * @return The verdict of the underlying solver.
+   */
+  private SolverResult solveComponent(EFormula background, List<EFormula> conjuncts) {
+    synchronized (this) { nbSolvedComponents++; }
+    EFormula formula = conjuncts.get(0);
+    if ( conjuncts.size() > 1 ) {
+      EF_Conjunction conj = new EF_Conjunction();
+      for (EFormula conjunct: conjuncts) conj.append(conjunct);
+      formula = conj;
+    }
+    return (background == null) ? solver.solve(formula) : solver.solve(background, formula);
+  }
+
+  /**
+   * Merges the verdicts of the components of a query, none of them being
+   * UNSAT.
+   *
+   * @param results The verdicts of the components.
+   * @return UNKNOWN if one of the verdicts is UNKNOWN, SAT with the union of
+   *   the models otherwise.
+   */
+  private static SolverResult merge(List<SolverResult> results) {
+    SortedMap<EE_Variable,EE_Constant> model = new TreeMap<EE_Variable,EE_Constant>();
+    for (SolverResult result: results) {
+      if ( result.isUnknown() ) return result;
+      model.putAll(result.getModel());
+    }
+    return SolverResult.sat(model);
+  }
+
+  /**
+   * Splits conjuncts into variable-disjoint components. Variable free
+   * conjuncts are gathered in a component of their own.
+   *
+   * @param conjuncts The conjuncts to split.
+   * @param partition The partition of the variables, updated with the
+   *   variables of the conjuncts.
+   * @return The components, in the order of their first conjunct.
+   */
+  private static List<List<EFormula>> split(List<EFormula> conjuncts, Partition partition) {
+    List<Set<EE_Variable>> allVars = new ArrayList<Set<EE_Variable>>();
+    for (EFormula conjunct: conjuncts) {
+      Set<EE_Variable> vars = conjunct.getVariables();
+      allVars.add(vars);
+      partition.union(vars);
+    }
+    Map<EE_Variable,List<EFormula>> byRoot = new LinkedHashMap<EE_Variable,List<EFormula>>();
+    for (int i = 0; i < conjuncts.size(); i++) {
+      Set<EE_Variable> vars = allVars.get(i);
+      EE_Variable root = vars.isEmpty() ? null : partition.find(vars.iterator().next());
+      List<EFormula> component = byRoot.get(root);
+      if ( component == null ) {
+        component = new ArrayList<EFormula>();
+        byRoot.put(root, component);
+      }
+      component.add(conjuncts.get(i));
+    }
+    return new ArrayList<List<EFormula>>(byRoot.values());
+  }
+
+  /**
+   * Collects the conjuncts of a formula, flattening nested conjunctions.
+   *
+   * @param formula The formula.
+   * @param conjuncts Filled with the conjuncts.
+   */
+  private static void flattenConjunction(EFormula formula, List<EFormula> conjuncts) {
+    if ( formula instanceof EF_Conjunction ) {
+      for (EFormula sub: formula.getSubFormulas()) flattenConjunction(sub, conjuncts);
+    } else {
+      conjuncts.add(formula);
+    }
+  }
+
+  /**
+   * Returns the number of solver processes spawned so far by the underlying
+   * solver.
+   *
+   * @return The number of solver processes spawned so far.
+   */
+  public int getNbProcessSpawns() { return solver.getNbProcessSpawns(); }
+
+  /**
+   * Returns the statistics of the underlying solver, completed with the
+   * number of queries sliced, of components checked and of background
+   * conjuncts left out of the queries.
+   *
+   * @return The statistics collected by this handler.
+   */
+  public synchronized Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>(solver.getStatistics());
+    stats.put("sliced queries", nbSlicedQueries);
+    stats.put("components checked", nbSolvedComponents);
+    stats.put("background conjuncts sliced away", nbDroppedConjuncts);
+    return stats;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -21,6 +21,8 @@
 
 package se.kth.csc.jpf_encover;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.SortedMap;
 
 /**
@@ -71,14 +73,84 @@ public abstract class SolverHandler extends LoggerUser {
    */
   public abstract EFormula simplify(EFormula formula);
 
+  /**
+   * Calls the solver to decide satisfiability of the provided formula.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of the solver (SAT with a satisfying assignment,
+   *   UNSAT, or UNKNOWN if the solver could not decide, e.g. on timeout).
+   */
+  public abstract SolverResult solve(EFormula formula);
+
+  /**
+   * Calls the solver to decide satisfiability of the conjunction of a
+   * background formula and a query formula.
+   * This is the entry point of the incremental mode: solvers able to do so keep
+   * the background asserted between consecutive calls sharing the same
+   * background, and check each query in its own scope on top of it. The
+   * default implementation simply checks the conjunction of both formulas.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of the solver.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    EF_Conjunction conjunction = new EF_Conjunction();
+    conjunction.append(background);
+    conjunction.append(formula);
+    return solve(conjunction);
+  }
+
   /**
    * Calls the solver to check satisfiability of the provided formula.
    *
    * @param formula The formula whose satisfiability is to be checked.
    * @return {@code null} iff the formula is unsatisfiable; otherwise it returns
    *   a satisfying assignment of the variables.
+   * @throws Error If the solver could not decide.
+   */
+  public SortedMap<EE_Variable,EE_Constant> checkSatisfiability(EFormula formula) {
+    return solve(formula).toAssignment();
+  }
+
+  /**
+   * Calls the solver to check satisfiability of the conjunction of a background
+   * formula and a query formula.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return {@code null} iff the conjunction is unsatisfiable; otherwise it
+   *   returns a satisfying assignment of the variables.
+   * @throws Error If the solver could not decide.
+   * @see #solve(EFormula, EFormula)
+   */
+  public SortedMap<EE_Variable,EE_Constant> checkSatisfiability(EFormula background, EFormula formula) {
+    return solve(background, formula).toAssignment();
+  }
+
+  /**
+   * Aborts the query currently being answered, if possible, making it fail
+   * promptly with an error. This method may be called from another thread than
+   * the one waiting for the answer. The default implementation does nothing.
+   */
+  public void abort() { }
+
+  /**
+   * Returns the number of solver processes spawned so far by this handler.
+   * Handlers that do not rely on external processes return 0.
+   *
+   * @return The number of solver processes spawned so far.
+   */
+  public int getNbProcessSpawns() { return 0; }
+
+  /**
+   * Returns statistics about the queries answered so far by this handler, as
+   * a map from statistic names to values, in the order in which they should
+   * be reported. The default implementation does not collect any statistics.
+   *
+   * @return The statistics collected by this handler.
    */
-  public abstract SortedMap<EE_Variable,EE_Constant> checkSatisfiability(EFormula formula);
+  public Map<String,Long> getStatistics() { return new LinkedHashMap<String,Long>(); }
 
 }
 
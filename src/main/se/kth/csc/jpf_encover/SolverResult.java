@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+
+/**
+ * Result of a satisfiability check: satisfiable (with a satisfying
+ * assignment), unsatisfiable, or unknown when the solver could not decide
+ * (for example because the query timed out).
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public final class SolverResult {
+
+  /** The possible verdicts of a satisfiability check */
+  public static enum Verdict { SAT, UNSAT, UNKNOWN };
+
+  private static final SolverResult UNSAT_RESULT = new SolverResult(Verdict.UNSAT, null, null);
+
+  private final Verdict verdict;
+  private final SortedMap<EE_Variable,EE_Constant> model;
+  private final String reason;
+
+  /**
+   * Constructor of results.
+   *
+   * @param v The verdict.
+   * @param m The satisfying assignment if the verdict is SAT.
+   * @param r The reason why the solver could not decide if the verdict is
+   *   UNKNOWN.
+   */
+  private SolverResult(Verdict v, SortedMap<EE_Variable,EE_Constant> m, String r) {
+    verdict = v;
+    model = m;
+    reason = r;
+  }
+
+  /**
+   * Builds the result of a satisfiable check.
+   *
+   * @param model A satisfying assignment of the variables.
+   * @return The result.
+   */
+  public static SolverResult sat(SortedMap<EE_Variable,EE_Constant> model) {
+    return new SolverResult(Verdict.SAT, (model == null) ? new TreeMap<EE_Variable,EE_Constant>() : model, null);
+  }
+
+  /**
+   * Returns the result of an unsatisfiable check.
+   *
+   * @return The result.
+   */
+  public static SolverResult unsat() {
+    return UNSAT_RESULT;
+  }
+
+  /**
+   * Builds the result of a check the solver could not decide.
+   *
+   * @param reason Why the solver could not decide.
+   * @return The result.
+   */
+  public static SolverResult unknown(String reason) {
+    return new SolverResult(Verdict.UNKNOWN, null, reason);
+  }
+
+  /**
+   * Builds the result corresponding to the answer of
+   * {@link SolverHandler#checkSatisfiability(EFormula)}.
+   *
+   * @param model The satisfying assignment, or {@code null} if unsatisfiable.
+   * @return The result.
+   */
+  public static SolverResult fromAssignment(SortedMap<EE_Variable,EE_Constant> model) {
+    return (model == null) ? unsat() : sat(model);
+  }
+
+  /**
+   * Returns the verdict of the check.
+   *
+   * @return The verdict.
+   */
+  public Verdict getVerdict() { return verdict; }
+
+  /**
+   * Test if the checked formula is satisfiable.
+   *
+   * @return True iff the verdict is SAT.
+   */
+  public boolean isSat() { return verdict == Verdict.SAT; }
+
+  /**
+   * Test if the checked formula is unsatisfiable.
+   *
+   * @return True iff the verdict is UNSAT.
+   */
+  public boolean isUnsat() { return verdict == Verdict.UNSAT; }
+
+  /**
+   * Test if the solver could not decide.
+   *
+   * @return True iff the verdict is UNKNOWN.
+   */
+  public boolean isUnknown() { return verdict == Verdict.UNKNOWN; }
+
+  /**
+   * Returns the satisfying assignment found.
+   *
+   * @return The satisfying assignment if the verdict is SAT, {@code null}
+   *   otherwise.
+   */
+  public SortedMap<EE_Variable,EE_Constant> getModel() { return model; }
+
+  /**
+   * Returns the reason why the solver could not decide.
+   *
+   * @return The reason if the verdict is UNKNOWN, {@code null} otherwise.
+   */
+  public String getReason() { return reason; }
+
+  /**
+   * Returns the answer expected from
+   * {@link SolverHandler#checkSatisfiability(EFormula)}.
+   *
+   * @return The satisfying assignment if SAT, {@code null} if UNSAT.
+   * @throws Error If the verdict is UNKNOWN.
+   */
+  public SortedMap<EE_Variable,EE_Constant> toAssignment() {
+    if ( isUnknown() ) throw new Error("The solver could not decide satisfiability: " + reason);
+    return model;
+  }
+
+  /**
+   * Returns a textual description of this result.
+   *
+   * @return A textual description of this result.
+   */
+  public String toString() {
+    switch (verdict) {
+    case SAT: return "sat " + model;
+    case UNSAT: return "unsat";
+    default: return "unknown (" + reason + ")";
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Scope in which a solver is used during one analysis.
+ * The underlying solver is started the first time the session is opened (or
+ * queried) and stays alive until the session is closed, which fully exits the
+ * solver. Queries sent through the session are isolated from each other by the
+ * solver itself, without requiring a restart of the solver process.
+ * Queries may be sent concurrently through a session as long as its solver
+ * accepts concurrent queries (see {@link Z3_PoolHandler}).
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class SolverSession extends LoggerUser {
+
+  private final SolverHandler solver;
+  private volatile boolean closed = false;
+  private final AtomicInteger nbQueries = new AtomicInteger(0);
+
+  /**
+   * Constructor of solver sessions.
+   *
+   * @param s The solver used during this session.
+   * @param l Logger to use to log information.
+   */
+  SolverSession(SolverHandler s, EncoverLogger l) {
+    setLogger(l);
+    solver = s;
+  }
+
+  /**
+   * Returns the solver used during this session.
+   *
+   * @return The solver used during this session.
+   */
+  SolverHandler getSolver() { return solver; }
+
+  /**
+   * Makes sure that the solver of this session is started.
+   * Calling this method on an already opened session has no effect.
+   *
+   * @return True iff the solver is started and ready to receive queries.
+   */
+  synchronized boolean open() {
+    if ( closed ) throw new Error("This solver session has already been closed.");
+    if ( ! solver.isStarted() ) {
+      logln("opening the session by starting the solver");
+      flushLog();
+      solver.start();
+    }
+    return solver.isStarted();
+  }
+
+  /**
+   * Closes the session and fully exits the solver.
+   *
+   * @return True iff successfully exited the solver.
+   */
+  synchronized boolean close() {
+    if ( closed ) return true;
+    closed = true;
+    logln("closing the session after " + nbQueries + " queries");
+    flushLog();
+    return solver.exit();
+  }
+
+  /**
+   * Test if the session is already closed.
+   *
+   * @return True iff the session has been closed.
+   */
+  boolean isClosed() { return closed; }
+
+  /**
+   * Calls the solver of this session to simplify the provided formula.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  EFormula simplify(EFormula formula) {
+    open();
+    nbQueries.incrementAndGet();
+    return solver.simplify(formula);
+  }
+
+  /**
+   * Calls the solver of this session to decide satisfiability of the provided
+   * formula.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of the solver.
+   */
+  SolverResult solve(EFormula formula) {
+    open();
+    nbQueries.incrementAndGet();
+    return solver.solve(formula);
+  }
+
+  /**
+   * Calls the solver of this session to decide satisfiability of the
+   * conjunction of a background formula and a query formula.
+   *
+   * @param background The background formula, shared by many queries, or
+   *   {@code null} if there is no background.
+   * @param formula The formula specific to this query.
+   * @return The verdict of the solver.
+   * @see SolverHandler#solve(EFormula, EFormula)
+   */
+  SolverResult solve(EFormula background, EFormula formula) {
+    if ( background == null ) return solve(formula);
+    open();
+    nbQueries.incrementAndGet();
+    return solver.solve(background, formula);
+  }
+
+  /**
+   * Returns the number of queries sent through this session.
+   *
+   * @return The number of queries sent through this session.
+   */
+  int getNbQueries() { return nbQueries.get(); }
+
+  /**
+   * Returns the number of solver processes spawned so far by the solver of this
+   * session.
+   *
+   * @return The number of solver processes spawned.
+   */
+  int getNbProcessSpawns() { return solver.getNbProcessSpawns(); }
+
+  /**
+   * Returns the statistics collected by the solver of this session.
+   *
+   * @return The statistics of the solver, by name.
+   * @see SolverHandler#getStatistics()
+   */
+  Map<String,Long> getStatistics() { return solver.getStatistics(); }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
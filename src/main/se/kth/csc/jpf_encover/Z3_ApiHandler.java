@@ -0,0 +1,749 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+
+/**
+ * Handler running Z3 inside the JVM through the Z3 Java bindings
+ * ({@code com.microsoft.z3}). Formulas are turned directly into Z3 terms and
+ * models are read back as objects, avoiding the SMT2 round trip of
+ * {@link Z3_Handler}. The bindings are not needed to compile Encover: they are
+ * accessed by reflection, and {@link #isAvailable()} tells whether they (and
+ * the native Z3 library) can be loaded at run time. The methods building Z3
+ * terms are looked up once, when the handler starts; formulas using
+ * operators which the bindings do not provide are answered by a Z3 process
+ * (see {@link Z3_Handler}) started on demand.
+ * A Z3 context is not meant to be used by several threads at once, all the
+ * methods of a handler are therefore synchronized (except {@link #abort()}).
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_ApiHandler extends SolverHandler {
+
+  /** Package of the Z3 Java bindings */
+  private static final String Z3_PACKAGE = "com.microsoft.z3.";
+
+  /**
+   * Method of the bindings building the term of an SMT2 operator.
+   */
+  private static final class Operation {
+    final Method method;
+    /** True iff the method takes the operands as an array */
+    final boolean nary;
+    Operation(Method m) {
+      method = m;
+      Class[] params = m.getParameterTypes();
+      nary = (params.length == 1 && params[0].isArray());
+    }
+  }
+
+  /** Methods of the bindings already looked up, by class, name and arguments */
+  private final Map<String,Method> methodCache = new HashMap<String,Method>();
+
+  private EncoverLogger log = null;
+  private final long timeoutMillis;
+  private volatile Object context = null;
+  private Object solver = null;
+  private long nbQueries = 0;
+  private long nbFallbacks = 0;
+  /** Z3 process answering the queries which can not be translated into terms */
+  private Z3_Handler fallback = null;
+
+  /** Operations of the current context, by SMT2 operator */
+  private Map<String,Operation> operations = null;
+  /** Sorts of the current context, by type */
+  private Map<EExpression.Type,Object> sorts = null;
+  /** Methods building constants and converting terms, null if missing */
+  private Method mkConst, mkBool, mkInt, mkReal, mkString, mkInt2Real, isInt;
+
+  /**
+   * Constructor of handlers using the Z3 Java bindings.
+   *
+   * @param l Logger to use to log information.
+   * @param timeout The time limit of each query in milliseconds (0 for no
+   *   limit).
+   */
+  Z3_ApiHandler(EncoverLogger l, long timeout) {
+    setLogger(l);
+    log = l;
+    timeoutMillis = timeout;
+  }
+
+  /**
+   * Test if the Z3 Java bindings and the native Z3 library can be loaded.
+   *
+   * @return True iff a Z3 context can be created in this JVM.
+   */
+  static boolean isAvailable() {
+    try {
+      Object ctx = Class.forName(Z3_PACKAGE + "Context").getConstructor().newInstance();
+      closeContext(ctx);
+      return true;
+    } catch (Throwable t) {
+      // ClassNotFoundException if the bindings are not in the class path,
+      // UnsatisfiedLinkError if the native library is missing.
+      return false;
+    }
+  }
+
+  /**
+   * Starts the solver, creating a new Z3 context.
+   *
+   * @return True iff successfully started the solver.
+   */
+  public synchronized boolean start() {
+    logln("calling start()");
+    flushLog();
+
+    if ( context != null ) stop();
+    try {
+      Map<String,String> cfg = new HashMap<String,String>();
+      cfg.put("model", "true");
+      context = Class.forName(Z3_PACKAGE + "Context").getConstructor(Map.class).newInstance(cfg);
+      solver = call(context, "mkSolver");
+      if ( timeoutMillis > 0 ) {
+        Object params = call(context, "mkParams");
+        call(params, "add", "timeout", Integer.valueOf((int) Math.min(timeoutMillis, Integer.MAX_VALUE)));
+        call(solver, "setParameters", params);
+      }
+      resolveOperations();
+    } catch (Throwable t) {
+      logln("Impossible to create a Z3 context.\n" + t);
+      context = null;
+      solver = null;
+    }
+
+    logln("");
+    flushLog();
+
+    return (context != null);
+  }
+
+  /**
+   * Stops the solver, releasing its Z3 context.
+   *
+   * @return True iff successfully stopped the solver.
+   */
+  public synchronized boolean stop() {
+    logln("calling stop()");
+    flushLog();
+
+    boolean success = closeContext(context);
+    context = null;
+    solver = null;
+    operations = null;
+    sorts = null;
+    if ( fallback != null ) {
+      success = fallback.exit() && success;
+      fallback = null;
+    }
+    return success;
+  }
+
+  /**
+   * Looks up, once for all the queries of the current context, the methods of
+   * the bindings building terms. The methods are selected by applying them
+   * to sample constants of every sort. Operators whose method is missing are
+   * left out.
+   */
+  private void resolveOperations() {
+    sorts = new EnumMap<EExpression.Type,Object>(EExpression.Type.class);
+    String[] sortMethods = { "mkBoolSort", "mkIntSort", "mkRealSort", "mkStringSort" };
+    EExpression.Type[] sortTypes = { EExpression.Type.BOOL, EExpression.Type.INT, EExpression.Type.REAL, EExpression.Type.STR };
+    for (int i = 0; i < sortMethods.length; i++) {
+      Method m = find(context.getClass(), sortMethods[i]);
+      if ( m != null ) sorts.put(sortTypes[i], invoke(m, context));
+    }
+
+    mkConst = find(context.getClass(), "mkConst", "b", sorts.get(EExpression.Type.BOOL));
+    Object b = sample(EExpression.Type.BOOL);
+    Object i = sample(EExpression.Type.INT);
+    Object r = sample(EExpression.Type.REAL);
+    Object str = sample(EExpression.Type.STR);
+    mkBool = find(context.getClass(), "mkBool", Boolean.TRUE);
+    mkInt = find(context.getClass(), "mkInt", Integer.valueOf(0));
+    mkReal = find(context.getClass(), "mkReal", "0.0");
+    mkString = find(context.getClass(), "mkString", "");
+    mkInt2Real = find(context.getClass(), "mkInt2Real", i);
+    isInt = (r == null) ? null : find(r.getClass(), "isInt");
+
+    operations = new HashMap<String,Operation>();
+    resolve("not", "mkNot", b);
+    resolve("and", "mkAnd", Arrays.asList(b, b));
+    resolve("or", "mkOr", Arrays.asList(b, b));
+    resolve("xor", "mkXor", b, b);
+    resolve("ite", "mkITE", b, r, r);
+    resolve("=", "mkEq", r, r);
+    resolve("distinct", "mkDistinct", Arrays.asList(r, r));
+    resolve("<", "mkLt", r, r);
+    resolve("<=", "mkLe", r, r);
+    resolve(">", "mkGt", r, r);
+    resolve(">=", "mkGe", r, r);
+    resolve("~", "mkUnaryMinus", r);
+    resolve("+", "mkAdd", Arrays.asList(r, r));
+    resolve("*", "mkMul", Arrays.asList(r, r));
+    resolve("-", "mkSub", Arrays.asList(r, r));
+    resolve("/", "mkDiv", r, r);
+    resolve("div", "mkDiv", i, i);
+    resolve("mod", "mkMod", i, i);
+    resolve("concat", "mkConcat", Arrays.asList(str, str));
+    logln("operators handled in process: " + operations.keySet());
+  }
+
+  /**
+   * Creates a sample constant of a type, used to select methods.
+   *
+   * @param type The type of the constant.
+   * @return The Z3 constant, or {@code null} if its sort is missing.
+   */
+  private Object sample(EExpression.Type type) {
+    Object sort = sorts.get(type);
+    if ( sort == null || mkConst == null ) return null;
+    return invoke(mkConst, context, "encover_sample_" + type, sort);
+  }
+
+  /**
+   * Registers the operation of an SMT2 operator, if the bindings provide it.
+   *
+   * @param op The SMT2 operator.
+   * @param name The name of the method of the context building its terms.
+   * @param samples Sample operands of the method.
+   */
+  private void resolve(String op, String name, Object... samples) {
+    for (Object sample: samples) {
+      if ( sample == null || (sample instanceof List && ((List) sample).contains(null)) ) return;
+    }
+    Method m = find(context.getClass(), name, samples);
+    if ( m != null ) operations.put(op, new Operation(m));
+  }
+
+  /**
+   * Releases a Z3 context, whatever the version of the bindings.
+   *
+   * @param ctx The context to release, possibly {@code null}.
+   * @return True iff the context has been released.
+   */
+  private static boolean closeContext(Object ctx) {
+    if ( ctx == null ) return true;
+    try { callOnce(ctx, "close"); return true; }
+    catch (Throwable t) { /* Older bindings */ }
+    try { callOnce(ctx, "dispose"); return true; }
+    catch (Throwable t) { return false; }
+  }
+
+  /**
+   * Cleans up every remaining "stuff" for a clean exit of the application using
+   * this solver.
+   *
+   * @return True iff successfully exited the solver.
+   */
+  public boolean exit() {
+    return stop();
+  }
+
+  /**
+   * Test if the solver is ready.
+   *
+   * @return True iff the solver is started and ready to receive queries.
+   */
+  public boolean isStarted() {
+    return (context != null);
+  }
+
+  /**
+   * Interrupts the query currently being answered, which then terminates with
+   * an UNKNOWN verdict.
+   */
+  public void abort() {
+    Object ctx = context;
+    if ( ctx != null ) {
+      try { callOnce(ctx, "interrupt"); }
+      catch (Throwable t) { logln("Impossible to interrupt Z3: " + t); }
+    }
+  }
+
+  /**
+   * Returns statistics about the queries answered so far by this handler.
+   *
+   * @return The number of queries answered in process, and the number of
+   *   them answered by a Z3 process instead.
+   */
+  public synchronized Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>();
+    stats.put("in-process Z3 queries", nbQueries);
+    stats.put("in-process Z3 queries answered by a Z3 process", nbFallbacks);
+    return stats;
+  }
+
+  /**
+   * Calls Z3 to simplify the provided formula. The simplified term is read
+   * back through its SMT2 representation.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  public synchronized EFormula simplify(EFormula formula) {
+    logln("calling simplify(" + formula + ")");
+    flushLog();
+
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(EE_Variable.PseudonymPolicy.COMBINED);
+    try {
+      Map<String,EE_Variable> pseudo2var = new HashMap<String,EE_Variable>();
+      Map<String,Object> constants = new HashMap<String,Object>();
+      Object simplified = call(toTerm(formula, pseudo2var, constants), "simplify");
+      EExpression parsed = Smt2Parser.parse(simplified.toString(), pseudo2var);
+      return (parsed == null) ? formula : new EF_Valuation(parsed);
+    } catch (Throwable t) {
+      logln("The formula " + formula + " could not be simplified.\n" + t);
+      return formula;
+    } finally {
+      EE_Variable.setPseudonymPolicy(oldPPolicy);
+    }
+  }
+
+  /**
+   * Calls Z3 to decide satisfiability of the provided formula.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of Z3.
+   */
+  public SolverResult solve(EFormula formula) {
+    return solve(null, formula);
+  }
+
+  /**
+   * Calls Z3 to decide satisfiability of the conjunction of a background
+   * formula and a query formula. Both are asserted in a scope closed after the
+   * query.
+   *
+   * @param background The background formula, or {@code null} if none.
+   * @param formula The formula specific to this query.
+   * @return The verdict of Z3.
+   */
+  public synchronized SolverResult solve(EFormula background, EFormula formula) {
+    logln("calling solve(" + background + ", " + formula + ")");
+    flushLog();
+
+    if ( context == null ) throw new Error("The Z3 context MUST be created when calling this method.");
+    nbQueries++;
+
+    // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
+    // exiting this method by any mean!
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(EE_Variable.PseudonymPolicy.COMBINED);
+    try {
+      Map<String,EE_Variable> pseudo2var = new HashMap<String,EE_Variable>();
+      Map<String,Object> constants = new HashMap<String,Object>();
+      List<Object> assertions = new ArrayList<Object>();
+      if ( background != null ) assertions.add(toTerm(background, pseudo2var, constants));
+      assertions.add(toTerm(formula, pseudo2var, constants));
+
+      call(solver, "push");
+      try {
+        call(solver, "add", assertions);
+        String status = ((Enum) call(solver, "check")).name();
+        logln("Z3 says: " + status); flushLog();
+        if ( status.equals("SATISFIABLE") ) {
+          return SolverResult.sat(readModel(call(solver, "getModel"), pseudo2var, constants));
+        } else if ( status.equals("UNSATISFIABLE") ) {
+          return SolverResult.unsat();
+        } else {
+          return SolverResult.unknown("in-process Z3: " + call(solver, "getReasonUnknown"));
+        }
+      } finally {
+        call(solver, "pop");
+      }
+    } catch (TranslationException e) {
+      logln("Not translatable into Z3 terms, using a Z3 process: " + e.getMessage()); flushLog();
+    } finally {
+      EE_Variable.setPseudonymPolicy(oldPPolicy);
+    }
+    nbFallbacks++;
+    return (background == null) ? getFallback().solve(formula) : getFallback().solve(background, formula);
+  }
+
+  /**
+   * Returns the Z3 process answering the queries which can not be translated
+   * into terms, starting it if needed.
+   *
+   * @return The started Z3 process handler.
+   */
+  private Z3_Handler getFallback() {
+    if ( fallback == null ) {
+      fallback = new Z3_Handler(log, Z3_Configuration.DEFAULT.withTimeout(timeoutMillis));
+      if ( ! fallback.start() ) {
+        fallback = null;
+        throw new Error("Impossible to start a Z3 process for a formula not translatable into Z3 terms.");
+      }
+    }
+    return fallback;
+  }
+
+  /**
+   * Reads the values of some variables in a model.
+   *
+   * @param model The Z3 model.
+   * @param pseudo2var The mapping from pseudonyms to variables.
+   * @param constants The mapping from pseudonyms to Z3 constants.
+   * @return The assignment of the variables described by the model.
+   */
+  private SortedMap<EE_Variable,EE_Constant> readModel(Object model, Map<String,EE_Variable> pseudo2var, Map<String,Object> constants) {
+    SortedMap<EE_Variable,EE_Constant> assignment = new TreeMap<EE_Variable,EE_Constant>();
+    for (Map.Entry<String,EE_Variable> entry: pseudo2var.entrySet()) {
+      EE_Variable var = entry.getValue();
+      Object value = call(model, "eval", constants.get(entry.getKey()), Boolean.TRUE);
+      assignment.put(var, toConstant(var.getType(), value, pseudo2var));
+    }
+    logln(" model: " + assignment); flushLog();
+    return assignment;
+  }
+
+  /**
+   * Turns a Z3 value into a constant, through its SMT2 representation if the
+   * value can not be read directly.
+   *
+   * @param type The type of the value.
+   * @param value The Z3 value.
+   * @param pseudo2var The mapping from pseudonyms to variables.
+   * @return The constant equal to the value.
+   */
+  private EE_Constant toConstant(EExpression.Type type, Object value, Map<String,EE_Variable> pseudo2var) {
+    try {
+      switch (type) {
+      case BOOL: return new EE_Constant(type, (Boolean) call(value, "isTrue"));
+      case INT: return new EE_Constant(type, (Integer) call(value, "getInt"));
+      case REAL:
+        String decimal = (String) call(value, "toDecimalString", Integer.valueOf(17));
+        if ( decimal.endsWith("?") ) decimal = decimal.substring(0, decimal.length() - 1);
+        return new EE_Constant(type, Double.valueOf(decimal));
+      case STR: return new EE_Constant(type, (String) call(value, "getString"));
+      }
+    } catch (Throwable t) {
+      logln("Reading " + value + " through SMT2: " + t);
+    }
+    try {
+      EExpression parsed = Smt2Parser.parse(value.toString(), pseudo2var);
+      if ( parsed instanceof EE_Constant ) return (EE_Constant) parsed;
+    } catch (ParseException e) {
+      logln("Exception while parsing: " + e);
+    }
+    return new EE_Constant(EExpression.Type.STR, value.toString());
+  }
+
+  /**
+   * Translates a formula into a Z3 boolean term.
+   *
+   * @param formula The formula to translate.
+   * @param pseudo2var The mapping from pseudonyms to the variables already
+   *   met, completed with the variables of the formula.
+   * @param constants The mapping from pseudonyms to the Z3 constants already
+   *   created, completed with the variables of the formula.
+   * @return The Z3 term.
+   */
+  private Object toTerm(EFormula formula, Map<String,EE_Variable> pseudo2var, Map<String,Object> constants) throws TranslationException {
+    if ( formula instanceof EF_NaryOperation ) {
+      EF_NaryOperation op = (EF_NaryOperation) formula;
+      List<Object> args = new ArrayList<Object>();
+      for (EFormula sub: op.getSubFormulas()) args.add(toTerm(sub, pseudo2var, constants));
+      return applyOperator(op.opStr_SMT2.equals("and") ? "and" : "or", args);
+    } else if ( formula instanceof EF_Negation ) {
+      return applyOperator("not", Collections.singletonList(toTerm(((EF_Negation) formula).getNegatedFormula(), pseudo2var, constants)));
+    } else if ( formula instanceof EF_Relation ) {
+      EF_Relation rel = (EF_Relation) formula;
+      Object lhs = toTerm(rel.getLeftHandSide(), pseudo2var, constants);
+      Object rhs = toTerm(rel.getRightHandSide(), pseudo2var, constants);
+      return applyOperator(rel.getOperator().toString(EFormula.StrEncoding.SMT2), Arrays.asList(lhs, rhs));
+    } else if ( formula instanceof EF_Valuation ) {
+      return toTerm(((EF_Valuation) formula).getExpression(), pseudo2var, constants);
+    }
+    throw new TranslationException("No Z3 term for the formula " + formula);
+  }
+
+  /**
+   * Translates an expression into a Z3 term.
+   *
+   * @param exp The expression to translate.
+   * @param pseudo2var The mapping from pseudonyms to the variables already
+   *   met, completed with the variables of the expression.
+   * @param constants The mapping from pseudonyms to the Z3 constants already
+   *   created, completed with the variables of the expression.
+   * @return The Z3 term.
+   */
+  private Object toTerm(EExpression exp, Map<String,EE_Variable> pseudo2var, Map<String,Object> constants) throws TranslationException {
+    if ( exp instanceof EE_Variable ) {
+      EE_Variable v = (EE_Variable) exp;
+      String vPseudo = v.getPseudonym();
+      EE_Variable known = pseudo2var.get(vPseudo);
+      if ( known == null ) {
+        pseudo2var.put(vPseudo, v);
+        constants.put(vPseudo, build(mkConst, vPseudo, sortOf(v.getType())));
+      } else if ( known != v ) {
+        throw new Error("Two variables in this formula have the same pseudonym. Z3 will mix them.");
+      }
+      return constants.get(vPseudo);
+    } else if ( exp instanceof EE_Constant ) {
+      Object value = ((EE_Constant) exp).getValue();
+      switch (exp.getType()) {
+      case BOOL: return build(mkBool, value);
+      case INT: return build(mkInt, value);
+      case REAL:
+        double d = ((Double) value).doubleValue();
+        if ( Double.isNaN(d) || Double.isInfinite(d) ) break;
+        return build(mkReal, EE_Constant.toDecimal(d));
+      case STR: return build(mkString, value.toString());
+      }
+      throw new TranslationException("No Z3 term for the constant " + exp);
+    }
+
+    List<Object> args = new ArrayList<Object>();
+    if ( exp instanceof EE_UnaryOperation ) {
+      args.add(toTerm(((EE_UnaryOperation) exp).getOperand(), pseudo2var, constants));
+    } else if ( exp instanceof EE_BinaryOperation ) {
+      args.add(toTerm(((EE_BinaryOperation) exp).getLeftHandSide(), pseudo2var, constants));
+      args.add(toTerm(((EE_BinaryOperation) exp).getRightHandSide(), pseudo2var, constants));
+    } else if ( exp instanceof EE_TernaryOperation ) {
+      args.add(toTerm(((EE_TernaryOperation) exp).getOperand1(), pseudo2var, constants));
+      args.add(toTerm(((EE_TernaryOperation) exp).getOperand2(), pseudo2var, constants));
+      args.add(toTerm(((EE_TernaryOperation) exp).getOperand3(), pseudo2var, constants));
+    } else if ( exp instanceof EE_NaryOperation ) {
+      for (EExpression operand: ((EE_NaryOperation) exp).getOperands())
+        args.add(toTerm(operand, pseudo2var, constants));
+    } else {
+      throw new TranslationException("No Z3 term for the expression " + exp);
+    }
+    return applyOperator(((EE_Operation) exp).getOperator(EFormula.StrEncoding.SMT2), args);
+  }
+
+  /**
+   * Applies an SMT2 operator to some Z3 terms.
+   *
+   * @param op The SMT2 name of the operator.
+   * @param args The Z3 terms of the operands.
+   * @return The Z3 term of the application.
+   */
+  private Object applyOperator(String op, List<Object> args) throws TranslationException {
+    Operation operation = operations.get(op);
+    if ( operation == null ) throw new TranslationException("No Z3 term for the operator " + op);
+    if ( op.equals("/") ) return build(operation.method, toReal(args.get(0)), toReal(args.get(1)));
+    if ( operation.nary ) return build(operation.method, args);
+    if ( op.equals("xor") ) {
+      Object res = args.get(0);
+      for (int i = 1; i < args.size(); i++) res = build(operation.method, res, args.get(i));
+      return res;
+    }
+    if ( operation.method.getParameterTypes().length != args.size() ) throw new TranslationException("Wrong number of operands for the operator " + op + ": " + args.size());
+    return build(operation.method, args.toArray());
+  }
+
+  /**
+   * Builds a Z3 term with a method of the context resolved when starting.
+   *
+   * @param m The method, {@code null} if the bindings do not provide it.
+   * @param args The arguments of the method.
+   * @return The Z3 term.
+   * @throws TranslationException If the method is missing or does not accept
+   *   the arguments.
+   */
+  private Object build(Method m, Object... args) throws TranslationException {
+    if ( m == null ) throw new TranslationException("No method of the Z3 bindings building " + Arrays.toString(args));
+    try {
+      return invoke(m, context, args);
+    } catch (IllegalArgumentException e) {
+      throw new TranslationException("The method " + m.getName() + " of the Z3 bindings does not accept " + Arrays.toString(args));
+    }
+  }
+
+  /**
+   * Converts an integer term into a real term, as the SMT2 operator '/' does.
+   *
+   * @param term A Z3 arithmetic term.
+   * @return The term itself if it is not an integer term, its conversion to a
+   *   real term otherwise.
+   */
+  private Object toReal(Object term) throws TranslationException {
+    if ( isInt == null ) throw new TranslationException("No method of the Z3 bindings telling integer terms");
+    boolean integer = ((Boolean) invoke(isInt, term)).booleanValue();
+    return integer ? build(mkInt2Real, term) : term;
+  }
+
+  /**
+   * Returns the Z3 sort of a type.
+   *
+   * @param type The type.
+   * @return The corresponding Z3 sort.
+   */
+  private Object sortOf(EExpression.Type type) throws TranslationException {
+    Object sort = sorts.get(type);
+    if ( sort == null ) throw new TranslationException("No Z3 sort for the type " + type);
+    return sort;
+  }
+
+  /**
+   * Calls a public method of an object of the Z3 bindings. The method is
+   * selected by name and by the compatibility of its parameters with the
+   * provided arguments (see {@link #lookup(Class, String, Object[])}), and
+   * remembered for the next calls on objects of the same class.
+   *
+   * @param target The object whose method is called.
+   * @param name The name of the method.
+   * @param args The arguments of the call.
+   * @return The value returned by the method.
+   */
+  private Object call(Object target, String name, Object... args) {
+    StringBuilder key = new StringBuilder(target.getClass().getName()).append('.').append(name);
+    for (Object arg: args) {
+      key.append(' ').append(arg == null ? "null" : arg.getClass().getName());
+      if ( arg instanceof List && ! ((List) arg).isEmpty() ) key.append('<').append(((List) arg).get(0).getClass().getName()).append('>');
+    }
+    Method m = methodCache.get(key.toString());
+    if ( m == null ) {
+      m = lookup(target.getClass(), name, args);
+      methodCache.put(key.toString(), m);
+    }
+    return invoke(m, target, args);
+  }
+
+  /**
+   * Calls a public method of an object of the Z3 bindings, looking the
+   * method up at each call.
+   *
+   * @param target The object whose method is called.
+   * @param name The name of the method.
+   * @param args The arguments of the call.
+   * @return The value returned by the method.
+   */
+  private static Object callOnce(Object target, String name, Object... args) {
+    return invoke(lookup(target.getClass(), name, args), target, args);
+  }
+
+  /**
+   * Invokes a method of the Z3 bindings. A list is accepted as argument of
+   * an array (or variable arity) parameter and converted into an array of
+   * the parameter's component type.
+   *
+   * @param m The method.
+   * @param target The object whose method is called.
+   * @param args The arguments of the call.
+   * @return The value returned by the method.
+   * @throws IllegalArgumentException If the method does not accept the
+   *   arguments.
+   */
+  private static Object invoke(Method m, Object target, Object... args) {
+    Object[] actualArgs = args;
+    Class[] paramTypes = m.getParameterTypes();
+    for (int i = 0; i < args.length; i++) {
+      if ( paramTypes[i].isArray() && args[i] instanceof List ) {
+        if ( actualArgs == args ) actualArgs = args.clone();
+        List list = (List) args[i];
+        actualArgs[i] = list.toArray((Object[]) Array.newInstance(paramTypes[i].getComponentType(), list.size()));
+      }
+    }
+    try {
+      return m.invoke(target, actualArgs);
+    } catch (ArrayStoreException e) {
+      throw new IllegalArgumentException(e);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+      if ( cause instanceof Error ) throw (Error) cause;
+      throw new Error(cause);
+    } catch (IllegalAccessException e) {
+      throw new Error(e);
+    }
+  }
+
+  /**
+   * Finds the public method of a class matching a call.
+   *
+   * @param cls The class of the target of the call.
+   * @param name The name of the method.
+   * @param args The arguments of the call.
+   * @return The method to invoke.
+   * @throws Error If no method matches.
+   */
+  private static Method lookup(Class cls, String name, Object[] args) {
+    Method m = find(cls, name, args);
+    if ( m == null ) throw new Error("No method " + name + " in " + cls.getName() + " accepting " + Arrays.toString(args));
+    return m;
+  }
+
+  /**
+   * Finds the public method of a class matching a call, if any.
+   *
+   * @param cls The class of the target of the call.
+   * @param name The name of the method.
+   * @param args The arguments of the call.
+   * @return The method to invoke, or {@code null} if none matches.
+   */
+  private static Method find(Class cls, String name, Object... args) {
+    for (Method candidate: cls.getMethods()) {
+      if ( candidate.getName().equals(name) && accepts(candidate.getParameterTypes(), args) ) return candidate;
+    }
+    return null;
+  }
+
+  /**
+   * Test if some parameters accept some arguments.
+   *
+   * @param params The types of the parameters.
+   * @param args The arguments.
+   * @return True iff every argument can be passed to its parameter.
+   */
+  private static boolean accepts(Class[] params, Object[] args) {
+    if ( params.length != args.length ) return false;
+    for (int i = 0; i < params.length; i++) {
+      Object arg = args[i];
+      Class param = params[i];
+      if ( arg == null ) {
+        if ( param.isPrimitive() ) return false;
+      } else if ( param.isPrimitive() ) {
+        if ( ! ( (param == Boolean.TYPE && arg instanceof Boolean)
+                 || (param == Integer.TYPE && arg instanceof Integer)
+                 || (param == Long.TYPE && arg instanceof Long)
+                 || (param == Double.TYPE && arg instanceof Double) ) )
+          return false;
+      } else if ( param.isArray() && arg instanceof List ) {
+        for (Object elt: (List) arg) {
+          if ( ! param.getComponentType().isInstance(elt) ) return false;
+        }
+      } else if ( ! param.isInstance(arg) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Verifier answering a whole sequence of interference checks with a single
+ * invocation of Z3. All the checks are written into one SMT2 script, each in
+ * its own {@code (push)}/{@code (pop)} scope with its own {@code check-sat}
+ * and {@code get-value} commands, and consecutive checks sharing the same
+ * background formula share a scope asserting it. The script is streamed to
+ * one Z3 process and the ordered answers are mapped back to the checks, thus
+ * avoiding the round trip with Z3 of every query. The script can also be
+ * saved into a file to be replayed offline ({@code z3 -smt2 <file>}).
+ * Every check is answered, even the ones following a satisfiable one.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_BatchVerifier extends LoggerUser {
+
+  /** Prefix of the markers introducing the answers of each check */
+  private static final String MARKER_PREFIX = "encover_check_";
+
+  private final Z3_Configuration configuration;
+  private final File scriptFile;
+  private final List<InterferenceCheck> inconclusiveChecks = new ArrayList<InterferenceCheck>();
+  private EncoverLogger log = null;
+
+  /**
+   * Constructor of batch verifiers.
+   *
+   * @param conf The configuration of the Z3 process to run.
+   * @param script The file into which the generated SMT2 script is saved, or
+   *   {@code null} if it should not be saved.
+   * @param l Logger to use to log information.
+   */
+  Z3_BatchVerifier(Z3_Configuration conf, File script, EncoverLogger l) {
+    setLogger(l);
+    log = l;
+    configuration = conf;
+    scriptFile = script;
+  }
+
+  /**
+   * Answers all the provided checks and returns the first one, in the order of
+   * the iterator, whose interference formula is satisfiable. Checks preceding
+   * it whose verdict is unknown are recorded (see
+   * {@link #getInconclusiveChecks()}).
+   *
+   * @param checks The checks to run, in the order in which they would be run
+   *   sequentially.
+   * @return The first satisfiable check, or {@code null} if none is
+   *   satisfiable.
+   */
+  InterferenceCheck findFirstSatisfiable(Iterator<InterferenceCheck> checks) {
+    List<InterferenceCheck> batch = new ArrayList<InterferenceCheck>();
+    while ( checks.hasNext() ) batch.add(checks.next());
+
+    verify(batch);
+
+    for (InterferenceCheck check: batch) {
+      if ( check.getError() != null ) {
+        log.println("Impossible to check satisfiability of interference formula: " + check.getError().getMessage());
+      } else if ( check.isSatisfiable() ) {
+        logln("first satisfiable check: " + check);
+        return check;
+      } else if ( check.isInconclusive() ) {
+        inconclusiveChecks.add(check);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the checks whose verdict was unknown, among the checks consumed by
+   * the last calls to {@link #findFirstSatisfiable(Iterator)}, in order.
+   *
+   * @return The inconclusive checks.
+   */
+  List<InterferenceCheck> getInconclusiveChecks() {
+    return Collections.unmodifiableList(inconclusiveChecks);
+  }
+
+  /**
+   * Answers all the provided checks with a single invocation of Z3. The
+   * verdict of each check (or the error preventing to answer it) is recorded
+   * into the check.
+   *
+   * @param checks The checks to answer.
+   */
+  void verify(List<InterferenceCheck> checks) {
+    logln("calling verify() on " + checks.size() + " checks"); flushLog();
+    if ( checks.isEmpty() ) return;
+
+    // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
+    // exiting this method by any mean!
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(EE_Variable.PseudonymPolicy.COMBINED);
+    try {
+      List<Map<String,EE_Variable>> pseudo2vars = new ArrayList<Map<String,EE_Variable>>();
+      List<String> script = generateScript(checks, pseudo2vars);
+      if ( scriptFile != null ) saveScript(script);
+
+      List<String> answers = null;
+      try {
+        Z3_Process z3 = new Z3_Process(configuration.getCommand(), 0, log);
+        try { answers = z3.requestAll(script); }
+        finally { z3.close(); }
+      } catch (Exception e) {
+        logln("Z3 failed to run the batch script: " + e); flushLog();
+        Error err = new Error("Z3 failed to run the batch script.", e);
+        for (InterferenceCheck check: checks) {
+          if ( ! check.isDone() ) check.setError(err);
+        }
+        return;
+      }
+
+      dispatchAnswers(checks, pseudo2vars, answers);
+    } finally {
+      EE_Variable.setPseudonymPolicy(oldPPolicy);
+    }
+  }
+
+  /**
+   * Generates the SMT2 script answering the provided checks. Checks whose
+   * formulas can not be translated are marked as failed and left out of the
+   * script.
+   *
+   * @param checks The checks to answer.
+   * @param pseudo2vars Filled with, for every check, the mapping from
+   *   pseudonyms used in the script to the variables of the check.
+   * @return The lines of the script.
+   */
+  private List<String> generateScript(List<InterferenceCheck> checks, List<Map<String,EE_Variable>> pseudo2vars) {
+    List<String> script = new ArrayList<String>();
+    script.add("(set-option :produce-models true)");
+
+    String openBackground = null;
+    Map<String,EE_Variable> backgroundPseudo2var = null;
+    for (int i = 0; i < checks.size(); i++) {
+      InterferenceCheck check = checks.get(i);
+      EFormula background = check.getBackground();
+      Map<String,EE_Variable> pseudo2var = null;
+      try {
+        String smt2Background = (background == null) ? "" : background.toString(EFormula.StrEncoding.SMT2);
+        String smt2Formula = check.getFormula().toString(EFormula.StrEncoding.SMT2);
+
+        if ( ! smt2Background.equals(openBackground) ) {
+          if ( openBackground != null ) script.add("(pop)");
+          script.add("(push)");
+          backgroundPseudo2var = new HashMap<String,EE_Variable>();
+          if ( background != null ) {
+            declareVariables(background, backgroundPseudo2var, script);
+            script.add("(assert " + smt2Background + ")");
+          }
+          openBackground = smt2Background;
+        }
+
+        script.add("; " + check.toString().replace('\n', ' '));
+        script.add("(echo \"" + MARKER_PREFIX + i + "\")");
+        script.add("(push)");
+        pseudo2var = new HashMap<String,EE_Variable>(backgroundPseudo2var);
+        declareVariables(check.getFormula(), pseudo2var, script);
+        script.add("(assert " + smt2Formula + ")");
+        script.add(configuration.getCheckSatCommand());
+        script.add("(get-info :reason-unknown)");
+        String getValueCmd = Z3_Handler.getValueCommandOf(pseudo2var.keySet());
+        if ( getValueCmd != null ) script.add(getValueCmd);
+        script.add("(pop)");
+      } catch (TranslationException e) {
+        check.setError(new Error("The formulas of " + check + " could not be translated.\n" + e));
+      } catch (Error e) {
+        check.setError(e);
+      }
+      pseudo2vars.add(pseudo2var);
+    }
+
+    if ( openBackground != null ) script.add("(pop)");
+    return script;
+  }
+
+  /**
+   * Adds to the script the declarations of the variables of a formula which
+   * are not already declared.
+   *
+   * @param formula The formula whose variables have to be declared.
+   * @param pseudo2var The mapping from pseudonyms to variables already
+   *   declared, updated with the newly declared variables.
+   * @param script The script to which declarations are added.
+   */
+  private static void declareVariables(EFormula formula, Map<String,EE_Variable> pseudo2var, List<String> script) {
+    for (EE_Variable v: formula.getVariables()) {
+      String vPseudo = v.getPseudonym();
+      EE_Variable declared = pseudo2var.get(vPseudo);
+      if ( declared == v ) continue;
+      if ( declared != null )
+        throw new Error("Two variables in this formula have the same pseudonym. Z3 will mix them.");
+      pseudo2var.put(vPseudo, v);
+      script.add(Z3_Handler.declarationOf(v));
+    }
+  }
+
+  /**
+   * Saves the script into the script file.
+   *
+   * @param script The lines of the script.
+   */
+  private void saveScript(List<String> script) {
+    try {
+      PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(scriptFile)));
+      try {
+        for (String line: script) out.println(line);
+        out.println("(exit)");
+      } finally {
+        out.close();
+      }
+      logln("batch script saved in " + scriptFile);
+    } catch (IOException e) {
+      log.println("Impossible to save the SMT2 batch script in " + scriptFile + ": " + e);
+    }
+  }
+
+  /**
+   * Maps the answers of Z3 to the checks. The answers of a check follow its
+   * marker: errors raised by its declarations and assertions, the verdict, the
+   * reason of an unknown verdict and the values of the variables. Errors
+   * following the verdict are expected (no model after an unsatisfiable
+   * verdict, no reason after a definitive one) and ignored.
+   *
+   * @param checks The checks answered.
+   * @param pseudo2vars For every check, the mapping from pseudonyms to
+   *   variables.
+   * @param answers The s-expressions answered by Z3, in order.
+   */
+  private void dispatchAnswers(List<InterferenceCheck> checks, List<Map<String,EE_Variable>> pseudo2vars, List<String> answers) {
+    int current = -1;
+    List<String> block = new ArrayList<String>();
+    for (String answer: answers) {
+      String unquoted = answer.startsWith("\"") ? answer.substring(1, answer.length() - 1) : answer;
+      if ( unquoted.startsWith(MARKER_PREFIX) ) {
+        if ( current >= 0 ) answerCheck(checks.get(current), pseudo2vars.get(current), block);
+        current = Integer.parseInt(unquoted.substring(MARKER_PREFIX.length()));
+        block.clear();
+      } else if ( current >= 0 ) {
+        block.add(answer);
+      } else {
+        logln("Z3 answers before the first check: " + answer);
+      }
+    }
+    if ( current >= 0 ) answerCheck(checks.get(current), pseudo2vars.get(current), block);
+
+    for (InterferenceCheck check: checks) {
+      if ( ! check.isDone() ) check.setError(new Error("Z3 did not answer the " + check));
+    }
+  }
+
+  /**
+   * Records into a check the verdict described by its answers.
+   *
+   * @param check The check answered.
+   * @param pseudo2var The mapping from pseudonyms to the variables of the
+   *   check.
+   * @param block The s-expressions answered by Z3 for this check, in order.
+   */
+  private void answerCheck(InterferenceCheck check, Map<String,EE_Variable> pseudo2var, List<String> block) {
+    String verdict = null;
+    String reason = null;
+    String values = null;
+    String error = null;
+    for (String answer: block) {
+      if ( verdict == null ) {
+        if ( answer.startsWith("(error ") ) { if ( error == null ) error = answer; }
+        else verdict = answer;
+      } else if ( answer.startsWith("(:reason-unknown") ) {
+        reason = answer.substring("(:reason-unknown".length(), answer.length() - 1).trim();
+      } else if ( answer.startsWith("((") ) {
+        values = answer;
+      }
+    }
+    logln(check + " -> " + verdict);
+
+    if ( error != null ) {
+      check.setError(new Error("Z3 generated an error: " + error));
+    } else if ( verdict == null ) {
+      check.setError(new Error("Z3 did not answer the " + check));
+    } else if ( verdict.equals("sat") ) {
+      SortedMap<EE_Variable,EE_Constant> model = new TreeMap<EE_Variable,EE_Constant>();
+      try {
+        if ( values != null ) model = Z3_Handler.parseValues(values, pseudo2var);
+        else if ( ! pseudo2var.isEmpty() ) throw new Exception("Z3 did not give the values of the variables of the " + check);
+        check.setResult(SolverResult.sat(model));
+      } catch (Exception e) {
+        check.setError(new Error(e));
+      }
+    } else if ( verdict.equals("unsat") ) {
+      check.setResult(SolverResult.unsat());
+    } else {
+      check.setResult(SolverResult.unknown(configuration + ": " + (reason == null ? verdict : reason)));
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+
+/**
+ * Configuration of a Z3 process: the parameters given to Z3 on its command
+ * line, the command used to check satisfiability and the time limits of
+ * queries.
+ * Configurations are designated by names, which are used in the configuration
+ * file and in the statistics. The known names are:
+ * <ul>
+ * <li>{@code default}: Z3 with its default parameters;</li>
+ * <li>{@code seed<N>}: Z3 using {@code N} as random seed;</li>
+ * <li>{@code seq} and {@code z3str3}: Z3 using the corresponding string
+ *   solver;</li>
+ * <li>{@code bv}: Z3 checking satisfiability with a tactic reducing bounded
+ *   integers to bit-vectors (it gives up on formulas where some integers
+ *   are unbounded).</li>
+ * </ul>
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_Configuration {
+
+  /** The default configuration of Z3 */
+  static final Z3_Configuration DEFAULT = new Z3_Configuration("default", new ArrayList<String>(), "(check-sat)", 0);
+
+  private static final String BOUNDED_BV_CHECK =
+    "(check-sat-using (then simplify normalize-bounds lia2pb pb2bv bit-blast sat))";
+
+  private final String name;
+  private final List<String> parameters;
+  private final String checkSatCommand;
+  private final long watchdogMillis;
+
+  /**
+   * Constructor of Z3 configurations.
+   *
+   * @param n The name of the configuration.
+   * @param params The parameters given to Z3 on its command line.
+   * @param checkSat The command used to check satisfiability.
+   * @param watchdog The wall-clock time after which a request to Z3 is
+   *   considered hanging, in milliseconds (0 for no limit).
+   */
+  private Z3_Configuration(String n, List<String> params, String checkSat, long watchdog) {
+    name = n;
+    parameters = Collections.unmodifiableList(params);
+    checkSatCommand = checkSat;
+    watchdogMillis = watchdog;
+  }
+
+  /**
+   * Returns a copy of this configuration where each query is limited in time.
+   * Z3 itself is asked to give up (answering {@code unknown}) after the
+   * provided timeout. If Z3 does not answer a request within twice this
+   * timeout plus one second, its process is considered hanging and is killed.
+   *
+   * @param timeoutMillis The timeout of each query in milliseconds (0 for no
+   *   timeout).
+   * @return The configuration with timeout.
+   */
+  Z3_Configuration withTimeout(long timeoutMillis) {
+    if ( timeoutMillis <= 0 ) return this;
+    List<String> params = new ArrayList<String>(parameters);
+    params.add("-t:" + timeoutMillis);
+    return new Z3_Configuration(name, params, checkSatCommand, 2 * timeoutMillis + 1000);
+  }
+
+  /**
+   * Returns the configuration having the provided name.
+   *
+   * @param name The name of the configuration.
+   * @return The configuration.
+   * @throws Error If the name does not designate a known configuration.
+   */
+  static Z3_Configuration get(String name) {
+    String n = name.trim();
+    if ( n.equals("default") ) return DEFAULT;
+    if ( n.equals("seq") || n.equals("z3str3") )
+      return new Z3_Configuration(n, Arrays.asList("smt.string_solver=" + n), "(check-sat)", 0);
+    if ( n.equals("bv") )
+      return new Z3_Configuration(n, new ArrayList<String>(), BOUNDED_BV_CHECK, 0);
+    if ( n.matches("seed[0-9]+") ) {
+      String seed = n.substring("seed".length());
+      return new Z3_Configuration(n, Arrays.asList("smt.random_seed=" + seed, "sat.random_seed=" + seed), "(check-sat)", 0);
+    }
+    throw new Error("Unknown Z3 configuration: " + name);
+  }
+
+  /**
+   * Returns the name of this configuration.
+   *
+   * @return The name of this configuration.
+   */
+  String getName() { return name; }
+
+  /**
+   * Returns the command line starting Z3 with this configuration.
+   *
+   * @return The command and its arguments.
+   */
+  List<String> getCommand() {
+    List<String> command = new ArrayList<String>(Arrays.asList("z3", "-smt2", "-in"));
+    command.addAll(parameters);
+    return command;
+  }
+
+  /**
+   * Returns the command used to check satisfiability of the current
+   * assertions.
+   *
+   * @return The SMT2 command checking satisfiability.
+   */
+  String getCheckSatCommand() { return checkSatCommand; }
+
+  /**
+   * Returns the wall-clock time after which a request to Z3 is considered
+   * hanging.
+   *
+   * @return The time limit of requests in milliseconds (0 for no limit).
+   */
+  long getWatchdogMillis() { return watchdogMillis; }
+
+  /**
+   * Returns the name of this configuration.
+   *
+   * @return The name of this configuration.
+   */
+  public String toString() { return name; }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -33,10 +33,15 @@ import java.util.*;
  */
 public class Z3_Handler extends SolverHandler {
 
-  private Process z3 = null;
-  private PrintWriter z3_in = null;
-  private BufferedReader z3_out  = null;
-  private BufferedReader z3_err  = null;
+  private EncoverLogger log = null;
+  private final Z3_Configuration configuration;
+  private volatile Z3_Process z3 = null;
+  private int nbProcessSpawns = 0;
+
+  /** SMT2 string of the background currently asserted, null if none */
+  private String assertedBackground = null;
+  /** Pseudonyms of the variables declared for the asserted background */
+  private Map<String,EE_Variable> backgroundPseudo2var = null;
 
   /**
    * Default constructor.
@@ -44,9 +49,28 @@ public class Z3_Handler extends SolverHandler {
    * @param l Logger to use to log information.
    */
   public Z3_Handler(EncoverLogger l) {
+    this(l, Z3_Configuration.DEFAULT);
+  }
+
+  /**
+   * Constructor of handlers running Z3 with a specific configuration.
+   *
+   * @param l Logger to use to log information.
+   * @param conf The configuration of the Z3 process.
+   */
+  Z3_Handler(EncoverLogger l, Z3_Configuration conf) {
     setLogger(l);
+    log = l;
+    configuration = conf;
   }
 
+  /**
+   * Returns the configuration of the Z3 process of this handler.
+   *
+   * @return The configuration of Z3.
+   */
+  Z3_Configuration getConfiguration() { return configuration; }
+
   /**
    * Starts the solver process and keep it hanging.
    *
@@ -61,10 +85,7 @@ public class Z3_Handler extends SolverHandler {
 
     if  ( z3 == null ) {
       try {
-        z3 = Runtime.getRuntime().exec("z3 -smt2 -in");
-        // ProcessBuilder z3Starter = new ProcessBuilder("z3", "-smt2", "-in");
-        // z3Starter.redirectErrorStream(true);
-        // z3 = z3Starter.start();
+        z3 = new Z3_Process(configuration.getCommand(), configuration.getWatchdogMillis(), log);
       } catch (SecurityException e) {
         logln("Due to security reasons, Handler_Z3.start() can not create a Z3 process.\n"+e);
       } catch (IOException e) {
@@ -75,9 +96,7 @@ public class Z3_Handler extends SolverHandler {
         throw new Error("Big bug here! The following exception should never occur in Handler_Z3.start()", e);
       }
       if ( z3 != null ) {
-        z3_in = new PrintWriter(new BufferedWriter(new OutputStreamWriter(z3.getOutputStream())));
-        z3_out  = new BufferedReader(new InputStreamReader(z3.getInputStream()));
-        z3_err  = new BufferedReader(new InputStreamReader(z3.getErrorStream()));
+        nbProcessSpawns++;
         success = true;
       }
     }
@@ -97,22 +116,10 @@ public class Z3_Handler extends SolverHandler {
     logln("calling stop()");
     flushLog();
 
-    z3_in.println("(exit)");
-
-    z3_in.flush();
-    z3_in.close();
-    try {
-      z3_out.close();
-      z3_err.close();
-    }
-    catch (IOException e) {
-      logln("IO error when closing feed from Z3 in Handler_Z3.stop().\n"+e);
-    }
-    z3.destroy();
-    boolean success = false;
-    try { success = (z3.exitValue() == 0); }
-    catch (IllegalThreadStateException e) { success = false; }
+    boolean success = z3.close();
     z3 = null;
+    assertedBackground = null;
+    backgroundPseudo2var = null;
 
     logln("");
     flushLog();
@@ -140,15 +147,54 @@ public class Z3_Handler extends SolverHandler {
     return (z3 != null);
   }
 
+  /**
+   * Returns the number of Z3 processes spawned so far by this handler.
+   *
+   * @return The number of Z3 processes spawned so far.
+   */
+  public int getNbProcessSpawns() {
+    return nbProcessSpawns;
+  }
+
+  /**
+   * Kills the running Z3 process if it is answering a query, making this query
+   * fail promptly. A new process is started for the next query.
+   */
+  public void abort() {
+    Z3_Process running = z3;
+    if ( running != null ) running.abort();
+  }
+
+  /**
+   * Restarts Z3 if its process has terminated (for example after an
+   * {@link #abort()}).
+   */
+  private void restartIfTerminated() {
+    if ( z3 != null && ! z3.isAlive() ) {
+      logln("  -> the Z3 process has terminated, restarting it"); flushLog();
+      start();
+    }
+  }
+
+  /**
+   * Resets the running instance of Z3, forgetting about previous declarations
+   * and assertions. This allows to isolate consecutive queries sent to the same
+   * Z3 process.
+   */
+  private void resetZ3() throws Exception {
+    logln("  -> resetting Z3"); flushLog();
+    assertedBackground = null;
+    backgroundPseudo2var = null;
+    sendLinesToZ3AndDumpAnswers(Arrays.asList("(reset)"));
+  }
+
   /**
    * Sends a few lines to Z3 and dump Z3's answer.
    *
    * @param lines The lines to be sent to Z3.
-   * @param nbAnswers The number of lines of answer that will be genrated by Z3.
-   *   If that number is wrong, the program will hang or miss some ouputs of Z3.
    * @return {@code true} iff everything went well.
    */
-  private boolean sendLinesToZ3AndDumpAnswers(List<String> lines, int nbAnswers) throws Exception {
+  private boolean sendLinesToZ3AndDumpAnswers(List<String> lines) throws Exception {
     logln("calling sendLinesToZ3AndDumpAnswers("+lines+")"); flushLog();
 
     if ( z3 == null ) {
@@ -157,63 +203,13 @@ public class Z3_Handler extends SolverHandler {
       throw new Error("An instance of Z3 MUST be running when calling this method.");
     }
 
-    boolean answer = true;
-
-    logln("  -> sending lines"); flushLog();
-
-    for (String line: lines) {
-      z3_in.println(line);
-      z3_in.flush();
-    }
-
-    Thread.yield();
-
-    logln("  -> dumping answers"); flushLog();
+    logln("  -> sending lines and dumping answers"); flushLog();
 
-    String z3Answer;
-    try {
-      while ( z3_out.ready() ) {
-        z3Answer = z3_out.readLine();
-        logln("Z3 answers: " + z3Answer);
-        nbAnswers--;
-        if ( z3Answer.matches("\\(error \".*\"\\)") ) {
-          answer = false;
-          logln("Z3 error:" + z3Answer);
-          throw new Exception("Z3 generated an error: " + z3Answer);
-        }
-      }
-      if ( z3_err.ready() ) {
-        answer = false;
-        logln("Z3 error:");
-        while ( z3_err.ready() ) { logln("  " + z3_err.readLine()); }
-        throw new Exception("Z3 generated an error.");
-      }
-      while ( nbAnswers > 0 ) {
-        while ( z3_out.ready() ) {
-          z3Answer = z3_out.readLine();
-          logln("Z3 answers: " + z3Answer);
-          nbAnswers--;
-          if ( z3Answer.matches("\\(error \".*\"\\)") ) {
-            answer = false;
-            logln("Z3 error:" + z3Answer);
-            throw new Exception("Z3 generated an error: " + z3Answer);
-          }
-        }
-        if ( z3_err.ready() ) {
-          answer = false;
-          logln("Z3 error:");
-          while ( z3_err.ready() ) { logln("  " + z3_err.readLine()); }
-          throw new Exception("Z3 generated an error.");
-        }
-        Thread.yield();
-      }
-    } catch (IOException e) {
-      throw new Error("IO error when testing if Z3 is ready.\n"+e);
-    }
+    z3.request(lines);
 
     logln("  -> returning"); flushLog();
 
-    return answer;
+    return true;
   }
 
   /**
@@ -222,7 +218,7 @@ public class Z3_Handler extends SolverHandler {
    * @param line The line to be sent to Z3.
    * @return Z3's answer.
    */
-  private StringBuilder sendLineToZ3AndRetrieveAnswer(String line) throws Exception {
+  private String sendLineToZ3AndRetrieveAnswer(String line) throws Exception {
     logln("calling sendLineToZ3AndRetrieveAnswer"); flushLog();
 
     if ( z3 == null ) {
@@ -231,35 +227,7 @@ public class Z3_Handler extends SolverHandler {
       throw new Error("An instance of Z3 MUST be running when calling this method.");
     }
 
-    z3_in.println(line);
-    z3_in.flush();
-    Thread.yield();
-
-    try {
-      while ( ! z3_out.ready() ) {
-        if ( z3_err.ready() ) {
-          logln("Z3 error:");
-          while ( z3_err.ready() ) { logln("  " + z3_err.readLine()); }
-          throw new Exception("Z3 generated an error.");
-        }
-        // logln("Waiting for Z3's answer.");
-        Thread.yield(); // may be sleep (Thread.sleep(10);) would be more efficient.
-      }
-    } catch (IOException e) {
-      throw new Error("IO error when testing if Z3 is ready.\n"+e);
-    }
-
-    StringBuilder answerCollector = null;
-    try {
-      answerCollector = new StringBuilder(z3_out.readLine());
-      while ( z3_out.ready() ) {
-        answerCollector.append(" " + z3_out.readLine());
-      }
-    } catch (IOException e) {
-      throw new Error("IO error when reading answer from Z3.\n"+e);
-    }
-
-    return answerCollector;
+    return z3.requestAnswer(line);
   }
 
   /**
@@ -271,6 +239,20 @@ public class Z3_Handler extends SolverHandler {
    *   during the translation.
    */
   private Map<String,EE_Variable> feedVariablesOfFormulaToZ3(EFormula formula) throws Exception {
+    return feedVariablesOfFormulaToZ3(formula, new HashMap<String,EE_Variable>());
+  }
+
+  /**
+   * Declares to the running instance of Z3 the variables used in the provided
+   * formula which are not already declared.
+   *
+   * @param formula The formula whose variables have to be declared to Z3.
+   * @param declared The mapping from pseudonyms to variables already declared
+   *   to Z3, which must not be declared again.
+   * @return The mapping from pseudonyms used in Z3 to actual variables for
+   *   every variable of the formula and every already declared variable.
+   */
+  private Map<String,EE_Variable> feedVariablesOfFormulaToZ3(EFormula formula, Map<String,EE_Variable> declared) throws Exception {
     logln("calling feedVariablesOfFormulaToZ3"); flushLog();
 
     if ( z3 == null ) 
@@ -280,7 +262,7 @@ public class Z3_Handler extends SolverHandler {
       throw new Error("An instance of Z3 MUST be running when calling this method.");
     }
 
-    Map<String,EE_Variable> pseudo2var = new HashMap();
+    Map<String,EE_Variable> pseudo2var = new HashMap(declared);
     List<String> declarationLines = new ArrayList();
 
     Iterator<EE_Variable> varIte = formula.getVariables().iterator();
@@ -288,6 +270,7 @@ public class Z3_Handler extends SolverHandler {
     {
       EE_Variable v = varIte.next();
       String vPseudo = v.getPseudonym();
+      if ( declared.get(vPseudo) == v ) continue;
       if ( pseudo2var.containsKey(vPseudo) ) 
       {
         throw new Error("Two variables in this formula have the same pseudonym. Z3 will mix them.");
@@ -296,28 +279,103 @@ public class Z3_Handler extends SolverHandler {
       {
         pseudo2var.put(vPseudo, v);
       }
-      String vType = "";
-
-      switch (v.getType()) 
-      {
-      case BOOL: vType = "Bool"; break;
-      case INT: vType = "Int"; break;
-      case REAL: vType = "Real"; break;
-      case STR: vType = "String"; break;
-      //case STR: throw new Error("Variables of type String are not handled yet by Z3_Handler.feedVariablesOfFormulaToZ3(EFormula)");
-      }
-      declarationLines.add("(declare-const " + vPseudo + " " + vType + ")");
+      declarationLines.add(declarationOf(v));
     }
 
     logln("  -> starts feeding variables"); flushLog();
 
-    sendLinesToZ3AndDumpAnswers(declarationLines, 0);
+    sendLinesToZ3AndDumpAnswers(declarationLines);
 
     logln("  -> starts feeding variables"); flushLog();
 
     return pseudo2var;
   }
 
+  /**
+   * Returns the SMT2 command declaring a variable, using its current pseudonym.
+   *
+   * @param v The variable to declare.
+   * @return The {@code declare-const} command declaring {@code v}.
+   */
+  static String declarationOf(EE_Variable v) {
+    String vType = "";
+
+    switch (v.getType()) 
+    {
+    case BOOL: vType = "Bool"; break;
+    case INT: vType = "Int"; break;
+    case REAL: vType = "Real"; break;
+    case STR: vType = "String"; break;
+    //case STR: throw new Error("Variables of type String are not handled yet by Z3_Handler.feedVariablesOfFormulaToZ3(EFormula)");
+    }
+    return "(declare-const " + v.getPseudonym() + " " + vType + ")";
+  }
+
+  /**
+   * Returns the SMT2 command asking for the values of some variables.
+   *
+   * @param pseudonyms The pseudonyms of the variables.
+   * @return The {@code get-value} command, or {@code null} if there is no
+   *   variable.
+   */
+  static String getValueCommandOf(Collection<String> pseudonyms) {
+    if ( pseudonyms.isEmpty() ) return null;
+    StringBuilder getValueCmd = new StringBuilder("(get-value (");
+    Iterator<String> pseudoIte = pseudonyms.iterator();
+    while ( pseudoIte.hasNext() ) {
+      getValueCmd.append(pseudoIte.next());
+      if ( pseudoIte.hasNext() ) getValueCmd.append(' ');
+    }
+    getValueCmd.append("))");
+    return getValueCmd.toString();
+  }
+
+  /**
+   * Parses the answer of Z3 to a {@code get-value} command.
+   *
+   * @param answer The answer of Z3, a list of pairs (pseudonym value).
+   * @param pseudo2var The mapping from pseudonyms used in Z3 to variables.
+   * @return The assignment of the variables described by the answer.
+   * @throws Exception If the answer is not well formed.
+   */
+  static SortedMap<EE_Variable,EE_Constant> parseValues(String answer, Map<String,EE_Variable> pseudo2var) throws Exception {
+    SortedMap<EE_Variable,EE_Constant> assignment = new TreeMap();
+
+    for (String valuePair: Z3_Process.splitList(answer)) {
+      List<String> pair = Z3_Process.splitList(valuePair);
+      if ( pair.size() != 2 )
+        throw new Exception("Unexpected answer from Z3 to get-value: " + valuePair);
+      String pseudo = pair.get(0);
+      EE_Variable var = pseudo2var.get(pseudo);
+      if ( var == null )
+        throw new Exception("Z3 returned a value for an unknown variable: " + pseudo);
+
+      String value = pair.get(1);
+
+      EExpression parsedValue = null;
+      try { parsedValue = Smt2Parser.parse(value, pseudo2var); }
+      catch(ParseException e) { parsedValue = null; }
+
+      /* ///////////////////// Hacki fix ///////////////////////
+      *    There is an issue in the lexer, so string answers
+      *    returend from z3 are typed as unknown, this solution
+      *    tries to bypass that issue. But there are probably 
+      *    some edge cases where is will fail :) 
+      *  ///////////////////////////////////////////////////////
+      */
+      if (parsedValue == null || parsedValue.getType() == EExpression.Type.STR || parsedValue.getType() == EExpression.Type.UNKNOWN)
+      {
+        assignment.put(var, new EE_Constant(EExpression.Type.STR, value));
+      }
+      else
+      {
+        assignment.put(var, (EE_Constant) parsedValue);
+      }
+    }
+
+    return assignment;
+  }
+
   /**
    * Calls Z3 to simplify the provided formula using an "unclashable" pseudonym policy.
    *
@@ -330,6 +388,7 @@ public class Z3_Handler extends SolverHandler {
 
     EFormula simplifiedFormula = formula;
     Throwable pendingThrowable = null;
+    restartIfTerminated();
 
     // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
     // exiting this method by any mean!
@@ -363,12 +422,18 @@ public class Z3_Handler extends SolverHandler {
     // try {
     //   List<String> lines =
     //     Arrays.asList("(set-option :set-param \"STRONG_CONTEXT_SIMPLIFIER\" \"true\")");
-    //   sendLinesToZ3AndDumpAnswers(lines, 0);
+    //   sendLinesToZ3AndDumpAnswers(lines);
     // } catch(Exception e) {
     //   logln(e.getMessage());
     //   return formula;
     // }
 
+    try { resetZ3(); }
+    catch(Exception e) {
+      logln(e.getMessage());
+      return formula;
+    }
+
     logln("  -> starts feeding variables"); flushLog();
 
     Map<String,EE_Variable> pseudo2var = null;
@@ -389,7 +454,7 @@ public class Z3_Handler extends SolverHandler {
 
     logln("  -> running simplify"); flushLog();
 
-    StringBuilder answerCollector = null;
+    String answerCollector = null;
     try {
       answerCollector = sendLineToZ3AndRetrieveAnswer("(simplify " + smt2Formula + ")");
     } catch(Exception e) {
@@ -398,7 +463,7 @@ public class Z3_Handler extends SolverHandler {
     }
     
 
-    String answer = answerCollector.toString();
+    String answer = answerCollector;
     logln("Asking for simplification of: " + smt2Formula);
     logln("z3 says the result is: " + answer);
 
@@ -421,19 +486,21 @@ public class Z3_Handler extends SolverHandler {
 
 
   /**
-   * Calls Z3 to check satisfiability of the provided formula using an
-   * "unclashable" pseudonym policy.
+   * Calls Z3 to decide satisfiability of the provided formula using an
+   * "unclashable" pseudonym policy. If Z3 does not answer in time, its
+   * process is killed (and restarted for the next query) and the verdict is
+   * UNKNOWN.
    *
    * @param formula The formula whose satisfiability is to be checked.
-   * @return {@code null} iff the formula is unsatisfiable; otherwise it returns
-   *   a satisfying assignment of the variables.
+   * @return The verdict of Z3.
    */
-  public SortedMap<EE_Variable,EE_Constant> checkSatisfiability(EFormula formula) {
-    logln("calling checkSatisfiability(" + formula + ")");
+  public SolverResult solve(EFormula formula) {
+    logln("calling solve(" + formula + ")");
     flushLog();
 
-    SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = new TreeMap();
+    SolverResult result = null;
     Throwable pendingThrowable = null;
+    restartIfTerminated();
 
     // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
     // exiting this method by any mean!
@@ -441,31 +508,69 @@ public class Z3_Handler extends SolverHandler {
     EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
     EE_Variable.setPseudonymPolicy(pPolicyToUse);
 
-    try { satisfyingAssignment = checkSatisfiability_internals(formula); }
+    try { result = checkSatisfiability_internals(formula); }
     catch(Throwable t) { pendingThrowable = t; }
     finally { EE_Variable.setPseudonymPolicy(oldPPolicy); }
 
-    if ( pendingThrowable != null ) { throw new Error(pendingThrowable); }
+    if ( pendingThrowable != null ) {
+      if ( isTimeout(pendingThrowable) ) return SolverResult.unknown("timeout");
+      throw new Error(pendingThrowable);
+    }
+
+    return result;
+  }
+
+  /**
+   * Calls Z3 to decide satisfiability of the conjunction of a background
+   * formula and a query formula using an "unclashable" pseudonym policy.
+   * The background is asserted only if it differs from the background asserted
+   * by the previous call, and the query is checked between a {@code (push)}
+   * and a {@code (pop)}.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of Z3.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    logln("calling solve(" + background + ", " + formula + ")");
+    flushLog();
+
+    SolverResult result = null;
+    Throwable pendingThrowable = null;
+    restartIfTerminated();
+
+    // Modifying the pseudonym policy. It is IMPERATIVE to reset it before
+    // exiting this method by any mean!
+    EE_Variable.PseudonymPolicy pPolicyToUse = EE_Variable.PseudonymPolicy.COMBINED;
+    EE_Variable.PseudonymPolicy oldPPolicy = EE_Variable.getPseudonymPolicy();
+    EE_Variable.setPseudonymPolicy(pPolicyToUse);
+
+    try { result = checkSatisfiability_incremental(background, formula); }
+    catch(Throwable t) { pendingThrowable = t; }
+    finally { EE_Variable.setPseudonymPolicy(oldPPolicy); }
+
+    if ( pendingThrowable != null ) {
+      if ( isTimeout(pendingThrowable) ) return SolverResult.unknown("timeout");
+      throw new Error(pendingThrowable);
+    }
 
-    return satisfyingAssignment;
+    return result;
   }
 
   /**
-   * Calls Z3 to check satisfiability of the provided formula.
+   * Calls Z3 to decide satisfiability of the provided formula.
    *
    * @param formula The formula whose satisfiability is to be checked.
-   * @return {@code null} iff the formula is unsatisfiable; otherwise it returns
-   *   a satisfying assignment of the variables.
+   * @return The verdict of Z3.
    */
-  private SortedMap<EE_Variable,EE_Constant> checkSatisfiability_internals(EFormula formula) {
+  private SolverResult checkSatisfiability_internals(EFormula formula) {
     logln("calling checkSatisfiability_internals("+formula+")");
     flushLog();
 
-    SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = new TreeMap();
-
     try {
+      resetZ3();
       List<String> lines = Arrays.asList("(set-option :produce-models true)");
-      sendLinesToZ3AndDumpAnswers(lines, 0);
+      sendLinesToZ3AndDumpAnswers(lines);
     } catch(Exception e) {
       logln(e.getMessage()); flushLog();
       throw new Error(e);
@@ -480,101 +585,185 @@ public class Z3_Handler extends SolverHandler {
       throw new Error(e);
     }
 
+    assertFormulaToZ3(formula);
+
+    SolverResult result = checkSatAndRetrieveModel(pseudo2var);
+
+    logln("");
+    flushLog();
+
+    return result;
+  }
+
+  /**
+   * Calls Z3 to check satisfiability of the conjunction of a background formula
+   * and a query formula, reusing the background already asserted if possible.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of Z3.
+   */
+  private SolverResult checkSatisfiability_incremental(EFormula background, EFormula formula) {
+    logln("calling checkSatisfiability_incremental("+formula+")");
+    flushLog();
+
+    String smt2Background = translateFormula(background);
+    if ( ! smt2Background.equals(assertedBackground) ) {
+      logln("  -> asserting new background"); flushLog();
+      try {
+        resetZ3();
+        List<String> lines = Arrays.asList("(set-option :produce-models true)");
+        sendLinesToZ3AndDumpAnswers(lines);
+        backgroundPseudo2var = feedVariablesOfFormulaToZ3(background);
+        sendLinesToZ3AndDumpAnswers(Arrays.asList("(assert " + smt2Background + ")"));
+      } catch(Exception e) {
+        logln(e.getMessage()); flushLog();
+        assertedBackground = null;
+        backgroundPseudo2var = null;
+        throw new Error(e);
+      }
+      assertedBackground = smt2Background;
+    }
+
+    SolverResult result = null;
+    boolean popped = false;
+    try {
+      sendLinesToZ3AndDumpAnswers(Arrays.asList("(push)"));
+
+      logln("  -> starts feeding variables"); flushLog();
+      Map<String,EE_Variable> pseudo2var = feedVariablesOfFormulaToZ3(formula, backgroundPseudo2var);
+
+      assertFormulaToZ3(formula);
+
+      result = checkSatAndRetrieveModel(pseudo2var);
+
+      sendLinesToZ3AndDumpAnswers(Arrays.asList("(pop)"));
+      popped = true;
+    } catch(Exception e) {
+      logln(e.getMessage()); flushLog();
+      throw new Error(e);
+    } finally {
+      // If the query scope could not be closed, the background has to be
+      // asserted again from scratch for the next query.
+      if ( ! popped ) {
+        assertedBackground = null;
+        backgroundPseudo2var = null;
+      }
+    }
+
+    logln("");
+    flushLog();
+
+    return result;
+  }
+
+  /**
+   * Test if a throwable has been caused by Z3 not answering in time.
+   *
+   * @param t The throwable.
+   * @return True iff {@code t} or one of its causes is a timeout.
+   */
+  private static boolean isTimeout(Throwable t) {
+    for (Throwable c = t; c != null; c = c.getCause()) {
+      if ( c instanceof Z3_Process.TimeoutException ) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Translates the provided formula into SMT2.
+   *
+   * @param formula The formula to translate.
+   * @return The SMT2 translation of the formula.
+   */
+  private String translateFormula(EFormula formula) {
     logln("  -> starts translating formula"); flushLog();
 
     String smt2Formula = null;
-    try { smt2Formula = formula.toString(EFormula.StrEncoding.SMT2); 
-    }
+    try { smt2Formula = formula.toString(EFormula.StrEncoding.SMT2); }
     catch(TranslationException e) {
       logln(e.getMessage()); flushLog();
       throw new Error("The formula " + formula + " could not be translated.\n" + e);
     }
+    return smt2Formula;
+  }
+
+  /**
+   * Asserts the provided formula to the running instance of Z3.
+   *
+   * @param formula The formula to assert.
+   */
+  private void assertFormulaToZ3(EFormula formula) {
+    String smt2Formula = translateFormula(formula);
 
     logln("  -> asserting formula to Z3"); flushLog();
 
     try {
       List<String> lines = Arrays.asList("(assert " + smt2Formula + ")");
-      sendLinesToZ3AndDumpAnswers(lines, 0);
+      sendLinesToZ3AndDumpAnswers(lines);
     } catch(Exception e) {
       logln(e.getMessage()); flushLog();
       throw new Error(e);
     }
+  }
 
-    
+  /**
+   * Asks the running instance of Z3 if the current assertions are satisfiable
+   * and, if so, retrieves a model.
+   *
+   * @param pseudo2var The mapping from pseudonyms used in Z3 to the variables
+   *   whose values have to be retrieved.
+   * @return The verdict of Z3, with a satisfying assignment of the variables
+   *   if the assertions are satisfiable.
+   */
+  private SolverResult checkSatAndRetrieveModel(Map<String,EE_Variable> pseudo2var) {
+    SortedMap<EE_Variable,EE_Constant> satisfyingAssignment = new TreeMap();
 
     logln("  -> asking for satisfiability"); flushLog();
 
-    StringBuilder answerCollector = null;
+    String answerCollector = null;
     try {
-      answerCollector = sendLineToZ3AndRetrieveAnswer("(check-sat)");
+      answerCollector = sendLineToZ3AndRetrieveAnswer(configuration.getCheckSatCommand());
     } catch(Exception e) {
       logln(e.getMessage()); flushLog();
       throw new Error(e);
     }
-    String answer = answerCollector.toString(); 
+    String answer = answerCollector; 
 
     if ( answer.equals("sat") ) {
       logln("The previous formula is satisfiable."); flushLog();
       satisfyingAssignment = new TreeMap();
       logln("  -> asking for model"); flushLog();
 
-      Iterator<Map.Entry<String,EE_Variable>> pseudo2varIte = pseudo2var.entrySet().iterator();
-      while ( pseudo2varIte.hasNext() ) 
-      {
-        Map.Entry<String,EE_Variable> entry = pseudo2varIte.next();
-        String pseudo = entry.getKey();
-        EE_Variable var = entry.getValue();
-
-        try { answerCollector = sendLineToZ3AndRetrieveAnswer("(eval " + pseudo + ")"); }
-        catch(Exception e) {
+      String getValueCmd = getValueCommandOf(pseudo2var.keySet());
+      if ( getValueCmd != null ) {
+        try {
+          answerCollector = sendLineToZ3AndRetrieveAnswer(getValueCmd);
+          satisfyingAssignment = parseValues(answerCollector, pseudo2var);
+        } catch(Exception e) {
           logln(e.getMessage()); flushLog();
           throw new Error(e);
         }
-
-        answer = answerCollector.toString();
-
-        EExpression parsedAnswer = null;
-        if ( ! answer.matches("\\(error \".*\"\\)") ) 
-        {
-          try { parsedAnswer = Smt2Parser.parse(answer, pseudo2var); }
-          catch(ParseException e) { logln("Exception while parsing: " + e); }
-          logln("Smt2Parser says it is equivalent to: " + parsedAnswer);
-        }
-
-        logln(" " + var + " -> " + parsedAnswer); flushLog();
-
-        /* ///////////////////// Hacki fix ///////////////////////
-        *    There is an issue in the lexer, so string answers
-        *    returend from z3 are typed as unknown, this solution
-        *    tries to bypass that issue. But there are probably 
-        *    some edge cases where is will fail :) 
-        *  ///////////////////////////////////////////////////////
-        */
-        if (parsedAnswer.getType() == EExpression.Type.STR || parsedAnswer.getType() == EExpression.Type.UNKNOWN)
-        {
-          EE_Constant ec = new EE_Constant(EExpression.Type.STR, answer);
-          satisfyingAssignment.put(var, ec);   
-        }
-        else
-        {
-          satisfyingAssignment.put(var, (EE_Constant) parsedAnswer);   
-        }
+        logln(" model: " + satisfyingAssignment); flushLog();
       }
 
+      return SolverResult.sat(satisfyingAssignment);
     } 
-    else 
+    else if ( answer.equals("unsat") )
     {
       logln("The previous formula is unsatisfiable."); flushLog();
-      satisfyingAssignment = null;
+      return SolverResult.unsat();
+    }
+    else
+    {
+      String reason = answer;
+      try { reason = sendLineToZ3AndRetrieveAnswer("(get-info :reason-unknown)"); }
+      catch(Exception e) { logln("No reason given by Z3: " + e.getMessage()); }
+      logln("Z3 (" + configuration + ") could not decide: " + reason); flushLog();
+      return SolverResult.unknown(configuration + ": " + reason);
     }
-
-    logln("");
-    flushLog();
-
-    return satisfyingAssignment;
   }
 
-
 }
 
 
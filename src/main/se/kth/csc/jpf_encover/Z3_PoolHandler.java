@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+/**
+ * Solver handler relying on a pool of Z3 processes.
+ * Every query borrows an idle Z3 handler from the pool for its whole
+ * duration, and gives it back once answered. Queries issued concurrently by
+ * different threads are therefore answered in parallel by different Z3
+ * processes, while a single Z3 process never receives interleaved commands.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_PoolHandler extends SolverHandler {
+
+  private final List<SolverHandler> workers = new ArrayList<SolverHandler>();
+  private final BlockingQueue<SolverHandler> idleWorkers = new LinkedBlockingQueue<SolverHandler>();
+  private volatile boolean started = false;
+
+  /**
+   * Constructor of pools of Z3 handlers (simple handlers or portfolios).
+   * Each handler is used by one query at a time.
+   *
+   * @param handlers The handlers in the pool.
+   * @param l Logger to use to log information.
+   */
+  Z3_PoolHandler(List<? extends SolverHandler> handlers, EncoverLogger l) {
+    setLogger(l);
+    if ( handlers.isEmpty() ) throw new Error("A pool of Z3 processes requires at least one worker.");
+    workers.addAll(handlers);
+  }
+
+  /**
+   * Returns the number of Z3 processes in the pool.
+   *
+   * @return The number of workers of this pool.
+   */
+  int getNbWorkers() { return workers.size(); }
+
+  /**
+   * Starts all the Z3 processes of the pool.
+   *
+   * @return True iff successfully started every Z3 process.
+   */
+  public synchronized boolean start() {
+    logln("starting " + workers.size() + " Z3 workers");
+    flushLog();
+
+    boolean success = true;
+    idleWorkers.clear();
+    for (SolverHandler worker: workers) {
+      success = worker.start() && success;
+      idleWorkers.add(worker);
+    }
+    started = success;
+    return success;
+  }
+
+  /**
+   * Stops all the Z3 processes of the pool.
+   * This method must not be called while queries are being answered.
+   *
+   * @return True iff successfully stopped every Z3 process.
+   */
+  public synchronized boolean stop() {
+    boolean success = true;
+    for (SolverHandler worker: workers) {
+      if ( worker.isStarted() ) success = worker.stop() && success;
+    }
+    started = false;
+    return success;
+  }
+
+  /**
+   * Cleans up every remaining "stuff" for a clean exit of the application using
+   * this solver.
+   *
+   * @return True iff successfully exited every Z3 process.
+   */
+  public synchronized boolean exit() {
+    boolean success = true;
+    for (SolverHandler worker: workers) {
+      success = worker.exit() && success;
+    }
+    started = false;
+    return success;
+  }
+
+  /**
+   * Test if the pool is ready.
+   *
+   * @return True iff the pool is started and ready to receive queries.
+   */
+  public boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Waits for an idle Z3 handler and removes it from the pool.
+   *
+   * @return A Z3 handler which is not used by any other thread.
+   */
+  private SolverHandler borrowWorker() {
+    if ( ! started ) throw new Error("The pool of Z3 processes MUST be started before being queried.");
+    try {
+      return idleWorkers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while waiting for an idle Z3 process.", e);
+    }
+  }
+
+  /**
+   * Gives back a Z3 handler to the pool. If the underlying process died while
+   * answering the last query, it is restarted first.
+   *
+   * @param worker The Z3 handler to give back.
+   */
+  private void releaseWorker(SolverHandler worker) {
+    if ( ! worker.isStarted() ) worker.start();
+    idleWorkers.add(worker);
+  }
+
+  /**
+   * Calls one of the Z3 processes of the pool to simplify the provided formula.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  public EFormula simplify(EFormula formula) {
+    SolverHandler worker = borrowWorker();
+    try {
+      return worker.simplify(formula);
+    } finally {
+      releaseWorker(worker);
+    }
+  }
+
+  /**
+   * Calls one of the Z3 processes of the pool to decide satisfiability of the
+   * provided formula.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The verdict of Z3.
+   */
+  public SolverResult solve(EFormula formula) {
+    SolverHandler worker = borrowWorker();
+    try {
+      return worker.solve(formula);
+    } finally {
+      releaseWorker(worker);
+    }
+  }
+
+  /**
+   * Calls one of the Z3 processes of the pool to decide satisfiability of the
+   * conjunction of a background formula and a query formula. Each process
+   * keeps its own background asserted between the queries it answers.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The verdict of Z3.
+   */
+  public SolverResult solve(EFormula background, EFormula formula) {
+    SolverHandler worker = borrowWorker();
+    try {
+      return worker.solve(background, formula);
+    } finally {
+      releaseWorker(worker);
+    }
+  }
+
+  /**
+   * Aborts the queries currently being answered by the workers of the pool.
+   */
+  public void abort() {
+    for (SolverHandler worker: workers) worker.abort();
+  }
+
+  /**
+   * Returns the number of Z3 processes spawned so far by the pool.
+   *
+   * @return The number of Z3 processes spawned so far.
+   */
+  public int getNbProcessSpawns() {
+    int nbSpawns = 0;
+    for (SolverHandler worker: workers) nbSpawns += worker.getNbProcessSpawns();
+    return nbSpawns;
+  }
+
+  /**
+   * Returns the statistics of the workers, summed over the pool.
+   *
+   * @return The statistics collected by the workers.
+   */
+  public Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>();
+    for (SolverHandler worker: workers) {
+      for (Map.Entry<String,Long> stat: worker.getStatistics().entrySet()) {
+        Long previous = stats.get(stat.getKey());
+        stats.put(stat.getKey(), (previous == null) ? stat.getValue() : previous + stat.getValue());
+      }
+    }
+    return stats;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
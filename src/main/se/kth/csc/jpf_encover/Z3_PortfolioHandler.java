@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Solver handler running every satisfiability query on several Z3
+ * configurations at once (see {@link Z3_Configuration}), and keeping the first
+ * definitive answer (sat or unsat). Every configuration has its own thread,
+ * running the queries submitted to it in order. As soon as a configuration
+ * wins a query, the portfolio returns its answer; the query is cancelled for
+ * the other configurations without killing their process: the ones which
+ * have not started it yet skip it, and the ones already working on it finish
+ * in the background (within the per-query timeout of their configuration, if
+ * any) and their answer is discarded. A configuration lagging behind
+ * therefore does not delay the next queries, which are won by the others.
+ * The number of wins of each configuration is reported in the statistics,
+ * allowing to tune the default configuration for a family of programs.
+ * Simplifications are performed by the first configuration only.
+ * A portfolio answers one query at a time.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_PortfolioHandler extends SolverHandler {
+
+  /** Answer of one member of the portfolio */
+  private static final class Answer {
+    final int member;
+    final SolverResult result;
+    final Error error;
+    Answer(int m, SolverResult r, Error e) { member = m; result = r; error = e; }
+  }
+
+  /** Query to run on the members of the portfolio */
+  private static interface Query {
+    SolverResult runOn(SolverHandler member);
+  }
+
+  private final List<Z3_Handler> members = new ArrayList<Z3_Handler>();
+  /** Thread of each member, running the queries submitted to it in order */
+  private final List<ExecutorService> executors = new ArrayList<ExecutorService>();
+  private final long[] nbWins;
+  private final AtomicLong nbSkippedQueries = new AtomicLong(0);
+
+  /**
+   * Constructor of portfolios of Z3 configurations.
+   *
+   * @param configurations The configurations of the members of the portfolio.
+   * @param l Logger to use to log information.
+   */
+  Z3_PortfolioHandler(List<Z3_Configuration> configurations, EncoverLogger l) {
+    setLogger(l);
+    if ( configurations.isEmpty() ) throw new Error("A portfolio requires at least one Z3 configuration.");
+    for (final Z3_Configuration conf: configurations) {
+      members.add(new Z3_Handler(l, conf));
+      executors.add(Executors.newSingleThreadExecutor(new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Z3 portfolio member " + conf);
+            t.setDaemon(true);
+            return t;
+          }
+        }));
+    }
+    nbWins = new long[members.size()];
+  }
+
+  /**
+   * Runs a task on the thread of a member, after the queries already
+   * submitted to this member, and waits for its result.
+   *
+   * @param member The index of the member.
+   * @param task The task to run.
+   * @return The result of the task.
+   */
+  private <T> T onMember(int member, Callable<T> task) {
+    try {
+      return executors.get(member).submit(task).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while waiting for the portfolio.", e);
+    } catch (ExecutionException e) {
+      if ( e.getCause() instanceof Error ) throw (Error) e.getCause();
+      throw new Error("Unexpected failure of a portfolio member.", e.getCause());
+    }
+  }
+
+  /**
+   * Starts the Z3 processes of every configuration.
+   *
+   * @return True iff successfully started every Z3 process.
+   */
+  public synchronized boolean start() {
+    boolean success = true;
+    for (int i = 0; i < members.size(); i++) {
+      final Z3_Handler member = members.get(i);
+      success = onMember(i, new Callable<Boolean>() {
+          public Boolean call() { return member.start(); }
+        }) && success;
+    }
+    return success;
+  }
+
+  /**
+   * Stops the Z3 processes of every configuration.
+   *
+   * @return True iff successfully stopped every Z3 process.
+   */
+  public synchronized boolean stop() {
+    boolean success = true;
+    for (int i = 0; i < members.size(); i++) {
+      final Z3_Handler member = members.get(i);
+      success = onMember(i, new Callable<Boolean>() {
+          public Boolean call() { return ! member.isStarted() || member.stop(); }
+        }) && success;
+    }
+    return success;
+  }
+
+  /**
+   * Exits the Z3 processes of every configuration and the threads of the
+   * portfolio.
+   *
+   * @return True iff successfully exited every Z3 process.
+   */
+  public synchronized boolean exit() {
+    boolean success = true;
+    for (int i = 0; i < members.size(); i++) {
+      final Z3_Handler member = members.get(i);
+      success = onMember(i, new Callable<Boolean>() {
+          public Boolean call() { return member.exit(); }
+        }) && success;
+      executors.get(i).shutdown();
+    }
+    return success;
+  }
+
+  /**
+   * Test if the portfolio is ready.
+   *
+   * @return True iff the Z3 processes are started.
+   */
+  public boolean isStarted() {
+    return members.get(0).isStarted();
+  }
+
+  /**
+   * Kills the Z3 processes answering the current query, including the ones
+   * still finishing a query already won by another configuration.
+   */
+  public void abort() {
+    for (Z3_Handler member: members) member.abort();
+  }
+
+  /**
+   * Simplifies the provided formula using the first configuration.
+   *
+   * @param formula The formula to simplify.
+   * @return A simplified version of the formula.
+   */
+  public synchronized EFormula simplify(final EFormula formula) {
+    return onMember(0, new Callable<EFormula>() {
+        public EFormula call() { return members.get(0).simplify(formula); }
+      });
+  }
+
+  /**
+   * Decides satisfiability of the provided formula on every configuration.
+   *
+   * @param formula The formula whose satisfiability is to be checked.
+   * @return The first definitive verdict.
+   */
+  public SolverResult solve(final EFormula formula) {
+    return race(new Query() {
+        public SolverResult runOn(SolverHandler member) {
+          return member.solve(formula);
+        }
+      });
+  }
+
+  /**
+   * Decides satisfiability of the conjunction of a background formula and a
+   * query formula on every configuration.
+   *
+   * @param background The background formula, shared by many queries.
+   * @param formula The formula specific to this query.
+   * @return The first definitive verdict.
+   */
+  public SolverResult solve(final EFormula background, final EFormula formula) {
+    return race(new Query() {
+        public SolverResult runOn(SolverHandler member) {
+          return member.solve(background, formula);
+        }
+      });
+  }
+
+  /**
+   * Runs a query on every member of the portfolio and returns the first
+   * definitive answer, without waiting for the other members. The query is
+   * then cancelled for them: members which have not started it yet skip it,
+   * and the answers of the members already working on it are discarded.
+   *
+   * @param query The query to run.
+   * @return The answer of the winning member or, if no member gives a
+   *   definitive answer, an UNKNOWN verdict gathering the reasons of the
+   *   members.
+   * @throws Error The error of the last member to fail, if every member
+   *   failed.
+   */
+  private synchronized SolverResult race(final Query query) {
+    final AtomicBoolean decided = new AtomicBoolean(false);
+    final BlockingQueue<Answer> answers = new LinkedBlockingQueue<Answer>();
+    for (int i = 0; i < members.size(); i++) {
+      final int index = i;
+      executors.get(i).execute(new Runnable() {
+          public void run() {
+            if ( decided.get() ) {
+              nbSkippedQueries.incrementAndGet();
+              return;
+            }
+            try {
+              answers.add(new Answer(index, query.runOn(members.get(index)), null));
+            } catch (Error e) {
+              answers.add(new Answer(index, null, e));
+            }
+          }
+        });
+    }
+
+    Error lastError = null;
+    StringBuilder unknownReasons = null;
+    for (int nbPending = members.size(); nbPending > 0; nbPending--) {
+      Answer answer = takeAnswer(answers);
+      if ( answer.error != null ) {
+        lastError = answer.error;
+        continue;
+      }
+      if ( answer.result.isUnknown() ) {
+        if ( unknownReasons == null ) unknownReasons = new StringBuilder();
+        else unknownReasons.append("; ");
+        unknownReasons.append(answer.result.getReason());
+        continue;
+      }
+      decided.set(true);
+      nbWins[answer.member]++;
+      logln("configuration " + members.get(answer.member).getConfiguration() + " answered first");
+      return answer.result;
+    }
+
+    if ( unknownReasons != null ) return SolverResult.unknown(unknownReasons.toString());
+    throw lastError;
+  }
+
+  /**
+   * Waits for the next answer of a member.
+   *
+   * @param answers The queue of the answers of the current race.
+   * @return The next answer.
+   */
+  private Answer takeAnswer(BlockingQueue<Answer> answers) {
+    try {
+      return answers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while waiting for the portfolio.", e);
+    }
+  }
+
+  /**
+   * Returns the number of Z3 processes spawned so far by the portfolio.
+   *
+   * @return The number of Z3 processes spawned so far.
+   */
+  public int getNbProcessSpawns() {
+    int nbSpawns = 0;
+    for (Z3_Handler member: members) nbSpawns += member.getNbProcessSpawns();
+    return nbSpawns;
+  }
+
+  /**
+   * Returns the number of queries won by each configuration.
+   *
+   * @return The number of wins, by configuration, and the number of queries
+   *   skipped because they were already won.
+   */
+  public synchronized Map<String,Long> getStatistics() {
+    Map<String,Long> stats = new LinkedHashMap<String,Long>();
+    for (int i = 0; i < members.size(); i++) {
+      stats.put("portfolio wins of " + members.get(i).getConfiguration(), nbWins[i]);
+    }
+    stats.put("portfolio queries skipped by lagging configurations", nbSkippedQueries.get());
+    return stats;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Protocol layer used to talk to a running Z3 process.
+ * Every request sent to Z3 is followed by an {@code (echo "<id>")} command
+ * whose answer acts as a sentinel marking the end of Z3's answers to this
+ * request. The same sentinel is first echoed on the standard error of Z3,
+ * so that the messages Z3 writes there are also attributed to the request
+ * which produced them. The standard output of Z3 is read by a dedicated
+ * thread which splits it into complete s-expressions, while the standard
+ * error of Z3 is drained by another thread. Waiting for an answer is therefore a blocking
+ * operation which does not consume any CPU.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+class Z3_Process extends LoggerUser {
+
+  /** Prefix of the sentinels used to frame requests */
+  private static final String SENTINEL_PREFIX = "encover_sync_";
+  /** Marker put in the answer queue when the output of Z3 is closed */
+  private static final String END_OF_OUTPUT = new String("<end of Z3 output>");
+
+  private final Process process;
+  private final PrintWriter z3_in;
+  private final BlockingQueue<String> answers = new LinkedBlockingQueue<String>();
+  /** Error messages of the current request, guarded by itself */
+  private final StringBuilder errors = new StringBuilder();
+  /** Number of the last request whose sentinel was read on the error stream, guarded by {@link #errors} */
+  private int nbErrorSentinels = 0;
+  /** Is the error stream of Z3 closed? Guarded by {@link #errors} */
+  private boolean errorsClosed = false;
+  private final Thread outputReader;
+  private final Thread errorDrainer;
+  private int nbRequests = 0;
+  private volatile boolean outputClosed = false;
+  private volatile boolean aborted = false;
+  private final long watchdogMillis;
+
+  /**
+   * Exception thrown when Z3 does not answer a request in time.
+   */
+  static final class TimeoutException extends Exception {
+    TimeoutException(String msg) { super(msg); }
+  }
+
+  /**
+   * Starts a new Z3 process and the threads reading its outputs.
+   *
+   * @param command The command (and its arguments) starting Z3.
+   * @param watchdog The wall-clock time after which a request is considered
+   *   hanging and the process is killed, in milliseconds (0 for no limit).
+   * @param l Logger to use to log information.
+   */
+  Z3_Process(List<String> command, long watchdog, EncoverLogger l) throws IOException {
+    setLogger(l);
+    watchdogMillis = watchdog;
+    process = new ProcessBuilder(command).start();
+    z3_in = new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream())));
+
+    final Reader z3_out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    outputReader = new Thread("Z3 output reader") {
+        public void run() { readSExpressions(z3_out); }
+      };
+    outputReader.setDaemon(true);
+    outputReader.start();
+
+    final BufferedReader z3_err = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+    errorDrainer = new Thread("Z3 error drainer") {
+        public void run() { drainErrors(z3_err); }
+      };
+    errorDrainer.setDaemon(true);
+    errorDrainer.start();
+  }
+
+  /**
+   * Body of the thread reading the standard output of Z3. Splits this output
+   * into complete top-level s-expressions (lists or atoms) and puts them in the
+   * queue of answers.
+   *
+   * @param z3_out The standard output of Z3.
+   */
+  private void readSExpressions(Reader z3_out) {
+    StringBuilder current = new StringBuilder();
+    int depth = 0;
+    boolean inString = false;
+    boolean inQuotedSymbol = false;
+    try {
+      int c;
+      while ( (c = z3_out.read()) != -1 ) {
+        char ch = (char) c;
+        if ( inString ) {
+          current.append(ch);
+          if ( ch == '"' ) inString = false;
+          continue;
+        }
+        if ( inQuotedSymbol ) {
+          current.append(ch);
+          if ( ch == '|' ) inQuotedSymbol = false;
+          continue;
+        }
+        if ( Character.isWhitespace(ch) ) {
+          if ( depth == 0 ) {
+            if ( current.length() > 0 ) {
+              answers.put(current.toString());
+              current.setLength(0);
+            }
+          } else if ( current.charAt(current.length() - 1) != ' ' ) {
+            current.append(' ');
+          }
+          continue;
+        }
+        current.append(ch);
+        switch (ch) {
+        case '"': inString = true; break;
+        case '|': inQuotedSymbol = true; break;
+        case '(': depth++; break;
+        case ')':
+          depth--;
+          if ( depth == 0 ) {
+            answers.put(current.toString());
+            current.setLength(0);
+          }
+          break;
+        }
+      }
+      if ( current.length() > 0 ) answers.put(current.toString());
+    } catch (IOException e) {
+      logln("IO error when reading Z3 output: " + e);
+    } catch (InterruptedException e) {
+      logln("Interrupted while reading Z3 output.");
+    } finally {
+      answers.offer(END_OF_OUTPUT);
+    }
+  }
+
+  /**
+   * Body of the thread draining the standard error of Z3.
+   *
+   * @param z3_err The standard error of Z3.
+   */
+  private void drainErrors(BufferedReader z3_err) {
+    try {
+      String line;
+      while ( (line = z3_err.readLine()) != null ) {
+        String unquoted = line.trim().replace("\"", "");
+        synchronized (errors) {
+          if ( unquoted.startsWith(SENTINEL_PREFIX) ) {
+            try {
+              nbErrorSentinels = Integer.parseInt(unquoted.substring(SENTINEL_PREFIX.length()));
+              errors.notifyAll();
+              continue;
+            } catch (NumberFormatException e) {
+              // Not a sentinel
+            }
+          }
+          logln("Z3 error stream: " + line);
+          errors.append(line).append('\n');
+        }
+      }
+    } catch (IOException e) {
+      logln("IO error when reading Z3 error stream: " + e);
+    } finally {
+      synchronized (errors) {
+        errorsClosed = true;
+        errors.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits for the sentinel of a request on the error stream of Z3, and
+   * returns the error messages written before it.
+   *
+   * @param request The number of the request.
+   * @param deadline The time at which the request is considered hanging.
+   * @param lines The commands of the request.
+   * @return The error messages of the request.
+   * @throws TimeoutException If the sentinel is not read in time, in which
+   *   case the process is killed.
+   */
+  private String awaitErrors(int request, long deadline, List<String> lines) throws TimeoutException, InterruptedException {
+    synchronized (errors) {
+      while ( nbErrorSentinels < request && ! errorsClosed ) {
+        if ( watchdogMillis > 0 ) {
+          long remaining = deadline - System.currentTimeMillis();
+          if ( remaining <= 0 ) {
+            abort();
+            throw new TimeoutException("Z3 did not answer within " + watchdogMillis + " ms to: " + lines);
+          }
+          errors.wait(remaining);
+        } else {
+          errors.wait();
+        }
+      }
+      String errorMsg = errors.toString();
+      errors.setLength(0);
+      return errorMsg;
+    }
+  }
+
+  /**
+   * Sends some commands to Z3 and waits for all the answers they produce.
+   *
+   * @param lines The commands to send to Z3.
+   * @return The s-expressions answered by Z3, in order.
+   * @throws TimeoutException If Z3 does not answer in time, in which case the
+   *   process is killed.
+   * @throws Exception If Z3 answers with an error or terminates.
+   */
+  List<String> request(List<String> lines) throws Exception {
+    return request(lines, true);
+  }
+
+  /**
+   * Sends some commands to Z3 and waits for all the answers they produce,
+   * including error answers. This is meant for scripts some of whose commands
+   * are expected to fail (for example {@code get-value} after an unsatisfiable
+   * {@code check-sat}); errors are left to the caller to interpret.
+   *
+   * @param lines The commands to send to Z3.
+   * @return The s-expressions answered by Z3, in order.
+   * @throws TimeoutException If Z3 does not answer in time, in which case the
+   *   process is killed.
+   * @throws Exception If Z3 terminates.
+   */
+  List<String> requestAll(List<String> lines) throws Exception {
+    return request(lines, false);
+  }
+
+  /**
+   * Sends some commands to Z3 and waits for all the answers they produce.
+   *
+   * @param lines The commands to send to Z3.
+   * @param failOnError Whether errors answered by Z3 raise an exception.
+   * @return The s-expressions answered by Z3, in order.
+   */
+  private synchronized List<String> request(List<String> lines, boolean failOnError) throws Exception {
+    if ( outputClosed ) throw new Exception("The Z3 process has terminated.");
+    if ( aborted ) throw new Exception("The Z3 process has been aborted.");
+
+    String sentinel = SENTINEL_PREFIX + (++nbRequests);
+    for (String line: lines) {
+      z3_in.println(line);
+    }
+    z3_in.println("(set-option :regular-output-channel \"stderr\")");
+    z3_in.println("(echo \"" + sentinel + "\")");
+    z3_in.println("(set-option :regular-output-channel \"stdout\")");
+    z3_in.println("(echo \"" + sentinel + "\")");
+    z3_in.flush();
+
+    List<String> result = new ArrayList<String>();
+    String firstError = null;
+    long deadline = System.currentTimeMillis() + watchdogMillis;
+    while ( true ) {
+      String answer;
+      if ( watchdogMillis > 0 ) {
+        answer = answers.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        if ( answer == null ) {
+          abort();
+          throw new TimeoutException("Z3 did not answer within " + watchdogMillis + " ms to: " + lines);
+        }
+      } else {
+        answer = answers.take();
+      }
+      if ( answer == END_OF_OUTPUT ) {
+        outputClosed = true;
+        throw new Exception("The Z3 process terminated before answering: " + lines);
+      }
+      if ( answer.equals(sentinel) || answer.equals("\"" + sentinel + "\"") ) break;
+      logln("Z3 answers: " + answer);
+      if ( firstError == null && answer.startsWith("(error ") ) firstError = answer;
+      result.add(answer);
+    }
+
+    String errorMsg = awaitErrors(nbRequests, deadline, lines);
+    if ( firstError != null && failOnError ) throw new Exception("Z3 generated an error: " + firstError);
+    if ( errorMsg.length() > 0 && failOnError ) throw new Exception("Z3 generated an error: " + errorMsg);
+
+    return result;
+  }
+
+  /**
+   * Sends one command to Z3 and returns its answer.
+   *
+   * @param line The command to send to Z3.
+   * @return The answer of Z3 (the answers separated by spaces if the command
+   *   produced more than one s-expression).
+   * @throws Exception If Z3 answers with an error, terminates or does not
+   *   answer anything.
+   */
+  String requestAnswer(String line) throws Exception {
+    List<String> answerList = request(Collections.singletonList(line));
+    if ( answerList.isEmpty() ) throw new Exception("Z3 did not answer to: " + line);
+    StringBuilder answer = new StringBuilder(answerList.get(0));
+    for (int i = 1; i < answerList.size(); i++) answer.append(' ').append(answerList.get(i));
+    return answer.toString();
+  }
+
+  /**
+   * Splits an s-expression list into its top-level elements.
+   * For example, {@code ((x 1) (y "a b"))} is split into {@code (x 1)} and
+   * {@code (y "a b")}.
+   *
+   * @param list The s-expression list to split.
+   * @return The top-level elements of the list, in order.
+   * @throws Exception If the provided string is not a well formed list.
+   */
+  static List<String> splitList(String list) throws Exception {
+    String trimmed = list.trim();
+    if ( ! (trimmed.startsWith("(") && trimmed.endsWith(")")) )
+      throw new Exception("Not an s-expression list: " + list);
+
+    List<String> elements = new ArrayList<String>();
+    int depth = 0;
+    int start = -1;
+    boolean inString = false;
+    boolean inQuotedSymbol = false;
+    for (int i = 1; i < trimmed.length() - 1; i++) {
+      char ch = trimmed.charAt(i);
+      if ( inString ) {
+        if ( ch == '"' ) inString = false;
+        continue;
+      }
+      if ( inQuotedSymbol ) {
+        if ( ch == '|' ) inQuotedSymbol = false;
+        continue;
+      }
+      if ( Character.isWhitespace(ch) ) {
+        if ( depth == 0 && start >= 0 ) {
+          elements.add(trimmed.substring(start, i));
+          start = -1;
+        }
+        continue;
+      }
+      if ( start < 0 ) start = i;
+      switch (ch) {
+      case '"': inString = true; break;
+      case '|': inQuotedSymbol = true; break;
+      case '(': depth++; break;
+      case ')':
+        depth--;
+        if ( depth < 0 ) throw new Exception("Unbalanced s-expression list: " + list);
+        if ( depth == 0 ) {
+          elements.add(trimmed.substring(start, i + 1));
+          start = -1;
+        }
+        break;
+      }
+    }
+    if ( depth != 0 || inString || inQuotedSymbol )
+      throw new Exception("Unbalanced s-expression list: " + list);
+    if ( start >= 0 ) elements.add(trimmed.substring(start, trimmed.length() - 1));
+
+    return elements;
+  }
+
+  /**
+   * Test if the Z3 process is still able to answer requests.
+   *
+   * @return False iff the output of Z3 is known to be closed or the process
+   *   has been aborted.
+   */
+  boolean isAlive() { return ! (outputClosed || aborted); }
+
+  /**
+   * Kills the Z3 process without waiting for the current request to be
+   * answered. The thread waiting for this answer gets an exception. This
+   * method can be called while another thread is sending a request.
+   */
+  void abort() {
+    logln("aborting the Z3 process");
+    aborted = true;
+    process.destroy();
+  }
+
+  /**
+   * Asks Z3 to exit, then makes sure that the process and its reading threads
+   * are terminated.
+   *
+   * @return True iff the Z3 process exited normally.
+   */
+  synchronized boolean close() {
+    z3_in.println("(exit)");
+    z3_in.flush();
+    z3_in.close();
+
+    boolean success = false;
+    try {
+      // Z3 closes its output when exiting.
+      outputReader.join(1000);
+      process.destroy();
+      success = (process.waitFor() == 0);
+      errorDrainer.join(1000);
+    } catch (InterruptedException e) {
+      logln("Interrupted while waiting for the Z3 process to terminate.");
+      process.destroy();
+    }
+
+    return success;
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+
+/**
+ * Micro-benchmark comparing the evaluation of formulas compiled by
+ * {@link CompiledFormula} with a naive evaluation walking the formula tree,
+ * boxing every intermediate value and looking the variables up in a map.
+ * Both evaluators are run on the same random assignments of a few formulas
+ * exercising integer, real, string and boolean operators; their results are
+ * checked to be identical.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class CompiledFormulaBenchmark {
+
+  /** Number of assignments on which formulas are evaluated */
+  private static final int NB_ASSIGNMENTS = 10000;
+  /** Number of measured rounds over all the assignments */
+  private static final int NB_ROUNDS = 20;
+  /** Number of warm-up rounds, not measured */
+  private static final int NB_WARMUP_ROUNDS = 20;
+
+  /**
+   * Naive evaluator walking the formula tree, also used as the reference
+   * evaluator by the unit tests.
+   */
+  static class TreeWalker {
+
+    /**
+     * Evaluates a formula.
+     *
+     * @param f The formula.
+     * @param env The values of the variables.
+     * @return True iff the formula holds.
+     */
+    static boolean holds(EFormula f, Map<EE_Variable,EE_Constant> env) {
+      if ( f instanceof EF_Conjunction ) {
+        for (EFormula sub: f.getSubFormulas()) { if ( ! holds(sub, env) ) return false; }
+        return true;
+      }
+      if ( f instanceof EF_Disjunction ) {
+        for (EFormula sub: f.getSubFormulas()) { if ( holds(sub, env) ) return true; }
+        return false;
+      }
+      if ( f instanceof EF_Negation ) return ! holds(((EF_Negation) f).getNegatedFormula(), env);
+      if ( f instanceof EF_Valuation ) return (Boolean) value(((EF_Valuation) f).getExpression(), env);
+      EF_Relation rel = (EF_Relation) f;
+      return compare(rel.getOperator().toString(EFormula.StrEncoding.SMT2),
+                     value(rel.getLeftHandSide(), env), value(rel.getRightHandSide(), env));
+    }
+
+    /**
+     * Compares two values.
+     *
+     * @param op The SMT2 name of the comparison.
+     * @param a The left hand side value.
+     * @param b The right hand side value.
+     * @return The result of the comparison.
+     */
+    @SuppressWarnings("unchecked")
+    static boolean compare(String op, Object a, Object b) {
+      int c;
+      if ( a instanceof Number && b instanceof Number ) {
+        Number x = (Number) a;
+        Number y = (Number) b;
+        if ( x instanceof Double || y instanceof Double ) c = Double.compare(x.doubleValue(), y.doubleValue());
+        else c = Long.valueOf(x.longValue()).compareTo(Long.valueOf(y.longValue()));
+      } else {
+        c = ((Comparable<Object>) a).compareTo(b);
+      }
+      if ( op.equals("=") ) return c == 0;
+      if ( op.equals("distinct") ) return c != 0;
+      if ( op.equals("<") ) return c < 0;
+      if ( op.equals("<=") ) return c <= 0;
+      if ( op.equals(">") ) return c > 0;
+      return c >= 0;
+    }
+
+    /**
+     * Computes the value of an expression.
+     *
+     * @param e The expression.
+     * @param env The values of the variables.
+     * @return A Boolean, Long, Double or String.
+     */
+    static Object value(EExpression e, Map<EE_Variable,EE_Constant> env) {
+      if ( e instanceof EE_Variable ) e = env.get(e);
+      if ( e instanceof EE_Constant ) {
+        Object v = ((EE_Constant) e).getValue();
+        if ( v instanceof Integer ) return Long.valueOf(((Integer) v).longValue());
+        return v;
+      }
+      if ( e instanceof EE_UnaryOperation ) {
+        Object a = value(((EE_UnaryOperation) e).getOperand(), env);
+        if ( e instanceof EE_UnaryOperation.NOT ) return ! (Boolean) a;
+        if ( e instanceof EE_UnaryOperation.NEG ) return (a instanceof Double) ? (Object) (- (Double) a) : (Object) (- (Long) a);
+        if ( e instanceof EE_UnaryOperation.LENGTH ) return Long.valueOf(((String) a).length());
+        if ( e instanceof EE_UnaryOperation.VALUE ) return String.valueOf(a);
+        if ( e instanceof EE_UnaryOperation.LOWER_CASE ) return ((String) a).toLowerCase();
+        if ( e instanceof EE_UnaryOperation.UPPER_CASE ) return ((String) a).toUpperCase();
+        if ( e instanceof EE_UnaryOperation.TRIM ) return ((String) a).trim();
+        double d = ((Number) a).doubleValue();
+        if ( e instanceof EE_UnaryOperation.ROUND ) return Math.round(d);
+        if ( e instanceof EE_UnaryOperation.COS ) return Math.cos(d);
+        if ( e instanceof EE_UnaryOperation.ACOS ) return Math.acos(d);
+        if ( e instanceof EE_UnaryOperation.SIN ) return Math.sin(d);
+        if ( e instanceof EE_UnaryOperation.ASIN ) return Math.asin(d);
+        if ( e instanceof EE_UnaryOperation.TAN ) return Math.tan(d);
+        if ( e instanceof EE_UnaryOperation.ATAN ) return Math.atan(d);
+        if ( e instanceof EE_UnaryOperation.EXP ) return Math.exp(d);
+        if ( e instanceof EE_UnaryOperation.LOG ) return Math.log(d);
+        return Math.sqrt(d);
+      }
+      if ( e instanceof EE_BinaryOperation ) {
+        Object a = value(((EE_BinaryOperation) e).getLeftHandSide(), env);
+        Object b = value(((EE_BinaryOperation) e).getRightHandSide(), env);
+        if ( e instanceof EE_BinaryOperation.EQ ) return compare("=", a, b);
+        if ( e instanceof EE_BinaryOperation.NE ) return compare("distinct", a, b);
+        if ( e instanceof EE_BinaryOperation.LT ) return compare("<", a, b);
+        if ( e instanceof EE_BinaryOperation.LE ) return compare("<=", a, b);
+        if ( e instanceof EE_BinaryOperation.GT ) return compare(">", a, b);
+        if ( e instanceof EE_BinaryOperation.GE ) return compare(">=", a, b);
+        if ( e instanceof EE_BinaryOperation.CONCAT ) return (String) a + (String) b;
+        if ( e instanceof EE_BinaryOperation.CMP ) return Long.valueOf(Integer.signum(Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue())));
+        if ( e instanceof EE_BinaryOperation.DIV ) return ((Number) a).doubleValue() / ((Number) b).doubleValue();
+        if ( e instanceof EE_BinaryOperation.ATAN2 ) return Math.atan2(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        if ( e instanceof EE_BinaryOperation.POW ) return Math.pow(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        if ( e instanceof EE_BinaryOperation.MINUS && (a instanceof Double || b instanceof Double) )
+          return ((Number) a).doubleValue() - ((Number) b).doubleValue();
+        long x = (Long) a;
+        long y = (Long) b;
+        if ( e instanceof EE_BinaryOperation.MINUS ) return x - y;
+        if ( e instanceof EE_BinaryOperation.SHIFTL ) return x << y;
+        if ( e instanceof EE_BinaryOperation.SHIFTR ) return x >> y;
+        if ( e instanceof EE_BinaryOperation.SHIFTUR ) return x >>> y;
+        long q = x / y;
+        if ( x - q * y < 0 ) q = (y > 0) ? q - 1 : q + 1;
+        return ( e instanceof EE_BinaryOperation.IDIV ) ? q : x - y * q;
+      }
+      if ( e instanceof EE_TernaryOperation ) {
+        EE_TernaryOperation ite = (EE_TernaryOperation) e;
+        return (Boolean) value(ite.getOperand1(), env) ? value(ite.getOperand2(), env) : value(ite.getOperand3(), env);
+      }
+      List<Object> args = new ArrayList<Object>();
+      for (EExpression operand: ((EE_NaryOperation) e).getOperands()) args.add(value(operand, env));
+      if ( e instanceof EE_NaryOperation.SUBSTRING ) {
+        String s = (String) args.get(0);
+        int end = (args.size() == 3) ? ((Long) args.get(2)).intValue() : s.length();
+        return s.substring(((Long) args.get(1)).intValue(), end);
+      }
+      if ( e instanceof EE_NaryOperation.REPLACE_ALL ) return ((String) args.get(0)).replaceAll((String) args.get(1), (String) args.get(2));
+      if ( e instanceof EE_NaryOperation.REPLACE_FIRST ) return ((String) args.get(0)).replaceFirst((String) args.get(1), (String) args.get(2));
+      if ( e instanceof EE_NaryOperation.AND ) { boolean r = true; for (Object o: args) r &= (Boolean) o; return r; }
+      if ( e instanceof EE_NaryOperation.OR ) { boolean r = false; for (Object o: args) r |= (Boolean) o; return r; }
+      if ( e instanceof EE_NaryOperation.XOR ) { boolean r = false; for (Object o: args) r ^= (Boolean) o; return r; }
+      boolean real = false;
+      for (Object o: args) real |= (o instanceof Double);
+      boolean plus = (e instanceof EE_NaryOperation.PLUS);
+      if ( real ) {
+        double r = plus ? 0 : 1;
+        for (Object o: args) r = plus ? r + ((Number) o).doubleValue() : r * ((Number) o).doubleValue();
+        return r;
+      }
+      long r = plus ? 0 : 1;
+      for (Object o: args) r = plus ? r + (Long) o : r * (Long) o;
+      return r;
+    }
+  }
+
+  /**
+   * Builds a binary operation.
+   */
+  private static EExpression bin(EE_BinaryOperation op, EExpression lhs, EExpression rhs) {
+    op.setLeftHandSide(lhs);
+    op.setRightHandSide(rhs);
+    return op;
+  }
+
+  /**
+   * Builds a unary operation.
+   */
+  private static EExpression un(EE_UnaryOperation op, EExpression operand) {
+    op.setOperand(operand);
+    return op;
+  }
+
+  /**
+   * Builds a N-ary operation.
+   */
+  private static EExpression nary(EE_NaryOperation op, EExpression... operands) {
+    op.addOperands(operands);
+    return op;
+  }
+
+  /**
+   * Builds an integer constant.
+   */
+  private static EExpression cst(int i) { return new EE_Constant<Integer>(EExpression.Type.INT, i); }
+
+  /**
+   * Builds the conjunction of some formulas.
+   */
+  private static EFormula and(EFormula... fs) {
+    EF_Conjunction conj = new EF_Conjunction();
+    for (EFormula f: fs) conj.append(f);
+    return conj;
+  }
+
+  /**
+   * Runs the benchmark and prints the average time of an evaluation for
+   * every formula and evaluator.
+   *
+   * @param args Ignored.
+   */
+  public static void main(String[] args) throws TranslationException {
+    EncoverLogger log = new EncoverLogger(new Config(new String[0]));
+    EExpression.setLogger(log);
+    EExpression.initialize();
+
+    EE_Variable x = new EE_Variable(EExpression.Type.INT, "x");
+    EE_Variable y = new EE_Variable(EExpression.Type.INT, "y");
+    EE_Variable d = new EE_Variable(EExpression.Type.REAL, "d");
+    EE_Variable s = new EE_Variable(EExpression.Type.STR, "s");
+    EE_Variable b = new EE_Variable(EExpression.Type.BOOL, "b");
+
+    EE_TernaryOperation ite = new EE_TernaryOperation.IFTE();
+    ite.setOperand1(bin(new EE_BinaryOperation.LT(), x, y));
+    ite.setOperand2(x);
+    ite.setOperand3(y);
+
+    Map<String,EFormula> formulas = new LinkedHashMap<String,EFormula>();
+    formulas.put("integer", and(
+      new EF_Relation(EF_Relation.Operator.GE,
+                      bin(new EE_BinaryOperation.MOD(), nary(new EE_NaryOperation.PLUS(), nary(new EE_NaryOperation.MUL(), x, cst(3)), y, cst(-7)), cst(5)),
+                      cst(2)),
+      new EF_Relation(EF_Relation.Operator.NE, bin(new EE_BinaryOperation.IDIV(), x, cst(2)), y),
+      new EF_Relation(EF_Relation.Operator.LE, ite, cst(40))));
+    formulas.put("real", and(
+      new EF_Relation(EF_Relation.Operator.GT,
+                      un(new EE_UnaryOperation.SQRT(), nary(new EE_NaryOperation.PLUS(), nary(new EE_NaryOperation.MUL(), d, d), cst(1))),
+                      un(new EE_UnaryOperation.COS(), d)),
+      new EF_Relation(EF_Relation.Operator.LT,
+                      bin(new EE_BinaryOperation.DIV(), bin(new EE_BinaryOperation.POW(), d, cst(2)), nary(new EE_NaryOperation.PLUS(), d, cst(100))),
+                      cst(50))));
+    formulas.put("string", and(
+      new EF_Relation(EF_Relation.Operator.GT,
+                      un(new EE_UnaryOperation.LENGTH(), bin(new EE_BinaryOperation.CONCAT(), s, un(new EE_UnaryOperation.VALUE(), x))),
+                      cst(3)),
+      new EF_Valuation(nary(new EE_NaryOperation.XOR(), b, bin(new EE_BinaryOperation.EQ(),
+                                                                un(new EE_UnaryOperation.UPPER_CASE(), un(new EE_UnaryOperation.TRIM(), s)),
+                                                                new EE_Constant<String>(EExpression.Type.STR, "AB"))))));
+
+    Random random = new Random(42);
+    String[] words = { "ab", " ab ", "Ab", "abc", "", "x y" };
+
+    for (Map.Entry<String,EFormula> entry: formulas.entrySet()) {
+      EFormula formula = entry.getValue();
+      CompiledFormula compiled = new CompiledFormula(formula);
+
+      List<Map<EE_Variable,EE_Constant>> assignments = new ArrayList<Map<EE_Variable,EE_Constant>>();
+      CompiledFormula.Registers[] registers = new CompiledFormula.Registers[NB_ASSIGNMENTS];
+      for (int i = 0; i < NB_ASSIGNMENTS; i++) {
+        Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+        assignment.put(x, new EE_Constant<Integer>(EExpression.Type.INT, random.nextInt(200) - 100));
+        assignment.put(y, new EE_Constant<Integer>(EExpression.Type.INT, random.nextInt(200) - 100));
+        assignment.put(d, new EE_Constant<Double>(EExpression.Type.REAL, random.nextDouble() * 40 - 20));
+        assignment.put(s, new EE_Constant<String>(EExpression.Type.STR, words[random.nextInt(words.length)]));
+        assignment.put(b, new EE_Constant<Boolean>(EExpression.Type.BOOL, random.nextBoolean()));
+        assignments.add(assignment);
+        registers[i] = compiled.toRegisters(assignment);
+        if ( compiled.eval(registers[i]) != TreeWalker.holds(formula, assignment) )
+          throw new Error("Evaluators disagree on " + formula + " with " + assignment);
+      }
+
+      long walkerNanos = 0;
+      long compiledNanos = 0;
+      int nbSatisfied = 0;
+      for (int round = 0; round < NB_WARMUP_ROUNDS + NB_ROUNDS; round++) {
+        long start = System.nanoTime();
+        for (Map<EE_Variable,EE_Constant> assignment: assignments) { if ( TreeWalker.holds(formula, assignment) ) nbSatisfied++; }
+        long middle = System.nanoTime();
+        for (CompiledFormula.Registers r: registers) { if ( compiled.eval(r) ) nbSatisfied++; }
+        long end = System.nanoTime();
+        if ( round >= NB_WARMUP_ROUNDS ) {
+          walkerNanos += middle - start;
+          compiledNanos += end - middle;
+        }
+      }
+
+      long nbEvaluations = (long) NB_ROUNDS * NB_ASSIGNMENTS;
+      System.out.println(entry.getKey() + ": " + formula);
+      System.out.println("  tree walker: " + (walkerNanos / nbEvaluations) + " ns/evaluation");
+      System.out.println("  compiled:    " + (compiledNanos / nbEvaluations) + " ns/evaluation");
+      System.out.println("  (" + nbSatisfied + " satisfied evaluations)");
+    }
+  }
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+
+/**
+ * Measures the heap retained per vertex by the implementations of
+ * {@link OutputFlowGraph} on a synthetic exploration: outputs are registered
+ * along paths which regularly end and backtrack to a random backtrackable
+ * point registered earlier, like the JPF search does. All the vertices share
+ * the same output and path condition objects, so that only the OFG itself is
+ * measured (including its backtrack table and depth index).
+ * Usage: {@code OFG_MemoryBenchmark [jgrapht|compact] [nbOutputs]}; without
+ * arguments both implementations are measured on 500000 outputs.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class OFG_MemoryBenchmark {
+
+  /**
+   * Returns the heap currently in use, after a few garbage collections.
+   *
+   * @return The number of bytes in use.
+   */
+  private static long usedHeap() {
+    for (int i = 0; i < 5; i++) System.gc();
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  /**
+   * Creates an OFG of the provided implementation.
+   *
+   * @param implementation The implementation ("jgrapht" or "compact").
+   * @return An empty OFG.
+   */
+  private static OutputFlowGraph newOFG(String implementation) {
+    if ( implementation.equals("compact") ) return new OFG_CompactTree();
+    if ( implementation.equals("jgrapht") ) return new OFG_BasedOnJGraphT();
+    throw new Error("Unknown OFG implementation: " + implementation);
+  }
+
+  /**
+   * Measures the heap retained per vertex by an OFG implementation.
+   *
+   * @param implementation The implementation ("jgrapht" or "compact").
+   * @param nbOutputs The number of outputs registered.
+   * @param output The output registered.
+   * @param pc The path condition registered.
+   */
+  private static void measure(String implementation, int nbOutputs, EExpression output, EFormula pc) {
+    long before = usedHeap();
+    OutputFlowGraph ofg = newOFG(implementation);
+    ofg.registerBacktrackablePoint(0L, 0);
+    Random random = new Random(1);
+    int nbBacktrackablePoints = 1;
+    for (int i = 0; i < nbOutputs; i++) {
+      if ( random.nextInt(8) == 0 ) {
+        ofg.registerEndOfExecution();
+        ofg.backtrackTo((long) random.nextInt(nbBacktrackablePoints), 0);
+      }
+      ofg.registerOutput(output, pc);
+      if ( random.nextInt(3) == 0 ) ofg.registerBacktrackablePoint((long) nbBacktrackablePoints++, 0);
+    }
+    long after = usedHeap();
+    System.out.println(implementation + ": " + ofg.getNbNodes() + " vertices, "
+                       + ((after - before) / ofg.getNbNodes()) + " bytes/vertex");
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The implementation to measure and the number of outputs.
+   */
+  public static void main(String[] args) {
+    EncoverLogger log = new EncoverLogger(new Config(new String[0]));
+    EExpression.setLogger(log);
+    EExpression.initialize();
+    EE_Variable.initialize();
+
+    EE_Variable x = new EE_Variable(EExpression.Type.INT, "x");
+    EFormula pc = new EF_Conjunction();
+    int nbOutputs = ( args.length > 1 ) ? Integer.parseInt(args[1]) : 500000;
+    if ( args.length > 0 ) {
+      measure(args[0], nbOutputs, x, pc);
+    } else {
+      measure("jgrapht", nbOutputs, x, pc);
+      measure("compact", nbOutputs, x, pc);
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that formulas compiled by {@link CompiledFormula} evaluate as the
+ * formula trees walked by {@link CompiledFormulaBenchmark.TreeWalker}.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_CompiledFormula {
+
+  private static EE_Variable x;
+  private static EE_Variable y;
+  private static EE_Variable d;
+  private static EE_Variable s;
+  private static EE_Variable b;
+
+  @BeforeClass
+  public static void initialize() {
+    EExpression.setLogger(new EncoverLogger(new Config(new String[0])));
+    EExpression.initialize();
+    EE_Variable.initialize();
+    x = new EE_Variable(EExpression.Type.INT, "x");
+    y = new EE_Variable(EExpression.Type.INT, "y");
+    d = new EE_Variable(EExpression.Type.REAL, "d");
+    s = new EE_Variable(EExpression.Type.STR, "s");
+    b = new EE_Variable(EExpression.Type.BOOL, "b");
+  }
+
+  /**
+   * Builds an integer constant.
+   *
+   * @param i The value of the constant.
+   * @return The constant.
+   */
+  private static EE_Constant cst(int i) {
+    return new EE_Constant(EExpression.Type.INT, i);
+  }
+
+  /**
+   * Builds a comparison as a relation.
+   *
+   * @param op The comparison operator.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The formula {@code lhs op rhs}.
+   */
+  private static EFormula cmp(EF_Relation.Operator op, EExpression lhs, EExpression rhs) {
+    return new EF_Relation(op, lhs, rhs);
+  }
+
+  /**
+   * Builds a binary operation.
+   *
+   * @param op The operation, without operands.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The operation applied to its operands.
+   */
+  private static EExpression bin(EE_BinaryOperation op, EExpression lhs, EExpression rhs) {
+    op.setLeftHandSide(lhs);
+    op.setRightHandSide(rhs);
+    return op;
+  }
+
+  /**
+   * Builds a N-ary operation.
+   *
+   * @param op The operation, without operands.
+   * @param operands The operands.
+   * @return The operation applied to its operands.
+   */
+  private static EExpression nary(EE_NaryOperation op, EExpression... operands) {
+    op.addOperands(operands);
+    return op;
+  }
+
+  /**
+   * Builds a unary operation.
+   *
+   * @param op The operation, without operand.
+   * @param operand The operand.
+   * @return The operation applied to its operand.
+   */
+  private static EExpression un(EE_UnaryOperation op, EExpression operand) {
+    op.setOperand(operand);
+    return op;
+  }
+
+  /**
+   * Returns a random integer expression over x and y, using every integer
+   * operation compiled by {@link CompiledFormula}. Divisors are non zero
+   * constants.
+   *
+   * @param random The random generator.
+   * @param depth The maximal nesting of operations.
+   * @return The expression.
+   */
+  private static EExpression expression(Random random, int depth) {
+    int kind = (depth == 0) ? random.nextInt(3) : random.nextInt(8);
+    switch (kind) {
+    case 0: return x;
+    case 1: return y;
+    case 2: return cst(random.nextInt(21) - 10);
+    case 3: return nary(new EE_NaryOperation.PLUS(), expression(random, depth - 1), expression(random, depth - 1));
+    case 4: return bin(new EE_BinaryOperation.MINUS(), expression(random, depth - 1), expression(random, depth - 1));
+    case 5: return nary(new EE_NaryOperation.MUL(), expression(random, depth - 1), expression(random, depth - 1));
+    case 6: return un(new EE_UnaryOperation.NEG(), expression(random, depth - 1));
+    default: {
+      EE_BinaryOperation op = random.nextBoolean() ? new EE_BinaryOperation.IDIV() : new EE_BinaryOperation.MOD();
+      int divisor = 1 + random.nextInt(5);
+      return bin(op, expression(random, depth - 1), cst(random.nextBoolean() ? divisor : -divisor));
+    }
+    }
+  }
+
+  /**
+   * Returns a random boolean combination of integer comparisons over x and y.
+   *
+   * @param random The random generator.
+   * @param depth The maximal nesting of boolean connectives.
+   * @return The formula.
+   */
+  private static EFormula formula(Random random, int depth) {
+    EF_Relation.Operator[] operators = EF_Relation.Operator.values();
+    int kind = (depth == 0) ? 0 : random.nextInt(4);
+    switch (kind) {
+    case 1: return new EF_Negation(formula(random, depth - 1));
+    case 2: {
+      EF_Disjunction disj = new EF_Disjunction();
+      disj.append(formula(random, depth - 1));
+      disj.append(formula(random, depth - 1));
+      return disj;
+    }
+    case 3: {
+      EF_Conjunction conj = new EF_Conjunction();
+      conj.append(formula(random, depth - 1));
+      conj.append(formula(random, depth - 1));
+      return conj;
+    }
+    default:
+      return cmp(operators[random.nextInt(operators.length)], expression(random, 2), expression(random, 2));
+    }
+  }
+
+  /**
+   * Evaluates a formula on random assignments with both evaluators and
+   * checks that they agree.
+   *
+   * @param formula The formula.
+   * @param random The random generator of the assignments.
+   * @param domains The domains of the integer variables.
+   */
+  private static void checkAgreement(EFormula formula, Random random, Map<EE_Variable,long[]> domains) throws TranslationException {
+    String[] words = { "ab", " ab ", "Ab", "abc", "", "x y" };
+    CompiledFormula compiled = new CompiledFormula(formula);
+    for (int i = 0; i < 50; i++) {
+      Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+      for (EE_Variable v: new EE_Variable[] { x, y }) {
+        long[] dom = domains.get(v);
+        assignment.put(v, cst((int) (dom[0] + random.nextInt((int) (dom[1] - dom[0] + 1)))));
+      }
+      assignment.put(d, new EE_Constant(EExpression.Type.REAL, random.nextDouble() * 40 - 20));
+      assignment.put(s, new EE_Constant(EExpression.Type.STR, words[random.nextInt(words.length)]));
+      assignment.put(b, new EE_Constant(EExpression.Type.BOOL, random.nextBoolean()));
+      CompiledFormula.Registers registers = compiled.toRegisters(assignment);
+      assertEquals(formula + " on " + assignment, CompiledFormulaBenchmark.TreeWalker.holds(formula, assignment), compiled.eval(registers));
+      SortedMap<EE_Variable,EE_Constant> back = compiled.toAssignment(registers);
+      for (EE_Variable v: compiled.getVariables())
+        assertEquals(assignment.get(v).getValue(), back.get(v).getValue());
+    }
+  }
+
+  @Test
+  public void randomIntegerFormulasAgreeWithTreeWalking() throws TranslationException {
+    Map<EE_Variable,long[]> domains = new HashMap<EE_Variable,long[]>();
+    domains.put(x, new long[] { -50, 50 });
+    domains.put(y, new long[] { -50, 50 });
+    Random random = new Random(2);
+    for (int i = 0; i < 1000; i++) checkAgreement(formula(random, 3), random, domains);
+  }
+
+  @Test
+  public void realStringAndBooleanFormulasAgreeWithTreeWalking() throws TranslationException {
+    Map<EE_Variable,long[]> domains = new HashMap<EE_Variable,long[]>();
+    domains.put(x, new long[] { -100, 100 });
+    domains.put(y, new long[] { -100, 100 });
+    Random random = new Random(3);
+
+    EE_TernaryOperation ite = new EE_TernaryOperation.IFTE();
+    ite.setOperand1(bin(new EE_BinaryOperation.LT(), x, y));
+    ite.setOperand2(x);
+    ite.setOperand3(y);
+    checkAgreement(cmp(EF_Relation.Operator.LE, ite, cst(40)), random, domains);
+
+    checkAgreement(cmp(EF_Relation.Operator.GT,
+                       un(new EE_UnaryOperation.SQRT(), nary(new EE_NaryOperation.PLUS(), nary(new EE_NaryOperation.MUL(), d, d), cst(1))),
+                       un(new EE_UnaryOperation.COS(), d)),
+                   random, domains);
+    checkAgreement(cmp(EF_Relation.Operator.LT,
+                       bin(new EE_BinaryOperation.DIV(), bin(new EE_BinaryOperation.POW(), d, cst(2)), nary(new EE_NaryOperation.PLUS(), d, x)),
+                       cst(5)),
+                   random, domains);
+    checkAgreement(cmp(EF_Relation.Operator.GT,
+                       un(new EE_UnaryOperation.LENGTH(), bin(new EE_BinaryOperation.CONCAT(), s, un(new EE_UnaryOperation.VALUE(), x))),
+                       cst(3)),
+                   random, domains);
+    checkAgreement(new EF_Valuation(nary(new EE_NaryOperation.XOR(), b,
+                                         bin(new EE_BinaryOperation.EQ(),
+                                             un(new EE_UnaryOperation.UPPER_CASE(), un(new EE_UnaryOperation.TRIM(), s)),
+                                             new EE_Constant(EExpression.Type.STR, "AB")))),
+                   random, domains);
+    checkAgreement(new EF_Valuation(nary(new EE_NaryOperation.OR(), un(new EE_UnaryOperation.NOT(), b),
+                                         bin(new EE_BinaryOperation.GE(), bin(new EE_BinaryOperation.MOD(), x, cst(-7)), y))),
+                   random, domains);
+  }
+
+  @Test(expected = CompiledFormula.EvaluationException.class)
+  public void missingValuesAreReported() throws TranslationException {
+    CompiledFormula compiled = new CompiledFormula(cmp(EF_Relation.Operator.LT, x, y));
+    Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+    assignment.put(x, cst(1));
+    compiled.eval(assignment);
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
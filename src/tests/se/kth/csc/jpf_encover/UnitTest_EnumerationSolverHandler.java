@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the verdicts of {@link EnumerationSolverHandler} against a brute
+ * force enumeration of the domains of the variables walking the formula
+ * trees.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_EnumerationSolverHandler {
+
+  private static EE_Variable x;
+  private static EE_Variable y;
+  private static EE_Variable z;
+  private static EE_Variable[] vars;
+  private static EnumerationSolverHandler solver;
+
+  @BeforeClass
+  public static void initialize() {
+    EncoverLogger log = new EncoverLogger(new Config(new String[0]));
+    EExpression.setLogger(log);
+    EExpression.initialize();
+    EE_Variable.initialize();
+    x = new EE_Variable(EExpression.Type.INT, "x");
+    y = new EE_Variable(EExpression.Type.INT, "y");
+    z = new EE_Variable(EExpression.Type.INT, "z");
+    vars = new EE_Variable[] { x, y, z };
+    solver = new EnumerationSolverHandler(log, 1000);
+  }
+
+  @AfterClass
+  public static void terminate() {
+    solver.exit();
+  }
+
+  /**
+   * Builds an integer constant.
+   *
+   * @param i The value of the constant.
+   * @return The constant.
+   */
+  private static EE_Constant cst(int i) {
+    return new EE_Constant(EExpression.Type.INT, i);
+  }
+
+  /**
+   * Builds a comparison.
+   *
+   * @param op The comparison operator.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The formula {@code lhs op rhs}.
+   */
+  private static EFormula cmp(EF_Relation.Operator op, EExpression lhs, EExpression rhs) {
+    return new EF_Relation(op, lhs, rhs);
+  }
+
+  /**
+   * Builds a N-ary operation.
+   *
+   * @param op The operation, without operands.
+   * @param operands The operands.
+   * @return The operation applied to its operands.
+   */
+  private static EExpression nary(EE_NaryOperation op, EExpression... operands) {
+    op.addOperands(operands);
+    return op;
+  }
+
+  /**
+   * Builds the background formula bounding every variable, as the listener
+   * does for the input domains.
+   *
+   * @param lows The lowest value of x, y and z.
+   * @param highs The highest value of x, y and z.
+   * @return The conjunction of the bounds of the variables.
+   */
+  private static EF_Conjunction background(long[] lows, long[] highs) {
+    EF_Conjunction bg = new EF_Conjunction();
+    for (int i = 0; i < vars.length; i++) {
+      bg.append(cmp(EF_Relation.Operator.GE, vars[i], cst((int) lows[i])));
+      bg.append(cmp(EF_Relation.Operator.LE, vars[i], cst((int) highs[i])));
+    }
+    return bg;
+  }
+
+  /**
+   * Returns a random term: a variable, a small constant, or the sum or the
+   * product of two of them.
+   *
+   * @param random The random generator.
+   * @param depth The maximal nesting of operations.
+   * @return The term.
+   */
+  private static EExpression term(Random random, int depth) {
+    switch ( (depth == 0) ? random.nextInt(2) : random.nextInt(4) ) {
+    case 0: return vars[random.nextInt(vars.length)];
+    case 1: return cst(random.nextInt(11) - 5);
+    case 2: return nary(new EE_NaryOperation.PLUS(), term(random, depth - 1), term(random, depth - 1));
+    default: return nary(new EE_NaryOperation.MUL(), term(random, depth - 1), term(random, depth - 1));
+    }
+  }
+
+  /**
+   * Returns a random clause: a disjunction of comparisons of random terms,
+   * possibly negated.
+   *
+   * @param random The random generator.
+   * @return The clause.
+   */
+  private static EFormula clause(Random random) {
+    EF_Relation.Operator[] operators = EF_Relation.Operator.values();
+    EF_Disjunction disj = new EF_Disjunction();
+    int nbLiterals = 1 + random.nextInt(2);
+    for (int i = 0; i < nbLiterals; i++) {
+      EFormula atom = cmp(operators[random.nextInt(operators.length)], term(random, 2), term(random, 1));
+      disj.append(random.nextInt(4) == 0 ? new EF_Negation(atom) : atom);
+    }
+    return disj;
+  }
+
+  /**
+   * Searches a model of a formula by enumerating the values of x, y and z in
+   * their bounds, walking the formula tree.
+   *
+   * @param f The formula.
+   * @param lows The lowest value of x, y and z.
+   * @param highs The highest value of x, y and z.
+   * @return A model of {@code f}, or {@code null} if there is none.
+   */
+  private static Map<EE_Variable,EE_Constant> findModel(EFormula f, long[] lows, long[] highs) {
+    Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+    for (long xv = lows[0]; xv <= highs[0]; xv++) {
+      for (long yv = lows[1]; yv <= highs[1]; yv++) {
+        for (long zv = lows[2]; zv <= highs[2]; zv++) {
+          assignment.put(x, cst((int) xv));
+          assignment.put(y, cst((int) yv));
+          assignment.put(z, cst((int) zv));
+          if ( CompiledFormulaBenchmark.TreeWalker.holds(f, assignment) ) return assignment;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void randomFormulasAgreeWithTreeWalking() {
+    Random random = new Random(1);
+    int nbSat = 0;
+    for (int i = 0; i < 2000; i++) {
+      long[] lows = new long[vars.length];
+      long[] highs = new long[vars.length];
+      for (int j = 0; j < vars.length; j++) {
+        lows[j] = random.nextInt(11) - 5;
+        highs[j] = lows[j] + random.nextInt(5);
+      }
+      EF_Conjunction background = background(lows, highs);
+      EF_Conjunction formula = new EF_Conjunction();
+      int nbClauses = 1 + random.nextInt(3);
+      for (int j = 0; j < nbClauses; j++) formula.append(clause(random));
+      SolverResult result = solver.tryToSolve(background, formula);
+      assertNotNull("not decided: " + formula, result);
+      Map<EE_Variable,EE_Constant> expected = findModel(formula, lows, highs);
+      if ( expected == null ) {
+        assertTrue("SAT but no model of " + formula, result.isUnsat());
+      } else {
+        nbSat++;
+        Map<EE_Variable,EE_Constant> model = result.getModel();
+        assertTrue("UNSAT but " + expected + " satisfies " + formula, result.isSat());
+        assertTrue("wrong model " + model + " of " + formula, CompiledFormulaBenchmark.TreeWalker.holds(formula, model));
+        assertTrue("model " + model + " out of the domains", CompiledFormulaBenchmark.TreeWalker.holds(background, model));
+      }
+    }
+    assertTrue(nbSat > 0 && nbSat < 2000);
+  }
+
+  @Test
+  public void overflowingQueriesAreLeftToOtherSolvers() {
+    long high = Integer.MAX_VALUE;
+    long[] lows = { high - 3, 0, 0 };
+    long[] highs = { high, 0, 0 };
+    // x*x fits in a long, x*x*x does not.
+    SolverResult square = solver.tryToSolve(background(lows, highs), cmp(EF_Relation.Operator.GT, nary(new EE_NaryOperation.MUL(), x, x), cst(0)));
+    assertTrue(square.isSat());
+    assertNull(solver.tryToSolve(background(lows, highs), cmp(EF_Relation.Operator.GT, nary(new EE_NaryOperation.MUL(), x, x, x), cst(0))));
+    assertNull(solver.tryToSolve(background(lows, highs), cmp(EF_Relation.Operator.LT, nary(new EE_NaryOperation.MUL(), nary(new EE_NaryOperation.MUL(), x, x), x), cst(0))));
+  }
+
+  @Test
+  public void queriesOutOfReachAreLeftToOtherSolvers() {
+    EFormula xNeY = cmp(EF_Relation.Operator.NE, x, y);
+    // 10000 * 1 * 10000 assignments, above the threshold
+    assertNull(solver.tryToSolve(background(new long[] { 0, 5, 0 }, new long[] { 99, 5, 99 }), xNeY));
+    // Domains too wide to be counted in a long
+    assertNull(solver.tryToSolve(background(new long[] { Integer.MIN_VALUE, 0, 0 }, new long[] { Integer.MAX_VALUE, 0, 0 }), xNeY));
+    // z is not bounded
+    EF_Conjunction bg = new EF_Conjunction();
+    bg.append(cmp(EF_Relation.Operator.GE, x, cst(0)));
+    bg.append(cmp(EF_Relation.Operator.LE, x, cst(3)));
+    assertNull(solver.tryToSolve(bg, cmp(EF_Relation.Operator.NE, x, z)));
+
+    SolverResult result = solver.tryToSolve(background(new long[] { 0, 5, 0 }, new long[] { 9, 5, 9 }), xNeY);
+    assertTrue(result.isSat());
+    assertEquals(Integer.valueOf(0), result.getModel().get(x).getValue());
+  }
+
+  @Test
+  public void emptyDomainsAreUnsatisfiable() {
+    EF_Conjunction background = new EF_Conjunction();
+    background.append(cmp(EF_Relation.Operator.GE, x, cst(3)));
+    background.append(cmp(EF_Relation.Operator.LT, x, cst(3)));
+    assertTrue(solver.tryToSolve(background, cmp(EF_Relation.Operator.EQ, x, x)).isUnsat());
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
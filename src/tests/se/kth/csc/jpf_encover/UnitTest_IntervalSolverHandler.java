@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the verdicts of {@link IntervalSolverHandler} against a brute force
+ * enumeration of the domains of the variables. Random domains are picked
+ * next to 0 or next to the bounds of 32-bit integers, so that the results of
+ * the operations may overflow them.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_IntervalSolverHandler {
+
+  /** Number of values in the random domains */
+  private static final int DOMAIN_SIZE = 4;
+  /** Interesting lowest values of the random domains */
+  private static final long[] DOMAIN_LOWS = {
+    -2, 0, 5, Integer.MAX_VALUE - DOMAIN_SIZE + 1, Integer.MIN_VALUE
+  };
+  /** Interesting integer constants */
+  private static final int[] CONSTANTS = {
+    0, 1, -1, 2, 3, 7, Integer.MAX_VALUE, Integer.MIN_VALUE
+  };
+
+  private static EE_Variable x;
+  private static EE_Variable y;
+  private static IntervalSolverHandler solver;
+
+  @BeforeClass
+  public static void initialize() {
+    EncoverLogger log = new EncoverLogger(new Config(new String[0]));
+    EExpression.setLogger(log);
+    EExpression.initialize();
+    EE_Variable.initialize();
+    x = new EE_Variable(EExpression.Type.INT, "x");
+    y = new EE_Variable(EExpression.Type.INT, "y");
+    solver = new IntervalSolverHandler(log);
+  }
+
+  /**
+   * Builds an integer constant.
+   *
+   * @param i The value of the constant.
+   * @return The constant.
+   */
+  private static EE_Constant cst(int i) {
+    return new EE_Constant(EExpression.Type.INT, i);
+  }
+
+  /**
+   * Builds a comparison as a relation.
+   *
+   * @param op The comparison operator.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The formula {@code lhs op rhs}.
+   */
+  private static EFormula cmp(EF_Relation.Operator op, EExpression lhs, EExpression rhs) {
+    return new EF_Relation(op, lhs, rhs);
+  }
+
+  /**
+   * Builds a binary operation.
+   *
+   * @param op The operation, without operands.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The operation applied to its operands.
+   */
+  private static EExpression bin(EE_BinaryOperation op, EExpression lhs, EExpression rhs) {
+    op.setLeftHandSide(lhs);
+    op.setRightHandSide(rhs);
+    return op;
+  }
+
+  /**
+   * Builds a N-ary operation.
+   *
+   * @param op The operation, without operands.
+   * @param operands The operands.
+   * @return The operation applied to its operands.
+   */
+  private static EExpression nary(EE_NaryOperation op, EExpression... operands) {
+    op.addOperands(operands);
+    return op;
+  }
+
+  /**
+   * Returns the domains of the variables, {@code x} in {@code [xLow, xHigh]}
+   * and {@code y} in {@code [0, 3]}.
+   *
+   * @param xLow The lowest value of {@code x}.
+   * @param xHigh The highest value of {@code x}.
+   * @return The domains.
+   */
+  private static Map<EE_Variable,long[]> domains(long xLow, long xHigh) {
+    Map<EE_Variable,long[]> domains = new LinkedHashMap<EE_Variable,long[]>();
+    domains.put(x, new long[] { xLow, xHigh });
+    domains.put(y, new long[] { 0, 3 });
+    return domains;
+  }
+
+  /**
+   * Returns random domains for the variables.
+   *
+   * @param random The random generator.
+   * @return The domains.
+   */
+  private static Map<EE_Variable,long[]> domains(Random random) {
+    long xLow = DOMAIN_LOWS[random.nextInt(DOMAIN_LOWS.length)];
+    long yLow = DOMAIN_LOWS[random.nextInt(DOMAIN_LOWS.length)];
+    Map<EE_Variable,long[]> domains = new LinkedHashMap<EE_Variable,long[]>();
+    domains.put(x, new long[] { xLow, xLow + DOMAIN_SIZE - 1 });
+    domains.put(y, new long[] { yLow, yLow + DOMAIN_SIZE - 1 });
+    return domains;
+  }
+
+  /**
+   * Builds the background formula constraining the variables to their
+   * domains, as the listener does for the input domains.
+   *
+   * @param domains The domains of the variables.
+   * @return The conjunction of the bounds of the variables.
+   */
+  private static EF_Conjunction background(Map<EE_Variable,long[]> domains) {
+    EF_Conjunction bg = new EF_Conjunction();
+    for (Map.Entry<EE_Variable,long[]> d: domains.entrySet()) {
+      bg.append(cmp(EF_Relation.Operator.LE, cst((int) d.getValue()[0]), d.getKey()));
+      bg.append(new EF_Valuation(bin(new EE_BinaryOperation.LE(), d.getKey(), cst((int) d.getValue()[1]))));
+    }
+    return bg;
+  }
+
+  /**
+   * Returns a random formula, mixing relations and boolean valuations of
+   * comparisons.
+   *
+   * @param random The random generator.
+   * @param depth The maximal nesting of boolean connectives.
+   * @return The formula.
+   */
+  private static EFormula formula(Random random, int depth) {
+    int kind = (depth == 0) ? 0 : random.nextInt(5);
+    switch (kind) {
+    case 1: return new EF_Negation(formula(random, depth - 1));
+    case 2: {
+      EF_Disjunction disj = new EF_Disjunction();
+      disj.append(formula(random, depth - 1));
+      disj.append(formula(random, depth - 1));
+      return disj;
+    }
+    case 3: {
+      EF_Conjunction conj = new EF_Conjunction();
+      conj.append(formula(random, depth - 1));
+      conj.append(formula(random, depth - 1));
+      return conj;
+    }
+    default: {
+      EF_Relation.Operator[] operators = EF_Relation.Operator.values();
+      EF_Relation.Operator op = operators[random.nextInt(operators.length)];
+      EExpression lhs = expression(random, 2);
+      EExpression rhs = expression(random, 1);
+      if ( random.nextBoolean() ) return cmp(op, lhs, rhs);
+      EE_BinaryOperation comparison;
+      switch (op) {
+      case EQ: comparison = new EE_BinaryOperation.EQ(); break;
+      case NE: comparison = new EE_BinaryOperation.NE(); break;
+      case LT: comparison = new EE_BinaryOperation.LT(); break;
+      case LE: comparison = new EE_BinaryOperation.LE(); break;
+      case GT: comparison = new EE_BinaryOperation.GT(); break;
+      default: comparison = new EE_BinaryOperation.GE(); break;
+      }
+      return new EF_Valuation(bin(comparison, lhs, rhs));
+    }
+    }
+  }
+
+  /**
+   * Returns a random integer expression. Products only involve small
+   * constants, so that the values of the expressions fit in a long.
+   *
+   * @param random The random generator.
+   * @param depth The maximal nesting of operations.
+   * @return The expression.
+   */
+  private static EExpression expression(Random random, int depth) {
+    int kind = (depth == 0) ? random.nextInt(2) : random.nextInt(7);
+    switch (kind) {
+    case 0: return random.nextBoolean() ? x : y;
+    case 1: return cst(CONSTANTS[random.nextInt(CONSTANTS.length)]);
+    case 2: return nary(new EE_NaryOperation.PLUS(), expression(random, depth - 1), expression(random, depth - 1));
+    case 3: return bin(new EE_BinaryOperation.MINUS(), expression(random, depth - 1), expression(random, depth - 1));
+    case 4: return nary(new EE_NaryOperation.MUL(), random.nextBoolean() ? x : y, cst(random.nextInt(7) - 3));
+    case 5: {
+      EE_UnaryOperation neg = new EE_UnaryOperation.NEG();
+      neg.setOperand(expression(random, depth - 1));
+      return neg;
+    }
+    default: {
+      EE_BinaryOperation op = random.nextBoolean() ? new EE_BinaryOperation.IDIV() : new EE_BinaryOperation.MOD();
+      return bin(op, expression(random, depth - 1), cst(1 + random.nextInt(4)));
+    }
+    }
+  }
+
+  /**
+   * Tests if a formula holds for an assignment.
+   *
+   * @param f The formula.
+   * @param assignment The values of the variables.
+   * @return True iff the formula holds.
+   */
+  private static boolean holds(EFormula f, Map<EE_Variable,EE_Constant> assignment) {
+    return CompiledFormulaBenchmark.TreeWalker.holds(f, assignment);
+  }
+
+  /**
+   * Searches a model of a formula by enumerating the values of the
+   * variables in their domains.
+   *
+   * @param f The formula.
+   * @param domains The domains of the variables.
+   * @return A model of {@code f}, or {@code null} if there is none.
+   */
+  private static Map<EE_Variable,EE_Constant> findModel(EFormula f, Map<EE_Variable,long[]> domains) {
+    long[] xDom = domains.get(x);
+    long[] yDom = domains.get(y);
+    for (long xv = xDom[0]; xv <= xDom[1]; xv++) {
+      for (long yv = yDom[0]; yv <= yDom[1]; yv++) {
+        Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+        assignment.put(x, cst((int) xv));
+        assignment.put(y, cst((int) yv));
+        if ( holds(f, assignment) ) return assignment;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decides a query by interval analysis and checks the verdict against the
+   * brute force enumeration of the domains.
+   *
+   * @param domains The domains of the variables.
+   * @param formula The formula of the query.
+   * @return The verdict, or {@code null} if the query was not decided.
+   */
+  private static SolverResult check(Map<EE_Variable,long[]> domains, EFormula formula) {
+    EF_Conjunction background = background(domains);
+    SolverResult result = solver.tryToSolve(background, formula);
+    if ( result == null ) return null;
+    Map<EE_Variable,EE_Constant> expected = findModel(formula, domains);
+    if ( result.isUnsat() ) {
+      assertNull("UNSAT but " + expected + " satisfies " + formula, expected);
+    } else {
+      assertTrue(result.isSat());
+      assertTrue("wrong model " + result.getModel() + " of " + formula, holds(formula, result.getModel()));
+      assertTrue("model " + result.getModel() + " out of the domains", holds(background, result.getModel()));
+    }
+    return result;
+  }
+
+  @Test
+  public void randomFormulasAgreeWithEnumeration() {
+    Random random = new Random(0);
+    int nbDecided = 0;
+    for (int i = 0; i < 3000; i++) {
+      if ( check(domains(random), formula(random, 2)) != null ) nbDecided++;
+    }
+    assertTrue("only " + nbDecided + " queries decided", nbDecided > 300);
+  }
+
+  @Test
+  public void resultsOverflowingIntegersAreNotWrapped() {
+    EExpression xPlusOne = nary(new EE_NaryOperation.PLUS(), x, cst(1));
+    EE_UnaryOperation minusX = new EE_UnaryOperation.NEG();
+    minusX.setOperand(x);
+    Map<EE_Variable,long[]> high = domains(Integer.MAX_VALUE - 2, Integer.MAX_VALUE);
+    Map<EE_Variable,long[]> low = domains(Integer.MIN_VALUE, Integer.MIN_VALUE + 2);
+
+    assertTrue(check(high, cmp(EF_Relation.Operator.GT, xPlusOne, cst(Integer.MAX_VALUE - 2))).isSat());
+    assertNull(check(high, cmp(EF_Relation.Operator.GT, xPlusOne, cst(Integer.MAX_VALUE))));
+    assertTrue(check(high, cmp(EF_Relation.Operator.GT, nary(new EE_NaryOperation.MUL(), x, x), cst(Integer.MAX_VALUE))).isSat());
+    assertTrue(check(low, cmp(EF_Relation.Operator.GT, minusX, cst(0))).isSat());
+    assertTrue(check(low, cmp(EF_Relation.Operator.LT, bin(new EE_BinaryOperation.MINUS(), x, cst(3)), cst(Integer.MIN_VALUE))).isSat());
+    assertTrue(check(low, cmp(EF_Relation.Operator.GE, bin(new EE_BinaryOperation.MINUS(), x, cst(3)), cst(Integer.MIN_VALUE))).isUnsat());
+  }
+
+  @Test
+  public void disjunctionsAreDecided() {
+    Map<EE_Variable,long[]> d = domains(0, 10);
+    EF_Disjunction outside = new EF_Disjunction();
+    outside.append(cmp(EF_Relation.Operator.LT, x, cst(0)));
+    outside.append(cmp(EF_Relation.Operator.GT, x, cst(10)));
+    assertTrue(check(d, outside).isUnsat());
+
+    EF_Disjunction inside = new EF_Disjunction();
+    inside.append(cmp(EF_Relation.Operator.LT, x, cst(0)));
+    inside.append(cmp(EF_Relation.Operator.LE, x, cst(10)));
+    assertTrue(check(d, inside).isSat());
+
+    EF_Disjunction unknown = new EF_Disjunction();
+    unknown.append(cmp(EF_Relation.Operator.LT, x, cst(3)));
+    unknown.append(cmp(EF_Relation.Operator.GT, x, cst(7)));
+    assertNull(check(d, unknown));
+  }
+
+  @Test
+  public void negatedComparisonsAreDecided() {
+    EFormula xLe5 = cmp(EF_Relation.Operator.LE, x, cst(5));
+    assertTrue(check(domains(0, 3), new EF_Negation(xLe5)).isUnsat());
+    assertTrue(check(domains(6, 9), new EF_Negation(xLe5)).isSat());
+    assertNull(check(domains(0, 10), new EF_Negation(xLe5)));
+    EE_UnaryOperation not = new EE_UnaryOperation.NOT();
+    not.setOperand(bin(new EE_BinaryOperation.EQ(), x, y));
+    assertTrue(check(domains(5, 9), new EF_Valuation(not)).isSat());
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
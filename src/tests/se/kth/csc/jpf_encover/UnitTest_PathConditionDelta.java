@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that path conditions stored as deltas by the output flow graphs
+ * are rebuilt into the original path conditions.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_PathConditionDelta {
+
+  private static EE_Variable x;
+
+  @BeforeClass
+  public static void initialize() {
+    EExpression.setLogger(new EncoverLogger(new gov.nasa.jpf.Config(new String[0])));
+    EExpression.initialize();
+    EE_Variable.initialize();
+    x = new EE_Variable(EExpression.Type.INT, "x");
+  }
+
+  /**
+   * Returns the atomic formula {@code x <= k}.
+   *
+   * @param k The bound.
+   * @return The formula {@code x <= k}.
+   */
+  private static EFormula atom(int k) {
+    EE_BinaryOperation le = new EE_BinaryOperation.LE();
+    le.setLeftHandSide(x);
+    le.setRightHandSide(new EE_Constant(EExpression.Type.INT, k));
+    return new EF_Valuation(le);
+  }
+
+  /**
+   * Returns a conjunction of the provided conjuncts, stored in a
+   * {@link PersistentFormulaList} or in a plain list.
+   *
+   * @param conjuncts The conjuncts.
+   * @param persistent Should the conjuncts be stored in a persistent list?
+   * @return The conjunction.
+   */
+  private static EF_Conjunction conjunction(PersistentFormulaList conjuncts, boolean persistent) {
+    if ( persistent ) return new EF_Conjunction(conjuncts);
+    EF_Conjunction res = new EF_Conjunction();
+    for (EFormula f: conjuncts) res.append(f);
+    return res;
+  }
+
+  @Test
+  public void expandOfExtractIsIdentity() {
+    Random random = new Random(0);
+    for (int i = 0; i < 500; i++) {
+      PersistentFormulaList parentConjuncts = PersistentFormulaList.EMPTY;
+      int nbParent = random.nextInt(6);
+      for (int j = 0; j < nbParent; j++) parentConjuncts = parentConjuncts.prepend(atom(random.nextInt(20)));
+      PersistentFormulaList conjuncts = parentConjuncts;
+      int nbNew = random.nextInt(4);
+      for (int j = 0; j < nbNew; j++) conjuncts = conjuncts.prepend(atom(random.nextInt(20)));
+      EFormula parentPc = conjunction(parentConjuncts, random.nextBoolean());
+      EFormula pc = conjunction(conjuncts, random.nextBoolean());
+
+      EF_Conjunction delta = PathConditionDelta.extract(pc, parentPc);
+      assertNotNull(delta);
+      assertEquals(nbNew, delta.getSubFormulas().size());
+      EFormula rebuilt = PathConditionDelta.expand(delta, parentPc);
+      assertEquals(pc.toString(), rebuilt.toString());
+      assertEquals(new ArrayList<EFormula>(pc.getSubFormulas()), new ArrayList<EFormula>(rebuilt.getSubFormulas()));
+    }
+  }
+
+  @Test
+  public void extractRejectsPathConditionsNotExtendingTheParent() {
+    PersistentFormulaList parentConjuncts = PersistentFormulaList.EMPTY.prepend(atom(1)).prepend(atom(2));
+    EFormula parentPc = new EF_Conjunction(parentConjuncts);
+    assertNull(PathConditionDelta.extract(new EF_Conjunction(PersistentFormulaList.EMPTY.prepend(atom(3)).prepend(atom(2))), parentPc));
+    assertNull(PathConditionDelta.extract(new EF_Conjunction(PersistentFormulaList.EMPTY.prepend(atom(1))), parentPc));
+    assertNull(PathConditionDelta.extract(atom(1), parentPc));
+    assertEquals(atom(1).toString(), PathConditionDelta.difference(atom(1), parentPc).toString());
+  }
+
+  @Test
+  public void registeredPathConditionsOfTheCurrentPathAreNotEvicted() {
+    OutputFlowGraph[] ofgs = { new OFG_BasedOnJGraphT(), new OFG_CompactTree() };
+    int nbOutputs = 2 * PathConditionDelta.VIEW_CACHE_CAPACITY;
+    for (OutputFlowGraph ofg: ofgs) {
+      List<PersistentFormulaList> registered = new ArrayList<PersistentFormulaList>();
+      List<OFG_Vertex> vertices = new ArrayList<OFG_Vertex>();
+      PersistentFormulaList conjuncts = PersistentFormulaList.EMPTY;
+      for (int i = 0; i < nbOutputs; i++) {
+        conjuncts = conjuncts.prepend(atom(i));
+        registered.add(conjuncts);
+        vertices.add(ofg.registerOutput(x, new EF_Conjunction(conjuncts)));
+        ofg.registerBacktrackablePoint(i, 0);
+      }
+      for (int i = 0; i < nbOutputs; i++)
+        assertSame(registered.get(i), vertices.get(i).getPathCondition().getSubFormulas());
+
+      ofg.backtrackTo(10, 0);
+      PersistentFormulaList sibling = registered.get(10).prepend(atom(-1));
+      OFG_Vertex v = ofg.registerOutput(x, new EF_Conjunction(sibling));
+      assertSame(registered.get(10), vertices.get(10).getPathCondition().getSubFormulas());
+      assertEquals(atom(-1).toString(), v.getPathConditionDelta().getSubFormulas().get(0).toString());
+      assertSame(sibling, v.getPathCondition().getSubFormulas());
+    }
+  }
+
+  @Test
+  public void pathConditionsAreRebuiltAfterDeserialization() throws Exception {
+    OutputFlowGraph[] ofgs = { new OFG_BasedOnJGraphT(), new OFG_CompactTree() };
+    for (OutputFlowGraph ofg: ofgs) {
+      List<String> expected = new ArrayList<String>();
+      PersistentFormulaList conjuncts = PersistentFormulaList.EMPTY;
+      for (int i = 0; i < 50; i++) {
+        if ( i % 3 != 0 ) conjuncts = conjuncts.prepend(atom(i));
+        EFormula pc = new EF_Conjunction(conjuncts);
+        ofg.registerOutput(x, pc);
+        expected.add(pc.toString());
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(ofg);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      OutputFlowGraph copy = (OutputFlowGraph) in.readObject();
+      in.close();
+
+      List<String> found = new ArrayList<String>();
+      for (OFG_Vertex v: copy.depthFirstTaversal()) found.add(v.getPathCondition().toString());
+      assertEquals(expected, found);
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.*;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.symbc.numeric.Comparator;
+import gov.nasa.jpf.symbc.numeric.PathCondition;
+import gov.nasa.jpf.symbc.numeric.SymbolicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the incremental translations of {@link PathConditionTranslator},
+ * stored in {@link PersistentFormulaList}s, are the same as the ones of
+ * {@link JPFHelper#pc2formula(PathCondition)} and do not interfere with each
+ * other.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_PathConditionTranslator {
+
+  private static SymbolicInteger[] symbolicInputs;
+  private Random random;
+  private PathConditionTranslator translator;
+  private int nbTranslations;
+
+  @BeforeClass
+  public static void initialize() {
+    EExpression.setLogger(new EncoverLogger(new Config(new String[0])));
+    EExpression.initialize();
+    EE_Variable.initialize();
+    symbolicInputs = new SymbolicInteger[] { new SymbolicInteger("a", 0, 9), new SymbolicInteger("b", 0, 9) };
+  }
+
+  /**
+   * Translates a path condition, compares the translation with the baseline
+   * one, then explores random extensions of the path condition, as the
+   * search extends the path condition of a state in its children.
+   *
+   * @param pc The path condition.
+   * @param depth The maximal number of extensions.
+   */
+  private void explore(PathCondition pc, int depth) throws TranslationException {
+    EFormula translated = translator.translate(pc);
+    EFormula expected = JPFHelper.pc2formula(pc);
+    assertEquals(expected.toString(), translated.toString());
+    assertEquals(expected.toString(EFormula.StrEncoding.SMT2), translated.toString(EFormula.StrEncoding.SMT2));
+    assertEquals(expected.getVariables(), translated.getVariables());
+    List<EFormula> expectedSubs = expected.getSubFormulas();
+    List<EFormula> translatedSubs = translated.getSubFormulas();
+    assertEquals(expectedSubs.size(), translatedSubs.size());
+    for (int i = 0; i < expectedSubs.size(); i++)
+      assertEquals(expectedSubs.get(i).toString(), translatedSubs.get(i).toString());
+    // Modifying a translation must not modify the ones sharing its conjuncts
+    ((EF_Conjunction) translated).append(new EF_Valuation(new EE_Constant.TRUE()));
+    nbTranslations++;
+
+    if ( depth == 0 ) return;
+    int nbChildren = 1 + random.nextInt(3);
+    for (int i = 0; i < nbChildren; i++) {
+      PathCondition child = pc.make_copy();
+      int nbConstraints = random.nextInt(3);
+      for (int j = 0; j < nbConstraints; j++)
+        child._addDet(Comparator.values()[random.nextInt(6)], symbolicInputs[random.nextInt(symbolicInputs.length)], random.nextInt(9));
+      explore(child, depth - 1);
+    }
+  }
+
+  @Test
+  public void translationsAgreeWithBaseline() throws TranslationException {
+    for (int seed = 0; seed < 50; seed++) {
+      random = new Random(seed);
+      // A small capacity exercises the emptying of the cache
+      translator = new PathConditionTranslator(seed % 2 == 0 ? 7 : 100000);
+      explore(new PathCondition(), 5);
+      assertTrue(translator.getNbReusedConstraints() > 0);
+    }
+    assertTrue(nbTranslations > 1000);
+  }
+
+  @Test
+  public void persistentListsShareTheirTails() throws Exception {
+    EFormula f1 = new EF_Valuation(new EE_Constant.TRUE());
+    EFormula f2 = new EF_Valuation(new EE_Constant.FALSE());
+    PersistentFormulaList tail = PersistentFormulaList.EMPTY.prepend(f1);
+    PersistentFormulaList l1 = tail.prepend(f2);
+    PersistentFormulaList l2 = tail.prepend(f1);
+    assertEquals(0, PersistentFormulaList.EMPTY.size());
+    assertEquals(2, l1.size());
+    assertSame(f2, l1.getHead());
+    assertSame(tail, l1.getTail());
+    assertSame(tail, l2.getTail());
+    assertEquals(Arrays.asList(f2, f1), l1);
+    assertEquals(Arrays.asList(f1, f1), new ArrayList<EFormula>(l2));
+    assertSame(f1, l1.get(1));
+
+    // Conjunctions copy their shared conjuncts before modifying them
+    EF_Conjunction c1 = new EF_Conjunction(l1);
+    c1.append(f1);
+    assertEquals(3, c1.getSubFormulas().size());
+    assertEquals(2, l1.size());
+    assertEquals(1, tail.size());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(new EF_Conjunction(l1));
+    out.close();
+    EFormula copy = (EFormula) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertEquals(new EF_Conjunction(l1).toString(), copy.toString());
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import java.util.*;
+
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.choice.IntIntervalGenerator;
+import gov.nasa.jpf.symbc.numeric.PCChoiceGenerator;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the keys, check values and open marks maintained incrementally by
+ * {@link PathKeyTracker} against a scan of the chain of choice generators,
+ * as done by {@link JPFHelper#vm2dynamicStateKey(gov.nasa.jpf.jvm.JVM, boolean)},
+ * along random depth-first explorations of nested choice generators.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_PathKeyTracker {
+
+  private Random random;
+  private PathKeyTracker tracker;
+  /** Chain of the choice generators of the current state, as held by the VM */
+  private List<ChoiceGenerator<?>> chain;
+  /** Marks given to the choice generators */
+  private Map<ChoiceGenerator<?>,Integer> marks;
+  private int depth;
+  private int nbChecks;
+
+  /**
+   * Computes a path key or check value by scanning the chain.
+   *
+   * @param backtraking If true, the last path condition choice is excluded.
+   * @param check If true, the check value is returned instead of the key.
+   * @return The key or check value of the current path.
+   */
+  private long scan(boolean backtraking, boolean check) {
+    long key = JPFHelper.EMPTY_PATH_KEY;
+    int pathCheck = JPFHelper.EMPTY_PATH_CHECK;
+    int last = chain.size() - 1;
+    if ( backtraking )
+      while ( last >= 0 && ! (chain.get(last) instanceof PCChoiceGenerator) ) last--;
+    for (int i = 0; i < chain.size(); i++) {
+      if ( chain.get(i) instanceof PCChoiceGenerator && ! (backtraking && i == last) ) {
+        key = JPFHelper.extendPathKey(key, (PCChoiceGenerator) chain.get(i));
+        pathCheck = JPFHelper.extendPathCheck(pathCheck, (PCChoiceGenerator) chain.get(i));
+      }
+    }
+    return check ? pathCheck : key;
+  }
+
+  /**
+   * Checks the tracker against the chain.
+   *
+   * @param backtraking Whether the keys are computed for a backtrack.
+   */
+  private void check(boolean backtraking) {
+    nbChecks++;
+    int open = PathKeyTracker.NO_OPEN_MARK;
+    for (ChoiceGenerator<?> cg: chain) if ( cg.hasMoreChoices() ) open = Math.min(open, marks.get(cg));
+    assertEquals(open, tracker.getOpenMark());
+    assertEquals(scan(backtraking, false), tracker.getPathKey(backtraking));
+    assertEquals(scan(backtraking, true), tracker.getPathCheck(backtraking));
+  }
+
+  /**
+   * Explores the current state: possibly creates a new choice generator and
+   * explores every one of its choices, notifying the tracker as the
+   * listener does.
+   *
+   * @param maxDepth The maximal number of nested choice generators.
+   */
+  private void explore(int maxDepth) {
+    depth += random.nextInt(2);
+    check(false);
+    if ( maxDepth == 0 || random.nextInt(5) == 0 ) return;
+    ChoiceGenerator<?> cg = random.nextBoolean() ? new PCChoiceGenerator(1 + random.nextInt(3)) : new IntIntervalGenerator("test", 0, random.nextInt(3));
+    cg.setPreviousChoiceGenerator(chain.isEmpty() ? null : chain.get(chain.size() - 1));
+    chain.add(cg);
+    marks.put(cg, depth);
+    boolean first = true;
+    while ( cg.hasMoreChoices() ) {
+      cg.advance();
+      tracker.choiceGeneratorAdvanced(cg, depth);
+      if ( ! first ) check(true);
+      first = false;
+      int before = depth;
+      explore(maxDepth - 1);
+      depth = before;
+      // Backtracks to the state where cg is the current choice generator
+      while ( chain.get(chain.size() - 1) != cg ) chain.remove(chain.size() - 1);
+      tracker.stateBacktracked(cg);
+    }
+    tracker.choiceGeneratorProcessed(cg);
+    check(true);
+    chain.remove(chain.size() - 1);
+    if ( ! chain.isEmpty() ) tracker.stateBacktracked(chain.get(chain.size() - 1));
+  }
+
+  @Test
+  public void trackedKeysAgreeWithChainScans() {
+    for (int seed = 0; seed < 200; seed++) {
+      random = new Random(seed);
+      tracker = new PathKeyTracker();
+      chain = new ArrayList<ChoiceGenerator<?>>();
+      marks = new IdentityHashMap<ChoiceGenerator<?>,Integer>();
+      depth = 0;
+      explore(8);
+    }
+    assertTrue(nbChecks > 10000);
+  }
+
+  @Test
+  public void collidingKeysAreDetected() {
+    BacktrackTable table = new BacktrackTable();
+    table.put(42L, 3, "position", "", false, 0, 0);
+    assertEquals(0, table.lookup(42L, 3));
+    assertEquals(BacktrackTable.NO_SNAPSHOT, table.lookup(43L, 3));
+    try {
+      table.lookup(42L, 4);
+      fail("The collision was not detected.");
+    } catch (Error e) {
+      // Expected
+    }
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End:
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2012 Gurvan Le Guernic
+ * 
+ * This file is part of ENCoVer. ENCoVer is a JavaPathFinder extension allowing
+ * to verify if a Java method respects different epistemic noninterference
+ * properties.
+ * 
+ * ENCoVer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * ENCoVer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * ENCoVer. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.kth.csc.jpf_encover;
+
+import gov.nasa.jpf.Config;
+import java.util.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that slicing queries with {@link SlicingSolverHandler} preserves
+ * their verdicts: sliced queries are decided by enumeration and compared
+ * with a brute force enumeration of the whole query. Every variable ranges
+ * over {@code [0, 3]} and atoms relate at most two variables, so that queries
+ * split into several independent components.
+ *
+ * @author Gurvan Le Guernic
+ * @version 0.1
+ */
+public class UnitTest_SlicingSolverHandler {
+
+  /** Highest value of the variables, the lowest being 0 */
+  private static final int HIGH = 3;
+
+  private static EE_Variable[] vars;
+  private static EnumerationSolverHandler enumeration;
+  private static SlicingSolverHandler solver;
+
+  @BeforeClass
+  public static void initialize() {
+    EncoverLogger log = new EncoverLogger(new Config(new String[0]));
+    EExpression.setLogger(log);
+    EExpression.initialize();
+    EE_Variable.initialize();
+    vars = new EE_Variable[4];
+    for (int i = 0; i < vars.length; i++) vars[i] = new EE_Variable(EExpression.Type.INT, "v" + i);
+    enumeration = new EnumerationSolverHandler(log, 1 << 20);
+    solver = new SlicingSolverHandler(enumeration, log);
+    solver.start();
+  }
+
+  @AfterClass
+  public static void terminate() {
+    solver.exit();
+  }
+
+  /**
+   * Builds an integer constant.
+   *
+   * @param i The value of the constant.
+   * @return The constant.
+   */
+  private static EE_Constant cst(int i) {
+    return new EE_Constant(EExpression.Type.INT, i);
+  }
+
+  /**
+   * Builds a comparison.
+   *
+   * @param op The comparison operator.
+   * @param lhs The left hand side.
+   * @param rhs The right hand side.
+   * @return The formula {@code lhs op rhs}.
+   */
+  private static EFormula cmp(EF_Relation.Operator op, EExpression lhs, EExpression rhs) {
+    return new EF_Relation(op, lhs, rhs);
+  }
+
+  /**
+   * Builds the background formula bounding every variable to
+   * {@code [0, HIGH]}, as the listener does for the input domains.
+   *
+   * @return The conjunction of the bounds of the variables.
+   */
+  private static EF_Conjunction background() {
+    EF_Conjunction bg = new EF_Conjunction();
+    for (EE_Variable v: vars) {
+      bg.append(cmp(EF_Relation.Operator.GE, v, cst(0)));
+      bg.append(cmp(EF_Relation.Operator.LE, v, cst(HIGH)));
+    }
+    return bg;
+  }
+
+  /**
+   * Returns a random atom comparing a variable with a constant, or with
+   * another variable shifted by a constant.
+   *
+   * @param random The random generator.
+   * @return The atom.
+   */
+  private static EFormula atom(Random random) {
+    EF_Relation.Operator[] operators = EF_Relation.Operator.values();
+    EF_Relation.Operator op = operators[random.nextInt(operators.length)];
+    EE_Variable lhs = vars[random.nextInt(vars.length)];
+    EE_Constant c = cst(random.nextInt(2 * HIGH + 1) - HIGH);
+    if ( random.nextInt(3) == 0 ) return cmp(op, lhs, cst(random.nextInt(HIGH + 1)));
+    EE_NaryOperation.PLUS rhs = new EE_NaryOperation.PLUS();
+    rhs.addOperands(vars[random.nextInt(vars.length)], c);
+    return cmp(op, lhs, rhs);
+  }
+
+  /**
+   * Returns a random literal: an atom, its negation or the disjunction of
+   * two atoms.
+   *
+   * @param random The random generator.
+   * @return The literal.
+   */
+  private static EFormula literal(Random random) {
+    switch ( random.nextInt(4) ) {
+    case 0: return new EF_Negation(atom(random));
+    case 1: {
+      EF_Disjunction disj = new EF_Disjunction();
+      disj.append(atom(random));
+      disj.append(atom(random));
+      return disj;
+    }
+    default: return atom(random);
+    }
+  }
+
+  /**
+   * Searches a model of a formula by enumerating all the assignments of the
+   * variables in {@code [0, HIGH]}.
+   *
+   * @param f The formula.
+   * @return A model of {@code f}, or {@code null} if there is none.
+   */
+  private static Map<EE_Variable,EE_Constant> findModel(EFormula f) {
+    int nbAssignments = 1;
+    for (int i = 0; i < vars.length; i++) nbAssignments *= HIGH + 1;
+    for (int a = 0; a < nbAssignments; a++) {
+      Map<EE_Variable,EE_Constant> assignment = new HashMap<EE_Variable,EE_Constant>();
+      int code = a;
+      for (EE_Variable v: vars) {
+        assignment.put(v, cst(code % (HIGH + 1)));
+        code /= HIGH + 1;
+      }
+      if ( CompiledFormulaBenchmark.TreeWalker.holds(f, assignment) ) return assignment;
+    }
+    return null;
+  }
+
+  /**
+   * Checks the verdict of a sliced query against the brute force enumeration
+   * of the whole query.
+   *
+   * @param background The background formula.
+   * @param formula The formula of the query, or {@code null} to check the
+   *   background alone.
+   * @return True iff the query is satisfiable.
+   */
+  private static boolean check(EFormula background, EFormula formula) {
+    EF_Conjunction query = new EF_Conjunction();
+    query.append(background);
+    if ( formula != null ) query.append(formula);
+    SolverResult result = (formula == null) ? solver.solve(background) : solver.solve(background, formula);
+    Map<EE_Variable,EE_Constant> expected = findModel(query);
+    if ( expected == null ) {
+      assertTrue("SAT but no model of " + query, result.isUnsat());
+      return false;
+    }
+    assertTrue("UNSAT but " + expected + " satisfies " + query, result.isSat());
+    Map<EE_Variable,EE_Constant> model = new HashMap<EE_Variable,EE_Constant>(expected);
+    model.putAll(result.getModel());
+    assertTrue("wrong model " + result.getModel() + " of " + query, CompiledFormulaBenchmark.TreeWalker.holds(query, model));
+    return true;
+  }
+
+  @Test
+  public void slicedQueriesAgreeWithWholeQueries() {
+    Random random = new Random(4);
+    int nbSat = 0;
+    int nbQueries = 0;
+    for (int i = 0; i < 200; i++) {
+      EF_Conjunction background = background();
+      // Links some variables in the background
+      if ( random.nextBoolean() ) background.append(atom(random));
+      check(background, null);
+      // Several queries share the same background, as they do in the listener
+      for (int j = 0; j < 5; j++) {
+        EF_Conjunction formula = new EF_Conjunction();
+        int nbConjuncts = 1 + random.nextInt(3);
+        for (int k = 0; k < nbConjuncts; k++) formula.append(literal(random));
+        if ( check(background, formula) ) nbSat++;
+        nbQueries++;
+      }
+    }
+    assertTrue(nbSat > 0 && nbSat < nbQueries);
+    assertTrue(solver.getStatistics().get("sliced queries") > 0);
+  }
+
+  @Test
+  public void unsatisfiableBackgroundComponentsAreNotSlicedAway() {
+    EF_Conjunction background = background();
+    EE_NaryOperation.PLUS v2PlusHigh = new EE_NaryOperation.PLUS();
+    v2PlusHigh.addOperands(vars[2], cst(HIGH));
+    background.append(cmp(EF_Relation.Operator.GT, vars[3], v2PlusHigh));
+    assertFalse(check(background, cmp(EF_Relation.Operator.NE, vars[0], vars[1])));
+    assertFalse(check(background, cmp(EF_Relation.Operator.EQ, vars[0], vars[1])));
+  }
+
+}
+
+
+
+// Local Variables: 
+// c-basic-offset: 2
+// indent-tabs-mode: nil
+// End: